@@ -0,0 +1,135 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.aggregate.CountingIssueRepository;
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.Percentiles;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the two ways of answering dashboard counts: the store's own count query (a GROUP BY for the SQL engines)
+ * and the in-memory counters of {@link CountingIssueRepository}. Counts by rule, severity and file and the severity by
+ * rule matrix are timed one call at a time, on an idle store, then while a writer thread keeps inserting batches.
+ * The stores take one caller at a time, so a count query may wait for a batch being inserted; counters never do.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.AggregationRunner db=h2,sqlite items=200000 batch=1000 queries=200 workload=monorepo
+ */
+public class AggregationRunner {
+    private static final String[] QUERIES = {"rule", "severity", "file", "severity x rule"};
+
+    public static void main(String[] args) throws Exception {
+        String db = null;
+        int items = 200_000;
+        int batch = 1_000;
+        int queries = 200;
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "queries": queries = Integer.parseInt(kv[1]); break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+            }
+        }
+
+        DataGenerator gen = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234"}, workload);
+        System.out.println("Count queries against incrementally maintained counters");
+        System.out.println("items=" + items + ", batch=" + batch + ", queries=" + queries + ", workload=" + workload);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-8s %-16s %-9s %8s %12s %12s %12s %12s",
+                "backend", "writes", "query", "via", "groups", "p50(us)", "p95(us)", "p99(us)", "writes(it/s)"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            try (IssueRepository store = backend.create(null, TuningProfile.defaultProfile())) {
+                CountingIssueRepository counting = new CountingIssueRepository(store);
+                counting.init();
+                for (int from = 0; from < items; from += batch) counting.insertAll(gen.generateRange(from, Math.min(batch, items - from)));
+                for (IssueField field : IssueField.values()) {
+                    if (!store.countBy(field).equals(counting.countBy(field))) {
+                        throw new IllegalStateException("Counters by " + field + " differ from the store's count");
+                    }
+                }
+                run(backend.id(), store, counting, gen, items, batch, queries, false);
+                run(backend.id(), store, counting, gen, items, batch, queries, true);
+            }
+        }
+    }
+
+    /**
+     * Times every query through both paths; with {@code writing}, a writer thread inserts new batches through the
+     * counters, so that both stay up to date, until the last query is done.
+     */
+    private static void run(String backend, IssueRepository store, CountingIssueRepository counting, DataGenerator gen,
+                            int items, int batch, int queries, boolean writing) throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong written = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            long from = items;
+            while (!stop.get()) {
+                try {
+                    synchronized (store) {
+                        counting.insertAll(gen.generateRange(from, batch));
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                from += batch;
+                written.addAndGet(batch);
+            }
+        }, "count-writer");
+        long t0 = System.nanoTime();
+        if (writing) writer.start();
+        try {
+            for (int q = 0; q < QUERIES.length; q++) {
+                for (boolean viaCounters : new boolean[] {false, true}) {
+                    long[] latencies = new long[queries];
+                    int groups = 0;
+                    for (int i = 0; i < queries; i++) {
+                        long start = System.nanoTime();
+                        if (viaCounters) {
+                            groups = count(counting, q);
+                        } else {
+                            synchronized (store) {
+                                groups = count(store, q);
+                            }
+                        }
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    Arrays.sort(latencies);
+                    System.out.println(String.format(Locale.ROOT, "%-10s %-8s %-16s %-9s %8d %12.1f %12.1f %12.1f %12s",
+                            backend, writing ? "yes" : "no", QUERIES[q], viaCounters ? "counters" : "query", groups,
+                            Percentiles.of(latencies, 0.50) / 1e3, Percentiles.of(latencies, 0.95) / 1e3, Percentiles.of(latencies, 0.99) / 1e3,
+                            writing ? String.format(Locale.ROOT, "%.0f", written.get() * 1e9 / (System.nanoTime() - t0)) : "-"));
+                }
+            }
+        } finally {
+            stop.set(true);
+            if (writing) writer.join();
+        }
+    }
+
+    /** Runs query {@code q} of {@link #QUERIES} and returns the number of groups, or of matrix cells. */
+    private static int count(IssueRepository repo, int q) throws Exception {
+        switch (q) {
+            case 0: return repo.countBy(IssueField.RULE).size();
+            case 1: return repo.countBy(IssueField.SEVERITY).size();
+            case 2: return repo.countBy(IssueField.FILE).size();
+            default:
+                int cells = 0;
+                for (Map<String, Long> byRule : repo.countBy(IssueField.SEVERITY, IssueField.RULE).values()) cells += byRule.size();
+                return cells;
+        }
+    }
+}
@@ -1,69 +1,557 @@
 package org.sonarsource.bench;
 
 import org.sonarsource.bench.db.*;
+import org.sonarsource.bench.jfr.BackendRecording;
+import org.sonarsource.bench.metrics.MetricsIssueRepository;
 import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.result.PhaseResult;
+import org.sonarsource.bench.result.ResultsComparator;
+import org.sonarsource.bench.result.ResultsIO;
 import org.sonarsource.bench.util.BenchmarkConfig;
 import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.Percentiles;
+import org.sonarsource.bench.util.PhaseProbe;
 import org.sonarsource.bench.util.Stopwatch;
+import org.sonarsource.bench.util.WorkloadProfile;
 
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
+/**
+ * Runs write, readAll, search and get phases against every backend and reports one {@link PhaseResult} per phase.
+ * <p>
+ * Usage examples:
+ * - Run and export results (JSON or CSV by extension):
+ * java ... org.sonarsource.bench.BenchmarkRunner items=100000 profiles=safe,balanced out=results.json,results.csv
+ * <p>
+ * - Gate an engine upgrade: run, compare against a stored baseline and exit with code 1 on regressions:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=100000 baseline=baseline.json threshold=10
+ * <p>
+ * - Compare two stored result files without running anything:
+ * java ... org.sonarsource.bench.BenchmarkRunner mode=compare baseline=baseline.json current=results.json threshold=10
+ * <p>
+ * - Large stores: issues are generated and inserted batch by batch, so the heap only bounds the batch size:
+ * java -Xmx2g ... org.sonarsource.bench.BenchmarkRunner items=20000000 batch=10000 gets=10000
+ * <p>
+ * - Skewed datasets (uniform, small-project, monorepo, security-heavy), see {@link WorkloadProfile}:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=1000000 workload=monorepo
+ * <p>
+ * - Backend and phase selection, with warm-up and repetitions (the median repetition of each phase is reported):
+ * java ... org.sonarsource.bench.BenchmarkRunner db=h2,sqlite,mapdb phases=write,get warmup=4 reps=5
+ * <p>
+ * - Paged searchByRule: first-page and last-page latency, and walking all pages, against the full search result:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=1000000 phases=write,search,pages pageSize=50
+ * <p>
+ * - Tag searches (one tag, two tags intersected, two tags united) on a dataset rich in security tags:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=500000 workload=security-heavy phases=write,tags
+ * <p>
+ * - Message search, and what maintaining the message indexes costs insertAll (compare the write phases):
+ * java ... org.sonarsource.bench.BenchmarkRunner items=200000 phases=write,text textIndex=false out=noindex.json, then
+ * ... phases=write,text baseline=noindex.json
+ * <p>
+ * - Dashboard counts (by rule, by file, severity by rule matrix) as the engines' own queries; AggregationRunner
+ *   compares them with in-memory counters:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=1000000 phases=write,counts
+ * <p>
+ * - One JFR recording per backend and profile (warm-up excluded), with a RepositoryOperation event per call:
+ * java ... org.sonarsource.bench.BenchmarkRunner items=200000 db=h2,sqlite jfr=target/jfr
+ * <p>
+ * - Cost of the JMX metrics decorator on real engines: store a run as baseline, then compare a run with metrics=true:
+ * java ... org.sonarsource.bench.BenchmarkRunner out=plain.json, then ... metrics=true baseline=plain.json threshold=2
+ * <p>
+ * - Each backend (fork=backend) or each repetition (fork=rep) in a fresh JVM, so that no engine inherits the heap,
+ *   JIT profile or background threads of another; results are collected into this process' report:
+ * java ... org.sonarsource.bench.BenchmarkRunner fork=rep reps=3 heap=2g gc=parallel jvmArgs="-XX:+AlwaysPreTouch"
+ */
 public class BenchmarkRunner {
+    /** Above this many items, readAll and search are skipped since their result list alone would fill a small heap. */
+    private static final long DEFAULT_READ_ALL_MAX = 2_000_000L;
+    private static final List<String> PHASES = List.of("write", "readAll", "search", "pages", "tags", "text", "counts", "get");
+    /** Calls timed for each of the first-page and deep-page latencies. */
+    private static final int PAGE_CALLS = 200;
+    /** Arguments that only make sense in the parent of a forked run, or that the parent sets itself for each child. */
+    private static final Set<String> PARENT_ONLY_ARGS = Set.of("mode", "fork", "heap", "gc", "jvmargs", "db", "profiles", "reps",
+            "out", "baseline", "current", "threshold", "noisems", "resultsfile");
+
     public static void main(String[] args) throws Exception {
+        if ("compare".equalsIgnoreCase(argValue(args, "mode"))) {
+            String current = argValue(args, "current");
+            if (argValue(args, "baseline") == null || current == null) {
+                System.out.println("mode=compare requires: baseline=file current=file [threshold=10 noiseMs=5]");
+                return;
+            }
+            exitOnRegression(compare(ResultsIO.read(Path.of(current)), args));
+            return;
+        }
+
         BenchmarkConfig cfg = parseArgs(args);
-        System.out.println("Database Benchmark");
-        System.out.println("Items=" + cfg.itemCount + ", batchSize=" + cfg.batchSize + ", searchRuleKey=" + cfg.searchRuleKey);
+        List<TuningProfile> profiles = parseProfiles(args);
+        List<IssueRepositoryProvider> backends = Repositories.select(argValue(args, "db"));
+        Set<String> phases = parsePhases(argValue(args, "phases"));
+        int gets = argValue(args, "gets") == null ? 1000 : Integer.parseInt(argValue(args, "gets"));
+        int pageSize = argValue(args, "pagesize") == null ? 50 : Integer.parseInt(argValue(args, "pagesize"));
+        WorkloadProfile workload = argValue(args, "workload") == null
+                ? WorkloadProfile.defaultProfile() : WorkloadProfile.fromId(argValue(args, "workload"));
+        boolean metrics = Boolean.parseBoolean(argValue(args, "metrics"));
+        // the repositories read the flag in init(); it is restored afterwards so that later runs in this JVM get their own
+        String previousTextIndex = System.getProperty(TextSearch.INDEX_PROPERTY);
+        if (argValue(args, "textindex") != null) System.setProperty(TextSearch.INDEX_PROPERTY, argValue(args, "textindex"));
+        try {
+            String fork = argValue(args, "fork");
+            if (fork != null && !fork.equalsIgnoreCase("backend") && !fork.equalsIgnoreCase("rep")) {
+                throw new IllegalArgumentException("fork must be 'backend' or 'rep': " + fork);
+            }
+            Path jfrDir = argValue(args, "jfr") == null ? null : Path.of(argValue(args, "jfr"));
+            long readAllMax = argValue(args, "readallmax") == null ? DEFAULT_READ_ALL_MAX : Long.parseLong(argValue(args, "readallmax"));
+            System.out.println("Database Benchmark");
+            System.out.println("Items=" + cfg.itemCount + ", batchSize=" + cfg.batchSize + ", searchRuleKey=" + cfg.searchRuleKey
+                    + ", db=" + String.join(",", Repositories.ids(backends)) + ", phases=" + String.join(",", phases)
+                    + ", profiles=" + profileIds(profiles) + ", workload=" + workload + ", gets=" + gets + ", pageSize=" + pageSize + ", readAllMax=" + readAllMax
+                    + ", warmupBatches=" + cfg.warmupBatches + ", reps=" + cfg.repetitions + ", metrics=" + metrics
+                    + ", textIndex=" + TextSearch.indexEnabled() + (fork == null ? "" : ", fork=" + fork));
 
-        String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
-        DataGenerator gen = new DataGenerator(42L, ruleKeys);
-        List<Issue> data = gen.generate(cfg.itemCount);
+            String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
+            // Issues are regenerated chunk by chunk for every backend, so the dataset never has to fit in the heap
+            DataGenerator gen = new DataGenerator(42L, ruleKeys, workload);
+            // Warm-up stores get other issues, so that nothing measured can be served from a leftover cache entry
+            DataGenerator warmupGen = new DataGenerator(43L, ruleKeys, workload);
 
-        List<IssueRepository> repos = List.of(
-                new H2IssueRepository(),
-                new HsqldbIssueRepository(),
-                new DerbyIssueRepository(),
-                new SqliteIssueRepository(),
-                //new MapDbIssueRepository(),
-                new NitriteIssueRepository()
-        );
+            List<PhaseResult> results = new ArrayList<>();
+            for (IssueRepositoryProvider backend : backends) {
+                // Backends that translate a TuningProfile into engine knobs run once per selected profile
+                List<TuningProfile> backendProfiles = backend.supportsProfiles() ? profiles : List.of(TuningProfile.defaultProfile());
+                for (TuningProfile profile : backendProfiles) {
+                    String profileId = backend.supportsProfiles() ? profile.id() : "-";
+                    if (fork != null) {
+                        results.addAll(runForked(args, backend, profile, cfg.repetitions, "rep".equalsIgnoreCase(fork)));
+                        System.out.println();
+                        continue;
+                    }
+                    warmup(backend, profile, warmupGen, cfg, gets, pageSize, readAllMax);
+                    BackendRecording recording = jfrDir == null ? null : BackendRecording.start(jfrDir, backend.id() + "-" + profileId);
+                    List<List<PhaseResult>> reps = new ArrayList<>();
+                    try {
+                        for (int rep = 1; rep <= cfg.repetitions; rep++) {
+                            if (cfg.repetitions > 1) System.out.println("-- repetition " + rep + "/" + cfg.repetitions);
+                            IssueRepository repo = backend.create(null, profile);
+                            if (metrics) repo = new MetricsIssueRepository(repo);
+                            List<PhaseResult> run = runBench(repo, profileId, gen, cfg, phases, gets, pageSize, readAllMax, System.out);
+                            reps.add(run);
+                        }
+                    } finally {
+                        if (recording != null) {
+                            recording.close();
+                            System.out.println("JFR recording written to " + recording.file());
+                        }
+                    }
+                    results.addAll(medianOf(reps));
+                    System.out.println();
+                }
+            }
+            for (PhaseResult r : results) r.setWorkload(workload.id);
+            String resultsFile = argValue(args, "resultsfile");
+            if (resultsFile != null) {
+                // child of a forked run: hand the results over to the parent
+                ResultsIO.write(results, Path.of(resultsFile));
+                return;
+            }
+            printSummary(results);
 
-        for (IssueRepository repo : repos) {
-            runBench(repo, new ArrayList<>(data), cfg);
-            System.out.println();
+            String out = argValue(args, "out");
+            if (out != null) {
+                for (String file : out.split(",")) {
+                    if (file.isBlank()) continue;
+                    ResultsIO.write(results, Path.of(file.trim()));
+                    System.out.println("Results written to " + file.trim());
+                }
+            }
+            if (argValue(args, "baseline") != null) {
+                exitOnRegression(compare(results, args));
+            }
+        } finally {
+            if (previousTextIndex == null) System.clearProperty(TextSearch.INDEX_PROPERTY);
+            else System.setProperty(TextSearch.INDEX_PROPERTY, previousTextIndex);
         }
     }
 
-    private static void runBench(IssueRepository repo, List<Issue> data, BenchmarkConfig cfg) throws Exception {
-        System.out.println("== " + repo.name() + " ==");
+    private static List<PhaseResult> runBench(IssueRepository repo, String profile, DataGenerator gen, BenchmarkConfig cfg,
+                                              Set<String> phases, int gets, int pageSize, long readAllMax, PrintStream out) throws Exception {
+        out.println("== " + repo.name() + " [" + profile + "] ==");
         repo.init();
+        List<PhaseResult> results = new ArrayList<>();
 
-        // write
-        Stopwatch sw = Stopwatch.startNew();
-        repo.insertAll(data);
-        long writeMs = sw.stop();
-        System.out.println("Write: " + writeMs + " ms");
-
-        // read all
-        sw.start();
-        List<Issue> all = repo.readAll();
-        long readMs = sw.stop();
-        System.out.println("ReadAll: " + readMs + " ms (" + all.size() + ")");
-
-        // search by rule key
-        sw.start();
-        List<Issue> found = repo.searchByRule(cfg.searchRuleKey);
-        long searchMs = sw.stop();
-        System.out.println("Search(rule='" + cfg.searchRuleKey + "'): " + searchMs + " ms (" + found.size() + ")");
+        // write, one batch at a time; intermediate results show how insert throughput evolves as the store grows.
+        // The store is always populated, the write phase is only reported when selected
+        List<PhaseResult> intervals = new ArrayList<>();
+        PhaseResult write = writeChunked(repo, profile, gen, cfg, intervals, out);
+        out.println("Write: " + (long) write.getDurationMs() + " ms");
+        if (phases.contains("write")) {
+            results.addAll(intervals);
+            results.add(write);
+        }
+
+        // readAll and search materialize their result, so they are skipped for stores that would not fit in the heap
+        boolean fitsInHeap = cfg.itemCount <= readAllMax;
+        if (!fitsInHeap && (phases.contains("readAll") || phases.contains("search") || phases.contains("tags") || phases.contains("text"))) {
+            out.println("ReadAll/Search/Tags/Text: skipped (items > readAllMax=" + readAllMax + ")");
+        }
+        if (fitsInHeap && phases.contains("readAll")) {
+            PhaseResult readAll = measure(repo, profile, "readAll", cfg.batchSize, () -> repo.readAll().size());
+            out.println("ReadAll: " + (long) readAll.getDurationMs() + " ms (" + readAll.getItems() + ")");
+            results.add(readAll);
+        }
+        if (fitsInHeap && phases.contains("search")) {
+            PhaseResult search = measure(repo, profile, "search", cfg.batchSize, () -> repo.searchByRule(cfg.searchRuleKey).size());
+            out.println("Search(rule='" + cfg.searchRuleKey + "'): " + (long) search.getDurationMs() + " ms (" + search.getItems() + ")");
+            results.add(search);
+        }
+
+        // pages only hold pageSize issues, so they run whatever the store size: the first page, every page, then the last
+        // page again; with keyset seeks the last page costs what the first one does
+        if (phases.contains("pages")) {
+            PhaseResult first = measureCalls(repo, profile, "page-first", pageSize, PAGE_CALLS,
+                    () -> repo.searchByRule(cfg.searchRuleKey, pageSize, null).getIssues().size());
+            String[] lastToken = new String[1];
+            PhaseResult walk = measure(repo, profile, "page-walk", pageSize, () -> {
+                long items = 0;
+                String token = null;
+                do {
+                    Page page = repo.searchByRule(cfg.searchRuleKey, pageSize, token);
+                    items += page.getIssues().size();
+                    if (page.hasNext()) lastToken[0] = page.getNextToken();
+                    token = page.getNextToken();
+                } while (token != null);
+                return items;
+            });
+            PhaseResult deep = measureCalls(repo, profile, "page-deep", pageSize, PAGE_CALLS,
+                    () -> repo.searchByRule(cfg.searchRuleKey, pageSize, lastToken[0]).getIssues().size());
+            out.println(String.format(Locale.ROOT, "Pages(rule='%s', size=%d): first p50=%.1f us, last p50=%.1f us, all %d pages: %d ms (%d)",
+                    cfg.searchRuleKey, pageSize, first.getP50Us(), deep.getP50Us(), (walk.getItems() + pageSize - 1) / pageSize,
+                    (long) walk.getDurationMs(), walk.getItems()));
+            results.add(first);
+            results.add(walk);
+            results.add(deep);
+        }
+
+        // one tag, then two tags intersected and united; some workloads bias the generator towards security tags
+        if (fitsInHeap && phases.contains("tags")) {
+            PhaseResult tag = measure(repo, profile, "tag", cfg.batchSize, () -> repo.searchByTag("security").size());
+            PhaseResult all = measure(repo, profile, "tags-all", cfg.batchSize,
+                    () -> repo.searchByTags(List.of("security", "vulnerability"), TagMatch.ALL).size());
+            PhaseResult any = measure(repo, profile, "tags-any", cfg.batchSize,
+                    () -> repo.searchByTags(List.of("bug", "performance"), TagMatch.ANY).size());
+            out.println("Tag(security): " + (long) tag.getDurationMs() + " ms (" + tag.getItems() + "), "
+                    + "Tags(security AND vulnerability): " + (long) all.getDurationMs() + " ms (" + all.getItems() + "), "
+                    + "Tags(bug OR performance): " + (long) any.getDurationMs() + " ms (" + any.getItems() + ")");
+            results.add(tag);
+            results.add(all);
+            results.add(any);
+        }
+
+        // a selective word (a line or a random number), then two common filler words that must both be present
+        if (fitsInHeap && phases.contains("text")) {
+            PhaseResult word = measure(repo, profile, "text", cfg.batchSize, () -> repo.searchMessage("123").size());
+            PhaseResult common = measure(repo, profile, "text-common", cfg.batchSize, () -> repo.searchMessage("lorem dolor").size());
+            out.println("Text('123'): " + (long) word.getDurationMs() + " ms (" + word.getItems() + "), "
+                    + "Text('lorem dolor'): " + (long) common.getDurationMs() + " ms (" + common.getItems() + ")");
+            results.add(word);
+            results.add(common);
+        }
+
+        // counting only returns the groups, so it runs whatever the store size
+        if (phases.contains("counts")) {
+            PhaseResult rule = measure(repo, profile, "count-rule", cfg.batchSize, () -> repo.countBy(IssueField.RULE).size());
+            PhaseResult file = measure(repo, profile, "count-file", cfg.batchSize, () -> repo.countBy(IssueField.FILE).size());
+            PhaseResult matrix = measure(repo, profile, "count-matrix", cfg.batchSize,
+                    () -> repo.countBy(IssueField.SEVERITY, IssueField.RULE).size());
+            out.println("CountBy(rule): " + (long) rule.getDurationMs() + " ms (" + rule.getItems() + "), "
+                    + "CountBy(file): " + (long) file.getDurationMs() + " ms (" + file.getItems() + "), "
+                    + "CountBy(severity, rule): " + (long) matrix.getDurationMs() + " ms (" + matrix.getItems() + ")");
+            results.add(rule);
+            results.add(file);
+            results.add(matrix);
+        }
+
+        // point lookups by random id, timed one by one for percentiles
+        if (phases.contains("get") && gets > 0 && cfg.itemCount > 0) {
+            String[] ids = new String[gets];
+            Random rnd = new Random(7L);
+            for (int i = 0; i < gets; i++) ids[i] = gen.issueAt(rnd.nextInt(cfg.itemCount)).getId();
+            long[] latencies = new long[gets];
+            PhaseResult get = measure(repo, profile, "get", 1, () -> {
+                for (int i = 0; i < gets; i++) {
+                    long t0 = System.nanoTime();
+                    repo.getById(ids[i]);
+                    latencies[i] = System.nanoTime() - t0;
+                }
+                return gets;
+            });
+            Arrays.sort(latencies);
+            get.setP50Us(Percentiles.of(latencies, 0.50) / 1000.0);
+            get.setP95Us(Percentiles.of(latencies, 0.95) / 1000.0);
+            get.setP99Us(Percentiles.of(latencies, 0.99) / 1000.0);
+            out.println(String.format(Locale.ROOT, "Get x%d: %d ms (p50=%.1f us, p95=%.1f us, p99=%.1f us)",
+                    gets, (long) get.getDurationMs(), get.getP50Us(), get.getP95Us(), get.getP99Us()));
+            results.add(get);
+        }
 
         repo.close();
+        return results;
+    }
+
+    /**
+     * Generates and inserts the dataset batch by batch. Only insert time, and the allocations and CPU time of the
+     * inserting thread, are counted; generating the next batch is not. GC and process CPU cover the whole loop.
+     * Every tenth of the dataset, a {@code write@<items so far>} result with the throughput of that interval is added
+     * to {@code intervals}.
+     */
+    private static PhaseResult writeChunked(IssueRepository repo, String profile, DataGenerator gen, BenchmarkConfig cfg,
+                                            List<PhaseResult> intervals, PrintStream out) throws Exception {
+        int chunk = Math.max(1, cfg.batchSize);
+        long reportEvery = Math.max(chunk, cfg.itemCount / 10);
+        long nextReport = reportEvery;
+        long insertNanos = 0;
+        long intervalNanos = 0;
+        long intervalItems = 0;
+        PhaseProbe probe = PhaseProbe.start();
+        for (long from = 0; from < cfg.itemCount; from += chunk) {
+            probe.pause();
+            List<Issue> batch = gen.generateRange(from, (int) Math.min(chunk, cfg.itemCount - from));
+            probe.resume();
+            long t0 = System.nanoTime();
+            repo.insertAll(batch);
+            long elapsed = System.nanoTime() - t0;
+            insertNanos += elapsed;
+            intervalNanos += elapsed;
+            intervalItems += batch.size();
+            long done = from + batch.size();
+            if (done >= nextReport || done == cfg.itemCount) {
+                PhaseResult interval = new PhaseResult(repo.name(), profile, "write@" + done, intervalItems, chunk, intervalNanos / 1_000_000.0);
+                out.println(String.format(Locale.ROOT, "  inserted %,d: %.0f items/s", done, interval.getThroughput()));
+                intervals.add(interval);
+                nextReport = done + reportEvery;
+                intervalNanos = 0;
+                intervalItems = 0;
+            }
+        }
+        probe.stop();
+        PhaseResult write = new PhaseResult(repo.name(), profile, "write", cfg.itemCount, chunk, insertNanos / 1_000_000.0);
+        record(write, probe);
+        write.setBytes(repo.sizeOnDisk());
+        return write;
+    }
+
+    /**
+     * Runs one backend and profile in fresh child JVMs: one child for all repetitions, or one per repetition. Each child
+     * runs this class with the same arguments restricted to that backend and hands its results back through a
+     * temporary JSON file; with a child per repetition, the median repetition of each phase is kept.
+     */
+    private static List<PhaseResult> runForked(String[] args, IssueRepositoryProvider backend, TuningProfile profile,
+                                               int reps, boolean perRep) throws Exception {
+        List<String> jvmFlags = childJvmFlags(args);
+        List<List<PhaseResult>> runs = new ArrayList<>();
+        int forks = perRep ? reps : 1;
+        for (int f = 1; f <= forks; f++) {
+            Path resultsFile = Files.createTempFile("bench-fork", ".json");
+            try {
+                String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+                List<String> cmd = new ArrayList<>();
+                cmd.add(javaBin);
+                cmd.addAll(jvmFlags);
+                cmd.addAll(List.of("-cp", System.getProperty("java.class.path"), BenchmarkRunner.class.getName()));
+                for (String a : args) {
+                    String key = a.split("=", 2)[0].toLowerCase(Locale.ROOT);
+                    if (!PARENT_ONLY_ARGS.contains(key)) cmd.add(a);
+                }
+                cmd.addAll(List.of("db=" + backend.id(), "profiles=" + profile.id(), "reps=" + (perRep ? 1 : reps),
+                        "resultsFile=" + resultsFile));
+                System.out.println("-- fork " + backend.id() + " [" + profile.id() + "]" + (perRep ? " repetition " + f + "/" + forks : "")
+                        + (jvmFlags.isEmpty() ? "" : " " + String.join(" ", jvmFlags)));
+                int exit = new ProcessBuilder(cmd).inheritIO().start().waitFor();
+                if (exit != 0) {
+                    System.out.println("Fork of " + backend.id() + " failed with exit code " + exit + ", its results are missing");
+                    continue;
+                }
+                runs.add(ResultsIO.read(resultsFile));
+            } finally {
+                Files.deleteIfExists(resultsFile);
+            }
+        }
+        return medianOf(runs);
+    }
+
+    /** JVM options of forked children: heap=2g, gc=g1|parallel|serial|zgc|shenandoah|epsilon and free-form jvmArgs="...". */
+    private static List<String> childJvmFlags(String[] args) {
+        List<String> flags = new ArrayList<>();
+        String heap = argValue(args, "heap");
+        if (heap != null) {
+            flags.add("-Xms" + heap);
+            flags.add("-Xmx" + heap);
+        }
+        String gc = argValue(args, "gc");
+        if (gc != null) {
+            switch (gc.toLowerCase(Locale.ROOT)) {
+                case "g1": flags.add("-XX:+UseG1GC"); break;
+                case "parallel": flags.add("-XX:+UseParallelGC"); break;
+                case "serial": flags.add("-XX:+UseSerialGC"); break;
+                case "zgc": flags.add("-XX:+UseZGC"); break;
+                case "shenandoah": flags.add("-XX:+UseShenandoahGC"); break;
+                case "epsilon":
+                    flags.add("-XX:+UnlockExperimentalVMOptions");
+                    flags.add("-XX:+UseEpsilonGC");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown gc: " + gc);
+            }
+        }
+        String jvmArgs = argValue(args, "jvmargs");
+        if (jvmArgs != null) {
+            for (String a : jvmArgs.trim().split("\\s+")) {
+                if (!a.isEmpty()) flags.add(a);
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Runs every phase on a throwaway store of at most {@code warmupBatches} batches, so that class loading and JIT
+     * compilation of the engine code paths are not measured by the first repetition.
+     */
+    private static void warmup(IssueRepositoryProvider backend, TuningProfile profile, DataGenerator gen, BenchmarkConfig cfg,
+                               int gets, int pageSize, long readAllMax) throws Exception {
+        int items = (int) Math.min(cfg.itemCount, (long) cfg.warmupBatches * cfg.batchSize);
+        if (items <= 0) return;
+        BenchmarkConfig warmupCfg = new BenchmarkConfig(items, cfg.batchSize, 0, cfg.searchRuleKey);
+        IssueRepository repo = backend.create(null, profile);
+        Stopwatch sw = Stopwatch.startNew();
+        runBench(repo, "warmup", gen, warmupCfg, new LinkedHashSet<>(PHASES), Math.min(gets, items), pageSize, readAllMax,
+                new PrintStream(OutputStream.nullOutputStream()));
+        System.out.println("Warmup (" + backend.id() + "): " + items + " items in " + sw.stop() + " ms");
+    }
+
+    /** Per phase, keeps the repetition with the median duration. */
+    private static List<PhaseResult> medianOf(List<List<PhaseResult>> reps) {
+        Map<String, List<PhaseResult>> byKey = new LinkedHashMap<>();
+        for (List<PhaseResult> run : reps) {
+            for (PhaseResult r : run) byKey.computeIfAbsent(r.key(), k -> new ArrayList<>()).add(r);
+        }
+        List<PhaseResult> out = new ArrayList<>();
+        for (List<PhaseResult> runs : byKey.values()) {
+            runs.sort(Comparator.comparingDouble(PhaseResult::getDurationMs));
+            out.add(runs.get((runs.size() - 1) / 2));
+        }
+        return out;
+    }
+
+    private interface PhaseBody {
+        /** Runs the phase and returns the number of items it wrote or read. */
+        long run() throws Exception;
+    }
+
+    private static PhaseResult measure(IssueRepository repo, String profile, String phase, int batch, PhaseBody body) throws Exception {
+        PhaseProbe probe = PhaseProbe.start();
+        Stopwatch sw = Stopwatch.startNew();
+        long items = body.run();
+        sw.stop();
+        probe.stop();
+        PhaseResult r = new PhaseResult(repo.name(), profile, phase, items, batch, sw.elapsedNanos() / 1_000_000.0);
+        record(r, probe);
+        r.setBytes(repo.sizeOnDisk());
+        return r;
+    }
+
+    /** Times {@code calls} calls one by one, for percentiles; items are those of all calls. */
+    private static PhaseResult measureCalls(IssueRepository repo, String profile, String phase, int batch, int calls,
+                                            PhaseBody call) throws Exception {
+        long[] latencies = new long[calls];
+        PhaseResult r = measure(repo, profile, phase, batch, () -> {
+            long items = 0;
+            for (int i = 0; i < calls; i++) {
+                long t0 = System.nanoTime();
+                items += call.run();
+                latencies[i] = System.nanoTime() - t0;
+            }
+            return items;
+        });
+        Arrays.sort(latencies);
+        r.setP50Us(Percentiles.of(latencies, 0.50) / 1000.0);
+        r.setP95Us(Percentiles.of(latencies, 0.95) / 1000.0);
+        r.setP99Us(Percentiles.of(latencies, 0.99) / 1000.0);
+        return r;
+    }
+
+    private static void record(PhaseResult r, PhaseProbe probe) {
+        r.setGcCount(probe.gcCount());
+        r.setGcTimeMs(probe.gcTimeMs());
+        r.setAllocatedBytes(probe.allocatedBytes());
+        r.setCpuMs(probe.cpuMs());
+        r.setProcessCpuMs(probe.processCpuMs());
+        r.setHeapPeakBytes(probe.heapPeakBytes());
+    }
+
+    private static void printSummary(List<PhaseResult> results) {
+        System.out.println("== Summary ==");
+        System.out.println(String.format(Locale.ROOT, "%-10s %-12s %-16s %10s %12s %10s %8s %10s %12s %10s %10s %10s",
+                "backend", "profile", "phase", "ms", "items/s", "p95(us)", "gc(ms)", "cpu(ms)", "procCpu(ms)", "alloc(MB)", "heap(MB)", "size(KB)"));
+        for (PhaseResult r : results) {
+            System.out.println(String.format(Locale.ROOT, "%-10s %-12s %-16s %10.1f %12.0f %10s %8s %10s %12s %10s %10s %10s",
+                    r.getBackend(), r.getProfile(), r.getPhase(), r.getDurationMs(), r.getThroughput(),
+                    Double.isNaN(r.getP95Us()) ? "-" : String.format(Locale.ROOT, "%.1f", r.getP95Us()),
+                    orDash(r.getGcTimeMs(), 1), orDash(r.getCpuMs(), 1), orDash(r.getProcessCpuMs(), 1),
+                    orDash(r.getAllocatedBytes(), 1024 * 1024), orDash(r.getHeapPeakBytes(), 1024 * 1024), orDash(r.getBytes(), 1024)));
+        }
+    }
+
+    private static String orDash(long value, long unit) {
+        return value < 0 ? "-" : String.valueOf(value / unit);
+    }
+
+    /**
+     * Compares results with the baseline=... file and prints every regression.
+     *
+     * @return number of regressions found
+     */
+    private static int compare(List<PhaseResult> current, String[] args) throws Exception {
+        String baselineFile = argValue(args, "baseline");
+        double threshold = argValue(args, "threshold") == null ? 10.0 : Double.parseDouble(argValue(args, "threshold"));
+        double noiseMs = argValue(args, "noisems") == null ? 5.0 : Double.parseDouble(argValue(args, "noisems"));
+        List<PhaseResult> baseline = ResultsIO.read(Path.of(baselineFile));
+        ResultsComparator comparator = new ResultsComparator(threshold, noiseMs);
+        System.out.println("== Comparison against " + baselineFile + " (threshold=" + threshold + "%, noise floor=" + noiseMs + " ms) ==");
+        for (String key : comparator.missing(baseline, current)) {
+            System.out.println("MISSING " + key);
+        }
+        List<String> regressions = comparator.regressions(baseline, current);
+        for (String r : regressions) {
+            System.out.println("REGRESSION " + r);
+        }
+        System.out.println(regressions.isEmpty() ? "No regressions." : regressions.size() + " regression(s).");
+        return regressions.size();
+    }
+
+    private static void exitOnRegression(int regressions) {
+        if (regressions > 0) System.exit(1);
     }
 
     private static BenchmarkConfig parseArgs(String[] args) {
         int n = BenchmarkConfig.defaultConfig().itemCount;
         int batch = BenchmarkConfig.defaultConfig().batchSize;
         String rule = BenchmarkConfig.defaultConfig().searchRuleKey;
+        int warmup = BenchmarkConfig.defaultConfig().warmupBatches;
+        int reps = BenchmarkConfig.defaultConfig().repetitions;
         for (String a : args) {
             String[] kv = a.split("=");
             if (kv.length != 2) continue;
@@ -71,8 +559,46 @@ public class BenchmarkRunner {
                 case "items": n = Integer.parseInt(kv[1]); break;
                 case "batch": batch = Integer.parseInt(kv[1]); break;
                 case "rule": rule = kv[1]; break;
+                case "warmup": warmup = Integer.parseInt(kv[1]); break;
+                case "reps": reps = Integer.parseInt(kv[1]); break;
+            }
+        }
+        return new BenchmarkConfig(n, batch, warmup, rule, reps);
+    }
+
+    private static List<TuningProfile> parseProfiles(String[] args) {
+        String value = argValue(args, "profiles");
+        return value == null ? List.of(TuningProfile.defaultProfile()) : TuningProfile.parseList(value);
+    }
+
+    private static Set<String> parsePhases(String csv) {
+        if (csv == null) return new LinkedHashSet<>(PHASES);
+        Set<String> out = new LinkedHashSet<>();
+        for (String s : csv.split(",")) {
+            if (s.isBlank()) continue;
+            String phase = null;
+            for (String p : PHASES) {
+                if (p.equalsIgnoreCase(s.trim())) phase = p;
             }
+            if (phase == null) throw new IllegalArgumentException("Unknown phase: " + s + " (available: " + String.join(",", PHASES) + ")");
+            out.add(phase);
+        }
+        return out;
+    }
+
+    /** Value of the last key=value argument with the given (case-insensitive) key, or null. */
+    private static String argValue(String[] args, String key) {
+        String value = null;
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length == 2 && key.equalsIgnoreCase(kv[0])) value = kv[1];
         }
-        return new BenchmarkConfig(n, batch, 1, rule);
+        return value;
+    }
+
+    private static String profileIds(List<TuningProfile> profiles) {
+        List<String> ids = new ArrayList<>();
+        for (TuningProfile p : profiles) ids.add(p.id());
+        return String.join(",", ids);
     }
 }
@@ -0,0 +1,81 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.NativeImport;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the two {@code bulkLoad} paths of the engines having a native import, Derby and HSQLDB: JDBC batches
+ * committed once per batch, and the native path through delimited files, see {@link NativeImport}. The issues are
+ * generated up front, so only the load is timed; each run loads into a fresh store, then checks the count.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.BulkLoadRunner db=derby,hsqldb items=200000 batch=1000 mode=jdbc,native
+ */
+public class BulkLoadRunner {
+
+    public static void main(String[] args) throws Exception {
+        String db = "derby,hsqldb";
+        int items = 200_000;
+        int batch = 1_000;
+        List<String> modes = new ArrayList<>();
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "mode":
+                    for (String m : kv[1].split(",")) modes.add(m.trim().toLowerCase(Locale.ROOT));
+                    break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+            }
+        }
+        if (modes.isEmpty()) modes = List.of("jdbc", "native");
+
+        List<Issue> data = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S1234"}, workload).generate(items);
+        System.out.println("Bulk load: JDBC batches vs native import");
+        System.out.println("items=" + items + ", batch=" + batch + ", workload=" + workload);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-8s %10s %12s %10s", "backend", "mode", "load(ms)", "items/s", "disk(MB)"));
+        String previous = System.getProperty(NativeImport.PROPERTY);
+        try {
+            for (IssueRepositoryProvider backend : Repositories.select(db)) {
+                for (String mode : modes) {
+                    switch (mode) {
+                        case "jdbc": System.setProperty(NativeImport.PROPERTY, "false"); break;
+                        case "native": System.setProperty(NativeImport.PROPERTY, "true"); break;
+                        default: throw new IllegalArgumentException("Unknown mode: " + mode + " (jdbc, native)");
+                    }
+                    try (IssueRepository repo = backend.create(null, TuningProfile.defaultProfile())) {
+                        repo.init();
+                        long t0 = System.nanoTime();
+                        long loaded = repo.bulkLoad(data.iterator(), batch);
+                        long nanos = System.nanoTime() - t0;
+                        long stored = 0;
+                        for (long n : repo.countBy(IssueField.RULE).values()) stored += n;
+                        if (loaded != items || stored != items) {
+                            throw new IllegalStateException(backend.id() + " " + mode + ": loaded " + loaded + ", stored " + stored + " of " + items);
+                        }
+                        System.out.println(String.format(Locale.ROOT, "%-10s %-8s %10.0f %12.0f %10.1f",
+                                backend.id(), mode, nanos / 1e6, items / (nanos / 1e9), repo.sizeOnDisk() / 1048576.0));
+                    }
+                }
+            }
+        } finally {
+            if (previous == null) System.clearProperty(NativeImport.PROPERTY);
+            else System.setProperty(NativeImport.PROPERTY, previous);
+        }
+    }
+}
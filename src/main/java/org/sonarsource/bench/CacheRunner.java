@@ -0,0 +1,124 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.cache.CachingIssueRepository;
+import org.sonarsource.bench.cache.HeapIssueCache;
+import org.sonarsource.bench.cache.IssueCache;
+import org.sonarsource.bench.cache.OffHeapIssueCache;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueCodec;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.GcPauses;
+import org.sonarsource.bench.util.Percentiles;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Compares an on-heap and an off-heap {@link IssueCache} holding the same issues in front of a store: heap retained
+ * once the cache is filled, direct memory, getById latency, and the GC collections and pauses seen while serving the
+ * gets. Both caches are sized to hold the whole dataset, so every get is a hit; the off-heap arenas are sized from the
+ * encoded size of the dataset. Run with a fixed heap (-Xms = -Xmx) so that both caches see the same heap sizing.
+ * <p>
+ * The off-heap cache is built on {@code ByteBuffer.allocateDirect}: the {@code java.lang.foreign} memory segments are
+ * still a preview API on the Java 21 this project targets.
+ * <p>
+ * Usage:
+ * java -Xms2g -Xmx2g ... org.sonarsource.bench.CacheRunner db=h2 items=500000 gets=500000 cache=heap,offheap arenaMb=64
+ */
+public class CacheRunner {
+
+    public static void main(String[] args) throws Exception {
+        String db = "h2";
+        int items = 200_000;
+        int gets = 200_000;
+        int batch = 1_000;
+        List<String> caches = new ArrayList<>();
+        int arenaMb = 64;
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "gets": gets = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "cache":
+                    for (String c : kv[1].split(",")) caches.add(c.trim().toLowerCase(Locale.ROOT));
+                    break;
+                case "arenamb": arenaMb = Integer.parseInt(kv[1]); break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+            }
+        }
+        if (caches.isEmpty()) caches = List.of("heap", "offheap");
+
+        DataGenerator gen = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S1234"}, workload);
+        long encodedBytes = 0;
+        for (int from = 0; from < items; from += batch) {
+            for (Issue is : gen.generateRange(from, Math.min(batch, items - from))) {
+                encodedBytes += IssueCodec.encode(is).length + is.getId().length() + 8L;
+            }
+        }
+        int arenaBytes = (int) Math.min(Integer.MAX_VALUE - 8, arenaMb * 1024L * 1024L);
+        // one more arena than the data needs: the one being filled when the ring wraps is not full
+        int arenas = (int) Math.min(256, encodedBytes / arenaBytes + 2);
+        SplittableRandom rnd = new SplittableRandom(7);
+        String[] ids = new String[gets];
+        for (int i = 0; i < gets; i++) ids[i] = gen.issueAt(rnd.nextInt(items)).getId();
+
+        System.out.println("On-heap vs off-heap issue cache");
+        System.out.println(String.format(Locale.ROOT, "items=%d, gets=%d, encoded=%.1f MB, arenas=%d x %d MB, maxHeap=%d MB, workload=%s",
+                items, gets, encodedBytes / 1048576.0, arenas, arenaMb, Runtime.getRuntime().maxMemory() / 1048576, workload));
+        System.out.println(String.format(Locale.ROOT, "%-10s %-8s %10s %10s %10s %12s %12s %8s %10s %12s %8s",
+                "backend", "cache", "fill(ms)", "heap(MB)", "direct(MB)", "get p50(us)", "get p99(us)", "gc", "gc(ms)", "max pause", "hits"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            for (String kind : caches) {
+                IssueCache cache;
+                switch (kind) {
+                    case "heap": cache = new HeapIssueCache(items); break;
+                    case "offheap": cache = new OffHeapIssueCache(arenas, arenaBytes); break;
+                    default: throw new IllegalArgumentException("Unknown cache: " + kind + " (heap, offheap)");
+                }
+                long heapBefore = usedHeapAfterGc();
+                try (CachingIssueRepository repo = new CachingIssueRepository(backend.create(null, TuningProfile.defaultProfile()), cache)) {
+                    repo.init();
+                    long t0 = System.nanoTime();
+                    for (int from = 0; from < items; from += batch) repo.insertAll(gen.generateRange(from, Math.min(batch, items - from)));
+                    long fillNanos = System.nanoTime() - t0;
+                    long heapRetained = usedHeapAfterGc() - heapBefore;
+
+                    long[] latencies = new long[gets];
+                    GcPauses pauses = GcPauses.start();
+                    try {
+                        for (int i = 0; i < gets; i++) {
+                            long start = System.nanoTime();
+                            if (repo.getById(ids[i]) == null) throw new IllegalStateException("Missing issue " + ids[i]);
+                            latencies[i] = System.nanoTime() - start;
+                        }
+                    } finally {
+                        pauses.close();
+                    }
+                    Arrays.sort(latencies);
+                    System.out.println(String.format(Locale.ROOT, "%-10s %-8s %10.0f %10.1f %10.1f %12.2f %12.2f %8d %10d %12d %8.3f",
+                            backend.id(), kind, fillNanos / 1e6, heapRetained / 1048576.0, cache.offHeapBytes() / 1048576.0,
+                            Percentiles.of(latencies, 0.50) / 1e3, Percentiles.of(latencies, 0.99) / 1e3,
+                            pauses.count(), pauses.totalMs(), pauses.maxMs(), repo.hits() / (double) Math.max(1, repo.hits() + repo.misses())));
+                }
+            }
+        }
+    }
+
+    /** Heap in use after a full collection, as far as {@code System.gc()} gets one. */
+    private static long usedHeapAfterGc() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
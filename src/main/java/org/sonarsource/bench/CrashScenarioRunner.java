@@ -1,19 +1,41 @@
 package org.sonarsource.bench;
 
-import org.sonarsource.bench.db.H2IssueRepository;
 import org.sonarsource.bench.db.IssueRepository;
-import org.sonarsource.bench.db.SqliteIssueRepository;
+import org.sonarsource.bench.db.MapDbIssueRepository;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.fault.FaultInjectingVolume;
+import org.sonarsource.bench.fault.FaultInjector;
+import org.sonarsource.bench.fault.FaultMode;
+import org.sonarsource.bench.fault.TornTail;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.util.BenchmarkConfig;
 import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.Stopwatch;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
- * Runner for simulating abrupt termination scenarios to assess DB corruption (H2 vs SQLite).
+ * Runner for simulating abrupt termination scenarios to assess DB corruption and data loss
+ * (H2, HSQLDB, Derby, SQLite, Nitrite, MapDB).
  * <p>
  * Usage examples:
  * - Prepare a DB and wait to allow external kill:
@@ -21,17 +43,42 @@ import java.util.Locale;
  * Then kill the process (e.g., kill -9 <pid>) while it waits.
  * <p>
  * - Verify the DB after a crash/kill:
- * java ... org.sonarsource.bench.CrashScenarioRunner mode=verify db=sqlite path=/tmp/sqlite-oom.db
+ * java ... org.sonarsource.bench.CrashScenarioRunner mode=verify db=sqlite path=/tmp/sqlite-oom.db items=50000 committed=12000
  * <p>
  * Notes:
  * - When mode=prepare, the runner DOES NOT call repo.close(); this intentionally leaves the DB in-flight.
  * - Provide an explicit file path via path=... so that the file persists across processes.
+ * - Prepare prints "COMMITTED n" after each acknowledged insertAll. Pass the last value as committed=n to verify;
+ * it defaults to items, i.e. the prepare phase is assumed to have completed.
+ * - Verify regenerates the data set from seed/items to know which ids must have survived, times init() as
+ * recovery time and prints a single "CRASH_RESULT {json}" line (also written to out=file when given).
+ * <p>
+ * - Kill -9 loop without a human in it:
+ * java ... org.sonarsource.bench.CrashScenarioRunner mode=orchestrate db=h2,sqlite runs=20 items=20000 batch=200 sleepMs=10 maxDelayMs=2000
+ * For every run, the prepare phase is forked as a child JVM, SIGKILLed after a random delay following WRITES_STARTED,
+ * then verified in another child JVM. Per backend, corruption rate, mean data loss and mean recovery time are
+ * printed, followed by one "CRASH_SUMMARY {json}" line per backend.
+ * <p>
+ * - Power-loss simulation instead of a clean kill:
+ * java ... org.sonarsource.bench.CrashScenarioRunner mode=orchestrate db=h2,nitrite,mapdb,sqlite runs=20 fault=drop-unsynced|torn-write|fsync-lie
+ * H2 and Nitrite open their files through the faulty: FilePath, MapDB through a {@link FaultInjectingVolume}, and the
+ * prepare child cuts its own power faultAfterMs after WRITES_STARTED (or after faultAfterWrites writes), rewinding
+ * unsynced writes before halting. Other backends have no pluggable file layer: they are killed as usual and the tail
+ * of their most recently written file is torn afterwards.
  */
 public class CrashScenarioRunner {
+  static final String RESULT_PREFIX = "CRASH_RESULT";
+  static final String SUMMARY_PREFIX = "CRASH_SUMMARY";
+
   public static void main(String[] args) throws Exception {
     Args a = Args.parse(args);
+    if ("orchestrate".equalsIgnoreCase(a.mode) && a.db != null) {
+      doOrchestrate(a);
+      return;
+    }
     if (a.mode == null || a.db == null || a.path == null) {
-      System.out.println("CrashScenarioRunner requires: mode=prepare|verify db=h2|sqlite path=/path/to/db [items=N batch=B rule=java:S1234 waitSec=T]");
+      System.out.println("CrashScenarioRunner requires: mode=prepare|verify db=h2|hsqldb|derby|sqlite|nitrite|mapdb path=/path/to/db [items=N batch=B rule=java:S1234 seed=S waitSec=T committed=C out=result.json]");
+      System.out.println("  or: mode=orchestrate db=h2,sqlite,... [runs=N maxDelayMs=D items=N batch=B sleepMs=S seed=S fault=drop-unsynced|torn-write|fsync-lie]");
       return;
     }
 
@@ -46,15 +93,41 @@ public class CrashScenarioRunner {
 
   private static void doPrepare(Args a) throws Exception {
     System.out.println("CrashScenario PREPARE: db=" + a.db + ", path=" + a.path + ", items=" + a.items + ", batch=" + a.batch + ", rule=" + a.rule + ", sleepMs=" + a.sleepMs);
-    IssueRepository repo = createRepo(a);
+    String path = a.path.getAbsolutePath();
+    boolean faulty = a.fault != null && supportsFaultyFiles(a.db);
+    IssueRepository repo;
+    if (faulty) {
+      FaultInjector.install(a.fault, a.faultAfterWrites);
+      System.out.println("FAULT_INJECTION mode=" + a.fault.id() + ", afterWrites=" + a.faultAfterWrites + ", afterMs=" + a.faultAfterMs);
+      if ("mapdb".equalsIgnoreCase(a.db)) {
+        FaultInjectingVolume volume = new FaultInjectingVolume(new File(path));
+        repo = new MapDbIssueRepository(volume, volume.existed());
+      } else {
+        repo = Repositories.create(a.db, FaultInjector.wrap(path));
+      }
+    } else {
+      if (a.fault != null) {
+        System.out.println("No pluggable file layer for db=" + a.db + "; fault=" + a.fault.id() + " is only applied by mode=orchestrate after the kill");
+      }
+      repo = Repositories.create(a.db, path);
+    }
     // Generate deterministic data
-    String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
-    DataGenerator gen = new DataGenerator(42L, ruleKeys);
-    List<Issue> data = gen.generate(a.items);
+    List<Issue> data = generate(a);
 
     System.out.println("PID=" + getPidSafe());
     System.out.println("WRITES_STARTING at " + java.time.Instant.now());
     repo.init();
+    if (faulty && a.faultAfterMs >= 0) {
+      Thread powerCut = new Thread(() -> {
+        try {
+          Thread.sleep(a.faultAfterMs);
+        } catch (InterruptedException ignored) {
+        }
+        FaultInjector.powerLoss();
+      }, "crash-power-cut");
+      powerCut.setDaemon(true);
+      powerCut.start();
+    }
     if (a.sleepMs > 0) {
       int n = data.size();
       int idx = 0;
@@ -68,6 +141,7 @@ public class CrashScenarioRunner {
         }
         repo.insertAll(chunk);
         idx = to;
+        System.out.println("COMMITTED " + idx);
         try {
           Thread.sleep(a.sleepMs);
         } catch (InterruptedException ignored) {
@@ -75,6 +149,7 @@ public class CrashScenarioRunner {
       }
     } else {
       repo.insertAll(data);
+      System.out.println("COMMITTED " + data.size());
     }
     // Intentionally do not close the repository here to simulate in-flight state.
     System.out.println("Prepared DB at: " + a.path.getAbsolutePath());
@@ -91,34 +166,206 @@ public class CrashScenarioRunner {
 
   private static void doVerify(Args a) throws Exception {
     System.out.println("CrashScenario VERIFY: db=" + a.db + ", path=" + a.path);
-    IssueRepository repo = createRepo(a);
+    VerifyResult r = verify(a);
+    String json = r.toJson();
+    System.out.println(RESULT_PREFIX + " " + json);
+    if (a.out != null) {
+      Files.writeString(a.out.toPath(), json + System.lineSeparator(), StandardCharsets.UTF_8);
+    }
+    if (r.failure != null) {
+      System.out.println("Verification failed: " + r.failure.getClass().getSimpleName() + ": " + r.failure.getMessage());
+      r.failure.printStackTrace(System.out);
+      throw (r.failure instanceof Exception) ? (Exception) r.failure : new RuntimeException(r.failure);
+    }
+    System.out.println("Verification assertions passed.");
+  }
+
+  /**
+   * Opens the store left behind by prepare and measures recovery. Never throws: a store that cannot be opened,
+   * queried or integrity-checked is reported through {@link VerifyResult#failure}.
+   */
+  static VerifyResult verify(Args a) {
+    VerifyResult r = new VerifyResult(a.db);
+    r.committed = Math.min(a.committed, a.items);
+    IssueRepository repo = null;
     try {
+      // Recovery time: whatever the engine does on open (log replay, rollback of in-flight transactions)
+      Stopwatch sw = Stopwatch.startNew();
+      repo = Repositories.create(a.db, a.path.getAbsolutePath());
       repo.init();
-      int count = repo.readAll().size();
-      System.out.println("ReadAll succeeded. items=" + count);
+      r.recoveryMs = sw.stop();
+      r.opened = true;
+
+      List<Issue> all = repo.readAll();
+      System.out.println("ReadAll succeeded. items=" + all.size());
       // Try a simple search
       int found = repo.searchByRule(a.rule).size();
       System.out.println("Search(rule='" + a.rule + "') found=" + found);
 
+      List<Issue> expected = generate(a);
+      Set<String> committedIds = new HashSet<>();
+      Set<String> generatedIds = new HashSet<>();
+      for (int i = 0; i < expected.size(); i++) {
+        generatedIds.add(expected.get(i).getId());
+        if (i < r.committed) committedIds.add(expected.get(i).getId());
+      }
+      Set<String> seen = new HashSet<>();
+      r.found = all.size();
+      for (Issue is : all) {
+        if (!seen.add(is.getId())) r.duplicated++;
+        else if (!generatedIds.contains(is.getId())) r.unexpected++;
+      }
+      for (String id : committedIds) {
+        if (!seen.contains(id)) r.lost++;
+      }
+      System.out.println("Recovery: " + r.recoveryMs + " ms, committed=" + r.committed + ", lost=" + r.lost + ", duplicated=" + r.duplicated + ", unexpected=" + r.unexpected);
+
       // Assert file integrity where supported
-      if ("sqlite".equalsIgnoreCase(a.db)) {
+      String db = a.db.toLowerCase(Locale.ROOT);
+      if ("sqlite".equals(db)) {
         assertSqliteIntegrityOk(a.path);
-      } else if ("h2".equalsIgnoreCase(a.db)) {
-        // Best-effort check: if we could open and query, assume not corrupted for H2
-        System.out.println("H2 integrity: basic open/query succeeded (no explicit integrity_check available)");
+      } else if ("derby".equals(db)) {
+        // Derby needs the database released by the repository before an external connection may check it
+        repo.close();
+        repo = null;
+        assertDerbyIntegrityOk(a.path);
+      } else {
+        // Best-effort check: if we could open and query, assume not corrupted
+        System.out.println(a.db + " integrity: basic open/query succeeded (no explicit integrity_check available)");
       }
-
-      System.out.println("Verification assertions passed.");
+      r.integrityOk = true;
     } catch (Throwable t) {
-      System.out.println("Verification failed: " + t.getClass().getSimpleName() + ": " + t.getMessage());
-      t.printStackTrace(System.out);
-      throw (t instanceof Exception) ? (Exception) t : new RuntimeException(t);
+      r.failure = t;
     } finally {
       try {
-        repo.close();
+        if (repo != null) repo.close();
       } catch (Exception ignored) {
       }
     }
+    return r;
+  }
+
+  private static void doOrchestrate(Args a) throws Exception {
+    int sleepMs = a.sleepMs > 0 ? a.sleepMs : 10;
+    System.out.println("CrashScenario ORCHESTRATE: db=" + a.db + ", runs=" + a.runs + ", items=" + a.items + ", batch=" + a.batch
+      + ", sleepMs=" + sleepMs + ", maxDelayMs=" + a.maxDelayMs);
+    if (a.fault != null) System.out.println("Fault injection: " + a.fault.id());
+    Random delays = new Random(a.seed);
+    List<CrashSummary> summaries = new ArrayList<>();
+    for (String db : a.db.split(",")) {
+      if (db.isBlank()) continue;
+      CrashSummary summary = new CrashSummary(db.trim().toLowerCase(Locale.ROOT));
+      for (int run = 1; run <= a.runs; run++) {
+        long delayMs = a.maxDelayMs <= 0 ? 0 : (long) delays.nextInt(a.maxDelayMs + 1);
+        VerifyResult r = killAndVerify(summary.db, a, sleepMs, delayMs);
+        summary.add(r);
+        System.out.println("[" + summary.db + " run " + run + "/" + a.runs + "] killAfterMs=" + delayMs + " " + r.toJson());
+      }
+      summaries.add(summary);
+    }
+
+    System.out.println("== Crash summary ==");
+    System.out.println(String.format(Locale.ROOT, "%-8s %5s %10s %10s %10s %14s", "db", "runs", "corrupted", "meanLost", "maxLost", "meanRecoveryMs"));
+    for (CrashSummary cs : summaries) {
+      System.out.println(String.format(Locale.ROOT, "%-8s %5d %9.1f%% %10.1f %10d %14.1f",
+        cs.db, cs.runs, 100.0 * cs.corruptionRate(), cs.meanLost(), cs.maxLost, cs.meanRecoveryMs()));
+    }
+    for (CrashSummary cs : summaries) {
+      System.out.println(SUMMARY_PREFIX + " " + cs.toJson());
+    }
+  }
+
+  /**
+   * One crash-injection round: fork prepare, wait for WRITES_STARTED plus the given delay, SIGKILL it
+   * (Process.destroyForcibly sends SIGKILL on Unix) and verify the store in a fresh JVM.
+   */
+  private static VerifyResult killAndVerify(String db, Args a, int sleepMs, long delayMs) throws Exception {
+    Path dir = Files.createTempDirectory("crash-" + db);
+    String path = dir.resolve("store").toAbsolutePath().toString();
+    try {
+      boolean faulty = a.fault != null && supportsFaultyFiles(db);
+      List<String> prepareArgs = new ArrayList<>(List.of(
+        "mode=prepare", "db=" + db, "path=" + path, "items=" + a.items, "batch=" + a.batch,
+        "seed=" + a.seed, "sleepms=" + sleepMs, "waitSec=600"));
+      if (faulty) {
+        // The child cuts its own power at the chosen point instead of being killed from outside
+        prepareArgs.add("fault=" + a.fault.id());
+        prepareArgs.add("faultAfterMs=" + delayMs);
+      }
+      Process prepare = startChild(prepareArgs.toArray(new String[0]));
+      AtomicInteger committed = new AtomicInteger();
+      CountDownLatch started = new CountDownLatch(1);
+      Thread reader = new Thread(() -> {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(prepare.getInputStream()))) {
+          String line;
+          while ((line = br.readLine()) != null) {
+            if (line.startsWith("COMMITTED ")) {
+              committed.set(Integer.parseInt(line.substring("COMMITTED ".length()).trim()));
+            } else if (line.contains("WRITES_STARTED")) {
+              started.countDown();
+            }
+          }
+        } catch (Exception ignored) {
+          // stream closes when the child is killed
+        }
+      }, "crash-prepare-output");
+      reader.setDaemon(true);
+      reader.start();
+
+      if (!started.await(60, TimeUnit.SECONDS)) {
+        prepare.destroyForcibly();
+        throw new IllegalStateException("Child did not start writes in time for db=" + db);
+      }
+      if (faulty) {
+        if (!prepare.waitFor(delayMs + 60_000L, TimeUnit.MILLISECONDS)) prepare.destroyForcibly();
+      } else {
+        Thread.sleep(delayMs);
+        prepare.destroyForcibly();
+      }
+      prepare.waitFor();
+      reader.join(5_000L);
+      if (a.fault != null && !faulty) {
+        Path torn = TornTail.tear(dir, new Random(a.seed + delayMs));
+        System.out.println("  torn tail of " + (torn == null ? "nothing (empty store)" : dir.relativize(torn)));
+      }
+
+      Process verify = startChild(
+        "mode=verify", "db=" + db, "path=" + path, "items=" + a.items, "seed=" + a.seed,
+        "rule=" + a.rule, "committed=" + committed.get());
+      VerifyResult r = null;
+      try (BufferedReader br = new BufferedReader(new InputStreamReader(verify.getInputStream()))) {
+        String line;
+        while ((line = br.readLine()) != null) {
+          if (line.startsWith(RESULT_PREFIX + " ")) r = VerifyResult.fromJson(line.substring(RESULT_PREFIX.length() + 1));
+        }
+      }
+      verify.waitFor();
+      if (r == null) {
+        // The verifier died before reporting (e.g. the engine crashed the JVM); count it as corrupted
+        r = new VerifyResult(db);
+        r.committed = committed.get();
+        r.failure = new IllegalStateException("verify exited with code " + verify.exitValue() + " without a result");
+      }
+      return r;
+    } finally {
+      deleteRecursively(dir);
+    }
+  }
+
+  private static Process startChild(String... args) throws Exception {
+    String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    List<String> cmd = new ArrayList<>(List.of(javaBin, "-cp", System.getProperty("java.class.path"), CrashScenarioRunner.class.getName()));
+    cmd.addAll(List.of(args));
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.redirectErrorStream(true);
+    return pb.start();
+  }
+
+  private static void deleteRecursively(Path dir) {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+    } catch (Exception ignored) {
+    }
   }
 
   private static void assertSqliteIntegrityOk(File path) throws Exception {
@@ -140,19 +387,38 @@ public class CrashScenarioRunner {
     }
   }
 
-  private static IssueRepository createRepo(Args a) {
-    String db = a.db.toLowerCase(Locale.ROOT);
-    String path = a.path.getAbsolutePath();
-    switch (db) {
-      case "h2":
-        return new H2IssueRepository(path);
-      case "sqlite":
-        return new SqliteIssueRepository(path);
-      default:
-        throw new IllegalArgumentException("Unsupported db: " + a.db);
+  private static void assertDerbyIntegrityOk(File path) throws Exception {
+    String url = "jdbc:derby:" + path.getAbsolutePath();
+    try (java.sql.Connection c = java.sql.DriverManager.getConnection(url);
+         java.sql.Statement st = c.createStatement();
+         java.sql.ResultSet rs = st.executeQuery("VALUES SYSCS_UTIL.SYSCS_CHECK_TABLE('APP', 'ISSUES')")) {
+      int result = rs.next() ? rs.getInt(1) : 0;
+      System.out.println("Derby SYSCS_CHECK_TABLE = " + result);
+      if (result != 1) {
+        throw new IllegalStateException("Derby SYSCS_CHECK_TABLE failed: " + result);
+      }
+    } finally {
+      try {
+        java.sql.DriverManager.getConnection(url + ";shutdown=true");
+      } catch (java.sql.SQLException ignored) {
+      }
     }
   }
 
+  private static List<Issue> generate(Args a) {
+    String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
+    return new DataGenerator(a.seed, ruleKeys).generate(a.items);
+  }
+
+  /**
+   * Engines whose file writes can go through the fault injector: H2 and Nitrite open their files through H2's FilePath
+   * SPI and therefore take the faulty: scheme, MapDB takes a {@link FaultInjectingVolume}.
+   */
+  private static boolean supportsFaultyFiles(String db) {
+    String key = db.toLowerCase(Locale.ROOT);
+    return "h2".equals(key) || "nitrite".equals(key) || "mapdb".equals(key);
+  }
+
   private static String getPidSafe() {
     try {
       String jvmName = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
@@ -163,15 +429,186 @@ public class CrashScenarioRunner {
     }
   }
 
-  private static class Args {
+  static class VerifyResult {
+    final String db;
+    boolean opened;
+    boolean integrityOk;
+    long recoveryMs = -1;
+    int committed;
+    int found;
+    int lost;
+    int duplicated;
+    int unexpected;
+    Throwable failure;
+    private String reportedError; // error text of a result parsed from a child JVM
+
+    VerifyResult(String db) {
+      this.db = db;
+    }
+
+    boolean corrupted() {
+      return !opened || !integrityOk;
+    }
+
+    String toJson() {
+      return "{\"db\":\"" + db + "\""
+        + ",\"opened\":" + opened
+        + ",\"integrityOk\":" + integrityOk
+        + ",\"recoveryMs\":" + recoveryMs
+        + ",\"committed\":" + committed
+        + ",\"found\":" + found
+        + ",\"lost\":" + lost
+        + ",\"duplicated\":" + duplicated
+        + ",\"unexpected\":" + unexpected
+        + ",\"error\":" + (error() == null ? "null" : "\"" + jsonEscape(error()) + "\"")
+        + "}";
+    }
+
+    String error() {
+      if (reportedError != null) return reportedError;
+      return failure == null ? null : failure.getClass().getSimpleName() + ": " + failure.getMessage();
+    }
+
+    /** Parses the flat object written by {@link #toJson()}. */
+    static VerifyResult fromJson(String json) {
+      Matcher m = Pattern.compile("\"(\\w+)\":(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}]+)").matcher(json);
+      VerifyResult r = null;
+      String error = null;
+      while (m.find()) {
+        String key = m.group(1);
+        String val = m.group(2);
+        if ("db".equals(key)) {
+          r = new VerifyResult(val.substring(1, val.length() - 1));
+          continue;
+        }
+        if (r == null) r = new VerifyResult("unknown");
+        switch (key) {
+          case "opened":
+            r.opened = Boolean.parseBoolean(val);
+            break;
+          case "integrityOk":
+            r.integrityOk = Boolean.parseBoolean(val);
+            break;
+          case "recoveryMs":
+            r.recoveryMs = Long.parseLong(val);
+            break;
+          case "committed":
+            r.committed = Integer.parseInt(val);
+            break;
+          case "found":
+            r.found = Integer.parseInt(val);
+            break;
+          case "lost":
+            r.lost = Integer.parseInt(val);
+            break;
+          case "duplicated":
+            r.duplicated = Integer.parseInt(val);
+            break;
+          case "unexpected":
+            r.unexpected = Integer.parseInt(val);
+            break;
+          case "error":
+            if (!"null".equals(val)) error = jsonUnescape(val.substring(1, val.length() - 1));
+            break;
+        }
+      }
+      if (r != null && error != null) {
+        r.reportedError = error;
+        r.failure = new IllegalStateException(error);
+      }
+      return r;
+    }
+
+    private static String jsonUnescape(String s) {
+      StringBuilder sb = new StringBuilder(s.length());
+      for (int i = 0; i < s.length(); i++) {
+        char c = s.charAt(i);
+        if (c == '\\' && i + 1 < s.length()) {
+          char next = s.charAt(++i);
+          if (next == 'u' && i + 4 < s.length()) {
+            sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+            i += 4;
+          } else {
+            sb.append(next);
+          }
+        } else {
+          sb.append(c);
+        }
+      }
+      return sb.toString();
+    }
+
+    private static String jsonEscape(String s) {
+      StringBuilder sb = new StringBuilder(s.length());
+      for (char c : s.toCharArray()) {
+        if (c == '"' || c == '\\') sb.append('\\').append(c);
+        else if (c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+        else sb.append(c);
+      }
+      return sb.toString();
+    }
+  }
+
+  static class CrashSummary {
+    final String db;
+    int runs;
+    int corrupted;
+    long totalLost;
+    int maxLost;
+    int recovered;
+    long totalRecoveryMs;
+
+    CrashSummary(String db) {
+      this.db = db;
+    }
+
+    void add(VerifyResult r) {
+      runs++;
+      if (r.corrupted()) corrupted++;
+      totalLost += r.lost;
+      maxLost = Math.max(maxLost, r.lost);
+      if (r.opened) {
+        recovered++;
+        totalRecoveryMs += r.recoveryMs;
+      }
+    }
+
+    double corruptionRate() {
+      return runs == 0 ? 0 : (double) corrupted / runs;
+    }
+
+    double meanLost() {
+      return runs == 0 ? 0 : (double) totalLost / runs;
+    }
+
+    double meanRecoveryMs() {
+      return recovered == 0 ? 0 : (double) totalRecoveryMs / recovered;
+    }
+
+    String toJson() {
+      return String.format(Locale.ROOT,
+        "{\"db\":\"%s\",\"runs\":%d,\"corrupted\":%d,\"corruptionRate\":%.4f,\"meanLost\":%.2f,\"maxLost\":%d,\"meanRecoveryMs\":%.2f}",
+        db, runs, corrupted, corruptionRate(), meanLost(), maxLost, meanRecoveryMs());
+    }
+  }
+
+  static class Args {
     String mode;
     String db;
     File path;
+    File out;
     int items = BenchmarkConfig.defaultConfig().itemCount;
     int batch = BenchmarkConfig.defaultConfig().batchSize; // currently unused by repos, kept for parity
     String rule = BenchmarkConfig.defaultConfig().searchRuleKey;
+    long seed = 42L;
+    int committed = Integer.MAX_VALUE;
     int waitSec = 0;
     int sleepMs = 0;
+    int runs = 5;
+    int maxDelayMs = 1000;
+    FaultMode fault;
+    long faultAfterWrites = 0;
+    long faultAfterMs = -1;
 
     static Args parse(String[] args) {
       Args a = new Args();
@@ -190,6 +627,21 @@ public class CrashScenarioRunner {
           case "path":
             a.path = new File(val);
             break;
+          case "out":
+            a.out = new File(val);
+            break;
+          case "seed":
+            try {
+              a.seed = Long.parseLong(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "committed":
+            try {
+              a.committed = Integer.parseInt(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
           case "items":
             try {
               a.items = Integer.parseInt(val);
@@ -211,6 +663,33 @@ public class CrashScenarioRunner {
             } catch (NumberFormatException ignored) {
             }
             break;
+          case "fault":
+            a.fault = FaultMode.fromId(val);
+            break;
+          case "faultafterwrites":
+            try {
+              a.faultAfterWrites = Long.parseLong(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "faultafterms":
+            try {
+              a.faultAfterMs = Long.parseLong(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "runs":
+            try {
+              a.runs = Integer.parseInt(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "maxdelayms":
+            try {
+              a.maxDelayMs = Integer.parseInt(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
           case "sleepms":
             try {
               a.sleepMs = Integer.parseInt(val);
@@ -0,0 +1,157 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.metrics.MetricsIssueRepository;
+import org.sonarsource.bench.metrics.OperationMetrics;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Measures what {@link MetricsIssueRepository} adds to each call. It runs getById from several threads against an
+ * in-memory repository, whose own cost is a hash lookup, so the difference between the plain and the decorated
+ * repository is the decorator itself; against a real engine the same absolute cost is a much smaller fraction.
+ * Rounds alternate plain and decorated runs so that both see the same JIT and GC conditions.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.MetricsOverheadRunner threads=1,4,8 ops=2000000 items=10000 rounds=5
+ */
+public class MetricsOverheadRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<Integer> threads = new ArrayList<>();
+        int ops = 2_000_000;
+        int items = 10_000;
+        int rounds = 5;
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "threads":
+                    for (String t : kv[1].split(",")) threads.add(Integer.parseInt(t.trim()));
+                    break;
+                case "ops": ops = Integer.parseInt(kv[1]); break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "rounds": rounds = Integer.parseInt(kv[1]); break;
+            }
+        }
+        if (threads.isEmpty()) threads = List.of(1, 4, Runtime.getRuntime().availableProcessors());
+
+        List<Issue> data = new DataGenerator(42L, new String[] {"java:S100", "java:S1234"}).generate(items);
+        String[] ids = new String[data.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = data.get(i).getId();
+
+        System.out.println("Metrics decorator overhead, getById on an in-memory repository");
+        System.out.println("ops=" + ops + " per thread, items=" + items + ", rounds=" + rounds + " (best round reported)");
+        System.out.println(String.format(Locale.ROOT, "%8s %14s %14s %12s", "threads", "plain(ns/op)", "metrics(ns/op)", "overhead"));
+        for (int t : threads) {
+            double plain = Double.MAX_VALUE;
+            double decorated = Double.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                plain = Math.min(plain, nanosPerOp(new InMemoryRepository(data), ids, t, ops));
+                MetricsIssueRepository metrics = new MetricsIssueRepository(new InMemoryRepository(data), false);
+                decorated = Math.min(decorated, nanosPerOp(metrics, ids, t, ops));
+                checkCounts(metrics, (long) t * ops);
+            }
+            System.out.println(String.format(Locale.ROOT, "%8d %14.1f %14.1f %11.1f ns", t, plain, decorated, decorated - plain));
+        }
+    }
+
+    static double nanosPerOp(IssueRepository repo, String[] ids, int threads, int opsPerThread) throws Exception {
+        repo.init();
+        CyclicBarrier start = new CyclicBarrier(threads + 1);
+        CyclicBarrier end = new CyclicBarrier(threads + 1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            Thread w = new Thread(() -> {
+                SplittableRandom rnd = new SplittableRandom(seed);
+                try {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        if (repo.getById(ids[rnd.nextInt(ids.length)]) == null) throw new IllegalStateException("missing issue");
+                    }
+                    end.await();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "overhead-" + t);
+            w.start();
+            workers.add(w);
+        }
+        start.await();
+        long t0 = System.nanoTime();
+        end.await();
+        long elapsed = System.nanoTime() - t0;
+        for (Thread w : workers) w.join();
+        repo.close();
+        return (double) elapsed / opsPerThread;
+    }
+
+    private static void checkCounts(MetricsIssueRepository repo, long expected) {
+        for (Map.Entry<String, OperationMetrics> e : repo.metrics().entrySet()) {
+            long count = e.getValue().getCount();
+            if (e.getKey().equals("getById") ? count != expected : count != 0) {
+                throw new IllegalStateException("Unexpected " + e.getKey() + " count " + count);
+            }
+        }
+    }
+
+    /** Thread-safe repository without storage, so that the measured cost is mostly the decorator's. */
+    static class InMemoryRepository implements IssueRepository {
+        private final Map<String, Issue> byId = new ConcurrentHashMap<>();
+
+        InMemoryRepository(List<Issue> issues) {
+            for (Issue is : issues) byId.put(is.getId(), is);
+        }
+
+        @Override
+        public String name() { return "InMemory"; }
+
+        @Override
+        public void init() {
+        }
+
+        @Override
+        public void insertAll(List<Issue> issues) {
+            for (Issue is : issues) byId.put(is.getId(), is);
+        }
+
+        @Override
+        public List<Issue> readAll() {
+            return new ArrayList<>(byId.values());
+        }
+
+        @Override
+        public List<Issue> searchByRule(String ruleKey) {
+            List<Issue> out = new ArrayList<>();
+            for (Issue is : byId.values()) {
+                if (ruleKey.equals(is.getRuleKey())) out.add(is);
+            }
+            return out;
+        }
+
+        @Override
+        public Issue getById(String id) {
+            return byId.get(id);
+        }
+
+        @Override
+        public long deleteOlderThan(long epochMillis) {
+            int before = byId.size();
+            byId.values().removeIf(is -> is.getCreationDateEpochMillis() < epochMillis);
+            return before - byId.size();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.BenchmarkConfig;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.Stopwatch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Runner measuring how long it takes to reopen an existing issue store, as the IDE plugin does at every startup.
+ * <p>
+ * For each backend the runner populates a store in a temp directory, closes it, then opens it through a new
+ * repository instance and times: open (constructor + init), first getById and first searchByRule. A second
+ * getById/searchByRule on the now warm store is reported for contrast.
+ * <p>
+ * Usage examples:
+ * - Reopen every backend in-process:
+ * java ... org.sonarsource.bench.ReopenScenarioRunner items=100000
+ * <p>
+ * - Reopen in a fresh JVM, dropping the OS page cache first when permitted (Linux, root):
+ * java ... org.sonarsource.bench.ReopenScenarioRunner db=h2,sqlite items=100000 fork=true dropCaches=true
+ * <p>
+ * - Open phase only, against an existing store (this is what fork=true launches):
+ * java ... org.sonarsource.bench.ReopenScenarioRunner mode=open db=sqlite path=/tmp/store id=ISSUE_ID
+ */
+public class ReopenScenarioRunner {
+  static final String RESULT_PREFIX = "REOPEN_RESULT";
+
+  public static void main(String[] args) throws Exception {
+    Args a = Args.parse(args);
+    if ("open".equalsIgnoreCase(a.mode)) {
+      if (a.dbs.size() != 1 || a.path == null) {
+        System.out.println("ReopenScenarioRunner mode=open requires: db=<one backend> path=/path/to/db [id=ISSUE_ID] [rule=java:S1234]");
+        return;
+      }
+      String db = a.dbs.get(0);
+      System.out.println(measureOpen(db, a.path.getAbsolutePath(), a.id, a.rule).toResultLine(db));
+      return;
+    }
+
+    System.out.println("Reopen Scenario");
+    System.out.println("Items=" + a.items + ", batchSize=" + a.batch + ", searchRuleKey=" + a.rule + ", fork=" + a.fork + ", dropCaches=" + a.dropCaches);
+    String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
+    List<Issue> data = new DataGenerator(42L, ruleKeys).generate(a.items);
+    for (String db : a.dbs) {
+      runScenario(db, data, a);
+      System.out.println();
+    }
+  }
+
+  private static void runScenario(String db, List<Issue> data, Args a) throws Exception {
+    Path dir = Files.createTempDirectory("reopen-" + db);
+    String path = dir.resolve("issues").toAbsolutePath().toString();
+    try {
+      IssueRepository repo = Repositories.create(db, path);
+      System.out.println("== " + repo.name() + " ==");
+      Stopwatch sw = Stopwatch.startNew();
+      repo.init();
+      for (int from = 0; from < data.size(); from += a.batch) {
+        repo.insertAll(data.subList(from, Math.min(from + a.batch, data.size())));
+      }
+      repo.close();
+      System.out.println("Populate: " + sw.stop() + " ms (" + data.size() + "), on disk: " + sizeOnDisk(dir) / 1024 + " KB");
+
+      if (a.dropCaches) {
+        System.out.println("Drop OS page cache: " + (tryDropPageCache() ? "done" : "not permitted, cache stays warm"));
+      }
+
+      String probeId = data.isEmpty() ? null : data.get(data.size() / 2).getId();
+      OpenTimings t = a.fork ? measureOpenInChild(db, path, probeId, a.rule) : measureOpen(db, path, probeId, a.rule);
+      System.out.println("Open: " + t.openUs / 1000 + " ms");
+      System.out.println(probeId == null ? "First getById: skipped, empty store" : "First getById: " + t.firstGetUs + " us (warm: " + t.warmGetUs + " us)");
+      System.out.println("First search(rule='" + a.rule + "'): " + t.firstSearchUs / 1000 + " ms (warm: " + t.warmSearchUs / 1000 + " ms, " + t.found + ")");
+    } finally {
+      deleteRecursively(dir);
+    }
+  }
+
+  /** @param id the issue to look up, or null to skip the getById probes on an empty store (their timings are -1) */
+  static OpenTimings measureOpen(String db, String path, String id, String rule) throws Exception {
+    OpenTimings t = new OpenTimings();
+    Stopwatch sw = Stopwatch.startNew();
+    IssueRepository repo = Repositories.create(db, path);
+    try {
+      repo.init();
+      sw.stop();
+      t.openUs = sw.elapsedMicros();
+
+      if (id != null) {
+        sw.start();
+        Issue first = repo.getById(id);
+        sw.stop();
+        t.firstGetUs = sw.elapsedMicros();
+        if (first == null) throw new IllegalStateException("Issue " + id + " not found after reopening " + path);
+      }
+
+      sw.start();
+      t.found = repo.searchByRule(rule).size();
+      sw.stop();
+      t.firstSearchUs = sw.elapsedMicros();
+
+      if (id != null) {
+        sw.start();
+        repo.getById(id);
+        sw.stop();
+        t.warmGetUs = sw.elapsedMicros();
+      }
+
+      sw.start();
+      repo.searchByRule(rule);
+      sw.stop();
+      t.warmSearchUs = sw.elapsedMicros();
+    } finally {
+      repo.close();
+    }
+    return t;
+  }
+
+  private static OpenTimings measureOpenInChild(String db, String path, String id, String rule) throws Exception {
+    String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    List<String> cmd = new ArrayList<>(List.of(
+      javaBin,
+      "-cp", System.getProperty("java.class.path"),
+      ReopenScenarioRunner.class.getName(),
+      "mode=open",
+      "db=" + db,
+      "path=" + path,
+      "rule=" + rule
+    ));
+    if (id != null) cmd.add("id=" + id);
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.redirectErrorStream(true);
+    Process p = pb.start();
+    OpenTimings result = null;
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        if (line.startsWith(RESULT_PREFIX)) {
+          result = OpenTimings.parse(line);
+        } else {
+          System.out.println("  [child] " + line);
+        }
+      }
+    }
+    int exit = p.waitFor();
+    if (exit != 0 || result == null) {
+      throw new IllegalStateException("Child open of " + db + " failed with exit code " + exit);
+    }
+    return result;
+  }
+
+  /**
+   * Best effort: only works on Linux when running as root. Otherwise the reopen runs against a warm OS page cache.
+   */
+  private static boolean tryDropPageCache() {
+    File dropCaches = new File("/proc/sys/vm/drop_caches");
+    if (!dropCaches.canWrite()) return false;
+    try {
+      new ProcessBuilder("sync").inheritIO().start().waitFor();
+      Files.writeString(dropCaches.toPath(), "1");
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static long sizeOnDisk(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+    }
+  }
+
+  private static void deleteRecursively(Path dir) {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+    } catch (IOException ignored) {
+    }
+  }
+
+  static class OpenTimings {
+    long openUs;
+    long firstGetUs = -1;
+    long firstSearchUs;
+    long warmGetUs = -1;
+    long warmSearchUs;
+    int found;
+
+    String toResultLine(String db) {
+      return RESULT_PREFIX + " db=" + db + " openUs=" + openUs + " firstGetUs=" + firstGetUs + " firstSearchUs=" + firstSearchUs
+        + " warmGetUs=" + warmGetUs + " warmSearchUs=" + warmSearchUs + " found=" + found;
+    }
+
+    static OpenTimings parse(String line) {
+      OpenTimings t = new OpenTimings();
+      for (String s : line.split(" ")) {
+        String[] kv = s.split("=", 2);
+        if (kv.length != 2) continue;
+        switch (kv[0]) {
+          case "openUs":
+            t.openUs = Long.parseLong(kv[1]);
+            break;
+          case "firstGetUs":
+            t.firstGetUs = Long.parseLong(kv[1]);
+            break;
+          case "firstSearchUs":
+            t.firstSearchUs = Long.parseLong(kv[1]);
+            break;
+          case "warmGetUs":
+            t.warmGetUs = Long.parseLong(kv[1]);
+            break;
+          case "warmSearchUs":
+            t.warmSearchUs = Long.parseLong(kv[1]);
+            break;
+          case "found":
+            t.found = Integer.parseInt(kv[1]);
+            break;
+        }
+      }
+      return t;
+    }
+  }
+
+  private static class Args {
+    String mode;
+    List<String> dbs = new ArrayList<>(List.of("h2", "hsqldb", "derby", "sqlite", "nitrite"));
+    File path;
+    String id;
+    int items = BenchmarkConfig.defaultConfig().itemCount;
+    int batch = BenchmarkConfig.defaultConfig().batchSize;
+    String rule = BenchmarkConfig.defaultConfig().searchRuleKey;
+    boolean fork = false;
+    boolean dropCaches = false;
+
+    static Args parse(String[] args) {
+      Args a = new Args();
+      for (String s : args) {
+        String[] kv = s.split("=", 2);
+        if (kv.length != 2) continue;
+        String key = kv[0].toLowerCase(Locale.ROOT);
+        String val = kv[1];
+        switch (key) {
+          case "mode":
+            a.mode = val;
+            break;
+          case "db":
+            a.dbs = new ArrayList<>();
+            for (String db : val.split(",")) {
+              if (!db.isBlank()) a.dbs.add(db.trim().toLowerCase(Locale.ROOT));
+            }
+            break;
+          case "path":
+            a.path = new File(val);
+            break;
+          case "id":
+            a.id = val;
+            break;
+          case "items":
+            try {
+              a.items = Integer.parseInt(val);
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "batch":
+            try {
+              a.batch = Math.max(1, Integer.parseInt(val));
+            } catch (NumberFormatException ignored) {
+            }
+            break;
+          case "rule":
+            a.rule = val;
+            break;
+          case "fork":
+            a.fork = Boolean.parseBoolean(val);
+            break;
+          case "dropcaches":
+            a.dropCaches = Boolean.parseBoolean(val);
+            break;
+        }
+      }
+      return a;
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures retention purges: each round stores one day of new issues, then deletes those older than the last
+ * {@code keep} days, as a server dropping closed issues after a retention period would. The last purge is timed, then
+ * {@link IssueRepository#compact()}, with the size on disk before and after to show how much each engine gives back.
+ * The stores are tuned with {@code profile}, engine defaults if not set; with DEFAULT, SQLite has no incremental
+ * auto-vacuum and compacts with a full VACUUM.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.RetentionRunner db=h2,sqlite,mvstore items=50000 rounds=10 keep=3 batch=1000 profile=balanced
+ */
+public class RetentionRunner {
+    private static final long DAY = 24L * 3600 * 1000;
+
+    public static void main(String[] args) throws Exception {
+        String db = null;
+        int items = 50_000;
+        int rounds = 10;
+        int keep = 3;
+        int batch = 1_000;
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        TuningProfile profile = TuningProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "rounds": rounds = Integer.parseInt(kv[1]); break;
+                case "keep": keep = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+                case "profile": profile = TuningProfile.fromId(kv[1]); break;
+            }
+        }
+        if (keep < 1 || keep >= rounds) throw new IllegalArgumentException("keep must be between 1 and rounds - 1");
+
+        DataGenerator gen = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S1234"}, workload);
+        long base = System.currentTimeMillis() - rounds * DAY;
+        System.out.println("Retention: purge of old issues, then compaction");
+        System.out.println("items/round=" + items + ", rounds=" + rounds + ", keep=" + keep + ", batch=" + batch + ", workload=" + workload + ", profile=" + profile.id());
+        System.out.println(String.format(Locale.ROOT, "%-10s %10s %12s %12s %12s %12s %12s %12s",
+                "backend", "deleted", "delete(ms)", "rows/s", "before(MB)", "compact(ms)", "after(MB)", "freed(MB)"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            try (IssueRepository repo = backend.create(null, profile)) {
+                repo.init();
+                long deleted = 0;
+                long deleteNanos = 0;
+                for (int round = 0; round < rounds; round++) {
+                    long created = base + round * DAY;
+                    for (int from = 0; from < items; from += batch) {
+                        List<Issue> issues = gen.generateRange((long) round * items + from, Math.min(batch, items - from));
+                        for (Issue is : issues) is.setCreationDateEpochMillis(created);
+                        repo.insertAll(issues);
+                    }
+                    if (round >= keep) {
+                        // a purge per round, so each one deletes about one round of issues
+                        long t0 = System.nanoTime();
+                        long n = repo.deleteOlderThan(base + (round - keep + 1) * DAY);
+                        deleteNanos += System.nanoTime() - t0;
+                        deleted += n;
+                    }
+                }
+                long expected = (long) (rounds - keep) * items;
+                if (deleted != expected) {
+                    throw new IllegalStateException(backend.id() + ": deleted " + deleted + " of " + expected);
+                }
+                long before = repo.sizeOnDisk();
+                long t0 = System.nanoTime();
+                repo.compact();
+                long compactNanos = System.nanoTime() - t0;
+                long after = repo.sizeOnDisk();
+                System.out.println(String.format(Locale.ROOT, "%-10s %10d %12.0f %12.0f %12.1f %12.0f %12.1f %12.1f",
+                        backend.id(), deleted, deleteNanos / 1e6, deleted / (deleteNanos / 1e9),
+                        before / 1048576.0, compactNanos / 1e6, after / 1048576.0, (before - after) / 1048576.0));
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.shard.ShardedIssueRepository;
+import org.sonarsource.bench.shard.ShardedIssueRepository.ShardKey;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Measures how {@link ShardedIssueRepository} scales with the number of shards: write, readAll, searchByRule and
+ * getById throughput for 1..N shards of each backend. Fan-out only pays off with as many cores as shards, the
+ * available processor count is printed with the results.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.ShardScalingRunner db=sqlite,h2 items=200000 batch=1000 shards=1,2,4,8 key=module workload=monorepo gets=2000
+ */
+public class ShardScalingRunner {
+
+    public static void main(String[] args) throws Exception {
+        String db = null;
+        int items = 200_000;
+        int batch = 1_000;
+        List<Integer> shardCounts = new ArrayList<>();
+        ShardKey key = ShardKey.FILE;
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        int gets = 2_000;
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "shards":
+                    for (String s : kv[1].split(",")) shardCounts.add(Integer.parseInt(s.trim()));
+                    break;
+                case "key": key = ShardKey.valueOf(kv[1].toUpperCase(Locale.ROOT)); break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+                case "gets": gets = Integer.parseInt(kv[1]); break;
+            }
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        if (shardCounts.isEmpty()) shardCounts = List.of(1, 2, 4, cores);
+
+        String searchRule = "java:S100";
+        DataGenerator gen = new DataGenerator(42L, new String[] {searchRule, "java:S101", "java:S1854", "java:S1234"}, workload);
+        System.out.println("Sharded repository scaling");
+        System.out.println("items=" + items + ", batch=" + batch + ", key=" + key + ", workload=" + workload + ", gets=" + gets
+                + ", cores=" + cores);
+        System.out.println(String.format(Locale.ROOT, "%-10s %7s %14s %14s %14s %14s", "backend", "shards",
+                "write(it/s)", "readAll(it/s)", "search(ms)", "get(ops/s)"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            for (int n : shardCounts) {
+                try (ShardedIssueRepository repo = ShardedIssueRepository.of(backend, null, TuningProfile.defaultProfile(), n, key)) {
+                    repo.init();
+                    long writeNanos = 0;
+                    Iterator<Issue> it = gen.iterator(items);
+                    List<Issue> chunk = new ArrayList<>(batch);
+                    while (it.hasNext()) {
+                        chunk.add(it.next());
+                        if (chunk.size() == batch || !it.hasNext()) {
+                            long t0 = System.nanoTime();
+                            repo.insertAll(chunk);
+                            writeNanos += System.nanoTime() - t0;
+                            chunk = new ArrayList<>(batch);
+                        }
+                    }
+
+                    long t0 = System.nanoTime();
+                    int read = repo.readAll().size();
+                    long readNanos = System.nanoTime() - t0;
+                    if (read != items) throw new IllegalStateException("readAll returned " + read + " of " + items + " issues");
+
+                    t0 = System.nanoTime();
+                    repo.searchByRule(searchRule);
+                    long searchNanos = System.nanoTime() - t0;
+
+                    SplittableRandom rnd = new SplittableRandom(7);
+                    String[] ids = new String[gets];
+                    for (int i = 0; i < gets; i++) ids[i] = gen.issueAt(rnd.nextInt(items)).getId();
+                    t0 = System.nanoTime();
+                    for (String id : ids) {
+                        if (repo.getById(id) == null) throw new IllegalStateException("Missing issue " + id);
+                    }
+                    long getNanos = System.nanoTime() - t0;
+
+                    System.out.println(String.format(Locale.ROOT, "%-10s %7d %14.0f %14.0f %14.1f %14.0f", backend.id(), n,
+                            items * 1e9 / writeNanos, items * 1e9 / readNanos, searchNanos / 1e6, gets * 1e9 / getNanos));
+                }
+            }
+        }
+    }
+}
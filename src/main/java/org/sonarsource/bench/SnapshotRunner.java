@@ -0,0 +1,106 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.cache.OffHeapIssueCache;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.snapshot.Snapshot;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares seeding a store with insertAll, as the benchmarks do, with loading a {@link Snapshot} of the same issues
+ * through the store's bulk path. Each backend is seeded, exported with every compression, then a fresh store is loaded
+ * from each snapshot. The uncompressed snapshot is also copied into an {@link OffHeapIssueCache} straight from the
+ * mapped file, which is as fast as a warm start gets.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.SnapshotRunner db=h2,sqlite items=200000 batch=1000 compression=none,deflate
+ */
+public class SnapshotRunner {
+
+    public static void main(String[] args) throws Exception {
+        String db = null;
+        int items = 200_000;
+        int batch = 1_000;
+        int pageSize = 5_000;
+        List<Snapshot.Compression> compressions = new ArrayList<>();
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "pagesize": pageSize = Integer.parseInt(kv[1]); break;
+                case "compression":
+                    for (String c : kv[1].split(",")) compressions.add(Snapshot.Compression.fromId(c.trim()));
+                    break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+            }
+        }
+        if (compressions.isEmpty()) compressions = List.of(Snapshot.Compression.values());
+
+        DataGenerator gen = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S1234"}, workload);
+        System.out.println("Store seeding: insertAll vs snapshot load");
+        System.out.println("items=" + items + ", batch=" + batch + ", pageSize=" + pageSize + ", workload=" + workload);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-12s %-8s %10s %12s %10s",
+                "backend", "step", "format", "time(ms)", "items/s", "file(MB)"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            List<Path> files = new ArrayList<>();
+            try (IssueRepository source = backend.create(null, TuningProfile.defaultProfile())) {
+                source.init();
+                long t0 = System.nanoTime();
+                for (int from = 0; from < items; from += batch) source.insertAll(gen.generateRange(from, Math.min(batch, items - from)));
+                print(backend.id(), "insertAll", "-", System.nanoTime() - t0, items, -1);
+
+                for (Snapshot.Compression compression : compressions) {
+                    Path file = Files.createTempFile("issues-" + backend.id(), ".snapshot");
+                    files.add(file);
+                    t0 = System.nanoTime();
+                    long exported = Snapshot.export(source, file, compression, pageSize);
+                    print(backend.id(), "export", compression.name().toLowerCase(Locale.ROOT), System.nanoTime() - t0, exported, Files.size(file));
+                }
+            }
+            try {
+                for (int c = 0; c < compressions.size(); c++) {
+                    String format = compressions.get(c).name().toLowerCase(Locale.ROOT);
+                    Path file = files.get(c);
+                    try (IssueRepository target = backend.create(null, TuningProfile.defaultProfile())) {
+                        target.init();
+                        long t0 = System.nanoTime();
+                        long loaded = Snapshot.load(file, target, batch);
+                        long nanos = System.nanoTime() - t0;
+                        if (loaded != items) throw new IllegalStateException("Loaded " + loaded + " issues of " + items);
+                        print(backend.id(), "load", format, nanos, loaded, Files.size(file));
+                    }
+                    if (compressions.get(c) == Snapshot.Compression.NONE) {
+                        // one arena more than the file needs, so that the ring never recycles one while loading
+                        int arenaBytes = 64 << 20;
+                        OffHeapIssueCache cache = new OffHeapIssueCache((int) Math.min(256, Files.size(file) / arenaBytes + 2), arenaBytes);
+                        long t0 = System.nanoTime();
+                        long loaded = Snapshot.load(file, cache);
+                        print(backend.id(), "cache", format, System.nanoTime() - t0, loaded, Files.size(file));
+                        cache.clear();
+                    }
+                }
+            } finally {
+                for (Path f : files) Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    private static void print(String backend, String step, String format, long nanos, long count, long fileBytes) {
+        System.out.println(String.format(Locale.ROOT, "%-10s %-12s %-8s %10.0f %12.0f %10s",
+                backend, step, format, nanos / 1e6, count / (nanos / 1e9),
+                fileBytes < 0 ? "-" : String.format(Locale.ROOT, "%.1f", fileBytes / 1048576.0)));
+    }
+}
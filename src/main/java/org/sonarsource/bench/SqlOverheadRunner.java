@@ -0,0 +1,97 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Measures what H2's SQL layer and JDBC add on top of its storage engine: the same operations run against
+ * {@code h2}, which goes through SQL, JDBC and Base64-encoded CLOB details, and against {@code mvstore}, which writes
+ * binary issues straight into MVStore maps. Both use the same tuning profile, hence the same MVStore cache size and
+ * compression, so the difference is the cost of everything above the storage engine.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.SqlOverheadRunner items=200000 batch=1000 gets=20000 pageSize=100 profile=balanced
+ */
+public class SqlOverheadRunner {
+    private static final String[] RULES = {"java:S100", "java:S101", "java:S1854", "java:S1234"};
+
+    public static void main(String[] args) throws Exception {
+        int items = 200_000;
+        int batch = 1_000;
+        int gets = 20_000;
+        int pageSize = 100;
+        TuningProfile profile = TuningProfile.defaultProfile();
+        WorkloadProfile workload = WorkloadProfile.defaultProfile();
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "gets": gets = Integer.parseInt(kv[1]); break;
+                case "pagesize": pageSize = Integer.parseInt(kv[1]); break;
+                case "profile": profile = TuningProfile.fromId(kv[1]); break;
+                case "workload": workload = WorkloadProfile.fromId(kv[1]); break;
+            }
+        }
+
+        System.out.println("SQL and JDBC cost on top of MVStore");
+        System.out.println("items=" + items + ", batch=" + batch + ", gets=" + gets + ", pageSize=" + pageSize
+                + ", profile=" + profile.id() + ", workload=" + workload);
+        Map<String, Double> h2 = run("h2", profile, workload, items, batch, gets, pageSize);
+        Map<String, Double> mvstore = run("mvstore", profile, workload, items, batch, gets, pageSize);
+        System.out.println(String.format(Locale.ROOT, "%-18s %14s %14s %14s %8s", "operation", "h2", "mvstore", "sql+jdbc", "ratio"));
+        for (Map.Entry<String, Double> e : h2.entrySet()) {
+            double sql = e.getValue();
+            double raw = mvstore.get(e.getKey());
+            System.out.println(String.format(Locale.ROOT, "%-18s %14.1f %14.1f %14.1f %7.1fx", e.getKey(), sql, raw, sql - raw, sql / raw));
+        }
+    }
+
+    /** Microseconds per operation, or per issue for inserts and page walks, by operation. */
+    private static Map<String, Double> run(String backend, TuningProfile profile, WorkloadProfile workload,
+                                           int items, int batch, int gets, int pageSize) throws Exception {
+        DataGenerator gen = new DataGenerator(42L, RULES, workload);
+        Map<String, Double> out = new LinkedHashMap<>();
+        try (IssueRepository repo = Repositories.get(backend).create(null, profile)) {
+            repo.init();
+            long t0 = System.nanoTime();
+            for (int from = 0; from < items; from += batch) repo.insertAll(gen.generateRange(from, Math.min(batch, items - from)));
+            out.put("insert (us/issue)", (System.nanoTime() - t0) / 1e3 / items);
+
+            SplittableRandom rnd = new SplittableRandom(7);
+            String[] ids = new String[gets];
+            for (int i = 0; i < gets; i++) ids[i] = gen.issueAt(rnd.nextInt(items)).getId();
+            t0 = System.nanoTime();
+            for (String id : ids) {
+                if (repo.getById(id) == null) throw new IllegalStateException("Missing issue " + id + " in " + backend);
+            }
+            out.put("getById (us)", (System.nanoTime() - t0) / 1e3 / gets);
+
+            t0 = System.nanoTime();
+            for (String rule : RULES) repo.searchByRule(rule);
+            out.put("searchByRule (us)", (System.nanoTime() - t0) / 1e3 / RULES.length);
+
+            long read = 0;
+            t0 = System.nanoTime();
+            String token = null;
+            do {
+                Page page = repo.readAll(pageSize, token);
+                read += page.getIssues().size();
+                token = page.getNextToken();
+            } while (token != null);
+            if (read != items) throw new IllegalStateException("Read " + read + " issues of " + items + " in " + backend);
+            out.put("page walk (us/issue)", (System.nanoTime() - t0) / 1e3 / items);
+        }
+        return out;
+    }
+}
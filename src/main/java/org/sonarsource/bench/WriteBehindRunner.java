@@ -0,0 +1,121 @@
+package org.sonarsource.bench;
+
+import org.sonarsource.bench.async.WriteBehindIssueRepository;
+import org.sonarsource.bench.async.WriteBehindIssueRepository.Backpressure;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Repositories;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.Percentiles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the latency seen by an analysis thread writing batches with a direct {@code insertAll} against the same
+ * writes through {@link WriteBehindIssueRepository}, for several group commit sizes. For write-behind, "call" is
+ * the time {@code submit} takes to return and "durable" the time until its future completes; "accept" is when the
+ * caller is done submitting and "total" when everything is stored.
+ * <p>
+ * Usage:
+ * java ... org.sonarsource.bench.WriteBehindRunner db=h2,sqlite items=50000 batch=100 groups=1000,5000 queue=20000 delayMs=0
+ */
+public class WriteBehindRunner {
+
+    public static void main(String[] args) throws Exception {
+        String db = null;
+        int items = 50_000;
+        int batch = 100;
+        List<Integer> groups = new ArrayList<>();
+        int queue = 20_000;
+        long delayMs = 0;
+        for (String a : args) {
+            String[] kv = a.split("=", 2);
+            if (kv.length != 2) continue;
+            switch (kv[0].toLowerCase(Locale.ROOT)) {
+                case "db": db = kv[1]; break;
+                case "items": items = Integer.parseInt(kv[1]); break;
+                case "batch": batch = Integer.parseInt(kv[1]); break;
+                case "groups":
+                    for (String g : kv[1].split(",")) groups.add(Integer.parseInt(g.trim()));
+                    break;
+                case "queue": queue = Integer.parseInt(kv[1]); break;
+                case "delayms": delayMs = Long.parseLong(kv[1]); break;
+            }
+        }
+        if (groups.isEmpty()) groups = List.of(1_000, 5_000);
+
+        DataGenerator gen = new DataGenerator(42L, new String[] {"java:S100", "java:S101", "java:S1854", "java:S1234"});
+        List<List<Issue>> batches = new ArrayList<>();
+        for (int from = 0; from < items; from += batch) batches.add(gen.generateRange(from, Math.min(batch, items - from)));
+
+        System.out.println("Write-behind vs direct insertAll, caller-observed latency");
+        System.out.println("items=" + items + ", batch=" + batch + ", queue=" + queue + ", delayMs=" + delayMs);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-14s %8s %10s %10s %12s %12s %14s %14s",
+                "backend", "mode", "commits", "accept(ms)", "total(ms)", "call p50(us)", "call p99(us)", "durable p50(ms)", "durable p99(ms)"));
+        for (IssueRepositoryProvider backend : Repositories.select(db)) {
+            direct(backend, batches);
+            for (int group : groups) writeBehind(backend, batches, queue, group, delayMs);
+        }
+    }
+
+    private static void direct(IssueRepositoryProvider backend, List<List<Issue>> batches) throws Exception {
+        long[] call = new long[batches.size()];
+        try (IssueRepository repo = backend.create(null, TuningProfile.defaultProfile())) {
+            repo.init();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < batches.size(); i++) {
+                long start = System.nanoTime();
+                repo.insertAll(batches.get(i));
+                call[i] = System.nanoTime() - start;
+            }
+            long total = System.nanoTime() - t0;
+            // a direct call returns once the batch is stored, so both latencies are the same
+            print(backend.id(), "direct", batches.size(), total, total, call, call);
+        }
+    }
+
+    private static void writeBehind(IssueRepositoryProvider backend, List<List<Issue>> batches, int queue, int group,
+                                    long delayMs) throws Exception {
+        long[] call = new long[batches.size()];
+        long[] durable = new long[batches.size()];
+        try (WriteBehindIssueRepository repo = new WriteBehindIssueRepository(backend.create(null, TuningProfile.defaultProfile()),
+                queue, group, delayMs, Backpressure.BLOCK)) {
+            repo.init();
+            long t0 = System.nanoTime();
+            for (int i = 0; i < batches.size(); i++) {
+                int index = i;
+                long start = System.nanoTime();
+                CompletableFuture<Void> done = repo.submit(batches.get(i));
+                call[i] = System.nanoTime() - start;
+                done.thenRun(() -> durable[index] = System.nanoTime() - start);
+            }
+            long accept = System.nanoTime() - t0;
+            List<Issue> last = batches.get(batches.size() - 1);
+            if (repo.getById(last.get(last.size() - 1).getId()) == null) {
+                throw new IllegalStateException("Pending write not visible to its writer");
+            }
+            repo.flush();
+            long total = System.nanoTime() - t0;
+            if (repo.failedCommits() > 0) throw new IllegalStateException(repo.failedCommits() + " group commits failed");
+            print(backend.id(), "behind/" + group, repo.commits(), accept, total, call, durable);
+        }
+    }
+
+    private static void print(String backend, String mode, long commits, long acceptNanos, long totalNanos, long[] call,
+                              long[] durable) {
+        long[] c = call.clone();
+        long[] d = durable.clone();
+        Arrays.sort(c);
+        Arrays.sort(d);
+        System.out.println(String.format(Locale.ROOT, "%-10s %-14s %8d %10.1f %10.1f %12.1f %12.1f %14.2f %14.2f",
+                backend, mode, commits, acceptNanos / 1e6, totalNanos / 1e6,
+                Percentiles.of(c, 0.50) / 1e3, Percentiles.of(c, 0.99) / 1e3,
+                Percentiles.of(d, 0.50) / 1e6, Percentiles.of(d, 0.99) / 1e6));
+    }
+}
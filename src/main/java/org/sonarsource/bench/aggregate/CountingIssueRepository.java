@@ -0,0 +1,161 @@
+package org.sonarsource.bench.aggregate;
+
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.TagMatch;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator keeping issue counts in memory, so that {@link #countBy(IssueField)} and the severity by rule matrix are
+ * answered without querying the store. The counters are loaded with one count query per field when the store is
+ * opened, then {@link #insertAll(List)} adds the issues it stored.
+ * <p>
+ * Counters are LongAdders in concurrent maps: counting never waits for a write, and may miss the issues of an
+ * {@code insertAll} still in progress. Other matrices than severity by rule are asked to the store. Issues stored
+ * again under the same id are counted twice. The deleted issues are not known one by one, so
+ * {@link #deleteOlderThan(long)} loads the counters again from the store.
+ */
+public class CountingIssueRepository implements IssueRepository {
+    private final IssueRepository delegate;
+    private final Map<IssueField, Map<String, LongAdder>> counts = new EnumMap<>(IssueField.class);
+    private final Map<String, Map<String, LongAdder>> severityByRule = new ConcurrentHashMap<>();
+
+    public CountingIssueRepository(IssueRepository delegate) {
+        this.delegate = delegate;
+        for (IssueField field : IssueField.values()) counts.put(field, new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+        load();
+    }
+
+    private void load() throws Exception {
+        for (IssueField field : IssueField.values()) {
+            Map<String, LongAdder> byValue = counts.get(field);
+            byValue.clear();
+            delegate.countBy(field).forEach((value, n) -> adder(byValue, value).add(n));
+        }
+        severityByRule.clear();
+        delegate.countBy(IssueField.SEVERITY, IssueField.RULE)
+                .forEach((severity, byRule) -> byRule.forEach((rule, n) -> adder(row(severity), rule).add(n)));
+    }
+
+    @Override
+    public void insertAll(List<Issue> issues) throws Exception {
+        delegate.insertAll(issues);
+        for (Issue is : issues) {
+            for (IssueField field : IssueField.values()) {
+                String value = field.of(is);
+                if (value != null) adder(counts.get(field), value).increment();
+            }
+            if (is.getSeverity() != null && is.getRuleKey() != null) adder(row(is.getSeverity()), is.getRuleKey()).increment();
+        }
+    }
+
+    /** Counting while the counters are loaded again may see part of them. */
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        long deleted = delegate.deleteOlderThan(epochMillis);
+        if (deleted > 0) load();
+        return deleted;
+    }
+
+    @Override
+    public void compact() throws Exception {
+        delegate.compact();
+    }
+
+    @Override
+    public Map<String, Long> countBy(IssueField field) {
+        return snapshot(counts.get(field));
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        if (row != IssueField.SEVERITY || column != IssueField.RULE) return delegate.countBy(row, column);
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        severityByRule.forEach((severity, byRule) -> {
+            Map<String, Long> counted = snapshot(byRule);
+            if (!counted.isEmpty()) out.put(severity, counted);
+        });
+        return out;
+    }
+
+    @Override
+    public List<Issue> readAll() throws Exception {
+        return delegate.readAll();
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return delegate.readAll(pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        return delegate.searchByRule(ruleKey);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return delegate.searchByRule(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        return delegate.searchByTags(tags, match);
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        return delegate.searchMessage(query);
+    }
+
+    @Override
+    public Issue getById(String id) throws Exception {
+        return delegate.getById(id);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return delegate.sizeOnDisk();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private Map<String, LongAdder> row(String severity) {
+        return severityByRule.computeIfAbsent(severity, k -> new ConcurrentHashMap<>());
+    }
+
+    private static LongAdder adder(Map<String, LongAdder> byValue, String value) {
+        return byValue.computeIfAbsent(value, k -> new LongAdder());
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> byValue) {
+        Map<String, Long> out = new TreeMap<>();
+        byValue.forEach((value, n) -> {
+            long sum = n.sum();
+            if (sum > 0) out.put(value, sum);
+        });
+        return out;
+    }
+}
@@ -0,0 +1,388 @@
+package org.sonarsource.bench.async;
+
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.TagMatch;
+import org.sonarsource.bench.db.TextSearch;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decorator that makes writes asynchronous. {@link #submit(List)} puts the issues on a lock-free queue and returns a
+ * future completed once they are stored; {@link #insertAll(List)} does the same and does not wait. A single writer
+ * thread drains the queue and stores up to {@code groupCommitSize} queued issues with one {@code insertAll} call, so
+ * that the JDBC backends commit them in one transaction.
+ * <p>
+ * The queue holds at most {@code capacity} issues. When it is full, {@link Backpressure#BLOCK} makes the caller wait
+ * for room and {@link Backpressure#REJECT} throws a {@link RejectedExecutionException}; {@link #trySubmit(List)}
+ * never waits whatever the policy.
+ * <p>
+ * Reads see the calling thread's pending writes, and everyone else's: issues stay in a pending index until the
+ * wrapped repository has stored them, and reads merge that index with what the repository returns. The wrapped
+ * repositories are not thread-safe, so reads and group commits take turns on it; a read may wait for a commit in
+ * progress, a write never waits for a read. Callers of {@link #insertAll(List)} do not see storage failures; those
+ * are counted by {@link #failedCommits()} and reported through the futures of {@link #submit(List)}.
+ */
+public class WriteBehindIssueRepository implements IssueRepository {
+    public static final int DEFAULT_CAPACITY = 100_000;
+    public static final int DEFAULT_GROUP_COMMIT_SIZE = 5_000;
+
+    public enum Backpressure {
+        /** Callers wait until the writer has made room. */
+        BLOCK,
+        /** Callers get a {@link RejectedExecutionException} right away. */
+        REJECT
+    }
+
+    private final IssueRepository delegate;
+    private final int capacity;
+    private final int groupCommitSize;
+    private final long maxDelayNanos;
+    private final Backpressure backpressure;
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private final Semaphore room;
+    private final Map<String, Issue> pendingById = new ConcurrentHashMap<>();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong failedCommits = new AtomicLong();
+    private volatile boolean closed;
+    private volatile Thread writer;
+
+    public WriteBehindIssueRepository(IssueRepository delegate) {
+        this(delegate, DEFAULT_CAPACITY, DEFAULT_GROUP_COMMIT_SIZE, 0, Backpressure.BLOCK);
+    }
+
+    /**
+     * @param capacity        maximum number of queued issues
+     * @param groupCommitSize maximum number of issues stored per {@code insertAll} call on the wrapped repository
+     * @param maxDelayMs      how long the writer may wait for a group to fill up; 0 commits whatever is queued
+     */
+    public WriteBehindIssueRepository(IssueRepository delegate, int capacity, int groupCommitSize, long maxDelayMs,
+                                      Backpressure backpressure) {
+        if (capacity < 1 || groupCommitSize < 1) throw new IllegalArgumentException("capacity and groupCommitSize must be positive");
+        this.delegate = delegate;
+        this.capacity = capacity;
+        this.groupCommitSize = groupCommitSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.backpressure = backpressure;
+        this.room = new Semaphore(capacity);
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+        Thread t = new Thread(this::drain, "write-behind-" + delegate.name());
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+    }
+
+    /** Queues the issues and returns without waiting for them to be stored. */
+    @Override
+    public void insertAll(List<Issue> issues) throws Exception {
+        submit(issues);
+    }
+
+    /**
+     * Queues the issues, applying the backpressure policy when the queue is full.
+     *
+     * @return a future completed when the issues are stored, or completed exceptionally if storing them failed
+     */
+    public CompletableFuture<Void> submit(List<Issue> issues) throws InterruptedException {
+        checkSize(issues);
+        if (backpressure == Backpressure.BLOCK) {
+            room.acquire(issues.size());
+        } else if (!room.tryAcquire(issues.size())) {
+            throw new RejectedExecutionException("Write-behind queue full: " + queuedIssues() + " of " + capacity + " issues queued");
+        }
+        return enqueue(issues);
+    }
+
+    /** Queues the issues if there is room for them right now. */
+    public CompletableFuture<Void> trySubmit(List<Issue> issues) {
+        checkSize(issues);
+        if (!room.tryAcquire(issues.size())) throw new RejectedExecutionException("Write-behind queue full");
+        return enqueue(issues);
+    }
+
+    /**
+     * Waits until everything queued so far has been stored, or has failed to be. Returns at once before
+     * {@link #init()}, when nothing can be queued, and once closed, since {@link #close()} stores or fails what is left.
+     */
+    public void flush() throws Exception {
+        if (writer == null || closed) return;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Pending p : queue) futures.add(p.done);
+        try {
+            // an empty group committed after the one in progress, if any
+            futures.add(enqueue(List.of()));
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile: the writer stores the queued issues before it stops
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+    }
+
+    /** Flushes first, so that queued issues old enough are deleted too. */
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        flush();
+        return delegate.deleteOlderThan(epochMillis);
+    }
+
+    @Override
+    public void compact() throws Exception {
+        flush();
+        delegate.compact();
+    }
+
+    @Override
+    public List<Issue> readAll() throws Exception {
+        // pending issues are looked at before the store: an issue leaves the pending index only after it is stored,
+        // so it is seen at least once, and duplicates are dropped by id
+        List<Issue> pending = new ArrayList<>(pendingById.values());
+        List<Issue> stored;
+        synchronized (delegate) {
+            stored = delegate.readAll();
+        }
+        return merge(stored, pending);
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        List<Issue> pending = new ArrayList<>();
+        for (Issue is : pendingById.values()) {
+            if (ruleKey.equals(is.getRuleKey())) pending.add(is);
+        }
+        List<Issue> stored;
+        synchronized (delegate) {
+            stored = delegate.searchByRule(ruleKey);
+        }
+        return merge(stored, pending);
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return page(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        List<Issue> pending = new ArrayList<>();
+        for (Issue is : pendingById.values()) {
+            if (match.matches(is.getTags(), tags)) pending.add(is);
+        }
+        List<Issue> stored;
+        synchronized (delegate) {
+            stored = delegate.searchByTags(tags, match);
+        }
+        return merge(stored, pending);
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        Set<String> words = TextSearch.words(query);
+        List<Issue> pending = new ArrayList<>();
+        for (Issue is : pendingById.values()) {
+            if (TextSearch.matches(is.getMessage(), words)) pending.add(is);
+        }
+        List<Issue> stored;
+        synchronized (delegate) {
+            stored = delegate.searchMessage(query);
+        }
+        return merge(stored, pending);
+    }
+
+    @Override
+    public Issue getById(String id) throws Exception {
+        Issue pending = pendingById.get(id);
+        if (pending != null) return pending;
+        synchronized (delegate) {
+            return delegate.getById(id);
+        }
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return delegate.sizeOnDisk();
+    }
+
+    /**
+     * Stores what is still queued, then closes the wrapped repository. Issues queued while the writer stops are
+     * rejected: their futures fail with a {@link RejectedExecutionException}.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread t = writer;
+        if (t != null) {
+            LockSupport.unpark(t);
+            boolean interrupted = false;
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+        for (Pending p = queue.poll(); p != null; p = queue.poll()) reject(p);
+        synchronized (delegate) {
+            delegate.close();
+        }
+    }
+
+    public int queuedIssues() {
+        return capacity - room.availablePermits();
+    }
+
+    /** Number of {@code insertAll} calls made on the wrapped repository. */
+    public long commits() {
+        return commits.get();
+    }
+
+    public long failedCommits() {
+        return failedCommits.get();
+    }
+
+    private void checkSize(List<Issue> issues) {
+        if (closed) throw new RejectedExecutionException("Write-behind repository closed");
+        if (writer == null) throw new IllegalStateException("Write-behind repository not initialized");
+        if (issues.size() > capacity) {
+            throw new IllegalArgumentException(issues.size() + " issues do not fit a write-behind queue of " + capacity);
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(List<Issue> issues) {
+        // copied, since callers commonly reuse their batch list once insertAll returns
+        Pending p = new Pending(new ArrayList<>(issues));
+        for (Issue is : issues) pendingById.put(is.getId(), is);
+        queue.add(p);
+        // closed after the caller's check: the writer may be gone, so the issues are taken back unless someone else
+        // already took them, the writer to store them or close() to reject them
+        if (closed && queue.remove(p)) {
+            reject(p);
+            throw new RejectedExecutionException("Write-behind repository closed");
+        }
+        LockSupport.unpark(writer);
+        return p.done;
+    }
+
+    private void reject(Pending p) {
+        for (Issue is : p.issues) pendingById.remove(is.getId(), is);
+        room.release(p.issues.size());
+        p.done.completeExceptionally(new RejectedExecutionException("Write-behind repository closed"));
+    }
+
+    private void drain() {
+        List<Pending> group = new ArrayList<>();
+        List<Issue> issues = new ArrayList<>(groupCommitSize);
+        while (true) {
+            boolean stopping = closed;
+            long deadline = System.nanoTime() + maxDelayNanos;
+            // a submitted list is never split, so a group may exceed groupCommitSize by one list
+            while (issues.size() < groupCommitSize) {
+                Pending p = queue.poll();
+                if (p == null) {
+                    if (issues.isEmpty() && group.isEmpty()) break;
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0 || closed) break;
+                    LockSupport.parkNanos(this, left);
+                    continue;
+                }
+                group.add(p);
+                issues.addAll(p.issues);
+            }
+            if (group.isEmpty()) {
+                if (stopping) return;
+                LockSupport.park(this);
+                continue;
+            }
+            commit(group, issues);
+            group.clear();
+            issues = new ArrayList<>(groupCommitSize);
+        }
+    }
+
+    private void commit(List<Pending> group, List<Issue> issues) {
+        Throwable failure = null;
+        if (!issues.isEmpty()) {
+            try {
+                synchronized (delegate) {
+                    delegate.insertAll(issues);
+                }
+                commits.incrementAndGet();
+            } catch (Exception | Error e) {
+                failedCommits.incrementAndGet();
+                failure = e;
+            }
+        }
+        for (Issue is : issues) pendingById.remove(is.getId(), is);
+        room.release(issues.size());
+        for (Pending p : group) {
+            if (failure == null) p.done.complete(null);
+            else p.done.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Page of the store merged with the pending issues after the same key. The store is asked for one issue more than
+     * the page, so that a next page is known whichever side its issues come from.
+     */
+    private Page page(String ruleKey, int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        List<Issue> pending = new ArrayList<>();
+        for (Issue is : pendingById.values()) {
+            if (ruleKey != null && !ruleKey.equals(is.getRuleKey())) continue;
+            if (afterId == null || is.getId().compareTo(afterId) > 0) pending.add(is);
+        }
+        Page stored;
+        synchronized (delegate) {
+            stored = ruleKey == null ? delegate.readAll(pageSize + 1, token) : delegate.searchByRule(ruleKey, pageSize + 1, token);
+        }
+        List<Issue> merged = merge(stored.getIssues(), pending);
+        merged.sort(Page.ID_ORDER);
+        return Page.of(merged, pageSize, ruleKey);
+    }
+
+    private static List<Issue> merge(List<Issue> stored, List<Issue> pending) {
+        if (pending.isEmpty()) return stored;
+        Map<String, Issue> byId = new LinkedHashMap<>();
+        for (Issue is : stored) byId.put(is.getId(), is);
+        for (Issue is : pending) byId.put(is.getId(), is);
+        return new ArrayList<>(byId.values());
+    }
+
+    private static final class Pending {
+        final List<Issue> issues;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Pending(List<Issue> issues) {
+            this.issues = issues;
+        }
+    }
+}
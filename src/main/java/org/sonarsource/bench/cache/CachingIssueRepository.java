@@ -0,0 +1,137 @@
+package org.sonarsource.bench.cache;
+
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.TagMatch;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decorator serving {@code getById} from an {@link IssueCache}: issues are cached when inserted and when read from
+ * the store on a miss. Searches and scans go to the store and do not fill the cache, so that one large result does
+ * not evict the hot issues.
+ */
+public class CachingIssueRepository implements IssueRepository {
+    private final IssueRepository delegate;
+    private final IssueCache cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingIssueRepository(IssueRepository delegate, IssueCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+    }
+
+    @Override
+    public void insertAll(List<Issue> issues) throws Exception {
+        delegate.insertAll(issues);
+        for (Issue is : issues) cache.put(is);
+    }
+
+    /** The deleted issues are not known one by one, so the whole cache is dropped. */
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        long deleted = delegate.deleteOlderThan(epochMillis);
+        if (deleted > 0) cache.clear();
+        return deleted;
+    }
+
+    @Override
+    public void compact() throws Exception {
+        delegate.compact();
+    }
+
+    @Override
+    public Issue getById(String id) throws Exception {
+        Issue cached = cache.get(id);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+        Issue stored = delegate.getById(id);
+        if (stored != null) cache.put(stored);
+        return stored;
+    }
+
+    @Override
+    public List<Issue> readAll() throws Exception {
+        return delegate.readAll();
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return delegate.readAll(pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        return delegate.searchByRule(ruleKey);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return delegate.searchByRule(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        return delegate.searchByTags(tags, match);
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        return delegate.searchMessage(query);
+    }
+
+    @Override
+    public Map<String, Long> countBy(IssueField field) throws Exception {
+        return delegate.countBy(field);
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        return delegate.countBy(row, column);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return delegate.sizeOnDisk();
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            cache.clear();
+        }
+    }
+
+    public IssueCache cache() {
+        return cache;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,48 @@
+package org.sonarsource.bench.cache;
+
+import org.sonarsource.bench.model.Issue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Issues kept as objects on the heap, up to a number of entries, evicting the oldest insertion first like the arena
+ * recycling of {@link OffHeapIssueCache}. It is the baseline the off-heap cache is measured against.
+ */
+public class HeapIssueCache implements IssueCache {
+    private final Map<String, Issue> issues;
+
+    public HeapIssueCache(int maxEntries) {
+        this.issues = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Issue> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Issue get(String id) {
+        return issues.get(id);
+    }
+
+    @Override
+    public synchronized void put(Issue issue) {
+        issues.put(issue.getId(), issue);
+    }
+
+    @Override
+    public synchronized int size() {
+        return issues.size();
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0L;
+    }
+
+    @Override
+    public synchronized void clear() {
+        issues.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package org.sonarsource.bench.cache;
+
+import org.sonarsource.bench.model.Issue;
+
+/** Bounded id to issue cache in front of a store, see {@link CachingIssueRepository}. */
+public interface IssueCache {
+    /** The cached issue, or null; may return a copy. */
+    Issue get(String id);
+
+    /** Caches the issue, replacing the one with the same id; may evict others to make room. */
+    void put(Issue issue);
+
+    /** Number of issues currently held. */
+    int size();
+
+    /** Memory held outside the Java heap, in bytes. */
+    long offHeapBytes();
+
+    void clear();
+}
@@ -0,0 +1,217 @@
+package org.sonarsource.bench.cache;
+
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Issues kept as {@link IssueCodec} bytes in direct memory, so that the heap only holds the index and the GC never
+ * traces the cached object graphs. Memory is a ring of fixed-size arenas allocated up front with
+ * {@link ByteBuffer#allocateDirect}: records are appended to the current arena and, when it is full, the next one is
+ * recycled whole, which evicts everything it held at once. An issue is decoded again on every read.
+ * <p>
+ * The index is an open-addressing table of id hashes and packed record locations (arena, arena generation, offset) in
+ * two primitive arrays. Recycling an arena bumps its generation, which makes its entries stale without touching the
+ * table; lookups skip them, inserts reuse their slots, and a rehash drops them. Records keep their id bytes, so that
+ * a hash collision is told apart from a hit.
+ * <p>
+ * Direct memory counts against {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size. Methods are
+ * synchronized.
+ */
+public class OffHeapIssueCache implements IssueCache {
+    /** Record header: record length, then id length, both ints. */
+    private static final int HEADER = 8;
+    private static final int MAX_ARENAS = 256;
+    private static final int GENERATION_MASK = 0xFFFFFF;
+
+    private final ByteBuffer[] arenas;
+    private final int arenaBytes;
+    private final int[] generations;
+    private final int[] liveInArena;
+    private int current;
+    private int position;
+    private long recycles;
+
+    // hash 0 marks an empty slot
+    private int[] hashes;
+    private long[] locations;
+    private int usedSlots;
+    private int size;
+
+    public OffHeapIssueCache(int arenaCount, int arenaBytes) {
+        if (arenaCount < 1 || arenaCount > MAX_ARENAS) throw new IllegalArgumentException("1 to " + MAX_ARENAS + " arenas: " + arenaCount);
+        if (arenaBytes <= HEADER) throw new IllegalArgumentException("Arena too small: " + arenaBytes);
+        this.arenas = new ByteBuffer[arenaCount];
+        for (int i = 0; i < arenaCount; i++) arenas[i] = ByteBuffer.allocateDirect(arenaBytes);
+        this.arenaBytes = arenaBytes;
+        this.generations = new int[arenaCount];
+        this.liveInArena = new int[arenaCount];
+        this.hashes = new int[1024];
+        this.locations = new long[1024];
+    }
+
+    @Override
+    public synchronized Issue get(String id) {
+        int h = hash(id);
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int mask = hashes.length - 1;
+        for (int i = h & mask; hashes[i] != 0; i = (i + 1) & mask) {
+            long location = locations[i];
+            if (hashes[i] == h && isLive(location) && hasId(location, key)) {
+                ByteBuffer record = arenas[arenaOf(location)].duplicate();
+                int offset = offsetOf(location);
+                record.limit(offset + record.getInt(offset));
+                record.position(offset + HEADER + key.length);
+                return IssueCodec.decode(record);
+            }
+        }
+        return null;
+    }
+
+    /** Issues whose record does not fit in one arena are not cached. */
+    @Override
+    public synchronized void put(Issue issue) {
+        String id = issue.getId();
+        append(id, id.getBytes(StandardCharsets.UTF_8), ByteBuffer.wrap(IssueCodec.encode(issue)));
+    }
+
+    /**
+     * Caches an issue already encoded with {@link IssueCodec}, e.g. a snapshot record, without decoding it: the id is
+     * read from the encoded bytes, which are copied as they are. The buffer's position is left unchanged.
+     */
+    public synchronized void putEncoded(ByteBuffer body) {
+        int idLength = body.getInt(body.position());
+        if (idLength < 0) throw new IllegalArgumentException("Issue without id");
+        byte[] key = new byte[idLength];
+        body.get(body.position() + 4, key);
+        append(new String(key, StandardCharsets.UTF_8), key, body.duplicate());
+    }
+
+    private void append(String id, byte[] key, ByteBuffer body) {
+        int length = HEADER + key.length + body.remaining();
+        if (length > arenaBytes) return;
+        if (position + length > arenaBytes) recycleNext();
+        ByteBuffer arena = arenas[current];
+        arena.putInt(position, length);
+        arena.putInt(position + 4, key.length);
+        arena.put(position + HEADER, key);
+        arena.put(position + HEADER + key.length, body, body.position(), body.remaining());
+        long location = ((long) current << 56) | ((long) generations[current] << 32) | position;
+        position += length;
+        index(hash(id), key, location);
+    }
+
+    @Override
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return (long) arenas.length * arenaBytes;
+    }
+
+    /** Number of arenas recycled so far, each one evicting what it held. */
+    public synchronized long recycles() {
+        return recycles;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int a = 0; a < arenas.length; a++) {
+            generations[a] = (generations[a] + 1) & GENERATION_MASK;
+            liveInArena[a] = 0;
+        }
+        current = 0;
+        position = 0;
+        hashes = new int[1024];
+        locations = new long[1024];
+        usedSlots = 0;
+        size = 0;
+    }
+
+    private void index(int h, byte[] key, long location) {
+        int mask = hashes.length - 1;
+        int reusable = -1;
+        int slot;
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            if (hashes[i] == 0) {
+                if (reusable < 0) usedSlots++;
+                slot = reusable < 0 ? i : reusable;
+                break;
+            }
+            if (!isLive(locations[i])) {
+                if (reusable < 0) reusable = i;
+            } else if (hashes[i] == h && hasId(locations[i], key)) {
+                // replaced: the former record stays in its arena until recycled
+                liveInArena[arenaOf(locations[i])]--;
+                size--;
+                slot = i;
+                break;
+            }
+        }
+        hashes[slot] = h;
+        locations[slot] = location;
+        liveInArena[arenaOf(location)]++;
+        size++;
+        if (usedSlots * 2 > hashes.length) rehash();
+    }
+
+    /** Rebuilds the table with live entries only, sized for four slots per entry. */
+    private void rehash() {
+        int capacity = 1024;
+        while (capacity < size * 4) capacity <<= 1;
+        int[] oldHashes = hashes;
+        long[] oldLocations = locations;
+        hashes = new int[capacity];
+        locations = new long[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldHashes.length; j++) {
+            if (oldHashes[j] == 0 || !isLive(oldLocations[j])) continue;
+            int i = oldHashes[j] & mask;
+            while (hashes[i] != 0) i = (i + 1) & mask;
+            hashes[i] = oldHashes[j];
+            locations[i] = oldLocations[j];
+        }
+        usedSlots = size;
+    }
+
+    private void recycleNext() {
+        current = (current + 1) % arenas.length;
+        position = 0;
+        generations[current] = (generations[current] + 1) & GENERATION_MASK;
+        size -= liveInArena[current];
+        liveInArena[current] = 0;
+        recycles++;
+    }
+
+    private boolean isLive(long location) {
+        return generations[arenaOf(location)] == (int) ((location >>> 32) & GENERATION_MASK);
+    }
+
+    private boolean hasId(long location, byte[] key) {
+        ByteBuffer arena = arenas[arenaOf(location)];
+        int offset = offsetOf(location);
+        if (arena.getInt(offset + 4) != key.length) return false;
+        for (int k = 0; k < key.length; k++) {
+            if (arena.get(offset + HEADER + k) != key[k]) return false;
+        }
+        return true;
+    }
+
+    private static int arenaOf(long location) {
+        return (int) (location >>> 56);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static int hash(String id) {
+        int h = id.hashCode() * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -0,0 +1,160 @@
+package org.sonarsource.bench.db;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Compressed bitmap of issue ordinals per key, a tag or a message word, kept in any {@code Map<String, byte[]>}, e.g. a
+ * MapDB map. Bitmaps are cut in chunks of 65536 ordinals stored under {@code <key>#<chunk>}; a chunk holding fewer
+ * than 4096 ordinals is
+ * stored as their sorted 16-bit offsets, a denser one as a plain 8 KB bitmap, which is the Roaring bitmap layout
+ * without its run containers. Appending ordinals in increasing order only rewrites the last chunk of each key.
+ * <p>
+ * Chunks changed by {@link #add} and {@link #remove} are kept decoded until {@link #flush()} writes them back; a chunk
+ * left without ordinals is removed from the map.
+ */
+final class BitmapIndex {
+    static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int WORDS = CHUNK_SIZE / 64;
+    private static final int ARRAY_MAX = 4096;
+    private static final byte ARRAY = 'A';
+    private static final byte BITMAP = 'B';
+
+    private final Map<String, byte[]> store;
+    private final Map<String, long[]> dirty = new HashMap<>();
+
+    BitmapIndex(Map<String, byte[]> store) {
+        this.store = store;
+    }
+
+    void add(String key, long ordinal) {
+        int bit = (int) (ordinal & (CHUNK_SIZE - 1));
+        dirtyChunk(key, ordinal)[bit >>> 6] |= 1L << bit;
+    }
+
+    void remove(String key, long ordinal) {
+        int bit = (int) (ordinal & (CHUNK_SIZE - 1));
+        dirtyChunk(key, ordinal)[bit >>> 6] &= ~(1L << bit);
+    }
+
+    /** Drops every bitmap, stored or not yet flushed. */
+    void clear() {
+        dirty.clear();
+        store.clear();
+    }
+
+    private long[] dirtyChunk(String key, long ordinal) {
+        String chunkKey = key(key, ordinal >>> CHUNK_BITS);
+        long[] words = dirty.get(chunkKey);
+        if (words == null) {
+            byte[] stored = store.get(chunkKey);
+            words = stored == null ? new long[WORDS] : decode(stored);
+            dirty.put(chunkKey, words);
+        }
+        return words;
+    }
+
+    void flush() {
+        for (Map.Entry<String, long[]> e : dirty.entrySet()) {
+            if (isEmpty(e.getValue())) store.remove(e.getKey());
+            else store.put(e.getKey(), encode(e.getValue()));
+        }
+        dirty.clear();
+    }
+
+    private static boolean isEmpty(long[] words) {
+        for (long w : words) {
+            if (w != 0) return false;
+        }
+        return true;
+    }
+
+    /** Passes, in increasing order, the ordinals below {@code limit} having all or any of the keys. */
+    void forEach(Collection<String> keys, TagMatch match, long limit, LongConsumer out) {
+        long chunks = (limit + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        for (long chunk = 0; chunk < chunks; chunk++) {
+            List<long[]> parts = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                long[] words = chunk(key, chunk);
+                if (words != null) {
+                    parts.add(words);
+                } else if (match == TagMatch.ALL) {
+                    parts = null;
+                    break;
+                }
+            }
+            if (parts == null || parts.isEmpty()) continue;
+            long base = chunk << CHUNK_BITS;
+            for (int w = 0; w < WORDS; w++) {
+                long bits = parts.get(0)[w];
+                for (int p = 1; p < parts.size(); p++) {
+                    bits = match == TagMatch.ALL ? bits & parts.get(p)[w] : bits | parts.get(p)[w];
+                }
+                while (bits != 0) {
+                    out.accept(base + w * 64L + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    private long[] chunk(String key, long chunk) {
+        String chunkKey = key(key, chunk);
+        long[] words = dirty.get(chunkKey);
+        if (words != null) return words;
+        byte[] stored = store.get(chunkKey);
+        return stored == null ? null : decode(stored);
+    }
+
+    private static String key(String key, long chunk) {
+        return key + '#' + chunk;
+    }
+
+    static byte[] encode(long[] words) {
+        int cardinality = 0;
+        for (long w : words) cardinality += Long.bitCount(w);
+        if (cardinality >= ARRAY_MAX) {
+            byte[] out = new byte[1 + WORDS * 8];
+            out[0] = BITMAP;
+            for (int w = 0; w < WORDS; w++) {
+                for (int b = 0; b < 8; b++) out[1 + w * 8 + b] = (byte) (words[w] >>> (8 * b));
+            }
+            return out;
+        }
+        byte[] out = new byte[1 + cardinality * 2];
+        out[0] = ARRAY;
+        int pos = 1;
+        for (int w = 0; w < WORDS; w++) {
+            long bits = words[w];
+            while (bits != 0) {
+                int offset = w * 64 + Long.numberOfTrailingZeros(bits);
+                out[pos++] = (byte) (offset >>> 8);
+                out[pos++] = (byte) offset;
+                bits &= bits - 1;
+            }
+        }
+        return out;
+    }
+
+    static long[] decode(byte[] in) {
+        long[] words = new long[WORDS];
+        if (in[0] == BITMAP) {
+            for (int w = 0; w < WORDS; w++) {
+                long v = 0;
+                for (int b = 0; b < 8; b++) v |= (in[1 + w * 8 + b] & 0xFFL) << (8 * b);
+                words[w] = v;
+            }
+        } else {
+            for (int pos = 1; pos + 1 < in.length; pos += 2) {
+                int offset = ((in[pos] & 0xFF) << 8) | (in[pos + 1] & 0xFF);
+                words[offset >>> 6] |= 1L << offset;
+            }
+        }
+        return words;
+    }
+}
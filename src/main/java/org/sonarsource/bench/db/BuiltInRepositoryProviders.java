@@ -0,0 +1,99 @@
+package org.sonarsource.bench.db;
+
+/**
+ * Providers for the backends shipped with the benchmark, registered in
+ * {@code META-INF/services/org.sonarsource.bench.db.IssueRepositoryProvider}.
+ */
+public final class BuiltInRepositoryProviders {
+    private BuiltInRepositoryProviders() {
+    }
+
+    public static class H2 implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "h2"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new H2IssueRepository(profile) : new H2IssueRepository(path, profile);
+        }
+
+        @Override
+        public boolean supportsProfiles() { return true; }
+    }
+
+    public static class Hsqldb implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "hsqldb"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new HsqldbIssueRepository(profile) : new HsqldbIssueRepository(path, profile);
+        }
+
+        @Override
+        public boolean supportsProfiles() { return true; }
+    }
+
+    public static class Derby implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "derby"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new DerbyIssueRepository(profile) : new DerbyIssueRepository(path, profile);
+        }
+
+        @Override
+        public boolean supportsProfiles() { return true; }
+    }
+
+    public static class Sqlite implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "sqlite"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new SqliteIssueRepository(profile) : new SqliteIssueRepository(path, profile);
+        }
+
+        @Override
+        public boolean supportsProfiles() { return true; }
+    }
+
+    public static class Nitrite implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "nitrite"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new NitriteIssueRepository() : new NitriteIssueRepository(path);
+        }
+    }
+
+    public static class MvStore implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "mvstore"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new MvStoreIssueRepository(profile) : new MvStoreIssueRepository(path, profile);
+        }
+
+        @Override
+        public boolean supportsProfiles() { return true; }
+    }
+
+    public static class MapDb implements IssueRepositoryProvider {
+        @Override
+        public String id() { return "mapdb"; }
+
+        @Override
+        public IssueRepository create(String path, TuningProfile profile) {
+            return path == null ? new MapDbIssueRepository() : new MapDbIssueRepository(path);
+        }
+
+        /** Java-serialized values make MapDB much slower than the others; run it with an explicit {@code db=mapdb}. */
+        @Override
+        public boolean enabledByDefault() { return false; }
+    }
+}
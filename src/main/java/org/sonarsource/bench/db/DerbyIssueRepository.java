@@ -1,5 +1,6 @@
 package org.sonarsource.bench.db;
 
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
@@ -10,11 +11,37 @@ import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class DerbyIssueRepository implements IssueRepository {
+    private static final String PAGE_CACHE_SIZE = "derby.storage.pageCacheSize";
+    private static final String DURABILITY = "derby.system.durability";
+
     private Connection conn;
+    private boolean textIndex;
     private String dbDir;
+    private TuningProfile profile = TuningProfile.defaultProfile();
+
+    public DerbyIssueRepository() {
+    }
+
+    public DerbyIssueRepository(String dbDir) {
+        this.dbDir = dbDir;
+    }
+
+    public DerbyIssueRepository(TuningProfile profile) {
+        this.profile = profile;
+    }
+
+    public DerbyIssueRepository(String dbDir, TuningProfile profile) {
+        this(dbDir);
+        this.profile = profile;
+    }
 
     @Override
     public String name() { return "Derby"; }
@@ -22,35 +49,77 @@ public class DerbyIssueRepository implements IssueRepository {
     @Override
     public void init() throws Exception {
         // Use file-based Derby; pass a non-existent directory path and let Derby create it
-        File tmp = File.createTempFile("derby-issues", "");
-        String path = tmp.getAbsolutePath();
-        if (tmp.exists()) tmp.delete();
-        dbDir = path;
-        conn = DriverManager.getConnection("jdbc:derby:" + dbDir + ";create=true");
+        if (dbDir == null) {
+            File tmp = File.createTempFile("derby-issues", "");
+            String path = tmp.getAbsolutePath();
+            if (tmp.exists()) tmp.delete();
+            dbDir = path;
+        }
+        textIndex = TextSearch.indexEnabled();
+        conn = open();
+        String pageCacheSize = pageCacheSize();
+        if (!Objects.equals(pageCacheSize, databaseProperty(PAGE_CACHE_SIZE))) {
+            // the page cache is sized when the database boots, so the new size needs a reboot
+            try (CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_SET_DATABASE_PROPERTY(?, ?)")) {
+                cs.setString(1, PAGE_CACHE_SIZE);
+                cs.setString(2, pageCacheSize);
+                cs.execute();
+            }
+            conn.close();
+            shutdown();
+            conn = open();
+        }
+        // Derby has no CREATE TABLE IF NOT EXISTS; keep existing tables so a store can be reopened
         try (Statement st = conn.createStatement()) {
-            try {
-                st.executeUpdate("DROP TABLE issues");
-            } catch (SQLException ignored) {
+            if (!tableExists("ISSUES")) {
+                st.execute("CREATE TABLE issues (" +
+                        "id VARCHAR(64) PRIMARY KEY, " +
+                        "ruleKey VARCHAR(64), " +
+                        "severity VARCHAR(16), " +
+                        "message VARCHAR(1024), " +
+                        "filePath VARCHAR(512), " +
+                        "line INT, " +
+                        "creationDate BIGINT, " +
+                        "assignee VARCHAR(128), " +
+                        "tags VARCHAR(512), " +
+                        "details CLOB)");
+                st.execute("CREATE INDEX idx_rule ON issues(ruleKey, id)");
+            }
+            if (!indexExists("ISSUES", "IDX_CREATED")) st.execute("CREATE INDEX idx_created ON issues(creationDate)");
+            if (!tableExists("ISSUE_TAG")) st.execute("CREATE TABLE " + JdbcUtils.CREATE_TAG_TABLE);
+            // the word table only exists while the index is on: inserts made without it would leave it stale
+            boolean wordTable = tableExists("ISSUE_WORD");
+            if (textIndex && !wordTable) {
+                st.execute("CREATE TABLE " + JdbcUtils.CREATE_WORD_TABLE);
+                JdbcUtils.fillWordTable(conn);
+            } else if (!textIndex && wordTable) {
+                st.execute("DROP TABLE issue_word");
             }
-            st.execute("CREATE TABLE issues (" +
-                    "id VARCHAR(64) PRIMARY KEY, " +
-                    "ruleKey VARCHAR(64), " +
-                    "severity VARCHAR(16), " +
-                    "message VARCHAR(1024), " +
-                    "filePath VARCHAR(512), " +
-                    "line INT, " +
-                    "creationDate BIGINT, " +
-                    "assignee VARCHAR(128), " +
-                    "tags VARCHAR(512), " +
-                    "details CLOB)");
-            st.execute("CREATE INDEX idx_rule ON issues(ruleKey)");
+        }
+    }
+
+    private boolean tableExists(String name) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, name, null)) {
+            return rs.next();
+        }
+    }
+
+    private boolean indexExists(String table, String name) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getIndexInfo(null, null, table, false, true)) {
+            while (rs.next()) {
+                if (name.equals(rs.getString("INDEX_NAME"))) return true;
+            }
+            return false;
         }
     }
 
     @Override
     public void insertAll(List<Issue> issues) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "insertAll");
         String sql = "INSERT INTO issues(id, ruleKey, severity, message, filePath, line, creationDate, assignee, tags, details) VALUES(?,?,?,?,?,?,?,?,?,?)";
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             PreparedStatement tagPs = conn.prepareStatement(JdbcUtils.INSERT_TAG);
+             PreparedStatement wordPs = textIndex ? conn.prepareStatement(JdbcUtils.INSERT_WORD) : null) {
             int i = 0;
             for (Issue is : issues) {
                 ps.setString(1, is.getId());
@@ -62,44 +131,228 @@ public class DerbyIssueRepository implements IssueRepository {
                 ps.setLong(7, is.getCreationDateEpochMillis());
                 ps.setString(8, is.getAssignee());
                 ps.setString(9, String.join(",", is.getTags()));
-                ps.setString(10, encodeDetails(is));
+                long encodeStart = timer.start();
+                String details = encodeDetails(is);
+                timer.encoded(encodeStart, details);
+                ps.setString(10, details);
                 ps.addBatch();
-                if (++i % 1000 == 0) ps.executeBatch();
+                JdbcUtils.addTagRows(tagPs, is);
+                if (wordPs != null) JdbcUtils.addWordRows(wordPs, is);
+                if (++i % 1000 == 0) {
+                    long executeStart = timer.start();
+                    ps.executeBatch();
+                    tagPs.executeBatch();
+                    if (wordPs != null) wordPs.executeBatch();
+                    timer.executed(executeStart);
+                }
             }
+            long executeStart = timer.start();
             ps.executeBatch();
+            tagPs.executeBatch();
+            if (wordPs != null) wordPs.executeBatch();
+            timer.executed(executeStart);
         }
+        timer.end(issues.size());
     }
 
     @Override
     public List<Issue> readAll() throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "readAll");
         List<Issue> out = new ArrayList<>();
-        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
-            while (rs.next()) out.add(fromRow(rs));
+        try (Statement st = conn.createStatement()) {
+            long executeStart = timer.start();
+            try (ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
         }
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public List<Issue> searchByRule(String ruleKey) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
         List<Issue> out = new ArrayList<>();
         try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE ruleKey = ?")) {
             ps.setString(1, ruleKey);
+            long executeStart = timer.start();
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(fromRow(rs));
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
             }
         }
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public Issue getById(String id) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "getById");
+        List<Issue> out = new ArrayList<>(1);
         try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE id = ?")) {
             ps.setString(1, id);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out.isEmpty() ? null : out.get(0);
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return page(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        Set<String> distinct = JdbcUtils.distinct(tags);
+        if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+        OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+        List<Issue> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.tagSearchSql(distinct.size(), match))) {
+            int i = 0;
+            for (String tag : distinct) ps.setString(++i, tag);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Looks the words up in issue_word, the built-in inverted index filled by insertAll. */
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        Set<String> words = TextSearch.words(query);
+        if (!textIndex || words.isEmpty()) return IssueRepository.super.searchMessage(query);
+        OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+        List<Issue> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.wordSearchSql(words.size()))) {
+            int i = 0;
+            for (String word : words) ps.setString(++i, word);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out;
+    }
+
+    /**
+     * Connects, booting the database if it is not. durability=test skips all log syncing; Derby only has it as a
+     * system property, read when a database boots, so it is set for the connection that boots this store and the
+     * previous value restored right after, leaving the rest of the JVM as it was.
+     */
+    private Connection open() throws SQLException {
+        String previous = System.getProperty(DURABILITY);
+        switch (profile) {
+            case DEFAULT:
+                break;
+            case FAST_UNSAFE:
+                System.setProperty(DURABILITY, "test");
+                break;
+            default:
+                System.clearProperty(DURABILITY);
+                break;
+        }
+        try {
+            return DriverManager.getConnection("jdbc:derby:" + dbDir + ";create=true");
+        } finally {
+            if (previous == null) System.clearProperty(DURABILITY);
+            else System.setProperty(DURABILITY, previous);
+        }
+    }
+
+    /**
+     * Page cache size of the profile, in pages (4 KB by default), or null for the engine default. It is stored as a
+     * database property, which the database reads when it boots, unlike the system property read by the first
+     * database booted in the JVM.
+     */
+    private String pageCacheSize() {
+        switch (profile) {
+            case SAFE:
+                return "1000";
+            case BALANCED:
+                return "4000";
+            case FAST_UNSAFE:
+                return "16000";
+            case DEFAULT:
+            default:
+                return null;
+        }
+    }
+
+    private String databaseProperty(String key) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement("VALUES SYSCS_UTIL.SYSCS_GET_DATABASE_PROPERTY(?)")) {
+            ps.setString(1, key);
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return fromRow(rs);
+                return rs.next() ? rs.getString(1) : null;
             }
         }
-        return null;
+    }
+
+    /** Closing the last connection leaves the database booted; shutting it down lets it boot again cold. */
+    private void shutdown() {
+        try {
+            DriverManager.getConnection("jdbc:derby:" + dbDir + ";shutdown=true");
+        } catch (SQLException ignored) {
+            // Derby reports a successful shutdown as SQLState 08006
+        }
+    }
+
+    @Override
+    public Map<String, Long> countBy(IssueField field) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "countBy");
+        Map<String, Long> out = JdbcUtils.countBy(conn, field, timer);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+        Map<String, Map<String, Long>> out = JdbcUtils.countBy(conn, row, column, timer);
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Keyset page of the issues of {@code ruleKey}, or of all issues when null. */
+    private Page page(String ruleKey, int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+        List<Issue> out = new ArrayList<>(pageSize + 1);
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.pageSql(ruleKey != null, afterId != null, "FETCH FIRST ? ROWS ONLY"))) {
+            JdbcUtils.bindPage(ps, ruleKey, afterId, pageSize);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return Page.of(out, pageSize, ruleKey);
+    }
+
+    private void decodeAll(ResultSet rs, List<Issue> out, OperationTimer timer) throws SQLException {
+        while (rs.next()) {
+            long decodeStart = timer.start();
+            out.add(fromRow(rs));
+            timer.decoded(decodeStart);
+        }
     }
 
     private Issue fromRow(ResultSet rs) throws SQLException {
@@ -228,8 +481,80 @@ public class DerbyIssueRepository implements IssueRepository {
 
     private Integer parseInt(String s) { return (s == null || s.isEmpty()) ? null : Integer.parseInt(s); }
 
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+        long deleted = JdbcUtils.deleteOlderThan(conn, textIndex, epochMillis, timer);
+        timer.end(deleted);
+        return deleted;
+    }
+
+    /** Derby never shrinks its files on its own: SYSCS_COMPRESS_TABLE rebuilds each table and its indexes. */
+    @Override
+    public void compact() throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "compact");
+        long executeStart = timer.start();
+        compressTable("ISSUES");
+        compressTable("ISSUE_TAG");
+        if (textIndex) compressTable("ISSUE_WORD");
+        timer.executed(executeStart);
+        timer.end(0);
+    }
+
+    /** Sequential mode rebuilds one index at a time, slower but with less memory. */
+    private void compressTable(String table) throws SQLException {
+        try (CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_COMPRESS_TABLE(?, ?, 1)")) {
+            cs.setString(1, conn.getSchema());
+            cs.setString(2, table);
+            cs.execute();
+        }
+    }
+
+    /**
+     * Writes the issues to delimited files, then reads them with SYSCS_UTIL.SYSCS_IMPORT_TABLE, one call per table,
+     * with the indexes created after the load. Into an empty table, the import is a bulk insert, which Derby does not
+     * log row by row. With {@link NativeImport#PROPERTY} false, loads with JDBC batches instead.
+     */
+    @Override
+    public long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+        if (!NativeImport.enabled()) return JdbcUtils.loadInTransactions(conn, this, issues, batchSize);
+        OperationTimer timer = OperationTimer.begin(name(), "bulkLoad");
+        try (NativeImport files = NativeImport.create(new File(dbDir).getAbsoluteFile().getParentFile(), "derby-import", textIndex, true)) {
+            long encodeStart = timer.start();
+            while (issues.hasNext()) {
+                Issue is = issues.next();
+                files.add(is, encodeDetails(is));
+            }
+            files.finish();
+            timer.encoded(encodeStart, files.bytes());
+            long executeStart = timer.start();
+            JdbcUtils.loadWithoutIndexes(conn, textIndex, () -> {
+                importTable("ISSUES", files.issues());
+                importTable("ISSUE_TAG", files.tags());
+                if (textIndex) importTable("ISSUE_WORD", files.words());
+            });
+            timer.executed(executeStart);
+            timer.end(files.rows());
+            return files.rows();
+        }
+    }
+
+    private void importTable(String table, File file) throws SQLException {
+        try (CallableStatement cs = conn.prepareCall("CALL SYSCS_UTIL.SYSCS_IMPORT_TABLE(NULL, ?, ?, ',', '\"', 'UTF-8', 0)")) {
+            cs.setString(1, table);
+            cs.setString(2, file.getAbsolutePath());
+            cs.execute();
+        }
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return dbDir == null ? -1L : StoreFiles.sizeOf(dbDir);
+    }
+
     @Override
     public void close() {
         try { if (conn != null) conn.close(); } catch (Exception ignored) { }
+        if (dbDir != null) shutdown();
     }
 }
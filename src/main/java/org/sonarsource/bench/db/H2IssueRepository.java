@@ -1,5 +1,6 @@
 package org.sonarsource.bench.db;
 
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
@@ -10,13 +11,20 @@ import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 
 public class H2IssueRepository implements IssueRepository {
   private Connection conn;
+  private boolean textIndex;
   private String dbPath;
+  private String url;
   private boolean autoCreatedPath = true;
+  private TuningProfile profile = TuningProfile.defaultProfile();
 
   public H2IssueRepository() {
   }
@@ -26,6 +34,15 @@ public class H2IssueRepository implements IssueRepository {
     this.autoCreatedPath = false;
   }
 
+  public H2IssueRepository(TuningProfile profile) {
+    this.profile = profile;
+  }
+
+  public H2IssueRepository(String dbPath, TuningProfile profile) {
+    this(dbPath);
+    this.profile = profile;
+  }
+
   @Override
   public String name() {
     return "H2";
@@ -41,7 +58,9 @@ public class H2IssueRepository implements IssueRepository {
       dbPath = path;
       autoCreatedPath = true;
     }
-    String url = "jdbc:h2:file:" + dbPath;
+    // A path with its own file system scheme (e.g. faulty:/tmp/x) is resolved by H2's FilePath SPI as-is
+    boolean hasScheme = dbPath.matches("^[a-zA-Z]{2,}:.*");
+    url = "jdbc:h2:" + (hasScheme ? "" : "file:") + dbPath + profileSettings();
     conn = DriverManager.getConnection(url);
     try (Statement st = conn.createStatement()) {
       st.execute("CREATE TABLE IF NOT EXISTS issues (" +
@@ -56,14 +75,28 @@ public class H2IssueRepository implements IssueRepository {
         "tags VARCHAR(512), " +
         "details CLOB)"
       );
-      st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey)");
+      st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey, id)");
+      st.execute("CREATE INDEX IF NOT EXISTS idx_created ON issues(creationDate)");
+      st.execute("CREATE TABLE IF NOT EXISTS " + JdbcUtils.CREATE_TAG_TABLE);
+      textIndex = TextSearch.indexEnabled();
+      if (textIndex) {
+        // H2's native FullText: a word index in the FT schema, kept up to date by a trigger on issues
+        st.execute("CREATE ALIAS IF NOT EXISTS FT_INIT FOR 'org.h2.fulltext.FullText.init'");
+        st.execute("CALL FT_INIT()");
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM FT.INDEXES WHERE \"SCHEMA\" = 'PUBLIC' AND \"TABLE\" = 'ISSUES'")) {
+          rs.next();
+          if (rs.getInt(1) == 0) st.execute("CALL FT_CREATE_INDEX('PUBLIC', 'ISSUES', 'MESSAGE')");
+        }
+      }
     }
   }
 
   @Override
   public void insertAll(List<Issue> issues) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "insertAll");
     String sql = "INSERT INTO issues(id, ruleKey, severity, message, filePath, line, creationDate, assignee, tags, details) VALUES(?,?,?,?,?,?,?,?,?,?)";
-    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    try (PreparedStatement ps = conn.prepareStatement(sql);
+         PreparedStatement tagPs = conn.prepareStatement(JdbcUtils.INSERT_TAG)) {
       int i = 0;
       for (Issue is : issues) {
         ps.setString(1, is.getId());
@@ -76,46 +109,180 @@ public class H2IssueRepository implements IssueRepository {
         ps.setLong(7, is.getCreationDateEpochMillis());
         ps.setString(8, is.getAssignee());
         ps.setString(9, String.join(",", is.getTags()));
-        ps.setString(10, encodeDetails(is));
+        long encodeStart = timer.start();
+        String details = encodeDetails(is);
+        timer.encoded(encodeStart, details);
+        ps.setString(10, details);
         ps.addBatch();
+        JdbcUtils.addTagRows(tagPs, is);
         if (++i % 1000 == 0) {
+          long executeStart = timer.start();
           ps.executeBatch();
+          tagPs.executeBatch();
+          timer.executed(executeStart);
         }
       }
+      long executeStart = timer.start();
       ps.executeBatch();
+      tagPs.executeBatch();
+      timer.executed(executeStart);
     }
+    timer.end(issues.size());
   }
 
   @Override
   public List<Issue> readAll() throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "readAll");
     List<Issue> out = new ArrayList<>();
-    try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
-      while (rs.next()) out.add(fromRow(rs));
+    try (Statement st = conn.createStatement()) {
+      long executeStart = timer.start();
+      try (ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
     }
+    timer.end(out.size());
     return out;
   }
 
   @Override
   public List<Issue> searchByRule(String ruleKey) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
     List<Issue> out = new ArrayList<>();
     try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE ruleKey = ?")) {
       ps.setString(1, ruleKey);
+      long executeStart = timer.start();
       try (ResultSet rs = ps.executeQuery()) {
-        while (rs.next()) out.add(fromRow(rs));
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
       }
     }
+    timer.end(out.size());
     return out;
   }
 
   @Override
   public Issue getById(String id) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "getById");
+    List<Issue> out = new ArrayList<>(1);
     try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE id = ?")) {
       ps.setString(1, id);
+      long executeStart = timer.start();
       try (ResultSet rs = ps.executeQuery()) {
-        if (rs.next()) return fromRow(rs);
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
       }
     }
-    return null;
+    timer.end(out.size());
+    return out.isEmpty() ? null : out.get(0);
+  }
+
+  @Override
+  public Page readAll(int pageSize, String token) throws Exception {
+    return page(null, pageSize, token);
+  }
+
+  @Override
+  public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+    return page(ruleKey, pageSize, token);
+  }
+
+  @Override
+  public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+    Set<String> distinct = JdbcUtils.distinct(tags);
+    if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+    OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+    List<Issue> out = new ArrayList<>();
+    try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.tagSearchSql(distinct.size(), match))) {
+      int i = 0;
+      for (String tag : distinct) ps.setString(++i, tag);
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return out;
+  }
+
+  /** FT_SEARCH_DATA returns the rows having all the words, as primary keys. */
+  @Override
+  public List<Issue> searchMessage(String query) throws Exception {
+    Set<String> words = TextSearch.words(query);
+    if (!textIndex || words.isEmpty()) return IssueRepository.super.searchMessage(query);
+    OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+    List<Issue> out = new ArrayList<>();
+    try (PreparedStatement ps = conn.prepareStatement(
+      "SELECT i.* FROM FT_SEARCH_DATA(?, 0, 0) ft JOIN issues i ON i.id = ft.KEYS[1] WHERE ft.\"TABLE\" = 'ISSUES'")) {
+      ps.setString(1, String.join(" ", words));
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return out;
+  }
+
+  /**
+   * CACHE_SIZE is in KB; WRITE_DELAY is the MVStore auto-commit delay in ms (0 = sync on every commit).
+   */
+  private String profileSettings() {
+    switch (profile) {
+      case DEFAULT:
+        return "";
+      case SAFE:
+        return ";CACHE_SIZE=16384;WRITE_DELAY=0;COMPRESS=FALSE";
+      case FAST_UNSAFE:
+        return ";CACHE_SIZE=262144;WRITE_DELAY=10000;COMPRESS=FALSE";
+      case BALANCED:
+      default:
+        return ";CACHE_SIZE=65536;WRITE_DELAY=500;COMPRESS=TRUE";
+    }
+  }
+
+  @Override
+  public Map<String, Long> countBy(IssueField field) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "countBy");
+    Map<String, Long> out = JdbcUtils.countBy(conn, field, timer);
+    timer.end(out.size());
+    return out;
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+    Map<String, Map<String, Long>> out = JdbcUtils.countBy(conn, row, column, timer);
+    timer.end(out.size());
+    return out;
+  }
+
+  /** Keyset page of the issues of {@code ruleKey}, or of all issues when null. */
+  private Page page(String ruleKey, int pageSize, String token) throws Exception {
+    Page.checkSize(pageSize);
+    String afterId = Page.afterId(token, ruleKey);
+    OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+    List<Issue> out = new ArrayList<>(pageSize + 1);
+    try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.pageSql(ruleKey != null, afterId != null, "FETCH FIRST ? ROWS ONLY"))) {
+      JdbcUtils.bindPage(ps, ruleKey, afterId, pageSize);
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return Page.of(out, pageSize, ruleKey);
+  }
+
+  private void decodeAll(ResultSet rs, List<Issue> out, OperationTimer timer) throws SQLException {
+    while (rs.next()) {
+      long decodeStart = timer.start();
+      out.add(fromRow(rs));
+      timer.decoded(decodeStart);
+    }
   }
 
   private Issue fromRow(ResultSet rs) throws SQLException {
@@ -264,6 +431,39 @@ public class H2IssueRepository implements IssueRepository {
     return (s == null || s.isEmpty()) ? null : Integer.parseInt(s);
   }
 
+  /** The FullText trigger removes the words of the deleted messages. */
+  @Override
+  public long deleteOlderThan(long epochMillis) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+    long deleted = JdbcUtils.deleteOlderThan(conn, false, epochMillis, timer);
+    timer.end(deleted);
+    return deleted;
+  }
+
+  /** SHUTDOWN COMPACT rewrites the file while closing the database, which is then opened again. */
+  @Override
+  public void compact() throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "compact");
+    long executeStart = timer.start();
+    try (Statement st = conn.createStatement()) {
+      st.execute("SHUTDOWN COMPACT");
+    }
+    conn.close();
+    conn = DriverManager.getConnection(url);
+    timer.executed(executeStart);
+    timer.end(0);
+  }
+
+  @Override
+  public long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+    return JdbcUtils.loadInTransactions(conn, this, issues, batchSize);
+  }
+
+  @Override
+  public long sizeOnDisk() {
+    return dbPath == null ? -1L : StoreFiles.sizeOf(dbPath + ".mv.db");
+  }
+
   @Override
   public void close() {
     try {
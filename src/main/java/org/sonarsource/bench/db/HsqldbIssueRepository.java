@@ -1,5 +1,6 @@
 package org.sonarsource.bench.db;
 
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
@@ -10,11 +11,33 @@ import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class HsqldbIssueRepository implements IssueRepository {
     private Connection conn;
+    private boolean textIndex;
     private String dbPath;
+    private TuningProfile profile = TuningProfile.defaultProfile();
+
+    public HsqldbIssueRepository() {
+    }
+
+    public HsqldbIssueRepository(String dbPath) {
+        this.dbPath = dbPath;
+    }
+
+    public HsqldbIssueRepository(TuningProfile profile) {
+        this.profile = profile;
+    }
+
+    public HsqldbIssueRepository(String dbPath, TuningProfile profile) {
+        this(dbPath);
+        this.profile = profile;
+    }
 
     @Override
     public String name() { return "HSQLDB"; }
@@ -22,13 +45,16 @@ public class HsqldbIssueRepository implements IssueRepository {
     @Override
     public void init() throws Exception {
         // Use file-based HSQLDB to ensure on-disk persistence
-        File tmp = File.createTempFile("hsqldb-issues", ".db");
-        String path = tmp.getAbsolutePath();
-        if (tmp.exists()) tmp.delete();
-        dbPath = path;
-        conn = DriverManager.getConnection("jdbc:hsqldb:file:" + dbPath + ";shutdown=true");
+        if (dbPath == null) {
+            File tmp = File.createTempFile("hsqldb-issues", ".db");
+            String path = tmp.getAbsolutePath();
+            if (tmp.exists()) tmp.delete();
+            dbPath = path;
+        }
+        textIndex = TextSearch.indexEnabled();
+        conn = DriverManager.getConnection("jdbc:hsqldb:file:" + dbPath + ";shutdown=true" + profileSettings());
         try (Statement st = conn.createStatement()) {
-            st.execute("CREATE TABLE IF NOT EXISTS issues (" +
+            st.execute("CREATE " + tableType() + " TABLE IF NOT EXISTS issues (" +
                     "id VARCHAR(64) PRIMARY KEY, " +
                     "ruleKey VARCHAR(64), " +
                     "severity VARCHAR(16), " +
@@ -39,16 +65,36 @@ public class HsqldbIssueRepository implements IssueRepository {
                     "assignee VARCHAR(128), " +
                     "tags VARCHAR(512), " +
                     "details CLOB)");
-            st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey, id)");
+            st.execute("CREATE INDEX IF NOT EXISTS idx_created ON issues(creationDate)");
+            // same table type as issues, so that the indexes are paged alike
+            st.execute("CREATE " + tableType() + " TABLE IF NOT EXISTS " + JdbcUtils.CREATE_TAG_TABLE);
+            // the word table only exists while the index is on: inserts made without it would leave it stale
+            boolean wordTable = tableExists("ISSUE_WORD");
+            if (textIndex && !wordTable) {
+                st.execute("CREATE " + tableType() + " TABLE " + JdbcUtils.CREATE_WORD_TABLE);
+                JdbcUtils.fillWordTable(conn);
+            } else if (!textIndex && wordTable) {
+                st.execute("DROP TABLE issue_word");
+            }
+        }
+    }
+
+    private boolean tableExists(String name) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, name, null)) {
+            return rs.next();
         }
     }
 
     @Override
     public void insertAll(List<Issue> issues) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "insertAll");
         String sql = "INSERT INTO issues(id, ruleKey, severity, message, filePath, line, creationDate, assignee, tags, details) VALUES(?,?,?,?,?,?,?,?,?,?)";
         // HSQLDB occasionally throws "statement is not in batch mode" with executeBatch in some environments.
         // To keep the benchmark stable for small runs, insert rows one-by-one.
-        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+        try (PreparedStatement ps = conn.prepareStatement(sql);
+             PreparedStatement tagPs = conn.prepareStatement(JdbcUtils.INSERT_TAG);
+             PreparedStatement wordPs = textIndex ? conn.prepareStatement(JdbcUtils.INSERT_WORD) : null) {
             for (Issue is : issues) {
                 ps.setString(1, is.getId());
                 ps.setString(2, is.getRuleKey());
@@ -59,42 +105,179 @@ public class HsqldbIssueRepository implements IssueRepository {
                 ps.setLong(7, is.getCreationDateEpochMillis());
                 ps.setString(8, is.getAssignee());
                 ps.setString(9, String.join(",", is.getTags()));
-                ps.setString(10, encodeDetails(is));
+                long encodeStart = timer.start();
+                String details = encodeDetails(is);
+                timer.encoded(encodeStart, details);
+                ps.setString(10, details);
+                long executeStart = timer.start();
                 ps.executeUpdate();
+                JdbcUtils.insertTagRows(tagPs, is);
+                if (wordPs != null) JdbcUtils.insertWordRows(wordPs, is);
+                timer.executed(executeStart);
             }
         }
+        timer.end(issues.size());
     }
 
     @Override
     public List<Issue> readAll() throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "readAll");
         List<Issue> out = new ArrayList<>();
-        try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
-            while (rs.next()) out.add(fromRow(rs));
+        try (Statement st = conn.createStatement()) {
+            long executeStart = timer.start();
+            try (ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
         }
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public List<Issue> searchByRule(String ruleKey) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
         List<Issue> out = new ArrayList<>();
         try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE ruleKey = ?")) {
             ps.setString(1, ruleKey);
+            long executeStart = timer.start();
             try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) out.add(fromRow(rs));
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
             }
         }
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public Issue getById(String id) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "getById");
+        List<Issue> out = new ArrayList<>(1);
         try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE id = ?")) {
             ps.setString(1, id);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out.isEmpty() ? null : out.get(0);
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return page(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        Set<String> distinct = JdbcUtils.distinct(tags);
+        if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+        OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+        List<Issue> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.tagSearchSql(distinct.size(), match))) {
+            int i = 0;
+            for (String tag : distinct) ps.setString(++i, tag);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Looks the words up in issue_word, the built-in inverted index filled by insertAll. */
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        Set<String> words = TextSearch.words(query);
+        if (!textIndex || words.isEmpty()) return IssueRepository.super.searchMessage(query);
+        OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+        List<Issue> out = new ArrayList<>();
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.wordSearchSql(words.size()))) {
+            int i = 0;
+            for (String word : words) ps.setString(++i, word);
+            long executeStart = timer.start();
+            try (ResultSet rs = ps.executeQuery()) {
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
+            }
+        }
+        timer.end(out.size());
+        return out;
+    }
+
+    /**
+     * MEMORY tables keep every row on heap and only log changes; CACHED tables page rows from the .data file. MEMORY
+     * is also what a plain CREATE TABLE makes, hence the default profile.
+     */
+    private String tableType() {
+        return profile == TuningProfile.FAST_UNSAFE || profile == TuningProfile.DEFAULT ? "MEMORY" : "CACHED";
+    }
+
+    /** write_delay=false syncs the log on every commit; otherwise the log is synced every write_delay_millis. */
+    private String profileSettings() {
+        switch (profile) {
+            case DEFAULT:
+                return "";
+            case SAFE:
+                return ";hsqldb.write_delay=false";
+            case FAST_UNSAFE:
+                return ";hsqldb.write_delay=true;hsqldb.write_delay_millis=10000";
+            case BALANCED:
+            default:
+                return ";hsqldb.write_delay=true;hsqldb.write_delay_millis=500";
+        }
+    }
+
+    @Override
+    public Map<String, Long> countBy(IssueField field) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "countBy");
+        Map<String, Long> out = JdbcUtils.countBy(conn, field, timer);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+        Map<String, Map<String, Long>> out = JdbcUtils.countBy(conn, row, column, timer);
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Keyset page of the issues of {@code ruleKey}, or of all issues when null. */
+    private Page page(String ruleKey, int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+        List<Issue> out = new ArrayList<>(pageSize + 1);
+        try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.pageSql(ruleKey != null, afterId != null, "FETCH FIRST ? ROWS ONLY"))) {
+            JdbcUtils.bindPage(ps, ruleKey, afterId, pageSize);
+            long executeStart = timer.start();
             try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) return fromRow(rs);
+                timer.executed(executeStart);
+                decodeAll(rs, out, timer);
             }
         }
-        return null;
+        timer.end(out.size());
+        return Page.of(out, pageSize, ruleKey);
+    }
+
+    private void decodeAll(ResultSet rs, List<Issue> out, OperationTimer timer) throws SQLException {
+        while (rs.next()) {
+            long decodeStart = timer.start();
+            out.add(fromRow(rs));
+            timer.decoded(decodeStart);
+        }
     }
 
     private Issue fromRow(ResultSet rs) throws SQLException {
@@ -223,6 +406,88 @@ public class HsqldbIssueRepository implements IssueRepository {
 
     private Integer parseInt(String s) { return (s == null || s.isEmpty()) ? null : Integer.parseInt(s); }
 
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+        long deleted = JdbcUtils.deleteOlderThan(conn, textIndex, epochMillis, timer);
+        timer.end(deleted);
+        return deleted;
+    }
+
+    /** CHECKPOINT DEFRAG rewrites the .data file of the CACHED tables without the space of deleted rows. */
+    @Override
+    public void compact() throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "compact");
+        long executeStart = timer.start();
+        try (Statement st = conn.createStatement()) {
+            st.execute("CHECKPOINT DEFRAG");
+        }
+        timer.executed(executeStart);
+        timer.end(0);
+    }
+
+    /**
+     * Writes the issues to delimited files next to the database, attaches each one as the source of a TEXT table,
+     * and copies it into its table with one INSERT ... SELECT, with the indexes created after the load. Text table
+     * rows cannot span lines, so the line breaks of the details are written as {@code ~}, which the encoding does not
+     * use, and restored by the copy; issues with a line break elsewhere are inserted afterwards with
+     * {@link #insertAll(List)}. With {@link NativeImport#PROPERTY} false, loads with JDBC batches instead.
+     */
+    @Override
+    public long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+        if (!NativeImport.enabled()) return JdbcUtils.loadInTransactions(conn, this, issues, batchSize);
+        OperationTimer timer = OperationTimer.begin(name(), "bulkLoad");
+        // text table sources are resolved against the directory of the database files
+        try (NativeImport files = NativeImport.create(new File(dbPath).getAbsoluteFile().getParentFile(), "hsqldb-import", textIndex, false)) {
+            List<Issue> rejected = new ArrayList<>();
+            long encodeStart = timer.start();
+            while (issues.hasNext()) {
+                Issue is = issues.next();
+                if (!files.add(is, encodeDetails(is).replace('\n', '~'))) rejected.add(is);
+            }
+            files.finish();
+            timer.encoded(encodeStart, files.bytes());
+            long executeStart = timer.start();
+            JdbcUtils.loadWithoutIndexes(conn, textIndex, () -> {
+                copyTextTable("issues", "id VARCHAR(64), ruleKey VARCHAR(64), severity VARCHAR(16), message VARCHAR(1024), "
+                        + "filePath VARCHAR(512), line INT, creationDate BIGINT, assignee VARCHAR(128), tags VARCHAR(512), "
+                        + "details VARCHAR(16777216)",
+                        "id, ruleKey, severity, message, filePath, line, creationDate, assignee, tags, REPLACE(details, '~', CHAR(10))",
+                        files.issues());
+                copyTextTable("issue_tag", "tag VARCHAR(64), issue_id VARCHAR(64)", "tag, issue_id", files.tags());
+                if (textIndex) {
+                    copyTextTable("issue_word", "word VARCHAR(" + TextSearch.MAX_WORD_LENGTH + "), issue_id VARCHAR(64)", "word, issue_id", files.words());
+                }
+            });
+            timer.executed(executeStart);
+            timer.end(files.rows());
+            if (!rejected.isEmpty()) insertAll(rejected);
+            return files.rows() + rejected.size();
+        }
+    }
+
+    private void copyTextTable(String table, String columns, String select, File source) throws SQLException {
+        String load = table + "_load";
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP TABLE " + load + " IF EXISTS");
+            st.execute("CREATE TEXT TABLE " + load + " (" + columns + ")");
+            st.execute("SET TABLE " + load + " SOURCE '" + source.getName() + ";encoding=UTF-8;quoted=true'");
+            try {
+                st.execute("INSERT INTO " + table + " SELECT " + select + " FROM " + load);
+            } finally {
+                // detached first, so that dropping the table leaves the file to NativeImport
+                st.execute("SET TABLE " + load + " SOURCE OFF");
+                st.execute("DROP TABLE " + load);
+            }
+        }
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        if (dbPath == null) return -1L;
+        return StoreFiles.sizeOf(dbPath + ".data", dbPath + ".script", dbPath + ".log", dbPath + ".properties", dbPath + ".lobs");
+    }
+
     @Override
     public void close() {
         try { if (conn != null) conn.close(); } catch (Exception ignored) { }
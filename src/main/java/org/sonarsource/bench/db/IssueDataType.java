@@ -0,0 +1,46 @@
+package org.sonarsource.bench.db;
+
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueCodec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MVStore value type for issues in their {@link IssueCodec} form, so that pages hold compact bytes instead of the
+ * Java-serialized objects of MVStore's default type. Values are not compared.
+ */
+final class IssueDataType extends BasicDataType<Issue> {
+    static final IssueDataType INSTANCE = new IssueDataType();
+
+    private IssueDataType() {
+    }
+
+    /** Rough heap size of a decoded issue, which MVStore uses to size its page cache. */
+    @Override
+    public int getMemory(Issue is) {
+        int chars = length(is.getId()) + length(is.getRuleKey()) + length(is.getMessage()) + length(is.getFilePath());
+        int parts = (is.getFlows() == null ? 0 : is.getFlows().size()) + (is.getQuickFixes() == null ? 0 : is.getQuickFixes().size());
+        return 256 + 2 * chars + 96 * parts;
+    }
+
+    @Override
+    public void write(WriteBuffer buff, Issue is) {
+        buff.put(IssueCodec.encode(is));
+    }
+
+    @Override
+    public Issue read(ByteBuffer buff) {
+        return IssueCodec.decode(buff);
+    }
+
+    @Override
+    public Issue[] createStorage(int size) {
+        return new Issue[size];
+    }
+
+    private static int length(String s) {
+        return s == null ? 0 : s.length();
+    }
+}
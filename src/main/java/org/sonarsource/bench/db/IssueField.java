@@ -0,0 +1,26 @@
+package org.sonarsource.bench.db;
+
+import org.sonarsource.bench.model.Issue;
+
+/** Issue attributes that {@link IssueRepository#countBy(IssueField)} groups by. */
+public enum IssueField {
+    RULE("ruleKey"),
+    SEVERITY("severity"),
+    FILE("filePath");
+
+    /** Column of the SQL engines, and field of Nitrite documents. */
+    final String column;
+
+    IssueField(String column) {
+        this.column = column;
+    }
+
+    public String of(Issue is) {
+        switch (this) {
+            case RULE: return is.getRuleKey();
+            case SEVERITY: return is.getSeverity();
+            case FILE: return is.getFilePath();
+            default: throw new IllegalStateException(name());
+        }
+    }
+}
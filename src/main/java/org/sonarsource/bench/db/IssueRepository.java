@@ -3,7 +3,13 @@ package org.sonarsource.bench.db;
 import org.sonarsource.bench.model.Issue;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public interface IssueRepository extends Closeable {
     String name();
@@ -12,6 +18,112 @@ public interface IssueRepository extends Closeable {
     List<Issue> readAll() throws Exception;
     List<Issue> searchByRule(String ruleKey) throws Exception;
     Issue getById(String id) throws Exception;
+
+    /**
+     * Up to {@code pageSize} issues in id order, starting after the page that returned {@code token}, or from the
+     * first issue with a null token. Engines override this to seek in their id index; the default sorts
+     * {@link #readAll()}.
+     */
+    default Page readAll(int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        return Page.slice(readAll(), pageSize, null, token);
+    }
+
+    /** Same as {@link #readAll(int, String)} for the issues of a rule, see {@link #searchByRule(String)}. */
+    default Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        return Page.slice(searchByRule(ruleKey), pageSize, ruleKey, token);
+    }
+
+    /** Issues having the tag. */
+    default List<Issue> searchByTag(String tag) throws Exception {
+        return searchByTags(List.of(tag), TagMatch.ANY);
+    }
+
+    /**
+     * Issues having all, or any, of the tags. Engines with a tag index override this; the default filters
+     * {@link #readAll()}, which is what a store without one has to do.
+     */
+    default List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : readAll()) {
+            if (match.matches(is.getTags(), tags)) out.add(is);
+        }
+        return out;
+    }
+
+    /**
+     * Issues whose message contains every word of {@code query}, see {@link TextSearch}. Engines with a full-text
+     * facility, or with their own word index, override this; the default scans {@link #readAll()}.
+     */
+    default List<Issue> searchMessage(String query) throws Exception {
+        Set<String> words = TextSearch.words(query);
+        if (words.isEmpty()) return new ArrayList<>();
+        return TextSearch.filter(readAll(), words);
+    }
+
+    /**
+     * Number of issues by value of {@code field}, sorted by value; issues without a value are not counted. SQL
+     * engines group natively; the default counts {@link #readAll()}.
+     */
+    default Map<String, Long> countBy(IssueField field) throws Exception {
+        Map<String, Long> out = new TreeMap<>();
+        for (Issue is : readAll()) {
+            String value = field.of(is);
+            if (value != null) out.merge(value, 1L, Long::sum);
+        }
+        return out;
+    }
+
+    /** Number of issues by value of {@code row}, then of {@code column}, e.g. the severity by rule matrix. */
+    default Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        for (Issue is : readAll()) {
+            String r = row.of(is);
+            String c = column.of(is);
+            if (r != null && c != null) out.computeIfAbsent(r, k -> new TreeMap<>()).merge(c, 1L, Long::sum);
+        }
+        return out;
+    }
+
+    /**
+     * Stores every issue of the iterator, e.g. read from a snapshot, as fast as the engine allows, and returns how
+     * many were stored. The default calls {@link #insertAll(List)} with batches of {@code batchSize}; engines override
+     * it with their bulk path.
+     */
+    default long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        long loaded = 0;
+        List<Issue> batch = new ArrayList<>(batchSize);
+        while (issues.hasNext()) {
+            batch.add(issues.next());
+            if (batch.size() == batchSize || !issues.hasNext()) {
+                insertAll(batch);
+                loaded += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Deletes the issues created before {@code epochMillis}, with their index entries, and returns how many were
+     * deleted. The space they took is reused by later inserts; {@link #compact()} gives it back to the file system.
+     */
+    long deleteOlderThan(long epochMillis) throws Exception;
+
+    /**
+     * Rewrites the store to give the space of deleted issues back to the file system, see {@link #sizeOnDisk()}.
+     * Stores that have nothing to reclaim do nothing, which is the default.
+     */
+    default void compact() throws Exception {
+    }
+
+    /** Bytes the store currently occupies on disk, or -1 when unknown. */
+    default long sizeOnDisk() {
+        return -1L;
+    }
+
     @Override
     void close();
 }
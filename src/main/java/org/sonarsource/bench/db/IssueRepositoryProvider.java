@@ -0,0 +1,27 @@
+package org.sonarsource.bench.db;
+
+/**
+ * Creates repositories for one backend. Providers are discovered with {@link java.util.ServiceLoader}, so an
+ * additional backend only needs an implementation listed in
+ * {@code META-INF/services/org.sonarsource.bench.db.IssueRepositoryProvider}; see {@link Repositories}.
+ */
+public interface IssueRepositoryProvider {
+    /** Short lowercase id used on the command line, e.g. {@code h2}. */
+    String id();
+
+    /**
+     * @param path store location, or null to let the repository create (and later delete) a temporary one
+     * @param profile tuning preset; ignored by backends that do not {@link #supportsProfiles() support profiles}
+     */
+    IssueRepository create(String path, TuningProfile profile);
+
+    /** Whether {@link #create} translates the profile into engine settings, so each profile is worth running. */
+    default boolean supportsProfiles() {
+        return false;
+    }
+
+    /** Whether the backend runs when no explicit {@code db=} selection is given. */
+    default boolean enabledByDefault() {
+        return true;
+    }
+}
@@ -1,11 +1,273 @@
 package org.sonarsource.bench.db;
 
+import org.sonarsource.bench.jfr.OperationTimer;
+import org.sonarsource.bench.model.Issue;
+
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 final class JdbcUtils {
+    /** One row per (tag, issue): the primary key doubles as the index looked up by tag. */
+    static final String CREATE_TAG_TABLE = "issue_tag (tag VARCHAR(64) NOT NULL, issue_id VARCHAR(64) NOT NULL, PRIMARY KEY (tag, issue_id))";
+    static final String INSERT_TAG = "INSERT INTO issue_tag(tag, issue_id) VALUES(?,?)";
+    /** Built-in inverted index of message words, for engines without a full-text facility. */
+    static final String CREATE_WORD_TABLE = "issue_word (word VARCHAR(" + TextSearch.MAX_WORD_LENGTH + ") NOT NULL, "
+            + "issue_id VARCHAR(64) NOT NULL, PRIMARY KEY (word, issue_id))";
+    static final String INSERT_WORD = "INSERT INTO issue_word(word, issue_id) VALUES(?,?)";
+
     static Connection open(String url) throws SQLException {
         return DriverManager.getConnection(url);
     }
+
+    /** Adds the issue_tag rows of an issue to the batch; an issue may carry the same tag twice, it gets one row. */
+    static void addTagRows(PreparedStatement ps, Issue is) throws SQLException {
+        if (is.getTags() == null) return;
+        for (String tag : new LinkedHashSet<>(is.getTags())) {
+            ps.setString(1, tag);
+            ps.setString(2, is.getId());
+            ps.addBatch();
+        }
+    }
+
+    /** Same as {@link #addTagRows} for engines inserting row by row. */
+    static void insertTagRows(PreparedStatement ps, Issue is) throws SQLException {
+        if (is.getTags() == null) return;
+        for (String tag : new LinkedHashSet<>(is.getTags())) {
+            ps.setString(1, tag);
+            ps.setString(2, is.getId());
+            ps.executeUpdate();
+        }
+    }
+
+    /** Adds the issue_word rows of an issue to the batch. */
+    static void addWordRows(PreparedStatement ps, Issue is) throws SQLException {
+        for (String word : TextSearch.words(is.getMessage())) {
+            ps.setString(1, word);
+            ps.setString(2, is.getId());
+            ps.addBatch();
+        }
+    }
+
+    /** Same as {@link #addWordRows} for engines inserting row by row. */
+    static void insertWordRows(PreparedStatement ps, Issue is) throws SQLException {
+        for (String word : TextSearch.words(is.getMessage())) {
+            ps.setString(1, word);
+            ps.setString(2, is.getId());
+            ps.executeUpdate();
+        }
+    }
+
+    /**
+     * Fills a new, empty issue_word table from the issues already stored, in one transaction, so that a store written
+     * without the text index can be reopened with it.
+     */
+    static void fillWordTable(Connection conn) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT id, message FROM issues");
+             PreparedStatement ps = conn.prepareStatement(INSERT_WORD)) {
+            while (rs.next()) {
+                for (String word : TextSearch.words(rs.getString(2))) {
+                    ps.setString(1, word);
+                    ps.setString(2, rs.getString(1));
+                    ps.executeUpdate();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * {@link IssueRepository#bulkLoad} for the SQL engines: the batches are the same, but each one commits once
+     * instead of once per statement as in auto-commit mode, which is what the engines pay the most for on a load.
+     */
+    static long loadInTransactions(Connection conn, IssueRepository repo, Iterator<Issue> issues, int batchSize) throws Exception {
+        if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            long loaded = 0;
+            List<Issue> batch = new ArrayList<>(batchSize);
+            while (issues.hasNext()) {
+                batch.add(issues.next());
+                if (batch.size() == batchSize || !issues.hasNext()) {
+                    repo.insertAll(batch);
+                    conn.commit();
+                    loaded += batch.size();
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            return loaded;
+        } catch (Exception | Error e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    /** Work on the tables between dropping their indexes and creating them again, see {@link #loadWithoutIndexes}. */
+    interface TableLoad {
+        void run() throws Exception;
+    }
+
+    /**
+     * Runs a bulk load on tables without their primary keys and issue indexes, then creates them again, which sorts the
+     * loaded rows once instead of maintaining every index row by row. For engines supporting
+     * {@code ALTER TABLE ... DROP PRIMARY KEY}; duplicate ids make the primary key creation fail.
+     */
+    static void loadWithoutIndexes(Connection conn, boolean words, TableLoad load) throws Exception {
+        try (Statement st = conn.createStatement()) {
+            st.execute("DROP INDEX idx_rule");
+            st.execute("DROP INDEX idx_created");
+            st.execute("ALTER TABLE issues DROP PRIMARY KEY");
+            st.execute("ALTER TABLE issue_tag DROP PRIMARY KEY");
+            if (words) st.execute("ALTER TABLE issue_word DROP PRIMARY KEY");
+        }
+        try {
+            load.run();
+        } catch (Exception | Error e) {
+            try {
+                createIndexes(conn, words);
+            } catch (SQLException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        createIndexes(conn, words);
+    }
+
+    private static void createIndexes(Connection conn, boolean words) throws SQLException {
+        try (Statement st = conn.createStatement()) {
+            st.execute("ALTER TABLE issues ADD PRIMARY KEY (id)");
+            st.execute("CREATE INDEX idx_rule ON issues(ruleKey, id)");
+            st.execute("CREATE INDEX idx_created ON issues(creationDate)");
+            st.execute("ALTER TABLE issue_tag ADD PRIMARY KEY (tag, issue_id)");
+            if (words) st.execute("ALTER TABLE issue_word ADD PRIMARY KEY (word, issue_id)");
+        }
+    }
+
+    /**
+     * Deletes the issues created before {@code epochMillis} and their issue_tag rows, and issue_word rows for
+     * engines keeping them, in one transaction; the ids are found through idx_created. Returns the issues deleted.
+     */
+    static long deleteOlderThan(Connection conn, boolean words, long epochMillis, OperationTimer timer) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            long executeStart = timer.start();
+            deleteRows(conn, "DELETE FROM issue_tag WHERE issue_id IN (SELECT id FROM issues WHERE creationDate < ?)", epochMillis);
+            if (words) deleteRows(conn, "DELETE FROM issue_word WHERE issue_id IN (SELECT id FROM issues WHERE creationDate < ?)", epochMillis);
+            long deleted = deleteRows(conn, "DELETE FROM issues WHERE creationDate < ?", epochMillis);
+            conn.commit();
+            timer.executed(executeStart);
+            return deleted;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static long deleteRows(Connection conn, String sql, long epochMillis) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, epochMillis);
+            return ps.executeUpdate();
+        }
+    }
+
+    static Set<String> distinct(Collection<String> tags) {
+        return new LinkedHashSet<>(tags);
+    }
+
+    /**
+     * Query over issue_tag for {@code tagCount} distinct tags, bound in order. A single tag is a plain join; several
+     * tags select the matching issue ids first, and with {@link TagMatch#ALL} keep those found once per tag.
+     */
+    static String tagSearchSql(int tagCount, TagMatch match) {
+        return postingSearchSql("issue_tag", "tag", tagCount, match);
+    }
+
+    /** Query over issue_word for {@code wordCount} distinct words, all of which must be found. */
+    static String wordSearchSql(int wordCount) {
+        return postingSearchSql("issue_word", "word", wordCount, TagMatch.ALL);
+    }
+
+    /**
+     * Keyset query for a page: the issues of a rule, or all of them, after an id, in id order. Parameters are the
+     * rule key if {@code byRule}, the id if {@code afterId}, then the row limit. The (ruleKey, id) index, or the
+     * primary key, yields the rows already in order, so the engine stops after the limit.
+     *
+     * @param limit the row limit clause of the engine, with a parameter for the limit
+     */
+    static String pageSql(boolean byRule, boolean afterId, String limit) {
+        String where = byRule ? (afterId ? " WHERE ruleKey = ? AND id > ?" : " WHERE ruleKey = ?") : (afterId ? " WHERE id > ?" : "");
+        return "SELECT * FROM issues" + where + " ORDER BY id " + limit;
+    }
+
+    /** Binds the parameters of {@link #pageSql}, asking for one row more than the page so a next page is detected. */
+    static void bindPage(PreparedStatement ps, String ruleKey, String afterId, int pageSize) throws SQLException {
+        int i = 0;
+        if (ruleKey != null) ps.setString(++i, ruleKey);
+        if (afterId != null) ps.setString(++i, afterId);
+        ps.setInt(++i, pageSize + 1);
+    }
+
+    /** {@link IssueRepository#countBy(IssueField)} as a GROUP BY; the timer gets the query and the rows read. */
+    static Map<String, Long> countBy(Connection conn, IssueField field, OperationTimer timer) throws SQLException {
+        Map<String, Long> out = new TreeMap<>();
+        String sql = "SELECT " + field.column + ", COUNT(*) FROM issues WHERE " + field.column + " IS NOT NULL GROUP BY " + field.column;
+        try (Statement st = conn.createStatement()) {
+            long executeStart = timer.start();
+            try (ResultSet rs = st.executeQuery(sql)) {
+                timer.executed(executeStart);
+                while (rs.next()) out.put(rs.getString(1), rs.getLong(2));
+            }
+        }
+        return out;
+    }
+
+    /** {@link IssueRepository#countBy(IssueField, IssueField)} as a GROUP BY of both columns. */
+    static Map<String, Map<String, Long>> countBy(Connection conn, IssueField row, IssueField column, OperationTimer timer)
+            throws SQLException {
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        String sql = "SELECT " + row.column + ", " + column.column + ", COUNT(*) FROM issues WHERE " + row.column + " IS NOT NULL AND "
+                + column.column + " IS NOT NULL GROUP BY " + row.column + ", " + column.column;
+        try (Statement st = conn.createStatement()) {
+            long executeStart = timer.start();
+            try (ResultSet rs = st.executeQuery(sql)) {
+                timer.executed(executeStart);
+                while (rs.next()) out.computeIfAbsent(rs.getString(1), k -> new TreeMap<>()).put(rs.getString(2), rs.getLong(3));
+            }
+        }
+        return out;
+    }
+
+    private static String postingSearchSql(String table, String column, int count, TagMatch match) {
+        if (count == 1) return "SELECT i.* FROM " + table + " t JOIN issues i ON i.id = t.issue_id WHERE t." + column + " = ?";
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < count; i++) in.append(i == 0 ? "?" : ",?");
+        String ids = "SELECT t.issue_id FROM " + table + " t WHERE t." + column + " IN (" + in + ")";
+        if (match == TagMatch.ALL) ids += " GROUP BY t.issue_id HAVING COUNT(*) = " + count;
+        return "SELECT i.* FROM issues i WHERE i.id IN (" + ids + ")";
+    }
 }
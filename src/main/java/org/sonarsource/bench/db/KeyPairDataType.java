@@ -0,0 +1,45 @@
+package org.sonarsource.bench.db;
+
+import org.h2.mvstore.DataUtils;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.BasicDataType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MVStore key type for two-part string keys such as (ruleKey, issue id), ordered by the first part then the second,
+ * so that all the keys of one rule are a contiguous range. Each part is written as MVStore writes a plain string.
+ */
+final class KeyPairDataType extends BasicDataType<String[]> {
+    static final KeyPairDataType INSTANCE = new KeyPairDataType();
+
+    private KeyPairDataType() {
+    }
+
+    @Override
+    public int compare(String[] a, String[] b) {
+        int c = a[0].compareTo(b[0]);
+        return c != 0 ? c : a[1].compareTo(b[1]);
+    }
+
+    @Override
+    public int getMemory(String[] key) {
+        return 64 + 2 * (key[0].length() + key[1].length());
+    }
+
+    @Override
+    public void write(WriteBuffer buff, String[] key) {
+        buff.putVarInt(key[0].length()).putStringData(key[0], key[0].length());
+        buff.putVarInt(key[1].length()).putStringData(key[1], key[1].length());
+    }
+
+    @Override
+    public String[] read(ByteBuffer buff) {
+        return new String[] {DataUtils.readString(buff), DataUtils.readString(buff)};
+    }
+
+    @Override
+    public String[][] createStorage(int size) {
+        return new String[size][];
+    }
+}
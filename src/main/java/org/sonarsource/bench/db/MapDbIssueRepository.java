@@ -1,18 +1,57 @@
 package org.sonarsource.bench.db;
 
+import org.mapdb.Atomic;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
 import org.mapdb.Serializer;
+import org.mapdb.serializer.SerializerArrayTuple;
+import org.mapdb.volume.Volume;
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 
 import java.io.File;
 import java.util.*;
 
 public class MapDbIssueRepository implements IssueRepository {
+    private static final int DELETE_BATCH = 5000;
+
     private DB db;
     private Map<String, Issue> map;
     private Map<String, Set<String>> ruleIndex;
+    // sorted keys for pages: ids, and (ruleKey, id) tuples
+    private NavigableSet<String> pageIds;
+    private NavigableSet<Object[]> pageRuleIds;
+    // tag and word bitmaps address issues by ordinal, in insertion order; purged ordinals are not reused until compact()
+    private Map<String, Long> ordinalById;
+    private Map<Long, String> idByOrdinal;
+    private long nextOrdinal;
+    private Atomic.Long storedNextOrdinal;
+    private BitmapIndex tagIndex;
+    private BitmapIndex wordIndex;
     private File file;
+    private Volume volume;
+    private boolean volumeExists;
+    private boolean autoCreatedPath = true;
+
+    public MapDbIssueRepository() {
+    }
+
+    public MapDbIssueRepository(String dbPath) {
+        this.file = new File(dbPath);
+        this.autoCreatedPath = false;
+    }
+
+    /**
+     * Store on a Volume given by the caller, e.g. one injecting faults, instead of a memory-mapped file.
+     *
+     * @param exists whether the volume already holds a store
+     */
+    public MapDbIssueRepository(Volume volume, boolean exists) {
+        this.volume = volume;
+        this.volumeExists = exists;
+        this.file = volume.getFile();
+        this.autoCreatedPath = false;
+    }
 
     @Override
     public String name() { return "MapDB"; }
@@ -20,17 +59,49 @@ public class MapDbIssueRepository implements IssueRepository {
     @Override
     public void init() {
         try {
-            // Let MapDB create the file itself to avoid corruption errors on empty pre-created files
-            File tmp = File.createTempFile("mapdb-issues", ".db");
-            String path = tmp.getAbsolutePath();
-            // delete the empty file so MapDB can create a proper store
-            if (tmp.exists()) tmp.delete();
-            file = new File(path);
-            db = DBMaker.fileDB(file)
-                    .fileMmapEnableIfSupported()
-                    .make();
+            if (file == null) {
+                // Let MapDB create the file itself to avoid corruption errors on empty pre-created files
+                File tmp = File.createTempFile("mapdb-issues", ".db");
+                String path = tmp.getAbsolutePath();
+                // delete the empty file so MapDB can create a proper store
+                if (tmp.exists()) tmp.delete();
+                file = new File(path);
+                autoCreatedPath = true;
+            }
+            db = volume != null
+                    ? DBMaker.volumeDB(volume, volumeExists).make()
+                    : DBMaker.fileDB(file).fileMmapEnableIfSupported().make();
             map = db.hashMap("issues", Serializer.STRING, Serializer.JAVA).createOrOpen();
             ruleIndex = db.hashMap("ruleIndex", Serializer.STRING, Serializer.JAVA).createOrOpen();
+            pageIds = db.treeSet("pageIds", Serializer.STRING).createOrOpen();
+            pageRuleIds = db.treeSet("pageRuleIds", new SerializerArrayTuple(Serializer.STRING, Serializer.STRING)).createOrOpen();
+            if (pageIds.isEmpty() && !map.isEmpty()) {
+                // store written before the page keys existed
+                for (Issue is : map.values()) addPageKeys(is);
+                db.commit();
+            }
+            ordinalById = db.hashMap("ordinalById", Serializer.STRING, Serializer.LONG).createOrOpen();
+            idByOrdinal = db.hashMap("idByOrdinal", Serializer.LONG, Serializer.STRING).createOrOpen();
+            // stores written before purges freed ordinals have no gap
+            storedNextOrdinal = db.atomicLong("nextOrdinal", idByOrdinal.size()).createOrOpen();
+            nextOrdinal = storedNextOrdinal.get();
+            tagIndex = new BitmapIndex(db.hashMap("tagBitmaps", Serializer.STRING, Serializer.BYTE_ARRAY).createOrOpen());
+            // built-in inverted index of message words, emptied while the index is off since inserts would leave it stale
+            Map<String, byte[]> wordBitmaps = db.hashMap("wordBitmaps", Serializer.STRING, Serializer.BYTE_ARRAY).createOrOpen();
+            wordIndex = TextSearch.indexEnabled() ? new BitmapIndex(wordBitmaps) : null;
+            if (wordIndex == null && !wordBitmaps.isEmpty()) {
+                wordBitmaps.clear();
+                db.commit();
+            } else if (wordIndex != null && wordBitmaps.isEmpty() && !map.isEmpty()) {
+                // store written without the index
+                int i = 0;
+                for (Issue is : map.values()) {
+                    index(is);
+                    if ((++i % 5000) == 0) flushIndexes();
+                }
+                flushIndexes();
+                db.commit();
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -38,6 +109,9 @@ public class MapDbIssueRepository implements IssueRepository {
 
     @Override
     public void insertAll(List<Issue> issues) {
+        // values are Java-serialized inside the map, so encoding cannot be told apart from execution
+        OperationTimer timer = OperationTimer.begin(name(), "insertAll");
+        long executeStart = timer.start();
         int i = 0;
         for (Issue is : issues) {
             map.put(is.getId(), is);
@@ -52,21 +126,41 @@ public class MapDbIssueRepository implements IssueRepository {
                 ids.add(is.getId());
                 ruleIndex.put(is.getRuleKey(), ids);
             }
+            addPageKeys(is);
+            index(is);
             if ((++i % 5000) == 0) {
                 // Periodic flush to avoid gigantic single transaction/write log
+                flushIndexes();
                 db.commit();
             }
         }
+        flushIndexes();
         db.commit();
+        timer.executed(executeStart);
+        timer.end(issues.size());
     }
 
     @Override
     public List<Issue> readAll() {
-        return new ArrayList<>(map.values());
+        OperationTimer timer = OperationTimer.begin(name(), "readAll");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>(map.values());
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
     }
 
     @Override
     public List<Issue> searchByRule(String ruleKey) {
+        OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
+        long executeStart = timer.start();
+        List<Issue> out = findByRule(ruleKey);
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    private List<Issue> findByRule(String ruleKey) {
         List<Issue> out = new ArrayList<>();
         if (ruleIndex != null) {
             Set<String> ids = ruleIndex.get(ruleKey);
@@ -87,12 +181,260 @@ public class MapDbIssueRepository implements IssueRepository {
 
     @Override
     public Issue getById(String id) {
-        return map.get(id);
+        OperationTimer timer = OperationTimer.begin(name(), "getById");
+        long executeStart = timer.start();
+        Issue is = map.get(id);
+        timer.executed(executeStart);
+        timer.end(is == null ? 0 : 1);
+        return is;
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) {
+        return page(ruleKey, pageSize, token);
+    }
+
+    /**
+     * Counts by rule are the sizes of the rule index entries; other fields need every issue to be deserialized, one
+     * at a time. A re-inserted issue stays in the entry of its former rule, as for {@link #searchByRule(String)}.
+     */
+    @Override
+    public Map<String, Long> countBy(IssueField field) {
+        OperationTimer timer = OperationTimer.begin(name(), "countBy");
+        long executeStart = timer.start();
+        Map<String, Long> out = new TreeMap<>();
+        if (field == IssueField.RULE) {
+            for (Map.Entry<String, Set<String>> e : ruleIndex.entrySet()) {
+                if (!e.getValue().isEmpty()) out.put(e.getKey(), (long) e.getValue().size());
+            }
+        } else {
+            for (Issue is : map.values()) {
+                String value = field.of(is);
+                if (value != null) out.merge(value, 1L, Long::sum);
+            }
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) {
+        OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+        long executeStart = timer.start();
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        for (Issue is : map.values()) {
+            String r = row.of(is);
+            String c = column.of(is);
+            if (r != null && c != null) out.computeIfAbsent(r, k -> new TreeMap<>()).merge(c, 1L, Long::sum);
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    /**
+     * Keyset page of the issues of {@code ruleKey}, or of all issues when null, walking the sorted page keys from the
+     * key after the token. A re-inserted issue keeps the key of its former rule, so loaded issues are checked again.
+     */
+    private Page page(String ruleKey, int pageSize, String token) {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>(pageSize + 1);
+        if (ruleKey == null) {
+            Iterator<String> ids = (afterId == null ? pageIds : pageIds.tailSet(afterId, false)).iterator();
+            while (out.size() <= pageSize && ids.hasNext()) {
+                Issue is = map.get(ids.next());
+                if (is != null) out.add(is);
+            }
+        } else {
+            // no issue has an empty id, so {ruleKey, ""} is before the first key of the rule
+            Object[] from = {ruleKey, afterId == null ? "" : afterId};
+            for (Object[] key : pageRuleIds.tailSet(from, false)) {
+                if (out.size() > pageSize || !ruleKey.equals(key[0])) break;
+                Issue is = map.get((String) key[1]);
+                if (is != null && ruleKey.equals(is.getRuleKey())) out.add(is);
+            }
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return Page.of(out, pageSize, ruleKey);
+    }
+
+    /**
+     * Combines the tag bitmaps chunk by chunk, then loads the matching issues. A re-inserted issue keeps the bits of
+     * its former tags, so loaded issues are checked again.
+     */
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) {
+        Set<String> distinct = new LinkedHashSet<>(tags);
+        if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+        OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>();
+        tagIndex.forEach(distinct, match, nextOrdinal, ordinal -> {
+            String id = idByOrdinal.get(ordinal);
+            Issue is = id == null ? null : map.get(id);
+            if (is != null && match.matches(is.getTags(), distinct)) out.add(is);
+        });
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) {
+        Set<String> words = TextSearch.words(query);
+        if (wordIndex == null || words.isEmpty()) return TextSearch.filter(readAll(), words);
+        OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>();
+        wordIndex.forEach(words, TagMatch.ALL, nextOrdinal, ordinal -> {
+            String id = idByOrdinal.get(ordinal);
+            Issue is = id == null ? null : map.get(id);
+            if (is != null && TextSearch.matches(is.getMessage(), words)) out.add(is);
+        });
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    private void addPageKeys(Issue is) {
+        pageIds.add(is.getId());
+        if (is.getRuleKey() != null) pageRuleIds.add(new Object[] {is.getRuleKey(), is.getId()});
+    }
+
+    private void index(Issue is) {
+        Long ordinal = ordinalById.get(is.getId());
+        if (ordinal == null) {
+            ordinal = nextOrdinal++;
+            ordinalById.put(is.getId(), ordinal);
+            idByOrdinal.put(ordinal, is.getId());
+        }
+        if (is.getTags() != null) {
+            for (String tag : is.getTags()) tagIndex.add(tag, ordinal);
+        }
+        if (wordIndex != null) {
+            for (String word : TextSearch.words(is.getMessage())) wordIndex.add(word, ordinal);
+        }
+    }
+
+    private void unindex(Issue is, long ordinal) {
+        if (is.getTags() != null) {
+            for (String tag : is.getTags()) tagIndex.remove(tag, ordinal);
+        }
+        if (wordIndex != null) {
+            for (String word : TextSearch.words(is.getMessage())) wordIndex.remove(word, ordinal);
+        }
+    }
+
+    private void flushIndexes() {
+        tagIndex.flush();
+        if (wordIndex != null) wordIndex.flush();
+        if (storedNextOrdinal.get() != nextOrdinal) storedNextOrdinal.set(nextOrdinal);
+    }
+
+    /**
+     * Scans the issues in id order, since nothing indexes the creation date, and removes the old ones from the map and
+     * the rule and page indexes, one committed batch of ids at a time so that the purge needs no more memory than a
+     * batch. The ordinals of the purged issues are released and their tag and word bits cleared; bits a re-inserted
+     * issue kept from its former tags stay set until {@link #compact()} renumbers the issues; their lookups find no issue.
+     */
+    @Override
+    public long deleteOlderThan(long epochMillis) {
+        OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+        long executeStart = timer.start();
+        long deleted = 0;
+        List<String> batch = new ArrayList<>(DELETE_BATCH);
+        String after = null;
+        boolean more = true;
+        while (more) {
+            // the page keys are a sorted snapshot of the ids, which the removals below would invalidate
+            Iterator<String> ids = (after == null ? pageIds : pageIds.tailSet(after, false)).iterator();
+            while (batch.size() < DELETE_BATCH && ids.hasNext()) {
+                after = ids.next();
+                Issue is = map.get(after);
+                if (is != null && is.getCreationDateEpochMillis() < epochMillis) batch.add(after);
+            }
+            more = ids.hasNext();
+            deleted += remove(batch);
+            batch.clear();
+        }
+        timer.executed(executeStart);
+        timer.end(deleted);
+        return deleted;
+    }
+
+    private int remove(List<String> ids) {
+        Map<String, Set<String>> removedByRule = new HashMap<>();
+        for (String id : ids) {
+            Issue is = map.remove(id);
+            pageIds.remove(id);
+            Long ordinal = ordinalById.remove(id);
+            if (ordinal != null) {
+                idByOrdinal.remove(ordinal);
+                if (is != null) unindex(is, ordinal);
+            }
+            if (is != null && is.getRuleKey() != null) {
+                pageRuleIds.remove(new Object[] {is.getRuleKey(), id});
+                removedByRule.computeIfAbsent(is.getRuleKey(), k -> new HashSet<>()).add(id);
+            }
+        }
+        for (Map.Entry<String, Set<String>> e : removedByRule.entrySet()) {
+            Set<String> ruleIds = ruleIndex.get(e.getKey());
+            if (ruleIds == null) continue;
+            ruleIds = new HashSet<>(ruleIds);
+            ruleIds.removeAll(e.getValue());
+            if (ruleIds.isEmpty()) ruleIndex.remove(e.getKey());
+            else ruleIndex.put(e.getKey(), ruleIds);
+        }
+        flushIndexes();
+        db.commit();
+        return ids.size();
+    }
+
+    /**
+     * Once purges left unused ordinals, numbers the issues again from 0 and rebuilds the tag and word bitmaps, so that
+     * bitmap scans do not grow with every insert and purge cycle; then compacts the store file.
+     */
+    @Override
+    public void compact() {
+        OperationTimer timer = OperationTimer.begin(name(), "compact");
+        long executeStart = timer.start();
+        if (nextOrdinal > map.size()) {
+            ordinalById.clear();
+            idByOrdinal.clear();
+            tagIndex.clear();
+            if (wordIndex != null) wordIndex.clear();
+            nextOrdinal = 0;
+            int i = 0;
+            for (Issue is : map.values()) {
+                index(is);
+                if ((++i % DELETE_BATCH) == 0) flushIndexes();
+            }
+            flushIndexes();
+            db.commit();
+        }
+        db.getStore().compact();
+        timer.executed(executeStart);
+        timer.end(0);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return file == null ? -1L : StoreFiles.sizeOf(file.getAbsolutePath());
     }
 
     @Override
     public void close() {
         try { if (db != null) db.close(); } catch (Exception ignored) {}
-        if (file != null) file.delete();
+        if (file != null && autoCreatedPath) file.delete();
     }
 }
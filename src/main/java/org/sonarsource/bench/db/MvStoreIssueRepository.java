@@ -0,0 +1,355 @@
+package org.sonarsource.bench.db;
+
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.type.StringDataType;
+import org.sonarsource.bench.jfr.OperationTimer;
+import org.sonarsource.bench.model.Issue;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Issues stored directly in MVStore, the storage engine under H2 and Nitrite, without SQL or JDBC in between. The
+ * issues map holds each issue in its binary form, see {@link IssueDataType}; rules, tags and message words are
+ * indexed by maps keyed by (value, issue id) pairs, see {@link KeyPairDataType}, whose ranges are what an SQL index
+ * on the same columns would scan. MVStore has no sets, so index values are empty strings.
+ * <p>
+ * Re-inserting an issue replaces it and moves its index keys, since {@code put} returns the former issue.
+ */
+public class MvStoreIssueRepository implements IssueRepository {
+    private static final String PRESENT = "";
+    private static final int DELETE_BATCH = 5000;
+
+    private MVStore store;
+    private MVMap<String, Issue> map;
+    private MVMap<String[], String> ruleIds;
+    private MVMap<String[], String> tagIds;
+    private MVMap<String[], String> wordIds;
+    private File file;
+    private boolean autoCreatedPath = true;
+    private TuningProfile profile = TuningProfile.defaultProfile();
+
+    public MvStoreIssueRepository() {
+    }
+
+    public MvStoreIssueRepository(String dbPath) {
+        this.file = new File(dbPath);
+        this.autoCreatedPath = false;
+    }
+
+    public MvStoreIssueRepository(TuningProfile profile) {
+        this.profile = profile;
+    }
+
+    public MvStoreIssueRepository(String dbPath, TuningProfile profile) {
+        this(dbPath);
+        this.profile = profile;
+    }
+
+    @Override
+    public String name() { return "MVStore"; }
+
+    @Override
+    public void init() throws Exception {
+        if (file == null) {
+            File tmp = File.createTempFile("mvstore-issues", ".mv.db");
+            // let MVStore create the file, it rejects an empty one
+            if (tmp.exists()) tmp.delete();
+            file = tmp;
+            autoCreatedPath = true;
+        }
+        MVStore.Builder builder = new MVStore.Builder().fileName(file.getAbsolutePath());
+        // same cache sizes and compression as the H2 profiles, so that both compare on the same storage settings
+        switch (profile) {
+            case DEFAULT:
+                // MVStore defaults, as H2 without settings
+                break;
+            case SAFE:
+                builder.cacheSize(16).autoCommitDisabled();
+                break;
+            case FAST_UNSAFE:
+                // background commits only, when the write buffer fills up or every second
+                builder.cacheSize(256).autoCommitBufferSize(64 * 1024);
+                break;
+            case BALANCED:
+            default:
+                builder.cacheSize(64).compress().autoCommitDisabled();
+                break;
+        }
+        store = builder.open();
+        map = store.openMap("issues", new MVMap.Builder<String, Issue>().keyType(StringDataType.INSTANCE).valueType(IssueDataType.INSTANCE));
+        ruleIds = openIndex("ruleIds");
+        tagIds = openIndex("tagIds");
+        // the word index only exists while it is on: inserts made without it would leave it stale
+        boolean wordMap = store.hasMap("wordIds");
+        wordIds = TextSearch.indexEnabled() ? openIndex("wordIds") : null;
+        if (wordIds != null && !wordMap && !map.isEmpty()) {
+            // store written without the index
+            for (Issue is : map.values()) {
+                for (String word : TextSearch.words(is.getMessage())) wordIds.put(new String[] {word, is.getId()}, PRESENT);
+            }
+            commit();
+        } else if (wordIds == null && wordMap) {
+            store.removeMap("wordIds");
+            commit();
+        }
+    }
+
+    private MVMap<String[], String> openIndex(String name) {
+        return store.openMap(name, new MVMap.Builder<String[], String>().keyType(KeyPairDataType.INSTANCE).valueType(StringDataType.INSTANCE));
+    }
+
+    @Override
+    public void insertAll(List<Issue> issues) {
+        // values are encoded inside the map, so encoding cannot be told apart from execution
+        OperationTimer timer = OperationTimer.begin(name(), "insertAll");
+        long executeStart = timer.start();
+        for (Issue is : issues) {
+            Issue former = map.put(is.getId(), is);
+            if (former != null) unindex(former);
+            index(is);
+        }
+        commit();
+        timer.executed(executeStart);
+        timer.end(issues.size());
+    }
+
+    private void commit() {
+        if (profile == TuningProfile.FAST_UNSAFE) return;
+        store.commit();
+        if (profile == TuningProfile.SAFE) store.sync();
+    }
+
+    @Override
+    public List<Issue> readAll() {
+        OperationTimer timer = OperationTimer.begin(name(), "readAll");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>(map.values());
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) {
+        OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>();
+        for (String id : ids(ruleIds, ruleKey, null, Integer.MAX_VALUE)) out.add(map.get(id));
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Issue getById(String id) {
+        OperationTimer timer = OperationTimer.begin(name(), "getById");
+        long executeStart = timer.start();
+        Issue is = map.get(id);
+        timer.executed(executeStart);
+        timer.end(is == null ? 0 : 1);
+        return is;
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) {
+        return page(ruleKey, pageSize, token);
+    }
+
+    /** Keyset page: the issues map is sorted by id and the rule index by (ruleKey, id), so a page is one range. */
+    private Page page(String ruleKey, int pageSize, String token) {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+        long executeStart = timer.start();
+        List<Issue> out = new ArrayList<>(pageSize + 1);
+        if (ruleKey == null) {
+            Cursor<String, Issue> c = map.cursor(afterId);
+            while (out.size() <= pageSize && c.hasNext()) {
+                String id = c.next();
+                if (!id.equals(afterId)) out.add(c.getValue());
+            }
+        } else {
+            for (String id : ids(ruleIds, ruleKey, afterId, pageSize + 1)) out.add(map.get(id));
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return Page.of(out, pageSize, ruleKey);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) {
+        Set<String> distinct = new LinkedHashSet<>(tags);
+        if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+        OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+        long executeStart = timer.start();
+        List<Issue> out = load(matching(tagIds, distinct, match));
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) {
+        Set<String> words = TextSearch.words(query);
+        if (wordIds == null || words.isEmpty()) return TextSearch.filter(readAll(), words);
+        OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+        long executeStart = timer.start();
+        List<Issue> out = load(matching(wordIds, words, TagMatch.ALL));
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Counts by rule only walk the keys of the rule index; other fields decode every issue. */
+    @Override
+    public Map<String, Long> countBy(IssueField field) {
+        OperationTimer timer = OperationTimer.begin(name(), "countBy");
+        long executeStart = timer.start();
+        Map<String, Long> out = new TreeMap<>();
+        if (field == IssueField.RULE) {
+            for (String[] key : ruleIds.keySet()) out.merge(key[0], 1L, Long::sum);
+        } else {
+            for (Issue is : map.values()) {
+                String value = field.of(is);
+                if (value != null) out.merge(value, 1L, Long::sum);
+            }
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) {
+        OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+        long executeStart = timer.start();
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        for (Issue is : map.values()) {
+            String r = row.of(is);
+            String c = column.of(is);
+            if (r != null && c != null) out.computeIfAbsent(r, k -> new TreeMap<>()).merge(c, 1L, Long::sum);
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Ids of the (value, id) keys of {@code index} for one value, after {@code afterId} when not null. */
+    private static List<String> ids(MVMap<String[], String> index, String value, String afterId, int limit) {
+        List<String> out = new ArrayList<>();
+        // no issue has an empty id, so {value, ""} is before the first key of the value
+        Iterator<String[]> keys = index.keyIterator(new String[] {value, afterId == null ? "" : afterId});
+        while (out.size() < limit && keys.hasNext()) {
+            String[] key = keys.next();
+            if (!value.equals(key[0])) break;
+            if (!key[1].equals(afterId)) out.add(key[1]);
+        }
+        return out;
+    }
+
+    private static Set<String> matching(MVMap<String[], String> index, Set<String> values, TagMatch match) {
+        Set<String> out = null;
+        for (String value : values) {
+            List<String> ids = ids(index, value, null, Integer.MAX_VALUE);
+            if (out == null) {
+                out = new TreeSet<>(ids);
+            } else if (match == TagMatch.ALL) {
+                out.retainAll(new HashSet<>(ids));
+            } else {
+                out.addAll(ids);
+            }
+            if (out.isEmpty() && match == TagMatch.ALL) break;
+        }
+        return out;
+    }
+
+    private List<Issue> load(Set<String> ids) {
+        List<Issue> out = new ArrayList<>(ids.size());
+        for (String id : ids) out.add(map.get(id));
+        return out;
+    }
+
+    private void index(Issue is) {
+        if (is.getRuleKey() != null) ruleIds.put(new String[] {is.getRuleKey(), is.getId()}, PRESENT);
+        if (is.getTags() != null) {
+            for (String tag : is.getTags()) tagIds.put(new String[] {tag, is.getId()}, PRESENT);
+        }
+        if (wordIds != null) {
+            for (String word : TextSearch.words(is.getMessage())) wordIds.put(new String[] {word, is.getId()}, PRESENT);
+        }
+    }
+
+    private void unindex(Issue is) {
+        if (is.getRuleKey() != null) ruleIds.remove(new String[] {is.getRuleKey(), is.getId()});
+        if (is.getTags() != null) {
+            for (String tag : is.getTags()) tagIds.remove(new String[] {tag, is.getId()});
+        }
+        if (wordIds != null) {
+            for (String word : TextSearch.words(is.getMessage())) wordIds.remove(new String[] {word, is.getId()});
+        }
+    }
+
+    /**
+     * Scans the issues in id order, since nothing indexes the creation date, and removes the old ones with their index
+     * keys, one committed batch of ids at a time so that the purge needs no more memory than a batch.
+     */
+    @Override
+    public long deleteOlderThan(long epochMillis) {
+        OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+        long executeStart = timer.start();
+        long deleted = 0;
+        List<String> batch = new ArrayList<>(DELETE_BATCH);
+        String after = null;
+        boolean more = true;
+        while (more) {
+            Cursor<String, Issue> c = map.cursor(after);
+            while (batch.size() < DELETE_BATCH && c.hasNext()) {
+                String id = c.next();
+                if (id.equals(after)) continue;
+                after = id;
+                if (c.getValue().getCreationDateEpochMillis() < epochMillis) batch.add(id);
+            }
+            more = c.hasNext();
+            for (String id : batch) {
+                Issue former = map.remove(id);
+                if (former != null) unindex(former);
+            }
+            commit();
+            deleted += batch.size();
+            batch.clear();
+        }
+        timer.executed(executeStart);
+        timer.end(deleted);
+        return deleted;
+    }
+
+    /** Commits, then rewrites chunks for up to a minute until the file is mostly live data. */
+    @Override
+    public void compact() {
+        OperationTimer timer = OperationTimer.begin(name(), "compact");
+        long executeStart = timer.start();
+        store.commit();
+        store.compactFile(60_000);
+        timer.executed(executeStart);
+        timer.end(0);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return file == null ? -1L : StoreFiles.sizeOf(file.getAbsolutePath());
+    }
+
+    @Override
+    public void close() {
+        try { if (store != null) store.close(); } catch (Exception ignored) {}
+        if (file != null && autoCreatedPath) file.delete();
+    }
+}
@@ -0,0 +1,155 @@
+package org.sonarsource.bench.db;
+
+import org.sonarsource.bench.model.Issue;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+
+/**
+ * Delimited files for the native import of the engines whose JDBC inserts are slowest: one file per table (issues,
+ * issue_tag, and issue_word when the word index is on), comma-separated, strings quoted with their quotes doubled,
+ * nulls left empty so that the engines read them back as NULL. The files are deleted on {@link #close()}.
+ * <p>
+ * {@link IssueRepository#bulkLoad} goes through these files for the engines supporting it, unless the
+ * {@value #PROPERTY} system property is false, which keeps their JDBC batch path for comparison.
+ */
+public final class NativeImport implements Closeable {
+    public static final String PROPERTY = "bench.nativeImport";
+
+    private final File issues;
+    private final File tags;
+    private final File words;
+    private final Writer issueOut;
+    private final Writer tagOut;
+    private final Writer wordOut;
+    private final boolean lineBreaks;
+    private long rows;
+
+    private NativeImport(File dir, String prefix, boolean words, boolean lineBreaks) throws IOException {
+        this.lineBreaks = lineBreaks;
+        this.issues = File.createTempFile(prefix + "-issues", ".csv", dir);
+        this.tags = File.createTempFile(prefix + "-tags", ".csv", dir);
+        this.words = words ? File.createTempFile(prefix + "-words", ".csv", dir) : null;
+        this.issueOut = open(issues);
+        this.tagOut = open(tags);
+        this.wordOut = words ? open(this.words) : null;
+    }
+
+    public static boolean enabled() {
+        return Boolean.parseBoolean(System.getProperty(PROPERTY, "true"));
+    }
+
+    /**
+     * @param dir where the files are created; an engine that only reads files next to its own puts them there
+     * @param lineBreaks whether the engine reads line breaks inside quoted strings; when not, {@link #add} refuses
+     *                   the issues having some
+     */
+    static NativeImport create(File dir, String prefix, boolean words, boolean lineBreaks) throws IOException {
+        return new NativeImport(dir, prefix, words, lineBreaks);
+    }
+
+    private static Writer open(File f) throws IOException {
+        return new BufferedWriter(Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * Writes the rows of an issue, with the details column already encoded by the engine; returns false, writing
+     * nothing, when the issue has a line break the engine would not read.
+     */
+    boolean add(Issue is, String details) throws IOException {
+        if (!lineBreaks && (hasLineBreak(is.getId()) || hasLineBreak(is.getRuleKey()) || hasLineBreak(is.getSeverity())
+                || hasLineBreak(is.getMessage()) || hasLineBreak(is.getFilePath()) || hasLineBreak(is.getAssignee())
+                || hasLineBreak(details) || (is.getTags() != null && hasLineBreak(String.join(",", is.getTags()))))) {
+            return false;
+        }
+        StringBuilder row = new StringBuilder(256 + details.length());
+        string(row, is.getId()).append(',');
+        string(row, is.getRuleKey()).append(',');
+        string(row, is.getSeverity()).append(',');
+        string(row, is.getMessage()).append(',');
+        string(row, is.getFilePath()).append(',');
+        if (is.getLine() != null) row.append(is.getLine().intValue());
+        row.append(',').append(is.getCreationDateEpochMillis()).append(',');
+        string(row, is.getAssignee()).append(',');
+        string(row, String.join(",", is.getTags())).append(',');
+        string(row, details).append('\n');
+        issueOut.append(row);
+        if (is.getTags() != null) {
+            for (String tag : new LinkedHashSet<>(is.getTags())) tagOut.append(pair(tag, is.getId()));
+        }
+        if (wordOut != null) {
+            for (String word : TextSearch.words(is.getMessage())) wordOut.append(pair(word, is.getId()));
+        }
+        rows++;
+        return true;
+    }
+
+    /** Flushes the files, which are then complete. */
+    void finish() throws IOException {
+        issueOut.flush();
+        tagOut.flush();
+        if (wordOut != null) wordOut.flush();
+    }
+
+    File issues() {
+        return issues;
+    }
+
+    File tags() {
+        return tags;
+    }
+
+    File words() {
+        return words;
+    }
+
+    /** Issues written. */
+    long rows() {
+        return rows;
+    }
+
+    /** Bytes written, over all files, once {@link #finish()} has flushed them. */
+    long bytes() {
+        return issues.length() + tags.length() + (words == null ? 0 : words.length());
+    }
+
+    private static StringBuilder pair(String value, String id) {
+        StringBuilder row = new StringBuilder(value.length() + id.length() + 6);
+        string(row, value).append(',');
+        return string(row, id).append('\n');
+    }
+
+    private static StringBuilder string(StringBuilder row, String s) {
+        if (s == null) return row;
+        row.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"') row.append('"');
+            row.append(c);
+        }
+        return row.append('"');
+    }
+
+    private static boolean hasLineBreak(String s) {
+        return s != null && (s.indexOf('\n') >= 0 || s.indexOf('\r') >= 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            issueOut.close();
+            tagOut.close();
+            if (wordOut != null) wordOut.close();
+        } finally {
+            Files.deleteIfExists(issues.toPath());
+            Files.deleteIfExists(tags.toPath());
+            if (words != null) Files.deleteIfExists(words.toPath());
+        }
+    }
+}
@@ -1,24 +1,47 @@
 package org.sonarsource.bench.db;
 
 import org.dizitart.no2.Nitrite;
+import org.dizitart.no2.collection.FindOptions;
 import org.dizitart.no2.collection.NitriteCollection;
 import org.dizitart.no2.collection.Document;
+import org.dizitart.no2.common.SortOrder;
+import org.dizitart.no2.filters.Filter;
 import org.dizitart.no2.filters.FluentFilter;
+import org.dizitart.no2.index.IndexOptions;
+import org.dizitart.no2.index.IndexType;
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
 import org.sonarsource.bench.model.QuickFix;
 
 import org.dizitart.no2.mvstore.MVStoreModule;
+import org.dizitart.no2.mvstore.NitriteMVStore;
+import org.h2.mvstore.MVStore;
 
 import java.io.File;
+import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 public class NitriteIssueRepository implements IssueRepository {
     private Nitrite db;
     private NitriteCollection coll;
     private String filePath;
+    private boolean textIndex;
+
+    public NitriteIssueRepository() {
+    }
+
+    public NitriteIssueRepository(String filePath) {
+        this.filePath = filePath;
+    }
 
     @Override
     public String name() { return "Nitrite"; }
@@ -26,10 +49,12 @@ public class NitriteIssueRepository implements IssueRepository {
     @Override
     public void init() {
         try {
-            File tmp = File.createTempFile("nitrite-issues", ".db");
-            String path = tmp.getAbsolutePath();
-            if (tmp.exists()) tmp.delete();
-            filePath = path;
+            if (filePath == null) {
+                File tmp = File.createTempFile("nitrite-issues", ".db");
+                String path = tmp.getAbsolutePath();
+                if (tmp.exists()) tmp.delete();
+                filePath = path;
+            }
 
             // Direct Nitrite v4 initialization without reflection
             db = Nitrite.builder()
@@ -40,6 +65,15 @@ public class NitriteIssueRepository implements IssueRepository {
                     .openOrCreate("user", "password");
 
             coll = db.getCollection("issues");
+            // "tags" holds a list: the index gets one entry per tag, so an equality filter on it finds issues by tag
+            if (!coll.hasIndex("tags")) coll.createIndex(IndexOptions.indexOptions(IndexType.NON_UNIQUE), "tags");
+            // pages seek by id, or by (ruleKey, id) for the issues of a rule
+            if (!coll.hasIndex("id")) coll.createIndex(IndexOptions.indexOptions(IndexType.NON_UNIQUE), "id");
+            if (!coll.hasIndex("ruleKey", "id")) coll.createIndex(IndexOptions.indexOptions(IndexType.NON_UNIQUE), "ruleKey", "id");
+            // retention purges select by creation date
+            if (!coll.hasIndex("creationDateEpochMillis")) coll.createIndex(IndexOptions.indexOptions(IndexType.NON_UNIQUE), "creationDateEpochMillis");
+            textIndex = TextSearch.indexEnabled();
+            if (textIndex && !coll.hasIndex("message")) coll.createIndex(IndexOptions.indexOptions(IndexType.FULL_TEXT), "message");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -47,33 +81,181 @@ public class NitriteIssueRepository implements IssueRepository {
 
     @Override
     public void insertAll(List<Issue> issues) {
+        OperationTimer timer = OperationTimer.begin(name(), "insertAll");
         List<Document> docs = new ArrayList<>(issues.size());
+        long encodeStart = timer.start();
         for (Issue is : issues) {
             docs.add(toDoc(is));
         }
+        // documents are serialized by the store itself, so no encoded size is known here
+        timer.encoded(encodeStart, 0);
+        long executeStart = timer.start();
         coll.insert(docs.toArray(new Document[0]));
+        timer.executed(executeStart);
+        timer.end(issues.size());
     }
 
     @Override
     public List<Issue> readAll() {
+        OperationTimer timer = OperationTimer.begin(name(), "readAll");
         List<Issue> out = new ArrayList<>();
-        for (Document d : coll.find()) out.add(fromDoc(d));
+        long executeStart = timer.start();
+        var cur = coll.find();
+        timer.executed(executeStart);
+        decodeAll(cur, out, timer);
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public List<Issue> searchByRule(String ruleKey) {
+        OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
+        long executeStart = timer.start();
         var cur = coll.find(FluentFilter.where("ruleKey").eq(ruleKey));
+        timer.executed(executeStart);
         List<Issue> out = new ArrayList<>();
-        for (Document d : cur) out.add(fromDoc(d));
+        decodeAll(cur, out, timer);
+        timer.end(out.size());
         return out;
     }
 
     @Override
     public Issue getById(String id) {
+        OperationTimer timer = OperationTimer.begin(name(), "getById");
+        long executeStart = timer.start();
         var cur = coll.find(FluentFilter.where("id").eq(id));
-        for (Document d : cur) return fromDoc(d);
-        return null;
+        timer.executed(executeStart);
+        List<Issue> out = new ArrayList<>(1);
+        decodeAll(cur, out, timer);
+        timer.end(out.size());
+        return out.isEmpty() ? null : out.get(0);
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) {
+        return page(ruleKey, pageSize, token);
+    }
+
+    /**
+     * One index lookup per tag: with {@link TagMatch#ANY} the results are merged by id, with {@link TagMatch#ALL} the
+     * issues of the first tag are checked for the other ones once decoded.
+     */
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) {
+        Set<String> distinct = new LinkedHashSet<>(tags);
+        if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+        OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+        List<Issue> out = new ArrayList<>();
+        if (match == TagMatch.ALL) {
+            List<Issue> candidates = new ArrayList<>();
+            long executeStart = timer.start();
+            var cur = coll.find(FluentFilter.where("tags").eq(distinct.iterator().next()));
+            timer.executed(executeStart);
+            decodeAll(cur, candidates, timer);
+            for (Issue is : candidates) {
+                if (match.matches(is.getTags(), distinct)) out.add(is);
+            }
+        } else {
+            Set<String> seen = new HashSet<>();
+            for (String tag : distinct) {
+                List<Issue> found = new ArrayList<>();
+                long executeStart = timer.start();
+                var cur = coll.find(FluentFilter.where("tags").eq(tag));
+                timer.executed(executeStart);
+                decodeAll(cur, found, timer);
+                for (Issue is : found) {
+                    if (seen.add(is.getId())) out.add(is);
+                }
+            }
+        }
+        timer.end(out.size());
+        return out;
+    }
+
+    /**
+     * Nitrite's text filter returns the documents having any of the words, so only the first word goes through the
+     * full-text index and the others are checked on the decoded issues. Its tokenizer drops English stop words,
+     * which are then never found.
+     */
+    @Override
+    public List<Issue> searchMessage(String query) {
+        Set<String> words = TextSearch.words(query);
+        if (!textIndex || words.isEmpty()) return TextSearch.filter(readAll(), words);
+        OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+        List<Issue> candidates = new ArrayList<>();
+        long executeStart = timer.start();
+        var cur = coll.find(FluentFilter.where("message").text(words.iterator().next()));
+        timer.executed(executeStart);
+        decodeAll(cur, candidates, timer);
+        List<Issue> out = TextSearch.filter(candidates, words);
+        timer.end(out.size());
+        return out;
+    }
+
+    /** Nitrite has no aggregation: every document is read, but only for the counted field, no issue is decoded. */
+    @Override
+    public Map<String, Long> countBy(IssueField field) {
+        OperationTimer timer = OperationTimer.begin(name(), "countBy");
+        Map<String, Long> out = new TreeMap<>();
+        long executeStart = timer.start();
+        for (Document d : coll.find()) {
+            String value = d.get(field.column, String.class);
+            if (value != null) out.merge(value, 1L, Long::sum);
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) {
+        OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        long executeStart = timer.start();
+        for (Document d : coll.find()) {
+            String r = d.get(row.column, String.class);
+            String c = d.get(column.column, String.class);
+            if (r != null && c != null) out.computeIfAbsent(r, k -> new TreeMap<>()).merge(c, 1L, Long::sum);
+        }
+        timer.executed(executeStart);
+        timer.end(out.size());
+        return out;
+    }
+
+    /**
+     * Keyset page of the issues of {@code ruleKey}, or of all issues when null. The id and (ruleKey, id) indexes find
+     * the documents after the key; Nitrite sorts them by id before cutting the page, so the first pages of a large
+     * result are the most expensive ones.
+     */
+    private Page page(String ruleKey, int pageSize, String token) {
+        Page.checkSize(pageSize);
+        String afterId = Page.afterId(token, ruleKey);
+        Filter after = afterId == null ? null : FluentFilter.where("id").gt(afterId);
+        Filter filter;
+        if (ruleKey == null) filter = after == null ? Filter.ALL : after;
+        else filter = after == null ? FluentFilter.where("ruleKey").eq(ruleKey) : Filter.and(FluentFilter.where("ruleKey").eq(ruleKey), after);
+        OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+        long executeStart = timer.start();
+        var cur = coll.find(filter, FindOptions.orderBy("id", SortOrder.Ascending).limit((long) pageSize + 1));
+        timer.executed(executeStart);
+        List<Issue> out = new ArrayList<>(pageSize + 1);
+        decodeAll(cur, out, timer);
+        timer.end(out.size());
+        return Page.of(out, pageSize, ruleKey);
+    }
+
+    /** Cursors are lazy: fetching documents is not timed here and shows as the rest of the operation. */
+    private void decodeAll(Iterable<Document> docs, List<Issue> out, OperationTimer timer) {
+        for (Document d : docs) {
+            long decodeStart = timer.start();
+            out.add(fromDoc(d));
+            timer.decoded(decodeStart);
+        }
     }
 
     private Document toDoc(Issue is) {
@@ -231,6 +413,39 @@ public class NitriteIssueRepository implements IssueRepository {
         return is;
     }
 
+    @Override
+    public long deleteOlderThan(long epochMillis) {
+        OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+        long executeStart = timer.start();
+        long deleted = coll.remove(FluentFilter.where("creationDateEpochMillis").lt(epochMillis)).getAffectedCount();
+        timer.executed(executeStart);
+        timer.end(deleted);
+        return deleted;
+    }
+
+    /**
+     * Commits, then rewrites chunks for up to a minute until the file is mostly live data, as
+     * {@link MvStoreIssueRepository#compact()} does. Nitrite has no compaction of its own and its MVStore adapter keeps
+     * the MVStore in a private field, hence the reflection.
+     */
+    @Override
+    public void compact() throws Exception {
+        OperationTimer timer = OperationTimer.begin(name(), "compact");
+        long executeStart = timer.start();
+        db.commit();
+        Field field = NitriteMVStore.class.getDeclaredField("mvStore");
+        field.setAccessible(true);
+        MVStore store = (MVStore) field.get(db.getStore());
+        store.compactFile(60_000);
+        timer.executed(executeStart);
+        timer.end(0);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return filePath == null ? -1L : StoreFiles.sizeOf(filePath);
+    }
+
     @Override
     public void close() {
         try {
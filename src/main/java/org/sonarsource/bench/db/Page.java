@@ -0,0 +1,91 @@
+package org.sonarsource.bench.db;
+
+import org.sonarsource.bench.model.Issue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One page of a paged {@code readAll} or {@code searchByRule}, in id order. The next page is asked for with
+ * {@link #getNextToken()}, an opaque token holding the (ruleKey, id) key of the last issue of this page: engines seek
+ * past that key in their index instead of skipping rows, so a deep page costs what the first one does.
+ * <p>
+ * Tokens stay valid while issues are inserted; issues inserted before the last key of a page are not seen by the
+ * following pages.
+ */
+public final class Page {
+    public static final Comparator<Issue> ID_ORDER = Comparator.comparing(Issue::getId);
+
+    private final List<Issue> issues;
+    private final String nextToken;
+
+    private Page(List<Issue> issues, String nextToken) {
+        this.issues = issues;
+        this.nextToken = nextToken;
+    }
+
+    /**
+     * Page of the first {@code pageSize} of {@code issues}, which are in id order. Stores ask for one more issue than
+     * the page holds: when they get it, there is a next page.
+     *
+     * @param ruleKey the rule of a {@code searchByRule} page, null for a {@code readAll} page
+     */
+    public static Page of(List<Issue> issues, int pageSize, String ruleKey) {
+        if (issues.size() <= pageSize) return new Page(issues, null);
+        List<Issue> page = new ArrayList<>(issues.subList(0, pageSize));
+        return new Page(page, token(ruleKey, page.get(pageSize - 1).getId()));
+    }
+
+    /**
+     * Id after which the page of {@code token} starts, or null for the first page.
+     *
+     * @throws IllegalArgumentException if the token is malformed or was returned by another query
+     */
+    public static String afterId(String token, String ruleKey) {
+        if (token == null) return null;
+        String key;
+        try {
+            key = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token: " + token, e);
+        }
+        String prefix = prefix(ruleKey);
+        if (!key.startsWith(prefix) || key.length() == prefix.length()) {
+            throw new IllegalArgumentException("Page token of another query: " + token);
+        }
+        return key.substring(prefix.length());
+    }
+
+    public static void checkSize(int pageSize) {
+        if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+    }
+
+    /** Page of {@code candidates}, in any order, for stores that cannot seek: sorts them and skips the previous pages. */
+    static Page slice(List<Issue> candidates, int pageSize, String ruleKey, String token) {
+        String after = afterId(token, ruleKey);
+        List<Issue> rest = new ArrayList<>();
+        for (Issue is : candidates) {
+            if (after == null || is.getId().compareTo(after) > 0) rest.add(is);
+        }
+        rest.sort(ID_ORDER);
+        return of(rest.size() > pageSize ? rest.subList(0, pageSize + 1) : rest, pageSize, ruleKey);
+    }
+
+    private static String token(String ruleKey, String lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((prefix(ruleKey) + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String prefix(String ruleKey) {
+        return ruleKey == null ? "A\0" : "R" + ruleKey + "\0";
+    }
+
+    public List<Issue> getIssues() { return issues; }
+
+    /** Token of the next page, or null when this page is the last one. */
+    public String getNextToken() { return nextToken; }
+
+    public boolean hasNext() { return nextToken != null; }
+}
@@ -0,0 +1,62 @@
+package org.sonarsource.bench.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the {@link IssueRepositoryProvider}s found on the class path, in service file order.
+ */
+public final class Repositories {
+    private static List<IssueRepositoryProvider> providers;
+
+    private Repositories() {
+    }
+
+    public static synchronized List<IssueRepositoryProvider> all() {
+        if (providers == null) {
+            List<IssueRepositoryProvider> found = new ArrayList<>();
+            for (IssueRepositoryProvider p : ServiceLoader.load(IssueRepositoryProvider.class)) found.add(p);
+            providers = Collections.unmodifiableList(found);
+        }
+        return providers;
+    }
+
+    public static IssueRepositoryProvider get(String id) {
+        String key = id.trim().toLowerCase(Locale.ROOT);
+        for (IssueRepositoryProvider p : all()) {
+            if (p.id().equals(key)) return p;
+        }
+        throw new IllegalArgumentException("Unsupported db: " + id + " (available: " + String.join(",", ids(all())) + ")");
+    }
+
+    /**
+     * Parses a comma-separated selection such as {@code h2,sqlite}; null selects every provider enabled by default.
+     */
+    public static List<IssueRepositoryProvider> select(String csv) {
+        List<IssueRepositoryProvider> out = new ArrayList<>();
+        if (csv == null) {
+            for (IssueRepositoryProvider p : all()) {
+                if (p.enabledByDefault()) out.add(p);
+            }
+            return out;
+        }
+        for (String s : csv.split(",")) {
+            if (!s.isBlank()) out.add(get(s));
+        }
+        return out;
+    }
+
+    /** Creates a repository stored at {@code path} with the default tuning profile. */
+    public static IssueRepository create(String id, String path) {
+        return get(id).create(path, TuningProfile.defaultProfile());
+    }
+
+    public static List<String> ids(List<IssueRepositoryProvider> providers) {
+        List<String> ids = new ArrayList<>();
+        for (IssueRepositoryProvider p : providers) ids.add(p.id());
+        return ids;
+    }
+}
@@ -1,5 +1,6 @@
 package org.sonarsource.bench.db;
 
+import org.sonarsource.bench.jfr.OperationTimer;
 import org.sonarsource.bench.model.Issue;
 import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
@@ -10,13 +11,19 @@ import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
 
 public class SqliteIssueRepository implements IssueRepository {
   private Connection conn;
+  private boolean textIndex;
   private String dbPath;
   private boolean autoCreatedPath = true;
+  private TuningProfile profile = TuningProfile.defaultProfile();
 
   public SqliteIssueRepository() {
   }
@@ -26,6 +33,15 @@ public class SqliteIssueRepository implements IssueRepository {
     this.autoCreatedPath = false;
   }
 
+  public SqliteIssueRepository(TuningProfile profile) {
+    this.profile = profile;
+  }
+
+  public SqliteIssueRepository(String dbPath, TuningProfile profile) {
+    this(dbPath);
+    this.profile = profile;
+  }
+
   @Override
   public String name() {
     return "SQLite";
@@ -50,6 +66,7 @@ public class SqliteIssueRepository implements IssueRepository {
     conn = DriverManager.getConnection(url);
     try (Statement st = conn.createStatement()) {
       st.execute("PRAGMA journal_mode=WAL");
+      applyProfile(st);
       st.execute("CREATE TABLE IF NOT EXISTS issues (" +
         "id TEXT PRIMARY KEY, " +
         "ruleKey TEXT, " +
@@ -62,14 +79,44 @@ public class SqliteIssueRepository implements IssueRepository {
         "tags TEXT, " +
         "details TEXT)"
       );
-      st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey)");
+      st.execute("CREATE INDEX IF NOT EXISTS idx_rule ON issues(ruleKey, id)");
+      st.execute("CREATE INDEX IF NOT EXISTS idx_created ON issues(creationDate)");
+      st.execute("CREATE TABLE IF NOT EXISTS " + JdbcUtils.CREATE_TAG_TABLE);
+      textIndex = TextSearch.indexEnabled();
+      // the index and its triggers only exist while it is on: a run without it must not pay for the triggers
+      boolean ftsTable = tableExists("issues_fts");
+      if (textIndex) {
+        // external content table: FTS5 only keeps the word index, messages stay in issues; triggers keep both in sync
+        st.execute("CREATE VIRTUAL TABLE IF NOT EXISTS issues_fts USING fts5(message, content='issues', content_rowid='rowid')");
+        st.execute("CREATE TRIGGER IF NOT EXISTS issues_fts_insert AFTER INSERT ON issues BEGIN " +
+          "INSERT INTO issues_fts(rowid, message) VALUES (new.rowid, new.message); END");
+        st.execute("CREATE TRIGGER IF NOT EXISTS issues_fts_delete AFTER DELETE ON issues BEGIN " +
+          "INSERT INTO issues_fts(issues_fts, rowid, message) VALUES ('delete', old.rowid, old.message); END");
+        // indexes the messages stored before the table existed
+        if (!ftsTable) st.execute("INSERT INTO issues_fts(issues_fts) VALUES('rebuild')");
+      } else if (ftsTable) {
+        st.execute("DROP TRIGGER IF EXISTS issues_fts_insert");
+        st.execute("DROP TRIGGER IF EXISTS issues_fts_delete");
+        st.execute("DROP TABLE issues_fts");
+      }
+    }
+  }
+
+  private boolean tableExists(String name) throws SQLException {
+    try (PreparedStatement ps = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type='table' AND name=?")) {
+      ps.setString(1, name);
+      try (ResultSet rs = ps.executeQuery()) {
+        return rs.next();
+      }
     }
   }
 
   @Override
   public void insertAll(List<Issue> issues) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "insertAll");
     String sql = "INSERT INTO issues(id, ruleKey, severity, message, filePath, line, creationDate, assignee, tags, details) VALUES(?,?,?,?,?,?,?,?,?,?)";
-    try (PreparedStatement ps = conn.prepareStatement(sql)) {
+    try (PreparedStatement ps = conn.prepareStatement(sql);
+         PreparedStatement tagPs = conn.prepareStatement(JdbcUtils.INSERT_TAG)) {
       int i = 0;
       for (Issue is : issues) {
         ps.setString(1, is.getId());
@@ -82,44 +129,198 @@ public class SqliteIssueRepository implements IssueRepository {
         ps.setLong(7, is.getCreationDateEpochMillis());
         ps.setString(8, is.getAssignee());
         ps.setString(9, String.join(",", is.getTags()));
-        ps.setString(10, encodeDetails(is));
+        long encodeStart = timer.start();
+        String details = encodeDetails(is);
+        timer.encoded(encodeStart, details);
+        ps.setString(10, details);
         ps.addBatch();
-        if (++i % 1000 == 0) ps.executeBatch();
+        JdbcUtils.addTagRows(tagPs, is);
+        if (++i % 1000 == 0) {
+          long executeStart = timer.start();
+          ps.executeBatch();
+          tagPs.executeBatch();
+          timer.executed(executeStart);
+        }
       }
+      long executeStart = timer.start();
       ps.executeBatch();
+      tagPs.executeBatch();
+      timer.executed(executeStart);
     }
+    timer.end(issues.size());
   }
 
   @Override
   public List<Issue> readAll() throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "readAll");
     List<Issue> out = new ArrayList<>();
-    try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
-      while (rs.next()) out.add(fromRow(rs));
+    try (Statement st = conn.createStatement()) {
+      long executeStart = timer.start();
+      try (ResultSet rs = st.executeQuery("SELECT * FROM issues")) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
     }
+    timer.end(out.size());
     return out;
   }
 
   @Override
   public List<Issue> searchByRule(String ruleKey) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "searchByRule");
     List<Issue> out = new ArrayList<>();
     try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE ruleKey = ?")) {
       ps.setString(1, ruleKey);
+      long executeStart = timer.start();
       try (ResultSet rs = ps.executeQuery()) {
-        while (rs.next()) out.add(fromRow(rs));
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
       }
     }
+    timer.end(out.size());
     return out;
   }
 
   @Override
   public Issue getById(String id) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "getById");
+    List<Issue> out = new ArrayList<>(1);
     try (PreparedStatement ps = conn.prepareStatement("SELECT * FROM issues WHERE id = ?")) {
       ps.setString(1, id);
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return out.isEmpty() ? null : out.get(0);
+  }
+
+  @Override
+  public Page readAll(int pageSize, String token) throws Exception {
+    return page(null, pageSize, token);
+  }
+
+  @Override
+  public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+    return page(ruleKey, pageSize, token);
+  }
+
+  @Override
+  public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+    Set<String> distinct = JdbcUtils.distinct(tags);
+    if (distinct.isEmpty()) return match == TagMatch.ALL ? readAll() : new ArrayList<>();
+    OperationTimer timer = OperationTimer.begin(name(), "searchByTags");
+    List<Issue> out = new ArrayList<>();
+    try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.tagSearchSql(distinct.size(), match))) {
+      int i = 0;
+      for (String tag : distinct) ps.setString(++i, tag);
+      long executeStart = timer.start();
       try (ResultSet rs = ps.executeQuery()) {
-        if (rs.next()) return fromRow(rs);
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
       }
     }
-    return null;
+    timer.end(out.size());
+    return out;
+  }
+
+  @Override
+  public List<Issue> searchMessage(String query) throws Exception {
+    Set<String> words = TextSearch.words(query);
+    if (!textIndex || words.isEmpty()) return IssueRepository.super.searchMessage(query);
+    // each word quoted, so that FTS5 reads it as a plain term; terms next to each other must all match
+    StringJoiner match = new StringJoiner(" ");
+    for (String word : words) match.add('"' + word + '"');
+    OperationTimer timer = OperationTimer.begin(name(), "searchMessage");
+    List<Issue> out = new ArrayList<>();
+    try (PreparedStatement ps = conn.prepareStatement(
+      "SELECT i.* FROM issues i WHERE i.rowid IN (SELECT rowid FROM issues_fts WHERE issues_fts MATCH ?)")) {
+      ps.setString(1, match.toString());
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return out;
+  }
+
+  /**
+   * Negative cache_size is in KiB; mmap_size is in bytes (0 disables memory-mapped I/O). The profiles also create new
+   * databases with auto_vacuum=INCREMENTAL, which keeps a free page list for compact() at the cost of pointer-map
+   * pages on every write; DEFAULT leaves it off, as SQLite ships.
+   */
+  private void applyProfile(Statement st) throws SQLException {
+    // only takes effect on a new database, before its first table
+    if (profile != TuningProfile.DEFAULT) st.execute("PRAGMA auto_vacuum=INCREMENTAL");
+    switch (profile) {
+      case DEFAULT:
+        break;
+      case SAFE:
+        st.execute("PRAGMA synchronous=FULL");
+        st.execute("PRAGMA cache_size=-2000");
+        st.execute("PRAGMA mmap_size=0");
+        st.execute("PRAGMA temp_store=DEFAULT");
+        break;
+      case FAST_UNSAFE:
+        st.execute("PRAGMA synchronous=OFF");
+        st.execute("PRAGMA cache_size=-65536");
+        st.execute("PRAGMA mmap_size=1073741824");
+        st.execute("PRAGMA temp_store=MEMORY");
+        break;
+      case BALANCED:
+      default:
+        st.execute("PRAGMA synchronous=NORMAL");
+        st.execute("PRAGMA cache_size=-16384");
+        st.execute("PRAGMA mmap_size=268435456");
+        st.execute("PRAGMA temp_store=MEMORY");
+        break;
+    }
+  }
+
+  @Override
+  public Map<String, Long> countBy(IssueField field) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "countBy");
+    Map<String, Long> out = JdbcUtils.countBy(conn, field, timer);
+    timer.end(out.size());
+    return out;
+  }
+
+  @Override
+  public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "countByMatrix");
+    Map<String, Map<String, Long>> out = JdbcUtils.countBy(conn, row, column, timer);
+    timer.end(out.size());
+    return out;
+  }
+
+  /** Keyset page of the issues of {@code ruleKey}, or of all issues when null. */
+  private Page page(String ruleKey, int pageSize, String token) throws Exception {
+    Page.checkSize(pageSize);
+    String afterId = Page.afterId(token, ruleKey);
+    OperationTimer timer = OperationTimer.begin(name(), ruleKey == null ? "readAllPage" : "searchByRulePage");
+    List<Issue> out = new ArrayList<>(pageSize + 1);
+    try (PreparedStatement ps = conn.prepareStatement(JdbcUtils.pageSql(ruleKey != null, afterId != null, "LIMIT ?"))) {
+      JdbcUtils.bindPage(ps, ruleKey, afterId, pageSize);
+      long executeStart = timer.start();
+      try (ResultSet rs = ps.executeQuery()) {
+        timer.executed(executeStart);
+        decodeAll(rs, out, timer);
+      }
+    }
+    timer.end(out.size());
+    return Page.of(out, pageSize, ruleKey);
+  }
+
+  private void decodeAll(ResultSet rs, List<Issue> out, OperationTimer timer) throws SQLException {
+    while (rs.next()) {
+      long decodeStart = timer.start();
+      out.add(fromRow(rs));
+      timer.decoded(decodeStart);
+    }
   }
 
   private Issue fromRow(ResultSet rs) throws SQLException {
@@ -271,6 +472,52 @@ public class SqliteIssueRepository implements IssueRepository {
     }
   }
 
+  /** The FTS delete trigger removes the words of the deleted messages. */
+  @Override
+  public long deleteOlderThan(long epochMillis) throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "deleteOlderThan");
+    long deleted = JdbcUtils.deleteOlderThan(conn, false, epochMillis, timer);
+    timer.end(deleted);
+    return deleted;
+  }
+
+  /**
+   * With auto_vacuum=INCREMENTAL, incremental_vacuum moves the free pages to the end of the file and truncates it;
+   * a database created without it is rewritten whole by VACUUM. VACUUM may renumber the rowids of issues, which has
+   * no INTEGER PRIMARY KEY, so issues_fts, keyed on them, is rebuilt after it. The WAL is then checkpointed and
+   * truncated, or it would keep the pages the compaction went through.
+   */
+  @Override
+  public void compact() throws Exception {
+    OperationTimer timer = OperationTimer.begin(name(), "compact");
+    long executeStart = timer.start();
+    try (Statement st = conn.createStatement()) {
+      int autoVacuum;
+      try (ResultSet rs = st.executeQuery("PRAGMA auto_vacuum")) {
+        autoVacuum = rs.next() ? rs.getInt(1) : 0;
+      }
+      if (autoVacuum == 2) {
+        st.execute("PRAGMA incremental_vacuum");
+      } else {
+        st.execute("VACUUM");
+        if (textIndex) st.execute("INSERT INTO issues_fts(issues_fts) VALUES('rebuild')");
+      }
+      st.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+    }
+    timer.executed(executeStart);
+    timer.end(0);
+  }
+
+  @Override
+  public long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+    return JdbcUtils.loadInTransactions(conn, this, issues, batchSize);
+  }
+
+  @Override
+  public long sizeOnDisk() {
+    return dbPath == null ? -1L : StoreFiles.sizeOf(dbPath, dbPath + "-wal", dbPath + "-shm");
+  }
+
   @Override
   public void close() {
     try {
@@ -0,0 +1,27 @@
+package org.sonarsource.bench.db;
+
+import java.io.File;
+
+final class StoreFiles {
+    private StoreFiles() {
+    }
+
+    /** Total size of the given files, directories counted recursively; missing ones count as 0. */
+    static long sizeOf(String... paths) {
+        long total = 0;
+        for (String p : paths) {
+            if (p != null) total += sizeOf(new File(p));
+        }
+        return total;
+    }
+
+    private static long sizeOf(File f) {
+        if (f.isFile()) return f.length();
+        long total = 0;
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) total += sizeOf(c);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,21 @@
+package org.sonarsource.bench.db;
+
+import java.util.Collection;
+
+/** How {@link IssueRepository#searchByTags} combines several tags. */
+public enum TagMatch {
+    /** Issues having every one of the tags. */
+    ALL,
+    /** Issues having at least one of the tags. */
+    ANY;
+
+    /** Whether an issue with {@code issueTags} matches {@code tags}. */
+    public boolean matches(Collection<String> issueTags, Collection<String> tags) {
+        if (issueTags == null) return false;
+        if (this == ALL) return issueTags.containsAll(tags);
+        for (String t : tags) {
+            if (issueTags.contains(t)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,63 @@
+package org.sonarsource.bench.db;
+
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Tokenization shared by {@link IssueRepository#searchMessage(String)} implementations: a message matches a query when
+ * it contains every word of it. Words are runs of letters and digits, compared case-insensitively, which is close to
+ * what SQLite FTS5, H2 FullText and Nitrite tokenizers do, so all engines return the same issues.
+ * <p>
+ * Engines keep their message index up to date in {@code insertAll}. Setting the {@value #INDEX_PROPERTY} system
+ * property to false before a store is opened disables it, to measure what it costs; searches then scan. A store
+ * reopened with the index builds it from the issues already stored, and the built-in indexes are dropped while it is
+ * off, since inserts would leave them stale.
+ */
+public final class TextSearch {
+    public static final String INDEX_PROPERTY = "bench.textIndex";
+    /** Longer words are not indexed, nor searched for; they fit the word columns of the SQL engines. */
+    static final int MAX_WORD_LENGTH = 64;
+
+    private TextSearch() {
+    }
+
+    public static boolean indexEnabled() {
+        return Boolean.parseBoolean(System.getProperty(INDEX_PROPERTY, "true"));
+    }
+
+    /** Distinct lower-case words of {@code text}, in order of first appearance. */
+    public static Set<String> words(String text) {
+        Set<String> out = new LinkedHashSet<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start <= MAX_WORD_LENGTH) out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    public static boolean matches(String message, Collection<String> words) {
+        return !words.isEmpty() && words(message).containsAll(words);
+    }
+
+    /** Issues among {@code candidates} whose message has all the words. */
+    static List<Issue> filter(List<Issue> candidates, Collection<String> words) {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : candidates) {
+            if (matches(is.getMessage(), words)) out.add(is);
+        }
+        return out;
+    }
+}
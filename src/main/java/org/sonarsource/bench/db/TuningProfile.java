@@ -0,0 +1,51 @@
+package org.sonarsource.bench.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Named engine tuning presets. Each repository translates a profile into its own knobs
+ * (pragmas, URL settings or system properties), so the same name can be compared across engines.
+ */
+public enum TuningProfile {
+    /** Nothing set: each engine runs with its own defaults, as before profiles existed. */
+    DEFAULT("default"),
+    /** Sync on every commit, engine default cache sizes. */
+    SAFE("safe"),
+    /** Relaxed syncing and larger caches; a power loss may drop the last moments of work but not corrupt the store. */
+    BALANCED("balanced"),
+    /** No syncing and maximum caching; a crash may lose or corrupt the store. */
+    FAST_UNSAFE("fast-unsafe");
+
+    private final String id;
+
+    TuningProfile(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static TuningProfile defaultProfile() {
+        return DEFAULT;
+    }
+
+    public static TuningProfile fromId(String id) {
+        String key = id.trim().toLowerCase(Locale.ROOT);
+        for (TuningProfile p : values()) {
+            if (p.id.equals(key)) return p;
+        }
+        throw new IllegalArgumentException("Unknown tuning profile: " + id);
+    }
+
+    /** Parses a comma-separated list such as {@code safe,fast-unsafe}. */
+    public static List<TuningProfile> parseList(String csv) {
+        List<TuningProfile> out = new ArrayList<>();
+        for (String s : csv.split(",")) {
+            if (!s.isBlank()) out.add(fromId(s));
+        }
+        return out;
+    }
+}
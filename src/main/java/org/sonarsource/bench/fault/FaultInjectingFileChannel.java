@@ -0,0 +1,215 @@
+package org.sonarsource.bench.fault;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FileChannel that journals the previous content of every region it writes until the write is forced to disk,
+ * so that {@link #rewind(FaultMode)} can put the file back into the state a power loss would leave behind.
+ * <p>
+ * Memory-mapped writes ({@link #map}) bypass the journal; the engines routed through here use positional writes.
+ */
+final class FaultInjectingFileChannel extends FileChannel {
+    private static final int SECTOR_SIZE = 512;
+
+    private final FileChannel base;
+    /** Writes since the last force(), oldest first. */
+    private List<PendingWrite> unsynced = new ArrayList<>();
+    /** FSYNC_LIE only: writes the last force() acknowledged without persisting them. */
+    private List<PendingWrite> acknowledged = new ArrayList<>();
+
+    FaultInjectingFileChannel(FileChannel base) {
+        this.base = base;
+        FaultInjector.opened(this);
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return base.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return base.read(dsts, offset, length);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return base.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            journal(base.position(), src.remaining());
+            int n = base.write(src);
+            FaultInjector.afterWrite();
+            return n;
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            long total = 0;
+            for (int i = offset; i < offset + length; i++) total += srcs[i].remaining();
+            journal(base.position(), total);
+            long n = base.write(srcs, offset, length);
+            FaultInjector.afterWrite();
+            return n;
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            journal(position, src.remaining());
+            int n = base.write(src, position);
+            FaultInjector.afterWrite();
+            return n;
+        }
+    }
+
+    @Override
+    public long position() throws IOException {
+        return base.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        base.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return base.size();
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            long oldSize = base.size();
+            if (size < oldSize) journal(size, oldSize - size);
+            base.truncate(size);
+            return this;
+        }
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            if (FaultInjector.mode() == FaultMode.FSYNC_LIE) {
+                // Report success at once; only what the previous force() covered is now really on disk
+                acknowledged = unsynced;
+                unsynced = new ArrayList<>();
+            } else {
+                base.force(metaData);
+                unsynced.clear();
+            }
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return base.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        synchronized (FaultInjector.lock()) {
+            journal(position, count);
+            long n = base.transferFrom(src, position, count);
+            FaultInjector.afterWrite();
+            return n;
+        }
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return base.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return base.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return base.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        FaultInjector.closed(this);
+        base.close();
+    }
+
+    /**
+     * Applies a simulated power loss to the underlying file. Must be called with the injector lock held.
+     */
+    void rewind(FaultMode mode) throws IOException {
+        List<PendingWrite> lost = new ArrayList<>(acknowledged);
+        lost.addAll(unsynced);
+        if (lost.isEmpty()) return;
+        if (mode == FaultMode.TORN_WRITE) {
+            lost.get(lost.size() - 1).tear(base);
+        } else {
+            for (int i = lost.size() - 1; i >= 0; i--) lost.get(i).undo(base);
+        }
+        acknowledged.clear();
+        unsynced.clear();
+        base.force(true);
+    }
+
+    private void journal(long position, long length) throws IOException {
+        long sizeBefore = base.size();
+        int overlap = (int) Math.max(0, Math.min(length, sizeBefore - position));
+        ByteBuffer before = ByteBuffer.allocate(overlap);
+        while (before.hasRemaining()) {
+            if (base.read(before, position + before.position()) < 0) break;
+        }
+        unsynced.add(new PendingWrite(position, length, before.array(), sizeBefore));
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer src, long position) throws IOException {
+        long pos = position;
+        while (src.hasRemaining()) pos += ch.write(src, pos);
+    }
+
+    private static final class PendingWrite {
+        final long position;
+        final long length;
+        final byte[] before;
+        final long sizeBefore;
+
+        PendingWrite(long position, long length, byte[] before, long sizeBefore) {
+            this.position = position;
+            this.length = length;
+            this.before = before;
+            this.sizeBefore = sizeBefore;
+        }
+
+        /** The write never happened. */
+        void undo(FileChannel ch) throws IOException {
+            if (before.length > 0) writeFully(ch, ByteBuffer.wrap(before), position);
+            if (ch.size() > sizeBefore) ch.truncate(sizeBefore);
+        }
+
+        /** Only the first half of the write, rounded down to a sector, reached the disk. */
+        void tear(FileChannel ch) throws IOException {
+            int kept = (int) (length / 2 / SECTOR_SIZE * SECTOR_SIZE);
+            if (kept < before.length) writeFully(ch, ByteBuffer.wrap(before, kept, before.length - kept), position + kept);
+            long end = Math.max(sizeBefore, position + kept);
+            if (ch.size() > end) ch.truncate(end);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.sonarsource.bench.fault;
+
+import org.mapdb.DBException;
+import org.mapdb.DataInput2;
+import org.mapdb.volume.Volume;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MapDB Volume over a {@link FaultInjectingFileChannel}, to hand to {@code DBMaker.volumeDB}: MapDB has no file
+ * scheme to plug a channel into, and its own FileChannelVol is final and opens its channel itself. It reads and
+ * writes like FileChannelVol, growing the file a slice at a time, so the store runs on positional channel I/O
+ * instead of the memory-mapped files MapDB uses otherwise, whose writes the journal could not see.
+ */
+public final class FaultInjectingVolume extends Volume {
+    private static final int SLICE_SIZE = 1 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final boolean existed;
+    private volatile long size;
+
+    public FaultInjectingVolume(File file) throws IOException {
+        this.file = file;
+        this.existed = file.length() > 0;
+        this.channel = new FaultInjectingFileChannel(FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        this.size = channel.size();
+    }
+
+    /** Whether the file held a store before, the {@code volumeExists} argument of {@code DBMaker.volumeDB}. */
+    public boolean existed() {
+        return existed;
+    }
+
+    @Override
+    public synchronized void ensureAvailable(long offset) {
+        long newSize = (offset + SLICE_SIZE - 1) / SLICE_SIZE * SLICE_SIZE;
+        if (newSize <= size) return;
+        writeFully(newSize - 1, ByteBuffer.allocate(1));
+        size = newSize;
+    }
+
+    @Override
+    public synchronized void truncate(long size) {
+        try {
+            channel.truncate(size);
+            this.size = size;
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+    }
+
+    @Override
+    public void putLong(long offset, long value) {
+        writeFully(offset, ByteBuffer.allocate(8).putLong(0, value));
+    }
+
+    @Override
+    public void putInt(long offset, int value) {
+        writeFully(offset, ByteBuffer.allocate(4).putInt(0, value));
+    }
+
+    @Override
+    public void putByte(long offset, byte value) {
+        writeFully(offset, ByteBuffer.allocate(1).put(0, value));
+    }
+
+    @Override
+    public void putData(long offset, byte[] src, int srcPos, int srcSize) {
+        writeFully(offset, ByteBuffer.wrap(src, srcPos, srcSize));
+    }
+
+    @Override
+    public void putData(long offset, ByteBuffer buf) {
+        writeFully(offset, buf);
+    }
+
+    @Override
+    public long getLong(long offset) {
+        return readFully(offset, 8).getLong(0);
+    }
+
+    @Override
+    public int getInt(long offset) {
+        return readFully(offset, 4).getInt(0);
+    }
+
+    @Override
+    public byte getByte(long offset) {
+        return readFully(offset, 1).get(0);
+    }
+
+    @Override
+    public DataInput2 getDataInput(long offset, int size) {
+        return new DataInput2.ByteBuffer(readFully(offset, size), 0);
+    }
+
+    @Override
+    public void getData(long offset, byte[] bytes, int bytesPos, int size) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes, bytesPos, size);
+        try {
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position() - bytesPos) < 0) throw new IOException("End of file at " + offset);
+            }
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+    }
+
+    @Override
+    public void clear(long startOffset, long endOffset) {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(endOffset - startOffset, SLICE_SIZE));
+        for (long pos = startOffset; pos < endOffset; pos += zeros.capacity()) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), endOffset - pos));
+            writeFully(pos, zeros);
+        }
+    }
+
+    @Override
+    public void sync() {
+        try {
+            channel.force(true);
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+    }
+
+    @Override
+    public int sliceSize() {
+        return SLICE_SIZE;
+    }
+
+    @Override
+    public boolean isSliced() {
+        return false;
+    }
+
+    @Override
+    public long length() {
+        return size;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public boolean getFileLocked() {
+        return false;
+    }
+
+    private void writeFully(long offset, ByteBuffer src) {
+        try {
+            long pos = offset;
+            while (src.hasRemaining()) pos += channel.write(src, pos);
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+    }
+
+    private ByteBuffer readFully(long offset, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            while (buf.hasRemaining()) {
+                if (channel.read(buf, offset + buf.position()) < 0) throw new IOException("End of file at " + offset);
+            }
+        } catch (IOException e) {
+            throw new DBException.VolumeIOError(e);
+        }
+        return buf;
+    }
+}
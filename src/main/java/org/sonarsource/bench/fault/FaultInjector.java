@@ -0,0 +1,96 @@
+package org.sonarsource.bench.fault;
+
+import org.h2.store.fs.FilePath;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * JVM-wide switch for simulated power loss on stores opened through the {@code faulty:} file scheme.
+ * <p>
+ * Engines that resolve files through H2's FilePath SPI (H2 itself, and MVStore as used by Nitrite) can be
+ * pointed at {@code faulty:/path/to/store}; MapDB is opened on a {@link FaultInjectingVolume} instead. Every write
+ * to such a store is journaled until it is forced to disk. After {@code crashAfterWrites} writes,
+ * {@link #powerLoss()} rewinds the files according to the {@link FaultMode} and halts the JVM without running
+ * shutdown hooks, so the engine never gets a chance to clean up.
+ */
+public final class FaultInjector {
+    public static final int POWER_LOSS_EXIT_CODE = 137;
+
+    private static final Object LOCK = new Object();
+    private static final Set<FaultInjectingFileChannel> OPEN = Collections.newSetFromMap(new IdentityHashMap<>());
+    private static boolean registered;
+    private static FaultMode mode = FaultMode.DROP_UNSYNCED;
+    private static long crashAfterWrites = Long.MAX_VALUE;
+    private static long writes;
+
+    private FaultInjector() {
+    }
+
+    /**
+     * Registers the {@code faulty:} scheme with H2 and arms the injector.
+     *
+     * @param crashAfterWrites number of write calls after which power is cut; {@code <= 0} never cuts it
+     */
+    public static void install(FaultMode faultMode, long crashAfterWrites) {
+        synchronized (LOCK) {
+            if (!registered) {
+                FilePath.register(new FilePathFaultInjecting());
+                registered = true;
+            }
+            mode = faultMode;
+            FaultInjector.crashAfterWrites = crashAfterWrites <= 0 ? Long.MAX_VALUE : crashAfterWrites;
+            writes = 0;
+        }
+    }
+
+    /** Path to hand to an engine so that its files go through the injector. */
+    public static String wrap(String path) {
+        return FilePathFaultInjecting.SCHEME + ":" + path;
+    }
+
+    static Object lock() {
+        return LOCK;
+    }
+
+    static FaultMode mode() {
+        return mode;
+    }
+
+    static void opened(FaultInjectingFileChannel channel) {
+        synchronized (LOCK) {
+            OPEN.add(channel);
+        }
+    }
+
+    static void closed(FaultInjectingFileChannel channel) {
+        synchronized (LOCK) {
+            OPEN.remove(channel);
+        }
+    }
+
+    /** Called by channels with the lock held, after each journaled write. */
+    static void afterWrite() {
+        if (++writes >= crashAfterWrites) {
+            powerLoss();
+        }
+    }
+
+    /** Rewinds every open faulty channel as a power loss would, then halts the JVM. */
+    public static void powerLoss() {
+        synchronized (LOCK) {
+            for (FaultInjectingFileChannel ch : OPEN) {
+                try {
+                    ch.rewind(mode);
+                } catch (IOException e) {
+                    System.out.println("Power-loss rewind failed: " + e.getMessage());
+                }
+            }
+            System.out.println("POWER_LOSS_INJECTED mode=" + mode.id() + " afterWrites=" + writes);
+            System.out.flush();
+            Runtime.getRuntime().halt(POWER_LOSS_EXIT_CODE);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.sonarsource.bench.fault;
+
+import java.util.Locale;
+
+/**
+ * What a simulated power loss does to writes that were not yet made durable.
+ */
+public enum FaultMode {
+    /** Every write since the last successful force() is lost. */
+    DROP_UNSYNCED("drop-unsynced"),
+    /** Unsynced writes reached the disk except the last one, which is only partially written (torn page). */
+    TORN_WRITE("torn-write"),
+    /** The device acknowledged the last force() without persisting it: writes since the force before are lost. */
+    FSYNC_LIE("fsync-lie");
+
+    private final String id;
+
+    FaultMode(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static FaultMode fromId(String id) {
+        String key = id.trim().toLowerCase(Locale.ROOT);
+        for (FaultMode m : values()) {
+            if (m.id.equals(key)) return m;
+        }
+        throw new IllegalArgumentException("Unknown fault mode: " + id);
+    }
+}
@@ -0,0 +1,25 @@
+package org.sonarsource.bench.fault;
+
+import org.h2.store.fs.FilePathWrapper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * H2 FilePath for the {@code faulty:} scheme: files opened for writing go through {@link FaultInjectingFileChannel}.
+ * Registered by {@link FaultInjector#install}; H2 instantiates it reflectively, hence the public no-arg constructor.
+ */
+public class FilePathFaultInjecting extends FilePathWrapper {
+    static final String SCHEME = "faulty";
+
+    @Override
+    public FileChannel open(String mode) throws IOException {
+        FileChannel channel = getBase().open(mode);
+        return "r".equals(mode) ? channel : new FaultInjectingFileChannel(channel);
+    }
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+}
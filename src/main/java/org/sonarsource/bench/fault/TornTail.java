@@ -0,0 +1,54 @@
+package org.sonarsource.bench.fault;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Post-mortem approximation of a torn write for engines without a pluggable file layer: SQLite and HSQLDB/Derby
+ * do their own native or java.io file access. After the writer process was killed, the most recently modified file
+ * of the store has its last page zeroed from a random sector boundary on, as if the disk lost power halfway through
+ * writing that page.
+ */
+public final class TornTail {
+    static final int PAGE_SIZE = 4096;
+    static final int SECTOR_SIZE = 512;
+
+    private TornTail() {
+    }
+
+    /**
+     * @return the file that was torn, or null when the store has no non-empty file
+     */
+    public static Path tear(Path storeDir, Random random) throws IOException {
+        Path newest = null;
+        long newestModified = Long.MIN_VALUE;
+        try (Stream<Path> files = Files.walk(storeDir)) {
+            for (Path f : (Iterable<Path>) files::iterator) {
+                if (!Files.isRegularFile(f) || Files.size(f) == 0) continue;
+                long modified = Files.getLastModifiedTime(f).toMillis();
+                if (modified >= newestModified) {
+                    newest = f;
+                    newestModified = modified;
+                }
+            }
+        }
+        if (newest == null) return null;
+
+        try (FileChannel ch = FileChannel.open(newest, StandardOpenOption.WRITE)) {
+            long size = ch.size();
+            long pageStart = (size - 1) / PAGE_SIZE * PAGE_SIZE;
+            int sectors = (int) ((size - pageStart + SECTOR_SIZE - 1) / SECTOR_SIZE);
+            long from = pageStart + (long) random.nextInt(sectors) * SECTOR_SIZE;
+            ByteBuffer zeros = ByteBuffer.allocate((int) (size - from));
+            while (zeros.hasRemaining()) ch.write(zeros, from + zeros.position());
+            ch.force(true);
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,54 @@
+package org.sonarsource.bench.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+
+/**
+ * A JFR recording around the measured runs of one backend, dumped to {@code <dir>/<name>.jfr} on close. It uses the
+ * JDK "profile" settings (method sampling every 10/20 ms, allocation and lock events) plus every
+ * {@link RepositoryOperationEvent}, so a single benchmark run can be opened in JDK Mission Control.
+ */
+public final class BackendRecording implements AutoCloseable {
+    private final Recording recording;
+    private final Path file;
+
+    private BackendRecording(Recording recording, Path file) {
+        this.recording = recording;
+        this.file = file;
+    }
+
+    public static BackendRecording start(Path dir, String name) throws IOException {
+        Configuration profile;
+        try {
+            profile = Configuration.getConfiguration("profile");
+        } catch (ParseException e) {
+            throw new IOException("Cannot read the JFR 'profile' settings", e);
+        }
+        Files.createDirectories(dir);
+        Recording recording = new Recording(profile);
+        recording.setName(name);
+        recording.enable(RepositoryOperationEvent.class).withThreshold(Duration.ZERO);
+        recording.start();
+        return new BackendRecording(recording, dir.resolve(name.replaceAll("[^A-Za-z0-9._-]", "_") + ".jfr"));
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            recording.stop();
+            recording.dump(file);
+        } finally {
+            recording.close();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.sonarsource.bench.jfr;
+
+/**
+ * Fills a {@link RepositoryOperationEvent} from within a repository operation. When the event is not enabled in any
+ * running recording, every call is a cheap no-op and no clock is read.
+ * <pre>
+ * OperationTimer timer = OperationTimer.begin(name(), "insertAll");
+ * long t = timer.start();
+ * String details = encodeDetails(issue);
+ * timer.encoded(t, details);
+ * ...
+ * timer.end(issues.size());
+ * </pre>
+ */
+public final class OperationTimer {
+    private final RepositoryOperationEvent event;
+    private final boolean enabled;
+
+    private OperationTimer(String backend, String operation) {
+        this.event = new RepositoryOperationEvent();
+        this.enabled = event.isEnabled();
+        if (enabled) {
+            event.backend = backend;
+            event.operation = operation;
+            event.begin();
+        }
+    }
+
+    public static OperationTimer begin(String backend, String operation) {
+        return new OperationTimer(backend, operation);
+    }
+
+    /** @return a start mark for {@link #encoded}, {@link #executed} or {@link #decoded} */
+    public long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    public void encoded(long start, long bytes) {
+        if (!enabled) return;
+        event.encodeTime += System.nanoTime() - start;
+        event.bytesEncoded += bytes;
+    }
+
+    /** Same as {@link #encoded(long, long)} for text, counted in UTF-8 bytes, only when the event is enabled. */
+    public void encoded(long start, CharSequence text) {
+        if (!enabled) return;
+        event.encodeTime += System.nanoTime() - start;
+        event.bytesEncoded += utf8Length(text);
+    }
+
+    public void executed(long start) {
+        if (enabled) event.executeTime += System.nanoTime() - start;
+    }
+
+    public void decoded(long start) {
+        if (enabled) event.decodeTime += System.nanoTime() - start;
+    }
+
+    /** Length of the text in UTF-8, without encoding it; an unpaired surrogate counts as the one-byte replacement. */
+    static long utf8Length(CharSequence text) {
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public void end(long rowCount) {
+        if (!enabled) return;
+        event.rowCount = rowCount;
+        event.end();
+        if (event.shouldCommit()) event.commit();
+    }
+}
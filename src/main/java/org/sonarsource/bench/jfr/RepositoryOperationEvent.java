@@ -0,0 +1,48 @@
+package org.sonarsource.bench.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * One {@code IssueRepository} call. Besides its duration, the event splits where the time went: encoding issues into
+ * the engine's format, executing statements (or collection/map calls) and decoding results back into issues. The rest
+ * of the duration is driver fetching, statement preparation and bookkeeping.
+ */
+@Name("org.sonarsource.bench.RepositoryOperation")
+@Label("Repository Operation")
+@Category({"Issue Benchmark", "Repository"})
+@Description("A call to an IssueRepository operation")
+@StackTrace(false)
+public class RepositoryOperationEvent extends jdk.jfr.Event {
+    @Label("Backend")
+    public String backend;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Rows")
+    @Description("Issues written or returned")
+    public long rowCount;
+
+    @Label("Bytes Encoded")
+    @Description("Size of the encoded issue details, in UTF-8 bytes")
+    @DataAmount
+    public long bytesEncoded;
+
+    @Label("Encode Time")
+    @Timespan
+    public long encodeTime;
+
+    @Label("Execute Time")
+    @Timespan
+    public long executeTime;
+
+    @Label("Decode Time")
+    @Timespan
+    public long decodeTime;
+}
@@ -0,0 +1,306 @@
+package org.sonarsource.bench.metrics;
+
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.TagMatch;
+import org.sonarsource.bench.model.Issue;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorator collecting {@link OperationMetrics} for every call to the wrapped repository. The metrics are published
+ * as platform MBeans from {@link #init()} until {@link #close()}, one per operation, so they can be read with
+ * JConsole, jmxterm or a JMX exporter. Each call costs two {@code System.nanoTime()} reads and a few uncontended
+ * LongAdder updates; {@code MetricsOverheadRunner} measures it.
+ */
+public class MetricsIssueRepository implements IssueRepository {
+    public static final String DOMAIN = "org.sonarsource.bench";
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+    private final IssueRepository delegate;
+    private final boolean publish;
+    private final int instance = INSTANCES.incrementAndGet();
+    private final OperationMetrics insertAll = new OperationMetrics();
+    private final OperationMetrics readAll = new OperationMetrics();
+    private final OperationMetrics searchByRule = new OperationMetrics();
+    private final OperationMetrics getById = new OperationMetrics();
+    private final OperationMetrics searchByTags = new OperationMetrics();
+    private final OperationMetrics searchMessage = new OperationMetrics();
+    private final OperationMetrics readAllPage = new OperationMetrics();
+    private final OperationMetrics searchByRulePage = new OperationMetrics();
+    private final OperationMetrics countBy = new OperationMetrics();
+    private final OperationMetrics deleteOlderThan = new OperationMetrics();
+    private final OperationMetrics compact = new OperationMetrics();
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    public MetricsIssueRepository(IssueRepository delegate) {
+        this(delegate, true);
+    }
+
+    /** @param publish whether to register the metrics as MBeans */
+    public MetricsIssueRepository(IssueRepository delegate, boolean publish) {
+        this.delegate = delegate;
+        this.publish = publish;
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public void init() throws Exception {
+        delegate.init();
+        if (publish) register();
+    }
+
+    @Override
+    public void insertAll(List<Issue> issues) throws Exception {
+        long start = insertAll.begin();
+        try {
+            delegate.insertAll(issues);
+        } catch (Exception | Error e) {
+            insertAll.failed(start);
+            throw e;
+        }
+        insertAll.succeeded(start, issues.size());
+    }
+
+    /** Delegated so that the engine's bulk path is kept; recorded as one insertAll of everything loaded. */
+    @Override
+    public long bulkLoad(Iterator<Issue> issues, int batchSize) throws Exception {
+        long start = insertAll.begin();
+        long loaded;
+        try {
+            loaded = delegate.bulkLoad(issues, batchSize);
+        } catch (Exception | Error e) {
+            insertAll.failed(start);
+            throw e;
+        }
+        insertAll.succeeded(start, loaded);
+        return loaded;
+    }
+
+    @Override
+    public List<Issue> readAll() throws Exception {
+        long start = readAll.begin();
+        List<Issue> out;
+        try {
+            out = delegate.readAll();
+        } catch (Exception | Error e) {
+            readAll.failed(start);
+            throw e;
+        }
+        readAll.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        long start = searchByRule.begin();
+        List<Issue> out;
+        try {
+            out = delegate.searchByRule(ruleKey);
+        } catch (Exception | Error e) {
+            searchByRule.failed(start);
+            throw e;
+        }
+        searchByRule.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public Issue getById(String id) throws Exception {
+        long start = getById.begin();
+        Issue out;
+        try {
+            out = delegate.getById(id);
+        } catch (Exception | Error e) {
+            getById.failed(start);
+            throw e;
+        }
+        getById.succeeded(start, out == null ? 0 : 1);
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        long start = searchByTags.begin();
+        List<Issue> out;
+        try {
+            out = delegate.searchByTags(tags, match);
+        } catch (Exception | Error e) {
+            searchByTags.failed(start);
+            throw e;
+        }
+        searchByTags.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        long start = searchMessage.begin();
+        List<Issue> out;
+        try {
+            out = delegate.searchMessage(query);
+        } catch (Exception | Error e) {
+            searchMessage.failed(start);
+            throw e;
+        }
+        searchMessage.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        long start = readAllPage.begin();
+        Page out;
+        try {
+            out = delegate.readAll(pageSize, token);
+        } catch (Exception | Error e) {
+            readAllPage.failed(start);
+            throw e;
+        }
+        readAllPage.succeeded(start, out.getIssues().size());
+        return out;
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        long start = searchByRulePage.begin();
+        Page out;
+        try {
+            out = delegate.searchByRule(ruleKey, pageSize, token);
+        } catch (Exception | Error e) {
+            searchByRulePage.failed(start);
+            throw e;
+        }
+        searchByRulePage.succeeded(start, out.getIssues().size());
+        return out;
+    }
+
+    /** Both count queries share one metric; rows are the groups returned. */
+    @Override
+    public Map<String, Long> countBy(IssueField field) throws Exception {
+        long start = countBy.begin();
+        Map<String, Long> out;
+        try {
+            out = delegate.countBy(field);
+        } catch (Exception | Error e) {
+            countBy.failed(start);
+            throw e;
+        }
+        countBy.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        long start = countBy.begin();
+        Map<String, Map<String, Long>> out;
+        try {
+            out = delegate.countBy(row, column);
+        } catch (Exception | Error e) {
+            countBy.failed(start);
+            throw e;
+        }
+        countBy.succeeded(start, out.size());
+        return out;
+    }
+
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        long start = deleteOlderThan.begin();
+        long deleted;
+        try {
+            deleted = delegate.deleteOlderThan(epochMillis);
+        } catch (Exception | Error e) {
+            deleteOlderThan.failed(start);
+            throw e;
+        }
+        deleteOlderThan.succeeded(start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public void compact() throws Exception {
+        long start = compact.begin();
+        try {
+            delegate.compact();
+        } catch (Exception | Error e) {
+            compact.failed(start);
+            throw e;
+        }
+        compact.succeeded(start, 0);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        return delegate.sizeOnDisk();
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            unregister();
+        }
+    }
+
+    /** Metrics by operation name, in declaration order. */
+    public Map<String, OperationMetrics> metrics() {
+        Map<String, OperationMetrics> m = new LinkedHashMap<>();
+        m.put("insertAll", insertAll);
+        m.put("readAll", readAll);
+        m.put("searchByRule", searchByRule);
+        m.put("getById", getById);
+        m.put("searchByTags", searchByTags);
+        m.put("searchMessage", searchMessage);
+        m.put("readAllPage", readAllPage);
+        m.put("searchByRulePage", searchByRulePage);
+        m.put("countBy", countBy);
+        m.put("deleteOlderThan", deleteOlderThan);
+        m.put("compact", compact);
+        return Collections.unmodifiableMap(m);
+    }
+
+    public List<ObjectName> objectNames() {
+        return Collections.unmodifiableList(registered);
+    }
+
+    private synchronized void register() throws JMException {
+        if (!registered.isEmpty()) return;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Map.Entry<String, OperationMetrics> e : metrics().entrySet()) {
+            ObjectName name = new ObjectName(DOMAIN + ":type=IssueRepository,backend=" + ObjectName.quote(delegate.name())
+                    + ",instance=" + instance + ",operation=" + e.getKey());
+            server.registerMBean(e.getValue(), name);
+            registered.add(name);
+        }
+    }
+
+    private synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // already gone, nothing left to clean up
+            }
+        }
+        registered.clear();
+    }
+}
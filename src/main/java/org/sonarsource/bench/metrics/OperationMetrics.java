@@ -0,0 +1,75 @@
+package org.sonarsource.bench.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one repository operation. All of them are striped ({@link LongAdder}), so that recording stays cheap
+ * when many threads use the same repository. To keep a call down to a few counter updates, the call count is the
+ * number of latencies recorded and in-flight calls are those started but not recorded yet.
+ */
+public final class OperationMetrics implements OperationMetricsMXBean {
+    private final LongAdder started = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /** @return the start time to pass to {@link #succeeded} or {@link #failed} */
+    long begin() {
+        started.increment();
+        return System.nanoTime();
+    }
+
+    void succeeded(long start, long rowCount) {
+        latency.record(System.nanoTime() - start);
+        if (rowCount != 0) rows.add(rowCount);
+    }
+
+    void failed(long start) {
+        latency.record(System.nanoTime() - start);
+        errors.increment();
+    }
+
+    public LatencyHistogram latency() {
+        return latency;
+    }
+
+    @Override
+    public long getCount() { return latency.count(); }
+
+    @Override
+    public long getErrors() { return errors.sum(); }
+
+    @Override
+    public long getRows() { return rows.sum(); }
+
+    @Override
+    public long getInFlight() {
+        // read the finished calls first, so that a concurrent call can only make the result too high, never negative
+        long done = latency.count();
+        return Math.max(0L, started.sum() - done);
+    }
+
+    @Override
+    public double getMeanMicros() { return latency.meanNanos() / 1000.0; }
+
+    @Override
+    public double getMaxMicros() { return latency.maxNanos() / 1000.0; }
+
+    @Override
+    public double getP50Micros() { return latency.percentileNanos(0.50) / 1000.0; }
+
+    @Override
+    public double getP95Micros() { return latency.percentileNanos(0.95) / 1000.0; }
+
+    @Override
+    public double getP99Micros() { return latency.percentileNanos(0.99) / 1000.0; }
+
+    /** Clears counts, rows, errors and latencies. Calls in flight during a reset are no longer reported as in flight. */
+    @Override
+    public void reset() {
+        started.reset();
+        errors.reset();
+        rows.reset();
+        latency.reset();
+    }
+}
@@ -0,0 +1,28 @@
+package org.sonarsource.bench.metrics;
+
+/**
+ * JMX view of one repository operation, registered as
+ * {@code org.sonarsource.bench:type=IssueRepository,backend=<name>,instance=<n>,operation=<operation>}.
+ */
+public interface OperationMetricsMXBean {
+    long getCount();
+
+    long getErrors();
+
+    /** Issues written (insertAll) or returned (reads). */
+    long getRows();
+
+    long getInFlight();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP95Micros();
+
+    double getP99Micros();
+
+    void reset();
+}
@@ -0,0 +1,177 @@
+package org.sonarsource.bench.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compact binary form of an {@link Issue}, for stores and caches that hold bytes. Fields are written in declaration
+ * order, big-endian: strings as their UTF-8 length (-1 for null) then bytes, nullable ints as an int with
+ * {@link Integer#MIN_VALUE} for null, lists as their size then elements, the primary location after a presence byte.
+ * A null list is written as an empty one.
+ */
+public final class IssueCodec {
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private IssueCodec() {
+    }
+
+    public static byte[] encode(Issue is) {
+        Writer w = new Writer();
+        w.string(is.getId());
+        w.string(is.getRuleKey());
+        w.string(is.getSeverity());
+        w.string(is.getMessage());
+        w.string(is.getFilePath());
+        w.nullableInt(is.getLine());
+        w.putLong(is.getCreationDateEpochMillis());
+        w.string(is.getAssignee());
+        List<String> tags = is.getTags() == null ? List.of() : is.getTags();
+        w.putInt(tags.size());
+        for (String t : tags) w.string(t);
+        w.put((byte) (is.getPrimaryLocation() == null ? 0 : 1));
+        if (is.getPrimaryLocation() != null) w.location(is.getPrimaryLocation());
+        List<IssueFlow> flows = is.getFlows() == null ? List.of() : is.getFlows();
+        w.putInt(flows.size());
+        for (IssueFlow f : flows) w.locations(f == null ? null : f.getLocations());
+        List<QuickFix> fixes = is.getQuickFixes() == null ? List.of() : is.getQuickFixes();
+        w.putInt(fixes.size());
+        for (QuickFix q : fixes) {
+            w.string(q.getMessage());
+            w.locations(q.getLocations());
+        }
+        return w.toByteArray();
+    }
+
+    /** Reads one issue from the buffer's position, which is left after it; the buffer may be direct or mapped. */
+    public static Issue decode(ByteBuffer in) {
+        Issue is = new Issue();
+        is.setId(string(in));
+        is.setRuleKey(string(in));
+        is.setSeverity(string(in));
+        is.setMessage(string(in));
+        is.setFilePath(string(in));
+        is.setLine(nullableInt(in));
+        is.setCreationDateEpochMillis(in.getLong());
+        is.setAssignee(string(in));
+        int tagCount = in.getInt();
+        List<String> tags = new ArrayList<>(tagCount);
+        for (int i = 0; i < tagCount; i++) tags.add(string(in));
+        is.setTags(tags);
+        is.setPrimaryLocation(in.get() == 0 ? null : location(in));
+        int flowCount = in.getInt();
+        List<IssueFlow> flows = new ArrayList<>(flowCount);
+        for (int i = 0; i < flowCount; i++) flows.add(new IssueFlow(locations(in)));
+        is.setFlows(flows);
+        int fixCount = in.getInt();
+        List<QuickFix> fixes = new ArrayList<>(fixCount);
+        for (int i = 0; i < fixCount; i++) {
+            String message = string(in);
+            fixes.add(new QuickFix(message, locations(in)));
+        }
+        is.setQuickFixes(fixes);
+        return is;
+    }
+
+    private static String string(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        if (in.hasArray()) {
+            String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return s;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Integer nullableInt(ByteBuffer in) {
+        int v = in.getInt();
+        return v == NULL_INT ? null : v;
+    }
+
+    private static IssueLocation location(ByteBuffer in) {
+        String filePath = string(in);
+        Integer startLine = nullableInt(in);
+        Integer endLine = nullableInt(in);
+        Integer startOffset = nullableInt(in);
+        Integer endOffset = nullableInt(in);
+        return new IssueLocation(filePath, startLine, endLine, startOffset, endOffset, string(in));
+    }
+
+    private static List<IssueLocation> locations(ByteBuffer in) {
+        int count = in.getInt();
+        List<IssueLocation> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(location(in));
+        return out;
+    }
+
+    /** Growable big-endian byte array, lighter than a DataOutputStream over a ByteArrayOutputStream. */
+    private static final class Writer {
+        private byte[] buf = new byte[256];
+        private int size;
+
+        void put(byte b) {
+            ensure(1);
+            buf[size++] = b;
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf[size++] = (byte) (v >>> 24);
+            buf[size++] = (byte) (v >>> 16);
+            buf[size++] = (byte) (v >>> 8);
+            buf[size++] = (byte) v;
+        }
+
+        void putLong(long v) {
+            putInt((int) (v >>> 32));
+            putInt((int) v);
+        }
+
+        void nullableInt(Integer v) {
+            putInt(v == null ? NULL_INT : v);
+        }
+
+        void string(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        void location(IssueLocation l) {
+            string(l.getFilePath());
+            nullableInt(l.getStartLine());
+            nullableInt(l.getEndLine());
+            nullableInt(l.getStartOffset());
+            nullableInt(l.getEndOffset());
+            string(l.getMessage());
+        }
+
+        void locations(List<IssueLocation> locations) {
+            if (locations == null) {
+                putInt(0);
+                return;
+            }
+            putInt(locations.size());
+            for (IssueLocation l : locations) location(l);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        private void ensure(int n) {
+            if (size + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.sonarsource.bench.result;
+
+/**
+ * Outcome of one benchmark phase (write, readAll, search, get, ...) against one backend and tuning profile.
+ * Latency percentiles are only known for phases made of many small operations and are NaN otherwise;
+ * sizes and counters that could not be measured are -1.
+ */
+public class PhaseResult {
+    private String backend;
+    private String profile;
+    private String workload;
+    private String phase;
+    private long items;
+    private int batch;
+    private double durationMs;
+    private double throughput = Double.NaN;
+    private double p50Us = Double.NaN;
+    private double p95Us = Double.NaN;
+    private double p99Us = Double.NaN;
+    private long bytes = -1L;
+    private long gcCount = -1L;
+    private long gcTimeMs = -1L;
+    private long allocatedBytes = -1L;
+    private long cpuMs = -1L;
+    private long processCpuMs = -1L;
+    private long heapPeakBytes = -1L;
+
+    public PhaseResult() {
+    }
+
+    public PhaseResult(String backend, String profile, String phase, long items, int batch, double durationMs) {
+        this.backend = backend;
+        this.profile = profile;
+        this.phase = phase;
+        this.items = items;
+        this.batch = batch;
+        this.durationMs = durationMs;
+        this.throughput = durationMs > 0 ? items * 1000.0 / durationMs : Double.NaN;
+    }
+
+    /** Identifies the same measurement across runs, e.g. when comparing against a baseline. */
+    public String key() {
+        return backend + "/" + profile + (workload == null ? "" : "/" + workload) + "/" + phase;
+    }
+
+    public String getBackend() { return backend; }
+    public void setBackend(String backend) { this.backend = backend; }
+    public String getProfile() { return profile; }
+    public void setProfile(String profile) { this.profile = profile; }
+    /** Dataset shape the phase ran on, see {@code WorkloadProfile}; null when not recorded. */
+    public String getWorkload() { return workload; }
+    public void setWorkload(String workload) { this.workload = workload; }
+    public String getPhase() { return phase; }
+    public void setPhase(String phase) { this.phase = phase; }
+
+    public long getItems() { return items; }
+    public void setItems(long items) { this.items = items; }
+    public int getBatch() { return batch; }
+    public void setBatch(int batch) { this.batch = batch; }
+    public double getDurationMs() { return durationMs; }
+    public void setDurationMs(double durationMs) { this.durationMs = durationMs; }
+    /** Items per second. */
+    public double getThroughput() { return throughput; }
+    public void setThroughput(double throughput) { this.throughput = throughput; }
+
+    public double getP50Us() { return p50Us; }
+    public void setP50Us(double p50Us) { this.p50Us = p50Us; }
+    public double getP95Us() { return p95Us; }
+    public void setP95Us(double p95Us) { this.p95Us = p95Us; }
+    public double getP99Us() { return p99Us; }
+    public void setP99Us(double p99Us) { this.p99Us = p99Us; }
+
+    public long getBytes() { return bytes; }
+    public void setBytes(long bytes) { this.bytes = bytes; }
+    public long getGcCount() { return gcCount; }
+    public void setGcCount(long gcCount) { this.gcCount = gcCount; }
+    public long getGcTimeMs() { return gcTimeMs; }
+    public void setGcTimeMs(long gcTimeMs) { this.gcTimeMs = gcTimeMs; }
+    /** Bytes allocated by the benchmark thread, data generation excluded. */
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public void setAllocatedBytes(long allocatedBytes) { this.allocatedBytes = allocatedBytes; }
+    /** CPU time of the benchmark thread, data generation excluded. */
+    public long getCpuMs() { return cpuMs; }
+    public void setCpuMs(long cpuMs) { this.cpuMs = cpuMs; }
+    /** CPU time of the whole process, engine background threads and GC included. */
+    public long getProcessCpuMs() { return processCpuMs; }
+    public void setProcessCpuMs(long processCpuMs) { this.processCpuMs = processCpuMs; }
+    public long getHeapPeakBytes() { return heapPeakBytes; }
+    public void setHeapPeakBytes(long heapPeakBytes) { this.heapPeakBytes = heapPeakBytes; }
+
+    @Override
+    public String toString() {
+        return "PhaseResult{" + key() + ", items=" + items + ", durationMs=" + durationMs + '}';
+    }
+}
@@ -0,0 +1,56 @@
+package org.sonarsource.bench.result;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares a run against a baseline, phase by phase (matched on {@link PhaseResult#key()}: backend/profile/phase, with
+ * the workload before the phase when the run has one). A phase regresses
+ * when its duration, or its p95 latency when both runs have one, grows by more than the threshold.
+ * Differences below the noise floor are ignored, so that millisecond-scale phases do not flap.
+ */
+public class ResultsComparator {
+    private final double thresholdPct;
+    private final double noiseFloorMs;
+
+    public ResultsComparator(double thresholdPct, double noiseFloorMs) {
+        this.thresholdPct = thresholdPct;
+        this.noiseFloorMs = noiseFloorMs;
+    }
+
+    public List<String> regressions(List<PhaseResult> baseline, List<PhaseResult> current) {
+        Map<String, PhaseResult> base = new LinkedHashMap<>();
+        for (PhaseResult r : baseline) base.put(r.key(), r);
+        List<String> out = new ArrayList<>();
+        for (PhaseResult cur : current) {
+            PhaseResult old = base.get(cur.key());
+            if (old == null) continue;
+            check(out, cur.key(), "durationMs", old.getDurationMs(), cur.getDurationMs(), noiseFloorMs);
+            check(out, cur.key(), "p95Us", old.getP95Us(), cur.getP95Us(), noiseFloorMs * 1000.0);
+        }
+        return out;
+    }
+
+    /** Keys present in the baseline but missing from the current run. */
+    public List<String> missing(List<PhaseResult> baseline, List<PhaseResult> current) {
+        Map<String, PhaseResult> cur = new LinkedHashMap<>();
+        for (PhaseResult r : current) cur.put(r.key(), r);
+        List<String> out = new ArrayList<>();
+        for (PhaseResult r : baseline) {
+            if (!cur.containsKey(r.key())) out.add(r.key());
+        }
+        return out;
+    }
+
+    private void check(List<String> out, String key, String metric, double before, double after, double floor) {
+        if (Double.isNaN(before) || Double.isNaN(after) || before <= 0) return;
+        double delta = after - before;
+        double pct = 100.0 * delta / before;
+        if (pct > thresholdPct && delta > floor) {
+            out.add(String.format(Locale.ROOT, "%s %s %.3f -> %.3f (+%.1f%%)", key, metric, before, after, pct));
+        }
+    }
+}
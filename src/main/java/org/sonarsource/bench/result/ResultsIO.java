@@ -0,0 +1,244 @@
+package org.sonarsource.bench.result;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads and writes {@link PhaseResult} lists as JSON (an array of flat objects, one per line) or CSV,
+ * chosen by file extension. Both formats share the same column list, so a new metric only needs a column here.
+ */
+public final class ResultsIO {
+    private static final Pattern OBJECT = Pattern.compile("\\{([^{}]*)\\}");
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\s]+)");
+
+    private static final List<Column> COLUMNS = List.of(
+            text("backend", PhaseResult::getBackend, PhaseResult::setBackend),
+            text("profile", PhaseResult::getProfile, PhaseResult::setProfile),
+            text("workload", PhaseResult::getWorkload, PhaseResult::setWorkload),
+            text("phase", PhaseResult::getPhase, PhaseResult::setPhase),
+            integer("items", PhaseResult::getItems, PhaseResult::setItems),
+            integer("batch", r -> (long) r.getBatch(), (r, v) -> r.setBatch(v.intValue())),
+            decimal("durationMs", PhaseResult::getDurationMs, PhaseResult::setDurationMs),
+            decimal("throughput", PhaseResult::getThroughput, PhaseResult::setThroughput),
+            decimal("p50Us", PhaseResult::getP50Us, PhaseResult::setP50Us),
+            decimal("p95Us", PhaseResult::getP95Us, PhaseResult::setP95Us),
+            decimal("p99Us", PhaseResult::getP99Us, PhaseResult::setP99Us),
+            integer("bytes", PhaseResult::getBytes, PhaseResult::setBytes),
+            integer("gcCount", PhaseResult::getGcCount, PhaseResult::setGcCount),
+            integer("gcTimeMs", PhaseResult::getGcTimeMs, PhaseResult::setGcTimeMs),
+            integer("allocatedBytes", PhaseResult::getAllocatedBytes, PhaseResult::setAllocatedBytes),
+            integer("cpuMs", PhaseResult::getCpuMs, PhaseResult::setCpuMs),
+            integer("processCpuMs", PhaseResult::getProcessCpuMs, PhaseResult::setProcessCpuMs),
+            integer("heapPeakBytes", PhaseResult::getHeapPeakBytes, PhaseResult::setHeapPeakBytes)
+    );
+
+    private ResultsIO() {
+    }
+
+    public static void write(List<PhaseResult> results, Path file) throws IOException {
+        String content = isCsv(file) ? toCsv(results) : toJson(results);
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+
+    public static List<PhaseResult> read(Path file) throws IOException {
+        String content = Files.readString(file, StandardCharsets.UTF_8);
+        return isCsv(file) ? fromCsv(content) : fromJson(content);
+    }
+
+    public static String toJson(List<PhaseResult> results) {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            sb.append("  {");
+            for (int c = 0; c < COLUMNS.size(); c++) {
+                Column col = COLUMNS.get(c);
+                if (c > 0) sb.append(',');
+                sb.append('"').append(col.name).append("\":").append(col.json(results.get(i)));
+            }
+            sb.append(i + 1 < results.size() ? "},\n" : "}\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    public static List<PhaseResult> fromJson(String json) {
+        List<PhaseResult> out = new ArrayList<>();
+        Matcher objects = OBJECT.matcher(json);
+        while (objects.find()) {
+            PhaseResult r = new PhaseResult();
+            Matcher fields = FIELD.matcher(objects.group(1));
+            while (fields.find()) {
+                Column col = column(fields.group(1));
+                String raw = fields.group(2);
+                if (col == null || "null".equals(raw)) continue;
+                col.parse(r, raw.startsWith("\"") ? unescape(raw.substring(1, raw.length() - 1)) : raw);
+            }
+            out.add(r);
+        }
+        return out;
+    }
+
+    public static String toCsv(List<PhaseResult> results) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < COLUMNS.size(); c++) {
+            if (c > 0) sb.append(',');
+            sb.append(COLUMNS.get(c).name);
+        }
+        sb.append('\n');
+        for (PhaseResult r : results) {
+            for (int c = 0; c < COLUMNS.size(); c++) {
+                if (c > 0) sb.append(',');
+                sb.append(COLUMNS.get(c).csv(r));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public static List<PhaseResult> fromCsv(String csv) {
+        List<PhaseResult> out = new ArrayList<>();
+        String[] lines = csv.split("\\r?\\n");
+        if (lines.length == 0) return out;
+        List<String> header = splitCsvLine(lines[0]);
+        for (int i = 1; i < lines.length; i++) {
+            if (lines[i].isBlank()) continue;
+            List<String> values = splitCsvLine(lines[i]);
+            PhaseResult r = new PhaseResult();
+            for (int c = 0; c < header.size() && c < values.size(); c++) {
+                Column col = column(header.get(c));
+                if (col != null && !values.get(c).isEmpty()) col.parse(r, values.get(c));
+            }
+            out.add(r);
+        }
+        return out;
+    }
+
+    private static boolean isCsv(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    private static Column column(String name) {
+        for (Column c : COLUMNS) {
+            if (c.name.equals(name)) return c;
+        }
+        return null;
+    }
+
+    private static List<String> splitCsvLine(String line) {
+        List<String> out = new ArrayList<>();
+        StringBuilder cur = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cur.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    cur.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                out.add(cur.toString());
+                cur.setLength(0);
+            } else {
+                cur.append(ch);
+            }
+        }
+        out.add(cur.toString());
+        return out;
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') sb.append('\\').append(c);
+            else if (c < 0x20) sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                char next = s.charAt(++i);
+                if (next == 'u' && i + 4 < s.length()) {
+                    sb.append((char) Integer.parseInt(s.substring(i + 1, i + 5), 16));
+                    i += 4;
+                } else {
+                    sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static Column text(String name, Function<PhaseResult, String> getter, BiConsumer<PhaseResult, String> set) {
+        return new Column(name, getter::apply, set) {
+            @Override
+            String json(PhaseResult r) {
+                String v = getter.apply(r);
+                return v == null ? "null" : '"' + escape(v) + '"';
+            }
+
+            @Override
+            String csv(PhaseResult r) {
+                String v = getter.apply(r);
+                if (v == null) return "";
+                return v.contains(",") || v.contains("\"") ? '"' + v.replace("\"", "\"\"") + '"' : v;
+            }
+        };
+    }
+
+    private static Column integer(String name, Function<PhaseResult, Long> get, BiConsumer<PhaseResult, Long> set) {
+        return new Column(name, get::apply, (r, s) -> set.accept(r, Long.parseLong(s)));
+    }
+
+    private static Column decimal(String name, Function<PhaseResult, Double> get, BiConsumer<PhaseResult, Double> set) {
+        return new Column(name, r -> {
+            double v = get.apply(r);
+            return Double.isNaN(v) || Double.isInfinite(v) ? null : String.format(Locale.ROOT, "%.3f", v);
+        }, (r, s) -> set.accept(r, Double.parseDouble(s)));
+    }
+
+    private static class Column {
+        final String name;
+        final Function<PhaseResult, Object> get;
+        final BiConsumer<PhaseResult, String> set;
+
+        Column(String name, Function<PhaseResult, Object> get, BiConsumer<PhaseResult, String> set) {
+            this.name = name;
+            this.get = get;
+            this.set = set;
+        }
+
+        String json(PhaseResult r) {
+            Object v = get.apply(r);
+            return v == null ? "null" : v.toString();
+        }
+
+        String csv(PhaseResult r) {
+            Object v = get.apply(r);
+            return v == null ? "" : v.toString();
+        }
+
+        void parse(PhaseResult r, String value) {
+            set.accept(r, value);
+        }
+    }
+}
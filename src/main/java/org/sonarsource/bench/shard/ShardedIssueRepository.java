@@ -0,0 +1,370 @@
+package org.sonarsource.bench.shard;
+
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.IssueRepositoryProvider;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.db.TagMatch;
+import org.sonarsource.bench.db.TuningProfile;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads issues over N stores of any backend, by hash of their file or of their module, so that each store stays
+ * small and, for engines with a single writer such as SQLite, so that N writers can run at once. Every operation runs
+ * on all the shards it touches in parallel, on a pool with one thread per shard: writes are split by shard, reads
+ * and searches fan out and concatenate the shards' results in shard order.
+ * <p>
+ * {@code getById} routes with a global id to shard index filled by {@code insertAll}, or with a file path hint
+ * through {@link #getById(String, String)}; an id unknown to the index, e.g. from a store written by another
+ * instance, is looked for in all shards. The index costs about 100 bytes per issue and can be turned off.
+ * <p>
+ * A shard is used by one thread at a time, so the wrapped repositories need not be thread-safe.
+ */
+public class ShardedIssueRepository implements IssueRepository {
+
+    public enum ShardKey {
+        /** Issues of one file always go to the same shard. */
+        FILE,
+        /** Issues of one module, the part of the path before {@code /src/}, always go to the same shard. */
+        MODULE;
+
+        String of(String filePath) {
+            if (filePath == null) return "";
+            if (this == MODULE) {
+                int src = filePath.indexOf("/src/");
+                return src < 0 ? filePath : filePath.substring(0, src);
+            }
+            return filePath;
+        }
+    }
+
+    private static final AtomicInteger POOLS = new AtomicInteger();
+
+    private final List<IssueRepository> shards;
+    private final ShardKey key;
+    private final Map<String, Integer> shardById;
+    private ExecutorService pool;
+
+    /**
+     * @param indexIds whether to keep the id to shard index that routes {@code getById}
+     */
+    public ShardedIssueRepository(List<IssueRepository> shards, ShardKey key, boolean indexIds) {
+        if (shards.isEmpty()) throw new IllegalArgumentException("At least one shard is needed");
+        this.shards = List.copyOf(shards);
+        this.key = key;
+        this.shardById = indexIds ? new ConcurrentHashMap<>() : null;
+    }
+
+    /**
+     * Creates {@code count} stores of the given backend; with a {@code path}, shard {@code i} is stored at
+     * {@code path-shard<i>}, otherwise each backend picks a temporary location.
+     */
+    public static ShardedIssueRepository of(IssueRepositoryProvider provider, String path, TuningProfile profile, int count,
+                                            ShardKey key) {
+        List<IssueRepository> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) shards.add(provider.create(path == null ? null : path + "-shard" + i, profile));
+        return new ShardedIssueRepository(shards, key, true);
+    }
+
+    @Override
+    public String name() {
+        return shards.get(0).name() + "x" + shards.size();
+    }
+
+    @Override
+    public void init() throws Exception {
+        AtomicInteger threads = new AtomicInteger();
+        int id = POOLS.incrementAndGet();
+        pool = Executors.newFixedThreadPool(shards.size(), r -> {
+            Thread t = new Thread(r, "shard-" + id + "-" + threads.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    shard.init();
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    @Override
+    public void insertAll(List<Issue> issues) throws Exception {
+        List<List<Issue>> split = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) split.add(new ArrayList<>());
+        for (Issue is : issues) {
+            int s = shardOf(is.getFilePath());
+            split.get(s).add(is);
+            if (shardById != null) shardById.put(is.getId(), s);
+        }
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            IssueRepository shard = shards.get(i);
+            List<Issue> part = split.get(i);
+            if (part.isEmpty()) continue;
+            tasks.add(() -> {
+                synchronized (shard) {
+                    shard.insertAll(part);
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    /** Shards delete in parallel; the id index keeps the deleted ids, whose lookups then find nothing. */
+    @Override
+    public long deleteOlderThan(long epochMillis) throws Exception {
+        List<Callable<Long>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.deleteOlderThan(epochMillis);
+                }
+            });
+        }
+        long deleted = 0;
+        for (long n : invokeAll(tasks)) deleted += n;
+        return deleted;
+    }
+
+    @Override
+    public void compact() throws Exception {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    shard.compact();
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    @Override
+    public List<Issue> readAll() throws Exception {
+        List<Callable<List<Issue>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.readAll();
+                }
+            });
+        }
+        return concat(invokeAll(tasks));
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        List<Callable<List<Issue>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.searchByRule(ruleKey);
+                }
+            });
+        }
+        return concat(invokeAll(tasks));
+    }
+
+    @Override
+    public Page readAll(int pageSize, String token) throws Exception {
+        return page(null, pageSize, token);
+    }
+
+    @Override
+    public Page searchByRule(String ruleKey, int pageSize, String token) throws Exception {
+        return page(ruleKey, pageSize, token);
+    }
+
+    @Override
+    public List<Issue> searchByTags(Collection<String> tags, TagMatch match) throws Exception {
+        List<Callable<List<Issue>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.searchByTags(tags, match);
+                }
+            });
+        }
+        return concat(invokeAll(tasks));
+    }
+
+    @Override
+    public List<Issue> searchMessage(String query) throws Exception {
+        List<Callable<List<Issue>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.searchMessage(query);
+                }
+            });
+        }
+        return concat(invokeAll(tasks));
+    }
+
+    @Override
+    public Map<String, Long> countBy(IssueField field) throws Exception {
+        List<Callable<Map<String, Long>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.countBy(field);
+                }
+            });
+        }
+        Map<String, Long> out = new TreeMap<>();
+        for (Map<String, Long> counts : invokeAll(tasks)) counts.forEach((value, n) -> out.merge(value, n, Long::sum));
+        return out;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> countBy(IssueField row, IssueField column) throws Exception {
+        List<Callable<Map<String, Map<String, Long>>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    return shard.countBy(row, column);
+                }
+            });
+        }
+        Map<String, Map<String, Long>> out = new TreeMap<>();
+        for (Map<String, Map<String, Long>> counts : invokeAll(tasks)) {
+            counts.forEach((r, byColumn) -> byColumn.forEach((c, n) -> out.computeIfAbsent(r, k -> new TreeMap<>()).merge(c, n, Long::sum)));
+        }
+        return out;
+    }
+
+    @Override
+    public Issue getById(String id) throws Exception {
+        Integer s = shardById == null ? null : shardById.get(id);
+        if (s != null) return getFromShard(s, id);
+        List<Callable<Issue>> tasks = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = i;
+            tasks.add(() -> getFromShard(shard, id));
+        }
+        for (Issue is : invokeAll(tasks)) {
+            if (is != null) return is;
+        }
+        return null;
+    }
+
+    /** Looks the issue up in the shard of {@code filePath} only, without the id index. */
+    public Issue getById(String id, String filePath) throws Exception {
+        return getFromShard(shardOf(filePath), id);
+    }
+
+    @Override
+    public long sizeOnDisk() {
+        long total = 0;
+        for (IssueRepository shard : shards) {
+            long size = shard.sizeOnDisk();
+            if (size < 0) return -1L;
+            total += size;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        for (IssueRepository shard : shards) {
+            try {
+                synchronized (shard) {
+                    shard.close();
+                }
+            } catch (RuntimeException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (pool != null) pool.shutdownNow();
+        if (failure != null) throw failure;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    int shardOf(String filePath) {
+        return Math.floorMod(key.of(filePath).hashCode(), shards.size());
+    }
+
+    /**
+     * Every shard seeks past the same key, since a token only holds an id, and returns one issue more than the page:
+     * the first {@code pageSize} issues of their union are the page, and one more means there is a next page.
+     */
+    private Page page(String ruleKey, int pageSize, String token) throws Exception {
+        Page.checkSize(pageSize);
+        Page.afterId(token, ruleKey);
+        List<Callable<List<Issue>>> tasks = new ArrayList<>();
+        for (IssueRepository shard : shards) {
+            tasks.add(() -> {
+                synchronized (shard) {
+                    Page p = ruleKey == null ? shard.readAll(pageSize + 1, token) : shard.searchByRule(ruleKey, pageSize + 1, token);
+                    return p.getIssues();
+                }
+            });
+        }
+        List<Issue> merged = concat(invokeAll(tasks));
+        merged.sort(Page.ID_ORDER);
+        return Page.of(merged, pageSize, ruleKey);
+    }
+
+    private Issue getFromShard(int s, String id) throws Exception {
+        IssueRepository shard = shards.get(s);
+        synchronized (shard) {
+            return shard.getById(id);
+        }
+    }
+
+    /** Runs the tasks on the pool, the single-shard case on the calling thread, and rethrows the first failure. */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<T> out = new ArrayList<>(tasks.size());
+        if (tasks.size() == 1) {
+            out.add(tasks.get(0).call());
+            return out;
+        }
+        List<Future<T>> futures = pool.invokeAll(tasks);
+        Exception failure = null;
+        for (Future<T> f : futures) {
+            try {
+                out.add(f.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error) throw (Error) cause;
+                if (failure == null) failure = (Exception) cause;
+                else failure.addSuppressed(cause);
+            }
+        }
+        if (failure != null) throw failure;
+        return out;
+    }
+
+    private static List<Issue> concat(List<List<Issue>> parts) {
+        int size = 0;
+        for (List<Issue> p : parts) size += p.size();
+        List<Issue> out = new ArrayList<>(size);
+        for (List<Issue> p : parts) out.addAll(p);
+        return out;
+    }
+}
@@ -0,0 +1,105 @@
+package org.sonarsource.bench.snapshot;
+
+import org.sonarsource.bench.cache.OffHeapIssueCache;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.Page;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Binary snapshot of an issue store: one sequential file, written by {@link SnapshotWriter} and read back by
+ * {@link SnapshotReader}.
+ * <pre>
+ * header   magic "ISNP", int version, byte compression, 3 reserved bytes
+ * block    int raw length, int stored length, int CRC32 of the raw bytes, stored bytes
+ * ...      the raw bytes of a block are records: int length, then the {@link org.sonarsource.bench.model.IssueCodec} bytes
+ * end      a block header of three zero ints, then long issue count
+ * </pre>
+ * All numbers are big-endian. With {@link Compression#DEFLATE} the stored bytes of each block are deflated on their
+ * own, so that a reader never holds more than one block; with {@link Compression#NONE} they are the raw bytes, which
+ * the reader decodes in place from the mapped file.
+ */
+public final class Snapshot {
+    static final int MAGIC = 0x49534E50;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 12;
+    static final int BLOCK_HEADER_BYTES = 12;
+    /** Raw bytes a block is closed at; records are not split, so a block holding one larger record is larger. */
+    static final int BLOCK_BYTES = 1 << 20;
+
+    public enum Compression {
+        NONE, DEFLATE;
+
+        public static Compression fromId(String id) {
+            for (Compression c : values()) {
+                if (c.name().equalsIgnoreCase(id)) return c;
+            }
+            throw new IllegalArgumentException("Unknown compression: " + id + " (none, deflate)");
+        }
+    }
+
+    private Snapshot() {
+    }
+
+    /**
+     * Writes every issue of the store to {@code file}, in id order, and returns how many were written. Issues are
+     * read a page at a time with {@link IssueRepository#readAll(int, String)}, so the store is never held in memory.
+     * If the export fails, the partial file is deleted.
+     */
+    public static long export(IssueRepository store, Path file, Compression compression, int pageSize) throws Exception {
+        try (SnapshotWriter out = new SnapshotWriter(file, compression)) {
+            String token = null;
+            do {
+                Page page = store.readAll(pageSize, token);
+                out.writeAll(page.getIssues());
+                token = page.getNextToken();
+            } while (token != null);
+            out.finish();
+            return out.count();
+        } catch (Exception e) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loads every issue of {@code file} with the store's {@link IssueRepository#bulkLoad bulk path}. A damaged file
+     * fails with an IOException, possibly after the store took the issues before the damage.
+     */
+    public static long load(Path file, IssueRepository store, int batchSize) throws Exception {
+        try (SnapshotReader in = SnapshotReader.open(file)) {
+            long loaded;
+            try {
+                loaded = store.bulkLoad(in, batchSize);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            in.verifyComplete();
+            return loaded;
+        }
+    }
+
+    /**
+     * Copies the records of {@code file} into the cache as they are, without decoding them into issues: with an
+     * uncompressed snapshot they go from the mapped file straight to the cache arenas.
+     */
+    public static long load(Path file, OffHeapIssueCache cache) throws IOException {
+        try (SnapshotReader in = SnapshotReader.open(file)) {
+            long loaded = 0;
+            for (ByteBuffer record = in.nextRecord(); record != null; record = in.nextRecord()) {
+                cache.putEncoded(record);
+                loaded++;
+            }
+            in.verifyComplete();
+            return loaded;
+        }
+    }
+}
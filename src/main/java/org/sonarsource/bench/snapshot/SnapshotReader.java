@@ -0,0 +1,181 @@
+package org.sonarsource.bench.snapshot;
+
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads a {@link Snapshot} block by block from a memory-mapped file. Uncompressed blocks are checksummed and decoded
+ * where they lie in the mapping, without copying them to the heap; deflated blocks are inflated into a reused buffer.
+ * The file is mapped in windows of {@link #WINDOW_BYTES} or one block when larger, so files larger than 2 GB read too.
+ * <p>
+ * As an {@link Iterator}, it reports a damaged file with an {@link UncheckedIOException}.
+ */
+public class SnapshotReader implements Iterator<Issue>, Closeable {
+    static final int WINDOW_BYTES = 1 << 28;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final Snapshot.Compression compression;
+    private final Inflater inflater;
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position;
+    private ByteBuffer block;
+    private byte[] inflated = new byte[0];
+    private long read;
+    private long expected = -1;
+
+    private SnapshotReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        ByteBuffer header = region(0, Snapshot.HEADER_BYTES);
+        if (header.getInt() != Snapshot.MAGIC) throw new IOException("Not a snapshot");
+        int version = header.getInt();
+        if (version != Snapshot.VERSION) throw new IOException("Unsupported snapshot version " + version);
+        int c = header.get();
+        if (c < 0 || c >= Snapshot.Compression.values().length) throw new IOException("Unknown snapshot compression " + c);
+        this.compression = Snapshot.Compression.values()[c];
+        this.inflater = compression == Snapshot.Compression.DEFLATE ? new Inflater() : null;
+        this.position = Snapshot.HEADER_BYTES;
+    }
+
+    public static SnapshotReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SnapshotReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Snapshot.Compression compression() {
+        return compression;
+    }
+
+    /**
+     * The encoded bytes of the next issue, as a view limited to them, or null after the last one. With an
+     * uncompressed snapshot the view is on the mapped file; it is only valid until the reader is closed.
+     */
+    public ByteBuffer nextRecord() throws IOException {
+        while (block == null || !block.hasRemaining()) {
+            if (expected >= 0) return null;
+            nextBlock();
+        }
+        int length = block.getInt();
+        if (length < 0 || length > block.remaining()) throw new IOException("Corrupt snapshot record at block offset " + (block.position() - 4));
+        ByteBuffer record = block.slice(block.position(), length);
+        block.position(block.position() + length);
+        read++;
+        return record;
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (block == null || !block.hasRemaining()) {
+                if (expected >= 0) return false;
+                nextBlock();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Issue next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        try {
+            ByteBuffer record = nextRecord();
+            Issue is = IssueCodec.decode(record);
+            if (record.hasRemaining()) throw new IOException("Corrupt snapshot record " + read);
+            return is;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            // a record that passed its block checksum yet does not decode was written by something else
+            throw new UncheckedIOException(new IOException("Corrupt snapshot record " + read, e));
+        }
+    }
+
+    /** Checks, once every issue was read, that they are all there: a truncated file fails before the end marker. */
+    public void verifyComplete() throws IOException {
+        if (nextRecord() != null) throw new IOException("Snapshot not read to the end");
+        if (read != expected) throw new IOException("Snapshot holds " + expected + " issues, read " + read);
+    }
+
+    private void nextBlock() throws IOException {
+        ByteBuffer header = region(position, Snapshot.BLOCK_HEADER_BYTES);
+        int rawLength = header.getInt();
+        int storedLength = header.getInt();
+        int checksum = header.getInt();
+        position += Snapshot.BLOCK_HEADER_BYTES;
+        if (rawLength == 0 && storedLength == 0) {
+            expected = region(position, 8).getLong();
+            block = null;
+            return;
+        }
+        if (rawLength < 0 || storedLength < 0) throw new IOException("Corrupt snapshot block header at " + (position - Snapshot.BLOCK_HEADER_BYTES));
+        ByteBuffer stored = region(position, storedLength);
+        position += storedLength;
+        ByteBuffer raw = inflater == null ? stored : inflate(stored, rawLength);
+        if (raw.remaining() != rawLength) throw new IOException("Corrupt snapshot block at " + (position - storedLength));
+        crc.reset();
+        crc.update(raw.duplicate());
+        if ((int) crc.getValue() != checksum) throw new IOException("Checksum mismatch in snapshot block at " + (position - storedLength));
+        block = raw;
+    }
+
+    private ByteBuffer inflate(ByteBuffer stored, int rawLength) throws IOException {
+        if (inflated.length < rawLength) inflated = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(stored);
+        int length = 0;
+        try {
+            while (length < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(inflated, length, rawLength - length);
+                if (n == 0 && inflater.needsInput()) break;
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt snapshot block at " + (position - stored.capacity()), e);
+        }
+        return ByteBuffer.wrap(inflated, 0, length).slice();
+    }
+
+    /** A view of {@code length} bytes of the file from {@code at}, remapping the window when they fall outside it. */
+    private ByteBuffer region(long at, int length) throws IOException {
+        if (at + length > fileSize) throw new IOException("Truncated snapshot: " + fileSize + " bytes, needs " + (at + length));
+        if (window == null || at < windowStart || at + length > windowStart + window.capacity()) {
+            long size = Math.min(fileSize - at, Math.max(WINDOW_BYTES, length));
+            window = channel.map(FileChannel.MapMode.READ_ONLY, at, size);
+            windowStart = at;
+        }
+        return window.slice((int) (at - windowStart), length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            if (inflater != null) inflater.end();
+        }
+    }
+}
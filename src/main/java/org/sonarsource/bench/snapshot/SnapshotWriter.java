@@ -0,0 +1,125 @@
+package org.sonarsource.bench.snapshot;
+
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueCodec;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a {@link Snapshot} sequentially: issues are encoded into the current block, which is checksummed,
+ * compressed if asked, and written once full. The file is only complete once {@link #finish() finished}: closing an
+ * unfinished writer leaves a file without its end marker, which readers reject.
+ */
+public class SnapshotWriter implements Closeable {
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[Snapshot.BLOCK_BYTES];
+    private int blockLength;
+    private byte[] compressed = new byte[0];
+    private long count;
+    private boolean finished;
+    private boolean closed;
+
+    public SnapshotWriter(Path file, Snapshot.Compression compression) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        this.deflater = compression == Snapshot.Compression.DEFLATE ? new Deflater(Deflater.BEST_SPEED) : null;
+        out.writeInt(Snapshot.MAGIC);
+        out.writeInt(Snapshot.VERSION);
+        out.writeByte(compression.ordinal());
+        out.write(new byte[3]);
+    }
+
+    public void write(Issue issue) throws IOException {
+        if (finished || closed) throw new IOException("Snapshot writer is " + (closed ? "closed" : "finished"));
+        byte[] record = IssueCodec.encode(issue);
+        int length = 4 + record.length;
+        if (blockLength > 0 && blockLength + length > Snapshot.BLOCK_BYTES) flushBlock();
+        if (blockLength + length > block.length) block = Arrays.copyOf(block, blockLength + length);
+        block[blockLength] = (byte) (record.length >>> 24);
+        block[blockLength + 1] = (byte) (record.length >>> 16);
+        block[blockLength + 2] = (byte) (record.length >>> 8);
+        block[blockLength + 3] = (byte) record.length;
+        System.arraycopy(record, 0, block, blockLength + 4, record.length);
+        blockLength += length;
+        count++;
+    }
+
+    public void writeAll(Collection<Issue> issues) throws IOException {
+        for (Issue is : issues) write(is);
+    }
+
+    /** Issues written so far. */
+    public long count() {
+        return count;
+    }
+
+    private void flushBlock() throws IOException {
+        crc.reset();
+        crc.update(block, 0, blockLength);
+        out.writeInt(blockLength);
+        if (deflater == null) {
+            out.writeInt(blockLength);
+            out.writeInt((int) crc.getValue());
+            out.write(block, 0, blockLength);
+        } else {
+            int storedLength = deflate();
+            out.writeInt(storedLength);
+            out.writeInt((int) crc.getValue());
+            out.write(compressed, 0, storedLength);
+        }
+        blockLength = 0;
+    }
+
+    private int deflate() {
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        // incompressible data grows by a few bytes per 16 KB stored block
+        if (compressed.length < blockLength + blockLength / 1000 + 64) compressed = new byte[blockLength + blockLength / 1000 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        return length;
+    }
+
+    /** Writes the last block and the end marker with the count; nothing can be written after. */
+    public void finish() throws IOException {
+        if (finished) return;
+        if (closed) throw new IOException("Snapshot writer is closed");
+        finished = true;
+        if (blockLength > 0) flushBlock();
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeLong(count);
+        out.flush();
+    }
+
+    /** Closes the file, which is only complete if {@link #finish()} was called before. */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            out.flush();
+        } finally {
+            try {
+                out.close();
+            } finally {
+                if (deflater != null) deflater.end();
+            }
+        }
+    }
+}
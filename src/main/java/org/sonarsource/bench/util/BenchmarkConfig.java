@@ -5,15 +5,21 @@ public class BenchmarkConfig {
     public final int batchSize;
     public final int warmupBatches;
     public final String searchRuleKey;
+    public final int repetitions;
 
     public BenchmarkConfig(int itemCount, int batchSize, int warmupBatches, String searchRuleKey) {
+        this(itemCount, batchSize, warmupBatches, searchRuleKey, 1);
+    }
+
+    public BenchmarkConfig(int itemCount, int batchSize, int warmupBatches, String searchRuleKey, int repetitions) {
         this.itemCount = itemCount;
         this.batchSize = batchSize;
         this.warmupBatches = warmupBatches;
         this.searchRuleKey = searchRuleKey;
+        this.repetitions = Math.max(1, repetitions);
     }
 
     public static BenchmarkConfig defaultConfig() {
-        return new BenchmarkConfig(1_000_000, 5_000, 10, "java:S1234");
+        return new BenchmarkConfig(1_000_000, 5_000, 10, "java:S1234", 1);
     }
 }
@@ -5,81 +5,244 @@ import org.sonarsource.bench.model.IssueFlow;
 import org.sonarsource.bench.model.IssueLocation;
 import org.sonarsource.bench.model.QuickFix;
 
-import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Random;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.SplittableRandom;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+/**
+ * Generates issues from a seed. Issue {@code i} only depends on the seed and {@code i}: each index gets its own
+ * SplittableRandom seeded from a hash of both, so any slice of a dataset can be regenerated on its own and
+ * generation gives the same list whatever the parallelism. Creation dates are relative to a fixed base time.
+ * <p>
+ * Datasets larger than the heap are consumed lazily, through {@link #iterator(long)} or {@link #stream(long)},
+ * or chunk by chunk through {@link #generateRange(long, int)}.
+ * <p>
+ * The distribution of rules, files, flows and messages is described by a {@link WorkloadProfile}.
+ */
 public class DataGenerator {
-    private final Random rnd;
+    /** 2024-01-01T00:00:00Z, so that creation dates do not depend on when the dataset was generated. */
+    public static final long DEFAULT_BASE_TIME = 1_704_067_200_000L;
+
+    private static final String[] SEVERITIES = {"BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO"};
+    private static final String[] TAG_POOL = {"security", "bug", "vulnerability", "code-smell", "performance", "style", "unused", "nullability"};
+    private static final String[] SECURITY_TAGS = {"security", "vulnerability", "cwe", "owasp-a3", "injection"};
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit",
+            "sed", "do", "eiusmod", "tempor", "incididunt", "ut", "labore", "et", "dolore", "magna", "aliqua"};
+    private static final int MAX_MESSAGE_WORDS = 400;
+
+    private final long seed;
     private final String[] ruleKeys;
-    private final String[] severities = {"BLOCKER", "CRITICAL", "MAJOR", "MINOR", "INFO"};
+    private final long baseTime;
+    private final WorkloadProfile workload;
+    private final Zipf rules;
+    private final Zipf files;
 
     public DataGenerator(long seed, String[] ruleKeys) {
-        this.rnd = new Random(seed);
-        this.ruleKeys = ruleKeys;
+        this(seed, ruleKeys, WorkloadProfile.defaultProfile());
+    }
+
+    public DataGenerator(long seed, String[] ruleKeys, WorkloadProfile workload) {
+        this(seed, ruleKeys, DEFAULT_BASE_TIME, workload);
     }
 
+    /**
+     * @param ruleKeys rules by decreasing popularity; the workload may synthesize less popular rules after them
+     */
+    public DataGenerator(long seed, String[] ruleKeys, long baseTime, WorkloadProfile workload) {
+        this.seed = seed;
+        this.ruleKeys = withSynthesizedRules(ruleKeys, workload.ruleCount);
+        this.baseTime = baseTime;
+        this.workload = workload;
+        this.rules = new Zipf(this.ruleKeys.length, workload.ruleSkew);
+        this.files = new Zipf(workload.fileCount, workload.fileSkew);
+    }
+
+    /** Generates issues 0..count-1 using the common fork-join pool. */
     public List<Issue> generate(int count) {
-        List<Issue> list = new ArrayList<>(count);
-        long baseTime = Instant.now().toEpochMilli();
-        for (int i = 0; i < count; i++) {
-            String id = UUID.randomUUID().toString();
-            String ruleKey = ruleKeys[rnd.nextInt(ruleKeys.length)];
-            String severity = severities[rnd.nextInt(severities.length)];
-            String filePath = "/project/module/src/main/java/com/example/Foo" + rnd.nextInt(1_000) + ".java";
-            int line = 1 + rnd.nextInt(500);
-            String message = "Issue on line " + line + " for rule " + ruleKey + " lorem ipsum dolor sit amet " + rnd.nextInt(1000);
-            String assignee = rnd.nextBoolean() ? ("user" + rnd.nextInt(50)) : null;
-            List<String> tags = randomTags();
-            long created = baseTime - rnd.nextInt(1000 * 60 * 60 * 24 * 365);
-
-            Issue issue = new Issue(id, ruleKey, severity, message, filePath, line, created, assignee, tags);
-
-            // Primary location is initialized by Issue constructor; optionally enrich offsets
-            IssueLocation pl = issue.getPrimaryLocation();
-            if (pl != null) {
-                pl.setStartOffset(0);
-                pl.setEndOffset(20 + rnd.nextInt(80));
-            }
+        return generateRange(0, count);
+    }
 
-            // Random flows
-            int flowCount = rnd.nextInt(3); // 0..2 flows
-            List<IssueFlow> flows = new ArrayList<>(flowCount);
-            for (int f = 0; f < flowCount; f++) {
-                int locCount = 1 + rnd.nextInt(3);
-                List<IssueLocation> locs = new ArrayList<>(locCount);
-                for (int l = 0; l < locCount; l++) {
-                    int lno = 1 + rnd.nextInt(500);
-                    locs.add(new IssueLocation(filePath, lno, lno, null, null, "Flow step " + (l + 1)));
-                }
-                flows.add(new IssueFlow(locs));
-            }
-            issue.setFlows(flows);
-
-            // Random quick fixes
-            int qfCount = rnd.nextInt(3); // 0..2
-            List<QuickFix> qfs = new ArrayList<>(qfCount);
-            for (int q = 0; q < qfCount; q++) {
-                List<IssueLocation> qlocs = new ArrayList<>();
-                qlocs.add(new IssueLocation(filePath, line, line, 0, 10 + rnd.nextInt(30), "Apply fix " + (q + 1)));
-                qfs.add(new QuickFix("Quick fix suggestion " + (q + 1), qlocs));
+    /** Generates issues from..from+count-1 using the common fork-join pool. */
+    public List<Issue> generateRange(long from, int count) {
+        return LongStream.range(from, from + count).parallel().mapToObj(this::issueAt).collect(Collectors.toList());
+    }
+
+    /** Lazily generates issues 0..count-1; nothing is kept once consumed. */
+    public Iterator<Issue> iterator(long count) {
+        return Spliterators.iterator(new IssueSpliterator(0, count));
+    }
+
+    /** Lazy stream of issues 0..count-1; it splits by index range, so it may be made parallel. */
+    public Stream<Issue> stream(long count) {
+        return StreamSupport.stream(new IssueSpliterator(0, count), false);
+    }
+
+    /** Generates issues 0..count-1 on {@code parallelism} threads; 1 generates on the calling thread. */
+    public List<Issue> generate(int count, int parallelism) {
+        if (parallelism <= 1) {
+            List<Issue> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) list.add(issueAt(i));
+            return list;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> generate(count)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating issues", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to generate issues", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Generates issue number {@code index}; always the same issue for the same seed and index. */
+    public Issue issueAt(long index) {
+        SplittableRandom rnd = new SplittableRandom(mix(seed, index));
+        String id = new UUID(rnd.nextLong(), rnd.nextLong()).toString();
+        String ruleKey = ruleKeys[rules.sample(rnd)];
+        String severity = SEVERITIES[rnd.nextInt(SEVERITIES.length)];
+        String filePath = filePath(files.sample(rnd));
+        int line = 1 + rnd.nextInt(500);
+        String message = "Issue on line " + line + " for rule " + ruleKey + " " + filler(rnd) + " " + rnd.nextInt(1000);
+        String assignee = rnd.nextBoolean() ? ("user" + rnd.nextInt(50)) : null;
+        List<String> tags = randomTags(rnd);
+        long created = baseTime - rnd.nextInt(1000 * 60 * 60 * 24 * 365);
+
+        Issue issue = new Issue(id, ruleKey, severity, message, filePath, line, created, assignee, tags);
+
+        // Primary location is initialized by Issue constructor; optionally enrich offsets
+        IssueLocation pl = issue.getPrimaryLocation();
+        if (pl != null) {
+            pl.setStartOffset(0);
+            pl.setEndOffset(20 + rnd.nextInt(80));
+        }
+
+        // Random flows
+        int flowCount = rnd.nextDouble() < workload.flowProbability ? 1 + rnd.nextInt(workload.maxFlows) : 0;
+        List<IssueFlow> flows = new ArrayList<>(flowCount);
+        for (int f = 0; f < flowCount; f++) {
+            int locCount = flowSteps(rnd);
+            List<IssueLocation> locs = new ArrayList<>(locCount);
+            for (int l = 0; l < locCount; l++) {
+                int lno = 1 + rnd.nextInt(500);
+                locs.add(new IssueLocation(filePath, lno, lno, null, null, "Flow step " + (l + 1)));
             }
-            issue.setQuickFixes(qfs);
+            flows.add(new IssueFlow(locs));
+        }
+        issue.setFlows(flows);
 
-            list.add(issue);
+        // Random quick fixes
+        int qfCount = rnd.nextDouble() < workload.quickFixProbability ? 1 + rnd.nextInt(workload.maxQuickFixes) : 0;
+        List<QuickFix> qfs = new ArrayList<>(qfCount);
+        for (int q = 0; q < qfCount; q++) {
+            List<IssueLocation> qlocs = new ArrayList<>();
+            qlocs.add(new IssueLocation(filePath, line, line, 0, 10 + rnd.nextInt(30), "Apply fix " + (q + 1)));
+            qfs.add(new QuickFix("Quick fix suggestion " + (q + 1), qlocs));
         }
-        return list;
+        issue.setQuickFixes(qfs);
+        return issue;
     }
 
-    private List<String> randomTags() {
-        String[] pool = {"security", "bug", "vulnerability", "code-smell", "performance", "style", "unused", "nullability"};
+    private final class IssueSpliterator implements Spliterator<Issue> {
+        private long next;
+        private final long end;
+
+        IssueSpliterator(long from, long end) {
+            this.next = from;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Issue> action) {
+            if (next >= end) return false;
+            action.accept(issueAt(next++));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Issue> trySplit() {
+            long mid = (next + end) >>> 1;
+            if (mid <= next) return null;
+            IssueSpliterator prefix = new IssueSpliterator(next, mid);
+            next = mid;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return end - next;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+    }
+
+    private String filePath(int file) {
+        if (workload.modules == 1) return "/project/module/src/main/java/com/example/Foo" + file + ".java";
+        return "/project/module" + (file % workload.modules) + "/src/main/java/com/example/pkg" + (file / workload.modules % 20)
+                + "/Foo" + file + ".java";
+    }
+
+    private String filler(SplittableRandom rnd) {
+        int n = workload.messageWords;
+        if (workload.messageSigma > 0) {
+            n = (int) Math.round(n * Math.exp(workload.messageSigma * rnd.nextGaussian()));
+        }
+        n = Math.max(1, Math.min(MAX_MESSAGE_WORDS, n));
+        StringBuilder sb = new StringBuilder(n * 7);
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(' ');
+            sb.append(WORDS[i % WORDS.length]);
+        }
+        return sb.toString();
+    }
+
+    private int flowSteps(SplittableRandom rnd) {
+        if (workload.flowStepAlpha <= 0) return 1 + rnd.nextInt(3);
+        // Pareto with minimum 1: most flows are short, a few reach maxFlowSteps
+        double steps = Math.pow(1.0 - rnd.nextDouble(), -1.0 / workload.flowStepAlpha);
+        return (int) Math.min(workload.maxFlowSteps, Math.floor(steps));
+    }
+
+    private List<String> randomTags(SplittableRandom rnd) {
         int n = 1 + rnd.nextInt(4);
         List<String> tags = new ArrayList<>(n);
         for (int i = 0; i < n; i++) {
-            tags.add(pool[rnd.nextInt(pool.length)]);
+            tags.add(rnd.nextDouble() < workload.securityTagBias
+                    ? SECURITY_TAGS[rnd.nextInt(SECURITY_TAGS.length)]
+                    : TAG_POOL[rnd.nextInt(TAG_POOL.length)]);
         }
         return tags;
     }
+
+    private static String[] withSynthesizedRules(String[] ruleKeys, int ruleCount) {
+        if (ruleCount <= ruleKeys.length) return ruleKeys.clone();
+        String[] out = new String[ruleCount];
+        System.arraycopy(ruleKeys, 0, out, 0, ruleKeys.length);
+        for (int i = ruleKeys.length; i < ruleCount; i++) out[i] = "java:S" + (5000 + i);
+        return out;
+    }
+
+    /** Stafford variant 13 of the SplitMix64 finalizer over seed and index, so that neighbouring indexes get unrelated streams. */
+    static long mix(long seed, long index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 }
@@ -0,0 +1,76 @@
+package org.sonarsource.bench.util;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every collection reported by the GC notifications from {@link #start()} until {@link #close()}, for the
+ * longest pause, which {@link GcStats} totals cannot tell. Collectors working concurrently with the application
+ * (G1 and Shenandoah concurrent cycles, ZGC cycles) are left out, since their duration is not a pause.
+ */
+public final class GcPauses implements AutoCloseable {
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::onNotification;
+    private long count;
+    private long totalMs;
+    private long maxMs;
+
+    private GcPauses() {
+    }
+
+    public static GcPauses start() {
+        GcPauses p = new GcPauses();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc.getName().contains("Concurrent") || gc.getName().contains("Cycles")) continue;
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(p.listener, null, null);
+                p.emitters.add(emitter);
+            }
+        }
+        return p;
+    }
+
+    private synchronized void onNotification(Notification n, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(n.getType())) return;
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData());
+        long duration = info.getGcInfo().getDuration();
+        count++;
+        totalMs += duration;
+        maxMs = Math.max(maxMs, duration);
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    public synchronized long totalMs() {
+        return totalMs;
+    }
+
+    public synchronized long maxMs() {
+        return maxMs;
+    }
+
+    /** Notifications are delivered asynchronously, the last ones may arrive after the measured code returned. */
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // never registered, nothing to remove
+            }
+        }
+        emitters.clear();
+    }
+}
@@ -0,0 +1,32 @@
+package org.sonarsource.bench.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Collection count and accumulated collection time over all garbage collectors.
+ */
+public class GcStats {
+    public final long count;
+    public final long timeMs;
+
+    private GcStats(long count, long timeMs) {
+        this.count = count;
+        this.timeMs = timeMs;
+    }
+
+    public static GcStats snapshot() {
+        long count = 0;
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // -1 means the collector does not report the value
+            if (gc.getCollectionCount() > 0) count += gc.getCollectionCount();
+            if (gc.getCollectionTime() > 0) time += gc.getCollectionTime();
+        }
+        return new GcStats(count, time);
+    }
+
+    public GcStats since(GcStats before) {
+        return new GcStats(count - before.count, timeMs - before.timeMs);
+    }
+}
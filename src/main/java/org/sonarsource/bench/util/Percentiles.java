@@ -0,0 +1,17 @@
+package org.sonarsource.bench.util;
+
+public final class Percentiles {
+    private Percentiles() {
+    }
+
+    /**
+     * Nearest-rank percentile of already sorted values.
+     *
+     * @param q quantile in [0, 1], e.g. 0.95
+     */
+    public static long of(long[] sorted, double q) {
+        if (sorted.length == 0) return 0L;
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.min(sorted.length - 1, Math.max(0, rank - 1))];
+    }
+}
@@ -0,0 +1,116 @@
+package org.sonarsource.bench.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures what a phase costs the JVM besides wall time:
+ * <ul>
+ *   <li>GC count and time over all collectors;</li>
+ *   <li>bytes allocated and CPU time of the calling thread, which is the thread calling the repository; work that an
+ *   engine hands over to background threads only shows in the process CPU time;</li>
+ *   <li>process CPU time, all threads included;</li>
+ *   <li>heap high-water mark: peak usage of every heap pool is reset at {@link #start()} and summed at {@link #stop()},
+ *   which slightly overestimates when pools peak at different times.</li>
+ * </ul>
+ * Thread allocation and CPU can be {@link #pause() paused}, e.g. while the benchmark generates the next batch, so that
+ * they only account for the engine and our own encoding/decoding. Values a JVM does not support are -1.
+ */
+public final class PhaseProbe {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final GcStats gcBefore;
+    private final long processCpuBefore;
+    private long allocatedBytes;
+    private long cpuNanos;
+    private long allocMark;
+    private long cpuMark;
+    private boolean running;
+
+    private GcStats gc;
+    private long processCpuNanos = -1L;
+    private long heapPeakBytes = -1L;
+
+    private PhaseProbe() {
+        for (MemoryPoolMXBean pool : heapPools()) pool.resetPeakUsage();
+        this.gcBefore = GcStats.snapshot();
+        this.processCpuBefore = processCpuTime();
+    }
+
+    public static PhaseProbe start() {
+        PhaseProbe p = new PhaseProbe();
+        p.resume();
+        return p;
+    }
+
+    public void pause() {
+        if (!running) return;
+        running = false;
+        allocatedBytes = add(allocatedBytes, threadAllocatedBytes(), allocMark);
+        cpuNanos = add(cpuNanos, threadCpuTime(), cpuMark);
+    }
+
+    public void resume() {
+        if (running) return;
+        running = true;
+        allocMark = threadAllocatedBytes();
+        cpuMark = threadCpuTime();
+    }
+
+    public PhaseProbe stop() {
+        pause();
+        gc = GcStats.snapshot().since(gcBefore);
+        long processCpu = processCpuTime();
+        processCpuNanos = processCpu < 0 || processCpuBefore < 0 ? -1L : processCpu - processCpuBefore;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools()) peak += pool.getPeakUsage().getUsed();
+        heapPeakBytes = peak;
+        return this;
+    }
+
+    public long gcCount() { return gc.count; }
+    public long gcTimeMs() { return gc.timeMs; }
+    public long allocatedBytes() { return allocatedBytes; }
+    public long cpuMs() { return cpuNanos < 0 ? -1L : cpuNanos / 1_000_000; }
+    public long processCpuMs() { return processCpuNanos < 0 ? -1L : processCpuNanos / 1_000_000; }
+    public long heapPeakBytes() { return heapPeakBytes; }
+
+    private static long add(long total, long now, long mark) {
+        if (total < 0 || now < 0 || mark < 0) return -1L;
+        return total + now - mark;
+    }
+
+    private static long threadAllocatedBytes() {
+        if (THREADS instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean t = (com.sun.management.ThreadMXBean) THREADS;
+            if (t.isThreadAllocatedMemorySupported() && t.isThreadAllocatedMemoryEnabled()) {
+                return t.getCurrentThreadAllocatedBytes();
+            }
+        }
+        return -1L;
+    }
+
+    private static long threadCpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1L;
+    }
+
+    private static long processCpuTime() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1L;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        List<MemoryPoolMXBean> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) pools.add(pool);
+        }
+        return pools;
+    }
+}
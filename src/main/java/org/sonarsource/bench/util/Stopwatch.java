@@ -22,7 +22,14 @@ public class Stopwatch {
     }
 
     public long elapsedMillis() {
-        long t = (end == 0L ? System.nanoTime() : end) - start;
-        return t / 1_000_000L;
+        return elapsedNanos() / 1_000_000L;
+    }
+
+    public long elapsedMicros() {
+        return elapsedNanos() / 1_000L;
+    }
+
+    public long elapsedNanos() {
+        return (end == 0L ? System.nanoTime() : end) - start;
     }
 }
@@ -0,0 +1,93 @@
+package org.sonarsource.bench.util;
+
+import java.util.Locale;
+
+/**
+ * Shape of a generated dataset: how rule and file popularity are skewed, how long flows and messages are, and how
+ * files are spread over modules. Popularity follows a Zipf law whose exponent is the skew (0 is uniform); flow
+ * lengths follow a Pareto law whose exponent is {@code flowStepAlpha} (smaller is a longer tail, 0 is 1..3 steps).
+ */
+public class WorkloadProfile {
+    /** The original shape: the given rules and 1000 files picked uniformly, 0..2 short flows and quick fixes. */
+    public static final WorkloadProfile UNIFORM = new WorkloadProfile("uniform",
+            0, 0.0, 1_000, 0.0, 1,
+            2.0 / 3, 2, 0.0, 3,
+            5, 0.0, 2.0 / 3, 2, 0.0);
+    /** A single module of a few hundred files, where a handful of rules raise most issues. */
+    public static final WorkloadProfile SMALL_PROJECT = new WorkloadProfile("small-project",
+            40, 1.1, 200, 0.8, 1,
+            0.2, 2, 2.0, 10,
+            8, 0.5, 0.3, 1, 0.05);
+    /** Hundreds of modules and tens of thousands of files; the most popular files carry thousands of issues. */
+    public static final WorkloadProfile MONOREPO = new WorkloadProfile("monorepo",
+            300, 1.0, 50_000, 1.2, 200,
+            0.3, 3, 1.8, 30,
+            10, 0.6, 0.3, 2, 0.1);
+    /** Taint analysis results: nearly every issue has flows, with a long tail of flows of dozens of steps. */
+    public static final WorkloadProfile SECURITY_HEAVY = new WorkloadProfile("security-heavy",
+            80, 1.3, 5_000, 1.0, 20,
+            0.9, 5, 1.1, 80,
+            25, 0.8, 0.1, 1, 0.7);
+
+    private static final WorkloadProfile[] PRESETS = {UNIFORM, SMALL_PROJECT, MONOREPO, SECURITY_HEAVY};
+
+    public final String id;
+    /** Number of distinct rules; extra rules are synthesized after the given rule keys. 0 uses the given keys only. */
+    public final int ruleCount;
+    public final double ruleSkew;
+    public final int fileCount;
+    public final double fileSkew;
+    public final int modules;
+    /** Probability that an issue has flows, then 1..maxFlows of them. */
+    public final double flowProbability;
+    public final int maxFlows;
+    public final double flowStepAlpha;
+    public final int maxFlowSteps;
+    /** Median number of filler words in a message; the count is log-normal with the given sigma (0 is fixed). */
+    public final int messageWords;
+    public final double messageSigma;
+    /** Probability that an issue has quick fixes, then 1..maxQuickFixes of them. */
+    public final double quickFixProbability;
+    public final int maxQuickFixes;
+    /** Probability that a tag is drawn from the security tags rather than from all tags. */
+    public final double securityTagBias;
+
+    public WorkloadProfile(String id,
+                           int ruleCount, double ruleSkew, int fileCount, double fileSkew, int modules,
+                           double flowProbability, int maxFlows, double flowStepAlpha, int maxFlowSteps,
+                           int messageWords, double messageSigma, double quickFixProbability, int maxQuickFixes,
+                           double securityTagBias) {
+        this.id = id;
+        this.ruleCount = ruleCount;
+        this.ruleSkew = ruleSkew;
+        this.fileCount = fileCount;
+        this.fileSkew = fileSkew;
+        this.modules = Math.max(1, modules);
+        this.flowProbability = flowProbability;
+        this.maxFlows = maxFlows;
+        this.flowStepAlpha = flowStepAlpha;
+        this.maxFlowSteps = maxFlowSteps;
+        this.messageWords = messageWords;
+        this.messageSigma = messageSigma;
+        this.quickFixProbability = quickFixProbability;
+        this.maxQuickFixes = maxQuickFixes;
+        this.securityTagBias = securityTagBias;
+    }
+
+    public static WorkloadProfile defaultProfile() {
+        return UNIFORM;
+    }
+
+    public static WorkloadProfile fromId(String id) {
+        String key = id.trim().toLowerCase(Locale.ROOT);
+        for (WorkloadProfile p : PRESETS) {
+            if (p.id.equals(key)) return p;
+        }
+        throw new IllegalArgumentException("Unknown workload profile: " + id);
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
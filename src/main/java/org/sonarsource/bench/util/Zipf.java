@@ -0,0 +1,35 @@
+package org.sonarsource.bench.util;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Samples ranks 0..n-1 with probability proportional to 1/(rank+1)^exponent, by binary search over a precomputed
+ * cumulative distribution. An exponent of 0 is the uniform distribution.
+ */
+final class Zipf {
+    private final int n;
+    private final double[] cdf;
+
+    Zipf(int n, double exponent) {
+        if (n <= 0) throw new IllegalArgumentException("n must be positive: " + n);
+        this.n = n;
+        if (exponent <= 0) {
+            this.cdf = null;
+            return;
+        }
+        this.cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) cdf[i] /= sum;
+    }
+
+    int sample(SplittableRandom rnd) {
+        if (cdf == null) return rnd.nextInt(n);
+        int i = Arrays.binarySearch(cdf, rnd.nextDouble());
+        return Math.min(n - 1, i >= 0 ? i : -i - 1);
+    }
+}
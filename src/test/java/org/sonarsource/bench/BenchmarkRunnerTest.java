@@ -1,7 +1,17 @@
 package org.sonarsource.bench;
 
 import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.TextSearch;
+import org.sonarsource.bench.result.PhaseResult;
+import org.sonarsource.bench.result.ResultsIO;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class BenchmarkRunnerTest {
 
@@ -10,4 +20,43 @@ class BenchmarkRunnerTest {
         String[] args = new String[] {"items=2000", "batch=500", "rule=java:S1234"};
         assertDoesNotThrow(() -> BenchmarkRunner.main(args));
     }
+
+    @Test
+    void benchmarkRunner_allProfiles_shouldNotThrow() {
+        String[] args = new String[] {"items=500", "batch=100", "profiles=safe,balanced,fast-unsafe"};
+        assertDoesNotThrow(() -> BenchmarkRunner.main(args));
+    }
+
+    @Test
+    void benchmarkRunner_selectedBackendsAndPhases_withRepetitions_shouldNotThrow() {
+        String[] args = new String[] {"items=500", "batch=100", "db=h2,sqlite,mapdb", "phases=write,get", "warmup=2", "reps=3"};
+        assertDoesNotThrow(() -> BenchmarkRunner.main(args));
+    }
+
+    @Test
+    void benchmarkRunner_textIndexArgument_isRestoredAfterTheRun() throws Exception {
+        String previous = System.getProperty(TextSearch.INDEX_PROPERTY);
+        System.setProperty(TextSearch.INDEX_PROPERTY, "true");
+        try {
+            BenchmarkRunner.main(new String[] {"items=300", "batch=100", "db=h2", "phases=write,text", "textIndex=false"});
+            assertEquals("true", System.getProperty(TextSearch.INDEX_PROPERTY));
+        } finally {
+            if (previous == null) System.clearProperty(TextSearch.INDEX_PROPERTY);
+            else System.setProperty(TextSearch.INDEX_PROPERTY, previous);
+        }
+    }
+
+    @Test
+    void benchmarkRunner_forkPerRepetition_collectsChildResults() throws Exception {
+        Path out = Files.createTempFile("forked", ".json");
+        try {
+            BenchmarkRunner.main(new String[] {"items=300", "batch=100", "db=h2,sqlite", "phases=write,get", "gets=50",
+                    "fork=rep", "reps=2", "heap=256m", "gc=serial", "out=" + out});
+            List<PhaseResult> results = ResultsIO.read(out);
+            assertEquals(2, results.stream().map(PhaseResult::getBackend).distinct().count());
+            assertTrue(results.stream().anyMatch(r -> r.getPhase().equals("get")));
+        } finally {
+            Files.deleteIfExists(out);
+        }
+    }
 }
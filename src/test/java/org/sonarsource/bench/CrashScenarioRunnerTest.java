@@ -1,6 +1,7 @@
 package org.sonarsource.bench;
 
 import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.DerbyIssueRepository;
 import org.sonarsource.bench.db.SqliteIssueRepository;
 import org.sonarsource.bench.db.IssueRepository;
 import org.sonarsource.bench.util.DataGenerator;
@@ -10,6 +11,9 @@ import java.io.File;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class CrashScenarioRunnerTest {
 
@@ -86,6 +90,36 @@ class CrashScenarioRunnerTest {
     }
   }
 
+  @Test
+  void crashRunner_verify_derby_counts_lost_issues_against_seed() throws Exception {
+    File f;
+    try {
+      f = File.createTempFile("derby-crash-verify", "");
+      if (f.exists()) f.delete();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    // Store only the first 150 of the 200 issues the seed generates, as if the rest were lost in a crash
+    String[] ruleKeys = {"java:S100", "java:S101", "java:S1854", "java:S106", "java:S1234", "java:S121"};
+    List<Issue> data = new DataGenerator(42L, ruleKeys).generate(200);
+    IssueRepository repo = new DerbyIssueRepository(f.getAbsolutePath());
+    repo.init();
+    repo.insertAll(data.subList(0, 150));
+    repo.close();
+
+    CrashScenarioRunner.Args a = CrashScenarioRunner.Args.parse(new String[]{
+      "mode=verify", "db=derby", "path=" + f.getAbsolutePath(), "items=200", "committed=180"
+    });
+    CrashScenarioRunner.VerifyResult r = CrashScenarioRunner.verify(a);
+    assertNull(r.failure, "verify failure");
+    assertTrue(r.opened && r.integrityOk, "store must open and pass SYSCS_CHECK_TABLE");
+    assertTrue(r.recoveryMs >= 0, "recoveryMs");
+    assertEquals(150, r.found, "found");
+    assertEquals(30, r.lost, "lost");
+    assertEquals(0, r.duplicated, "duplicated");
+    assertEquals(0, r.unexpected, "unexpected");
+  }
+
   @Test
   void crashRunner_full_sqlite_kill_process_during_writes_then_verify_integrity() throws Exception {
     // Create DB path
@@ -241,4 +275,20 @@ class CrashScenarioRunnerTest {
     } catch (Exception ignored) {
     }
   }
+
+  @Test
+  void crashRunner_orchestrate_sqlite_kill_loop_smoke() {
+    String[] args = new String[]{
+      "mode=orchestrate", "db=sqlite", "runs=2", "items=2000", "batch=100", "sleepms=20", "maxDelayMs=200"
+    };
+    assertDoesNotThrow(() -> CrashScenarioRunner.main(args));
+  }
+
+  @Test
+  void crashRunner_orchestrate_h2_power_loss_smoke() {
+    String[] args = new String[]{
+      "mode=orchestrate", "db=h2", "runs=1", "items=2000", "batch=100", "sleepms=20", "maxDelayMs=200", "fault=drop-unsynced"
+    };
+    assertDoesNotThrow(() -> CrashScenarioRunner.main(args));
+  }
 }
@@ -9,8 +9,16 @@ import org.sonarsource.bench.model.IssueLocation;
 import org.sonarsource.bench.model.QuickFix;
 import org.sonarsource.bench.util.DataGenerator;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,6 +69,134 @@ class IssuePersistenceTest {
         runStoreFetchAndAssert(repoUnderTest);
     }
 
+    @Test
+    void mvstore_storeAndFetchById_allFieldsMatch() throws Exception {
+        repoUnderTest = new MvStoreIssueRepository();
+        runStoreFetchAndAssert(repoUnderTest);
+    }
+
+    /** The binary issues and (value, id) index keys are read back from the file, and moved when an issue is stored again. */
+    @Test
+    void mvstore_pagesAndRuleIndex_surviveReopen() throws Exception {
+        File file = File.createTempFile("mvstore-issues", ".mv.db");
+        file.delete();
+        DataGenerator gen = new DataGenerator(7L, new String[] {"java:S100", "java:S101"});
+        List<Issue> issues = gen.generate(50);
+        try {
+            try (IssueRepository repo = new MvStoreIssueRepository(file.getAbsolutePath())) {
+                repo.init();
+                repo.insertAll(issues);
+                // a new instance: MVStore keeps the stored ones in its page cache
+                Issue moved = gen.issueAt(0);
+                moved.setRuleKey("java:S102");
+                repo.insertAll(List.of(moved));
+                issues.set(0, moved);
+            }
+            repoUnderTest = new MvStoreIssueRepository(file.getAbsolutePath());
+            repoUnderTest.init();
+            assertIssueDeepEquals(issues.get(1), repoUnderTest.getById(issues.get(1).getId()));
+
+            Set<String> expected = new TreeSet<>();
+            for (Issue is : issues) expected.add(is.getId());
+            assertIterableEquals(expected, pageIds(repoUnderTest, null, 7));
+            for (String rule : new String[] {"java:S100", "java:S101", "java:S102"}) {
+                Set<String> ofRule = new TreeSet<>();
+                for (Issue is : issues) {
+                    if (rule.equals(is.getRuleKey())) ofRule.add(is.getId());
+                }
+                assertIterableEquals(ofRule, pageIds(repoUnderTest, rule, 7), rule);
+                assertEquals(ofRule.size(), repoUnderTest.searchByRule(rule).size(), rule);
+                assertEquals(ofRule.size(), repoUnderTest.countBy(IssueField.RULE).get(rule).intValue(), rule);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void h2_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(H2IssueRepository::new);
+    }
+
+    @Test
+    void hsqldb_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(HsqldbIssueRepository::new);
+    }
+
+    @Test
+    void derby_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(DerbyIssueRepository::new);
+    }
+
+    @Test
+    void mapdb_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(MapDbIssueRepository::new);
+    }
+
+    @Test
+    void sqlite_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(SqliteIssueRepository::new);
+    }
+
+    @Test
+    void mvstore_textIndex_followsTheModeOfEachOpening() throws Exception {
+        runTextIndexReopenAndAssert(MvStoreIssueRepository::new);
+    }
+
+    /**
+     * Writes a store in three openings, without the text index, with it, then without it again, and checks that an
+     * opening with the index finds the messages inserted by all of them.
+     */
+    private static void runTextIndexReopenAndAssert(Function<String, IssueRepository> open) throws Exception {
+        Path dir = Files.createTempDirectory("text-index");
+        String path = dir.resolve("issues").toString();
+        List<Issue> issues = new DataGenerator(13L, new String[] {"java:S100"}).generate(90);
+        String previous = System.getProperty(TextSearch.INDEX_PROPERTY);
+        try {
+            boolean on = false;
+            for (int part = 0; part < 3; part++) {
+                System.setProperty(TextSearch.INDEX_PROPERTY, Boolean.toString(on));
+                try (IssueRepository repo = open.apply(path)) {
+                    repo.init();
+                    repo.insertAll(issues.subList(part * 30, part * 30 + 30));
+                }
+                on = !on;
+            }
+            System.setProperty(TextSearch.INDEX_PROPERTY, "true");
+            try (IssueRepository repo = open.apply(path)) {
+                repo.init();
+                for (Issue is : new Issue[] {issues.get(0), issues.get(45), issues.get(89)}) {
+                    Set<String> words = TextSearch.words(is.getMessage());
+                    Set<String> expected = new TreeSet<>();
+                    for (Issue other : issues) {
+                        if (TextSearch.matches(other.getMessage(), words)) expected.add(other.getId());
+                    }
+                    Set<String> found = new TreeSet<>();
+                    for (Issue other : repo.searchMessage(is.getMessage())) found.add(other.getId());
+                    assertEquals(expected, found, is.getMessage());
+                }
+            }
+        } finally {
+            if (previous == null) System.clearProperty(TextSearch.INDEX_PROPERTY);
+            else System.setProperty(TextSearch.INDEX_PROPERTY, previous);
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    private static List<String> pageIds(IssueRepository repo, String ruleKey, int pageSize) throws Exception {
+        List<String> out = new ArrayList<>();
+        String token = null;
+        do {
+            Page page = ruleKey == null ? repo.readAll(pageSize, token) : repo.searchByRule(ruleKey, pageSize, token);
+            assertTrue(page.getIssues().size() <= pageSize, "page size");
+            for (Issue is : page.getIssues()) out.add(is.getId());
+            token = page.getNextToken();
+        } while (token != null);
+        return out;
+    }
+
     private static void runStoreFetchAndAssert(IssueRepository repo) throws Exception {
         String[] ruleKeys = {"java:S100", "java:S101"};
         DataGenerator gen = new DataGenerator(123L, ruleKeys);
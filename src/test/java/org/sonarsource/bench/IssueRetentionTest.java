@@ -0,0 +1,201 @@
+package org.sonarsource.bench;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.*;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IssueRetentionTest {
+    private static final int ITEMS = 300;
+    private static final int OLD = 200;
+
+    private IssueRepository repoUnderTest;
+
+    @AfterEach
+    void tearDown() {
+        if (repoUnderTest != null) {
+            try { repoUnderTest.close(); } catch (Exception ignored) {}
+        }
+    }
+
+    @Test
+    void h2_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new H2IssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void hsqldb_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new HsqldbIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void derby_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new DerbyIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void mapdb_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new MapDbIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void mapdb_purgeReopenAndCompact_keepTagAndWordIndexesRight() throws Exception {
+        File file = File.createTempFile("mapdb-issues", ".db");
+        file.delete();
+        DataGenerator gen = new DataGenerator(11L, new String[] {"java:S100", "java:S101"});
+        List<Issue> issues = gen.generate(ITEMS);
+        for (int i = 0; i < ITEMS; i++) issues.get(i).setCreationDateEpochMillis(i < OLD ? 1_000L + i : 5_000L + i);
+        List<Issue> kept = new ArrayList<>(issues.subList(OLD, ITEMS));
+        try {
+            try (IssueRepository repo = new MapDbIssueRepository(file.getAbsolutePath())) {
+                repo.init();
+                repo.insertAll(issues);
+                assertEquals(OLD, repo.deleteOlderThan(5_000L));
+            }
+            // the purged ordinals are not handed out again after a reopen
+            repoUnderTest = new MapDbIssueRepository(file.getAbsolutePath());
+            repoUnderTest.init();
+            List<Issue> added = gen.generateRange(ITEMS, 50);
+            for (Issue is : added) is.setCreationDateEpochMillis(9_000L);
+            repoUnderTest.insertAll(added);
+            kept.addAll(added);
+            assertIndexesMatch(repoUnderTest, kept);
+
+            repoUnderTest.compact();
+            assertIndexesMatch(repoUnderTest, kept);
+            repoUnderTest.close();
+            repoUnderTest = new MapDbIssueRepository(file.getAbsolutePath());
+            repoUnderTest.init();
+            repoUnderTest.insertAll(List.of(issues.get(0)));
+            kept.add(issues.get(0));
+            assertIndexesMatch(repoUnderTest, kept);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void nitrite_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new NitriteIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void sqlite_purgeAndCompact_keepNewerIssues() throws Exception {
+        // engine defaults: no auto-vacuum, compact() runs a full VACUUM
+        repoUnderTest = new SqliteIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void sqlite_purgeAndIncrementalVacuum_keepNewerIssues() throws Exception {
+        repoUnderTest = new SqliteIssueRepository(TuningProfile.BALANCED);
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    @Test
+    void mvstore_purgeAndCompact_keepNewerIssues() throws Exception {
+        repoUnderTest = new MvStoreIssueRepository();
+        runPurgeCompactAndAssert(repoUnderTest);
+    }
+
+    /**
+     * Stores issues of two ages, purges the older ones, compacts, then checks that every read path, including the
+     * tag and message indexes, only finds the newer ones.
+     */
+    private static void runPurgeCompactAndAssert(IssueRepository repo) throws Exception {
+        List<Issue> issues = new DataGenerator(11L, new String[] {"java:S100", "java:S101", "java:S1854"}).generate(ITEMS);
+        for (int i = 0; i < ITEMS; i++) issues.get(i).setCreationDateEpochMillis(i < OLD ? 1_000L + i : 5_000L + i);
+        List<Issue> kept = issues.subList(OLD, ITEMS);
+
+        repo.init();
+        repo.insertAll(issues);
+        assertEquals(OLD, repo.deleteOlderThan(5_000L));
+        repo.compact();
+        assertEquals(0, repo.deleteOlderThan(5_000L));
+
+        assertEquals(ids(kept), ids(repo.readAll()), "readAll");
+        assertNull(repo.getById(issues.get(0).getId()), "purged issue");
+        Issue last = issues.get(ITEMS - 1);
+        assertEquals(last.getMessage(), repo.getById(last.getId()).getMessage(), "kept issue");
+        assertEquals(ids(byRule(kept, "java:S100")), ids(repo.searchByRule("java:S100")), "searchByRule");
+        assertEquals(countByRule(kept), repo.countBy(IssueField.RULE), "countBy");
+
+        String tag = last.getTags().get(0);
+        assertEquals(ids(withTag(kept, tag)), ids(repo.searchByTags(List.of(tag), TagMatch.ANY)), "searchByTags");
+        Set<String> words = TextSearch.words(last.getMessage());
+        String query = words.iterator().next();
+        assertEquals(ids(withWords(kept, TextSearch.words(query))), ids(repo.searchMessage(query)), "searchMessage");
+
+        // the purged ids can be stored again
+        repo.insertAll(List.of(issues.get(0)));
+        assertEquals(ITEMS - OLD + 1, repo.readAll().size());
+    }
+
+    private static void assertIndexesMatch(IssueRepository repo, List<Issue> issues) throws Exception {
+        Set<String> tags = new TreeSet<>();
+        Set<String> words = new TreeSet<>();
+        for (Issue is : issues) {
+            if (is.getTags() != null) tags.addAll(is.getTags());
+            words.addAll(TextSearch.words(is.getMessage()));
+        }
+        for (String tag : tags) {
+            assertEquals(ids(withTag(issues, tag)), ids(repo.searchByTags(List.of(tag), TagMatch.ANY)), tag);
+        }
+        for (String word : words) {
+            assertEquals(ids(withWords(issues, Set.of(word))), ids(repo.searchMessage(word)), word);
+        }
+    }
+
+    private static Set<String> ids(Collection<Issue> issues) {
+        Set<String> out = new TreeSet<>();
+        for (Issue is : issues) out.add(is.getId());
+        return out;
+    }
+
+    private static List<Issue> byRule(List<Issue> issues, String ruleKey) {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : issues) {
+            if (ruleKey.equals(is.getRuleKey())) out.add(is);
+        }
+        return out;
+    }
+
+    private static Map<String, Long> countByRule(List<Issue> issues) {
+        Map<String, Long> out = new TreeMap<>();
+        for (Issue is : issues) out.merge(is.getRuleKey(), 1L, Long::sum);
+        return out;
+    }
+
+    private static List<Issue> withTag(List<Issue> issues, String tag) {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : issues) {
+            if (is.getTags() != null && is.getTags().contains(tag)) out.add(is);
+        }
+        return out;
+    }
+
+    private static List<Issue> withWords(List<Issue> issues, Set<String> words) {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : issues) {
+            if (TextSearch.matches(is.getMessage(), words)) out.add(is);
+        }
+        return out;
+    }
+}
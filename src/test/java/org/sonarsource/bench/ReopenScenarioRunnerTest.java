@@ -0,0 +1,26 @@
+package org.sonarsource.bench;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+class ReopenScenarioRunnerTest {
+
+  @Test
+  void reopenRunner_inProcess_allBackends_smoke() {
+    String[] args = new String[]{"db=h2,hsqldb,derby,sqlite,nitrite,mapdb", "items=500", "batch=100"};
+    assertDoesNotThrow(() -> ReopenScenarioRunner.main(args));
+  }
+
+  @Test
+  void reopenRunner_forkedOpen_sqlite_smoke() {
+    String[] args = new String[]{"db=sqlite", "items=500", "batch=100", "fork=true"};
+    assertDoesNotThrow(() -> ReopenScenarioRunner.main(args));
+  }
+
+  @Test
+  void reopenRunner_emptyStore_skipsGetById() {
+    String[] args = new String[]{"db=h2,mapdb", "items=0", "batch=100"};
+    assertDoesNotThrow(() -> ReopenScenarioRunner.main(args));
+  }
+}
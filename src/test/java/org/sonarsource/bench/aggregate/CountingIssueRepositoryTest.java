@@ -0,0 +1,54 @@
+package org.sonarsource.bench.aggregate;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.IssueField;
+import org.sonarsource.bench.db.ListIssueRepository;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CountingIssueRepositoryTest {
+
+    @Test
+    void counters_startFromTheStore_andFollowInserts() throws Exception {
+        List<Issue> issues = new DataGenerator(3L, new String[] {"java:S1", "java:S2", "java:S3"}).generate(500);
+        ListIssueRepository store = new ListIssueRepository();
+        store.issues.addAll(issues.subList(0, 200));
+        CountingIssueRepository repo = new CountingIssueRepository(store);
+        repo.init();
+        repo.insertAll(issues.subList(200, 500));
+        repo.insertAll(List.of(new Issue("no-severity", "java:S1", null, "m", null, 1, 0L, null, null)));
+
+        // the store counts with the default implementations, by scanning all issues
+        for (IssueField field : IssueField.values()) assertEquals(store.countBy(field), repo.countBy(field), field.name());
+        Map<String, Map<String, Long>> matrix = repo.countBy(IssueField.SEVERITY, IssueField.RULE);
+        assertEquals(store.countBy(IssueField.SEVERITY, IssueField.RULE), matrix);
+        long total = 0;
+        for (Map<String, Long> byRule : matrix.values()) {
+            for (long n : byRule.values()) total += n;
+        }
+        assertEquals(500, total);
+        assertEquals(store.countBy(IssueField.RULE, IssueField.FILE), repo.countBy(IssueField.RULE, IssueField.FILE));
+        repo.close();
+    }
+
+    @Test
+    void counters_followDeletes() throws Exception {
+        List<Issue> issues = new DataGenerator(5L, new String[] {"java:S1", "java:S2"}).generate(300);
+        for (int i = 0; i < issues.size(); i++) issues.get(i).setCreationDateEpochMillis(i);
+        ListIssueRepository store = new ListIssueRepository();
+        CountingIssueRepository repo = new CountingIssueRepository(store);
+        repo.init();
+        repo.insertAll(issues);
+
+        assertEquals(100, repo.deleteOlderThan(100));
+        assertEquals(200, store.issues.size());
+        for (IssueField field : IssueField.values()) assertEquals(store.countBy(field), repo.countBy(field), field.name());
+        assertEquals(store.countBy(IssueField.SEVERITY, IssueField.RULE), repo.countBy(IssueField.SEVERITY, IssueField.RULE));
+        repo.close();
+    }
+}
@@ -0,0 +1,123 @@
+package org.sonarsource.bench.async;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.async.WriteBehindIssueRepository.Backpressure;
+import org.sonarsource.bench.db.ListIssueRepository;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindIssueRepositoryTest {
+
+    @Test
+    void pendingWrites_areVisibleToReads_untilStoredInGroups() throws Exception {
+        GatedRepository store = new GatedRepository();
+        WriteBehindIssueRepository repo = new WriteBehindIssueRepository(store, 100, 10, 0, Backpressure.BLOCK);
+        repo.init();
+        CompletableFuture<Void> first = repo.submit(issues(0, 5, "java:S1"));
+        store.entered.await(5, TimeUnit.SECONDS);
+        // the writer is stuck storing the first batch, the next ones wait in the queue
+        repo.insertAll(issues(5, 5, "java:S2"));
+        CompletableFuture<Void> third = repo.submit(issues(10, 5, "java:S2"));
+
+        // reads that need the store would wait for the commit in progress, a pending issue is found without it
+        assertNotNull(repo.getById("i12"));
+        assertFalse(first.isDone());
+        assertEquals(15, repo.queuedIssues());
+
+        store.gate.countDown();
+        third.get(5, TimeUnit.SECONDS);
+        repo.flush();
+        assertTrue(first.isDone());
+        assertEquals(15, store.issues.size());
+        assertEquals(15, repo.readAll().size());
+        assertEquals(10, repo.searchByRule("java:S2").size());
+        assertEquals(0, repo.queuedIssues());
+        // 1 commit for the first batch, then the two queued ones together
+        assertEquals(2, repo.commits());
+        repo.close();
+    }
+
+    @Test
+    void fullQueue_isRejected_withRejectPolicy() throws Exception {
+        GatedRepository store = new GatedRepository();
+        WriteBehindIssueRepository repo = new WriteBehindIssueRepository(store, 10, 10, 0, Backpressure.REJECT);
+        repo.init();
+        repo.submit(issues(0, 8, "java:S1"));
+        store.entered.await(5, TimeUnit.SECONDS);
+        assertThrows(RejectedExecutionException.class, () -> repo.submit(issues(8, 3, "java:S1")));
+        assertThrows(RejectedExecutionException.class, () -> repo.trySubmit(issues(8, 3, "java:S1")));
+        assertThrows(IllegalArgumentException.class, () -> repo.submit(issues(8, 11, "java:S1")));
+        repo.submit(issues(8, 2, "java:S1"));
+        store.gate.countDown();
+        repo.close();
+        assertEquals(10, store.issues.size());
+    }
+
+    @Test
+    void failedGroupCommit_failsItsFutures() throws Exception {
+        GatedRepository store = new GatedRepository();
+        store.gate.countDown();
+        store.fail = true;
+        WriteBehindIssueRepository repo = new WriteBehindIssueRepository(store, 100, 10, 0, Backpressure.BLOCK);
+        repo.init();
+        CompletableFuture<Void> done = repo.submit(issues(0, 3, "java:S1"));
+        assertThrows(ExecutionException.class, () -> done.get(5, TimeUnit.SECONDS));
+        assertEquals(1, repo.failedCommits());
+        repo.close();
+    }
+
+    @Test
+    void writes_failFast_beforeInitAndAfterClose() throws Exception {
+        GatedRepository store = new GatedRepository();
+        store.gate.countDown();
+        WriteBehindIssueRepository repo = new WriteBehindIssueRepository(store);
+        repo.flush();
+        assertThrows(IllegalStateException.class, () -> repo.submit(issues(0, 1, "java:S1")));
+        assertEquals(0, repo.queuedIssues());
+
+        repo.init();
+        repo.submit(issues(0, 2, "java:S1"));
+        repo.close();
+        repo.flush();
+        assertEquals(0, repo.deleteOlderThan(-1L));
+        assertThrows(RejectedExecutionException.class, () -> repo.submit(issues(2, 1, "java:S1")));
+        assertEquals(2, store.issues.size());
+    }
+
+    private static List<Issue> issues(int from, int count, String ruleKey) {
+        List<Issue> out = new ArrayList<>();
+        for (int i = from; i < from + count; i++) out.add(new Issue("i" + i, ruleKey, "MAJOR", "m", "F.java", i, 0L, null, null));
+        return out;
+    }
+
+    /** Holds its first insertAll until the gate opens. */
+    private static class GatedRepository extends ListIssueRepository {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+        volatile boolean fail;
+
+        @Override
+        public String name() { return "Gated"; }
+
+        @Override
+        public void insertAll(List<Issue> batch) throws Exception {
+            entered.countDown();
+            gate.await();
+            if (fail) throw new IllegalStateException("disk full");
+            super.insertAll(batch);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.sonarsource.bench.cache;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueLocation;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapIssueCacheTest {
+
+    @Test
+    void cachedIssues_areDecodedWithAllTheirFields() {
+        OffHeapIssueCache cache = new OffHeapIssueCache(2, 1 << 20);
+        List<Issue> issues = new DataGenerator(5L, new String[] {"java:S1", "java:S2"}).generate(2_000);
+        for (Issue is : issues) cache.put(is);
+        assertEquals(2_000, cache.size());
+        for (Issue expected : issues) {
+            Issue actual = cache.get(expected.getId());
+            assertNotNull(actual, expected.getId());
+            assertEquals(expected.getRuleKey(), actual.getRuleKey());
+            assertEquals(expected.getMessage(), actual.getMessage());
+            assertEquals(expected.getLine(), actual.getLine());
+            assertEquals(expected.getCreationDateEpochMillis(), actual.getCreationDateEpochMillis());
+            assertEquals(expected.getTags(), actual.getTags());
+            assertEquals(expected.getPrimaryLocation(), actual.getPrimaryLocation());
+            assertEquals(expected.getFlows().size(), actual.getFlows().size());
+            assertEquals(expected.getQuickFixes().size(), actual.getQuickFixes().size());
+        }
+        assertNull(cache.get("missing"));
+
+        Issue changed = new Issue(issues.get(0).getId(), "java:S9", null, null, null, null, 1L, null, null);
+        changed.setPrimaryLocation(new IssueLocation(null, null, null, null, null, null));
+        cache.put(changed);
+        assertEquals(2_000, cache.size());
+        Issue actual = cache.get(changed.getId());
+        assertEquals("java:S9", actual.getRuleKey());
+        assertNull(actual.getSeverity());
+        assertNull(actual.getLine());
+        assertEquals(changed.getPrimaryLocation(), actual.getPrimaryLocation());
+    }
+
+    @Test
+    void recyclingAnArena_evictsTheOldestIssues() {
+        OffHeapIssueCache cache = new OffHeapIssueCache(3, 64 * 1024);
+        List<Issue> issues = new DataGenerator(6L, new String[] {"java:S1"}).generate(5_000);
+        for (Issue is : issues) cache.put(is);
+        assertTrue(cache.recycles() > 0);
+        assertTrue(cache.size() < issues.size());
+        // the last issue put is always there, the first one was evicted long ago
+        assertNotNull(cache.get(issues.get(issues.size() - 1).getId()));
+        assertNull(cache.get(issues.get(0).getId()));
+        int found = 0;
+        for (Issue is : issues) {
+            if (cache.get(is.getId()) != null) found++;
+        }
+        assertEquals(cache.size(), found);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get(issues.get(issues.size() - 1).getId()));
+    }
+}
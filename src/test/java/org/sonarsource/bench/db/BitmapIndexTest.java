@@ -0,0 +1,83 @@
+package org.sonarsource.bench.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitmapIndexTest {
+
+    @Test
+    void intersectionAndUnion_acrossChunks_matchAPlainScan() {
+        Map<String, byte[]> store = new HashMap<>();
+        BitmapIndex index = new BitmapIndex(store);
+        long count = 200_000;
+        for (long i = 0; i < count; i++) {
+            if (i % 3 == 0) index.add("security", i);
+            if (i % 5 == 0) index.add("bug", i);
+            if (i == 150_001) index.add("rare", i);
+        }
+        index.flush();
+
+        List<Long> all = new ArrayList<>();
+        index.forEach(List.of("security", "bug"), TagMatch.ALL, count, all::add);
+        assertEquals((count + 14) / 15, all.size());
+        for (long o : all) assertTrue(o % 15 == 0, "ordinal " + o);
+
+        List<Long> any = new ArrayList<>();
+        index.forEach(List.of("security", "bug"), TagMatch.ANY, count, any::add);
+        long expected = 0;
+        for (long i = 0; i < count; i++) {
+            if (i % 3 == 0 || i % 5 == 0) expected++;
+        }
+        assertEquals(expected, any.size());
+
+        List<Long> rare = new ArrayList<>();
+        index.forEach(List.of("rare", "security"), TagMatch.ANY, count, o -> {
+            if (o == 150_001) rare.add(o);
+        });
+        assertEquals(List.of(150_001L), rare);
+        List<Long> none = new ArrayList<>();
+        index.forEach(List.of("rare", "missing"), TagMatch.ALL, count, none::add);
+        assertTrue(none.isEmpty());
+
+        // the sparse tag is stored as a short array of offsets, the dense ones as bitmaps
+        assertEquals(3, store.get("rare#2").length);
+        assertEquals(1 + 8192, store.get("security#0").length);
+    }
+
+    @Test
+    void remove_clearsOrdinals_andDropsEmptyChunks() {
+        Map<String, byte[]> store = new HashMap<>();
+        BitmapIndex index = new BitmapIndex(store);
+        for (long i = 0; i < 70_000; i++) index.add("bug", i);
+        index.flush();
+        for (long i = 0; i < 65_536; i++) index.remove("bug", i);
+        index.remove("bug", 69_999);
+        index.flush();
+
+        assertEquals(List.of("bug#1"), new ArrayList<>(store.keySet()));
+        List<Long> left = new ArrayList<>();
+        index.forEach(List.of("bug"), TagMatch.ANY, 70_000, left::add);
+        assertEquals(70_000 - 65_536 - 1, left.size());
+        assertEquals(65_536L, left.get(0).longValue());
+        assertEquals(69_998L, left.get(left.size() - 1).longValue());
+    }
+
+    @Test
+    void encode_roundTrips_bothLayouts() {
+        long[] sparse = new long[1024];
+        sparse[0] = 1L;
+        sparse[1023] = 1L << 63;
+        assertArrayEquals(sparse, BitmapIndex.decode(BitmapIndex.encode(sparse)));
+        long[] dense = new long[1024];
+        for (int i = 0; i < dense.length; i++) dense[i] = 0x5555_5555_5555_5555L;
+        assertArrayEquals(dense, BitmapIndex.decode(BitmapIndex.encode(dense)));
+    }
+}
@@ -0,0 +1,61 @@
+package org.sonarsource.bench.db;
+
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory {@link IssueRepository} over a plain list, in insertion order, for the tests of code written against the
+ * interface. Tests read and fill {@link #issues} directly; {@link #batches} counts the insertAll calls.
+ */
+public class ListIssueRepository implements IssueRepository {
+    public final List<Issue> issues = new ArrayList<>();
+    public int batches;
+
+    @Override
+    public String name() { return "List"; }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void insertAll(List<Issue> batch) throws Exception {
+        issues.addAll(batch);
+        batches++;
+    }
+
+    @Override
+    public List<Issue> readAll() {
+        return new ArrayList<>(issues);
+    }
+
+    @Override
+    public List<Issue> searchByRule(String ruleKey) throws Exception {
+        List<Issue> out = new ArrayList<>();
+        for (Issue is : issues) {
+            if (ruleKey.equals(is.getRuleKey())) out.add(is);
+        }
+        return out;
+    }
+
+    @Override
+    public Issue getById(String id) {
+        for (Issue is : issues) {
+            if (is.getId().equals(id)) return is;
+        }
+        return null;
+    }
+
+    @Override
+    public long deleteOlderThan(long epochMillis) {
+        int before = issues.size();
+        issues.removeIf(is -> is.getCreationDateEpochMillis() < epochMillis);
+        return before - issues.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,40 @@
+package org.sonarsource.bench.db;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.model.Issue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeImportTest {
+
+    @Test
+    void rows_quoteStrings_andLeaveNullsEmpty() throws Exception {
+        File dir = Files.createTempDirectory("native-import").toFile();
+        File issues;
+        try (NativeImport files = NativeImport.create(dir, "test", true, false)) {
+            Issue is = new Issue("i1", "java:S1", "MAJOR", "Say \"hi\", twice", null, null, 42L, null, List.of("a", "b", "a"));
+            assertTrue(files.add(is, "P|\u00e9~Q"));
+            Issue broken = new Issue("i2", "java:S1", "MAJOR", "two\nlines", null, 3, 1L, null, List.of());
+            assertFalse(files.add(broken, ""));
+            files.finish();
+            issues = files.issues();
+
+            assertEquals(1, files.rows());
+            assertEquals("\"i1\",\"java:S1\",\"MAJOR\",\"Say \"\"hi\"\", twice\",,,42,,\"a,b,a\",\"P|\u00e9~Q\"\n",
+                    new String(Files.readAllBytes(issues.toPath()), StandardCharsets.UTF_8));
+            assertEquals("\"a\",\"i1\"\n\"b\",\"i1\"\n", new String(Files.readAllBytes(files.tags().toPath()), StandardCharsets.UTF_8));
+            assertEquals("\"say\",\"i1\"\n\"hi\",\"i1\"\n\"twice\",\"i1\"\n",
+                    new String(Files.readAllBytes(files.words().toPath()), StandardCharsets.UTF_8));
+            assertEquals(118, files.bytes(), "UTF-8 bytes, the accent taking two");
+        }
+        assertFalse(issues.exists());
+        dir.delete();
+    }
+}
@@ -0,0 +1,60 @@
+package org.sonarsource.bench.db;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PageTest {
+
+    @Test
+    void pages_walkTheIssuesInIdOrder_andTheLastOneHasNoToken() throws Exception {
+        ListIssueRepository repo = new ListIssueRepository();
+        for (int i = 9; i >= 0; i--) repo.issues.add(issue("i" + i, i % 2 == 0 ? "java:S1" : "java:S2"));
+
+        List<String> ids = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            Page page = repo.readAll(3, token);
+            for (Issue is : page.getIssues()) ids.add(is.getId());
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+        assertEquals(List.of("i0", "i1", "i2", "i3", "i4", "i5", "i6", "i7", "i8", "i9"), ids);
+        assertEquals(4, pages);
+
+        Page first = repo.searchByRule("java:S1", 5, null);
+        assertEquals(5, first.getIssues().size());
+        // exactly one page: no token leading to an empty page
+        assertFalse(first.hasNext());
+        Page two = repo.searchByRule("java:S2", 2, null);
+        assertTrue(two.hasNext());
+        assertEquals("i5", repo.searchByRule("java:S2", 2, two.getNextToken()).getIssues().get(0).getId());
+    }
+
+    @Test
+    void tokens_onlyWorkForTheQueryThatReturnedThem() throws Exception {
+        ListIssueRepository repo = new ListIssueRepository();
+        for (int i = 0; i < 4; i++) repo.issues.add(issue("i" + i, "java:S1"));
+        String token = repo.searchByRule("java:S1", 2, null).getNextToken();
+
+        assertEquals("i1", Page.afterId(token, "java:S1"));
+        assertNull(Page.afterId(null, "java:S1"));
+        assertThrows(IllegalArgumentException.class, () -> repo.searchByRule("java:S2", 2, token));
+        assertThrows(IllegalArgumentException.class, () -> repo.readAll(2, token));
+        assertThrows(IllegalArgumentException.class, () -> repo.readAll(2, "not a token!"));
+        assertThrows(IllegalArgumentException.class, () -> repo.readAll(0, null));
+    }
+
+    private static Issue issue(String id, String ruleKey) {
+        return new Issue(id, ruleKey, "MAJOR", "m", "F.java", 1, 0L, null, null);
+    }
+}
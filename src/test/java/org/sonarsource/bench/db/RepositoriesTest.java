@@ -0,0 +1,25 @@
+package org.sonarsource.bench.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepositoriesTest {
+
+    @Test
+    void serviceLoader_findsAllBuiltInBackends() {
+        assertEquals(List.of("h2", "hsqldb", "derby", "sqlite", "nitrite", "mvstore", "mapdb"), Repositories.ids(Repositories.all()));
+        assertEquals(List.of("h2", "hsqldb", "derby", "sqlite", "nitrite", "mvstore"), Repositories.ids(Repositories.select(null)));
+    }
+
+    @Test
+    void select_parsesCommaSeparatedIds() {
+        assertEquals(List.of("sqlite", "mapdb"), Repositories.ids(Repositories.select("SQLite, mapdb")));
+        assertTrue(Repositories.get("h2").create(null, TuningProfile.FAST_UNSAFE) instanceof H2IssueRepository);
+        assertThrows(IllegalArgumentException.class, () -> Repositories.select("h2,oracle"));
+    }
+}
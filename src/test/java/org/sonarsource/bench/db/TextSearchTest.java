@@ -0,0 +1,41 @@
+package org.sonarsource.bench.db;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.model.Issue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextSearchTest {
+
+    @Test
+    void words_areLowerCaseRunsOfLettersAndDigits() {
+        assertEquals(List.of("issue", "on", "line", "12", "for", "rule", "java", "s100"),
+                new ArrayList<>(TextSearch.words("Issue on line 12 for rule java:S100, line 12")));
+        assertTrue(TextSearch.words("  --  ").isEmpty());
+        assertTrue(TextSearch.words("x".repeat(TextSearch.MAX_WORD_LENGTH + 1)).isEmpty());
+    }
+
+    @Test
+    void matches_needsEveryWord_asAWholeWord() {
+        Set<String> query = TextSearch.words("Lorem 123");
+        assertTrue(TextSearch.matches("lorem ipsum 123", query));
+        assertFalse(TextSearch.matches("lorem ipsum 1234", query));
+        assertFalse(TextSearch.matches("lorem", Set.of()));
+    }
+
+    @Test
+    void defaultSearchMessage_scansReadAll() throws Exception {
+        ListIssueRepository repo = new ListIssueRepository();
+        repo.issues.add(new Issue("a", "java:S1", "MAJOR", "Issue on line 123 lorem", "F.java", 1, 0L, null, null));
+        repo.issues.add(new Issue("b", "java:S1", "MAJOR", "Issue on line 12 lorem", "F.java", 1, 0L, null, null));
+        assertEquals(1, repo.searchMessage("LOREM 123").size());
+        assertEquals(2, repo.searchMessage("lorem").size());
+        assertTrue(repo.searchMessage("").isEmpty());
+    }
+}
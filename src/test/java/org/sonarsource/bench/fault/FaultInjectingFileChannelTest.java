@@ -0,0 +1,99 @@
+package org.sonarsource.bench.fault;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.IssueRepository;
+import org.sonarsource.bench.db.MapDbIssueRepository;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FaultInjectingFileChannelTest {
+
+    @Test
+    void dropUnsynced_restoresLastForcedContent() throws Exception {
+        Path f = File.createTempFile("fault-channel", ".bin").toPath();
+        try (FaultInjectingFileChannel ch = open(f, FaultMode.DROP_UNSYNCED)) {
+            write(ch, "AAAAAAAA", 0);
+            ch.force(true);
+            write(ch, "BBBBBBBB", 0);
+            write(ch, "tail", 8);
+            ch.rewind(FaultMode.DROP_UNSYNCED);
+        }
+        assertEquals("AAAAAAAA", read(f));
+    }
+
+    @Test
+    void fsyncLie_losesWritesOfTheLastAcknowledgedForce() throws Exception {
+        Path f = File.createTempFile("fault-channel", ".bin").toPath();
+        try (FaultInjectingFileChannel ch = open(f, FaultMode.FSYNC_LIE)) {
+            write(ch, "AAAAAAAA", 0);
+            ch.force(true);
+            write(ch, "BBBBBBBB", 0);
+            // acknowledged, but only the previous force is really on disk
+            ch.force(true);
+            ch.rewind(FaultMode.FSYNC_LIE);
+        }
+        assertEquals("AAAAAAAA", read(f));
+    }
+
+    @Test
+    void tornWrite_keepsOnlyFirstHalfOfLastWrite() throws Exception {
+        Path f = File.createTempFile("fault-channel", ".bin").toPath();
+        try (FaultInjectingFileChannel ch = open(f, FaultMode.TORN_WRITE)) {
+            write(ch, "A".repeat(2048), 0);
+            ch.force(true);
+            write(ch, "B".repeat(2048), 0);
+            ch.rewind(FaultMode.TORN_WRITE);
+        }
+        assertEquals("B".repeat(1024) + "A".repeat(1024), read(f));
+    }
+
+    @Test
+    void volume_holdsAMapDbStore_thatOpensAsAPlainFile() throws Exception {
+        File f = File.createTempFile("fault-volume", ".db");
+        f.delete();
+        List<Issue> issues = new DataGenerator(3L, new String[] {"java:S1", "java:S2"}).generate(500);
+        try {
+            FaultInjector.install(FaultMode.DROP_UNSYNCED, 0);
+            FaultInjectingVolume volume = new FaultInjectingVolume(f);
+            try (IssueRepository repo = new MapDbIssueRepository(volume, volume.existed())) {
+                repo.init();
+                repo.insertAll(issues);
+            }
+            try (IssueRepository repo = new MapDbIssueRepository(f.getAbsolutePath())) {
+                repo.init();
+                assertEquals(500, repo.readAll().size());
+                assertEquals(issues.get(42).getMessage(), repo.getById(issues.get(42).getId()).getMessage());
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static FaultInjectingFileChannel open(Path f, FaultMode mode) throws Exception {
+        FaultInjector.install(mode, 0);
+        return new FaultInjectingFileChannel(FileChannel.open(f, StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    private static void write(FileChannel ch, String s, long position) throws Exception {
+        ch.write(ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII)), position);
+    }
+
+    private static String read(Path f) throws Exception {
+        try {
+            return new String(Files.readAllBytes(f), StandardCharsets.US_ASCII);
+        } finally {
+            Files.deleteIfExists(f);
+        }
+    }
+}
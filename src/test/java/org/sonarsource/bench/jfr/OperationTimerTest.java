@@ -0,0 +1,51 @@
+package org.sonarsource.bench.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationTimerTest {
+
+    @Test
+    void operation_isRecordedWithItsBreakdown() throws Exception {
+        Path file = File.createTempFile("operations", ".jfr").toPath();
+        try (Recording recording = new Recording()) {
+            recording.enable(RepositoryOperationEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+
+            OperationTimer timer = OperationTimer.begin("H2", "insertAll");
+            long t = timer.start();
+            Thread.sleep(2);
+            timer.encoded(t, 120);
+            timer.encoded(timer.start(), "r\u00e9sum\u00e9 \u20ac \uD83D\uDE00");
+            t = timer.start();
+            Thread.sleep(2);
+            timer.executed(t);
+            timer.end(3);
+
+            recording.stop();
+            recording.dump(file);
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        events.removeIf(e -> !e.getEventType().getName().equals("org.sonarsource.bench.RepositoryOperation"));
+        assertEquals(1, events.size());
+        RecordedEvent e = events.get(0);
+        assertEquals("H2", e.getString("backend"));
+        assertEquals("insertAll", e.getString("operation"));
+        assertEquals(3L, e.getLong("rowCount"));
+        assertEquals(120L + 17, e.getLong("bytesEncoded"));
+        assertTrue(e.getDuration("encodeTime").toMillis() >= 2);
+        assertTrue(e.getDuration("executeTime").toMillis() >= 2);
+        assertEquals(0L, e.getDuration("decodeTime").toNanos());
+    }
+}
@@ -0,0 +1,67 @@
+package org.sonarsource.bench.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.ListIssueRepository;
+import org.sonarsource.bench.model.Issue;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsIssueRepositoryTest {
+
+    @Test
+    void histogram_percentiles_areWithinBucketError() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 10_000; v++) h.record(v * 1000);
+        assertEquals(10_000, h.count());
+        long p50 = h.percentileNanos(0.50);
+        long p99 = h.percentileNanos(0.99);
+        assertTrue(p50 >= 5_000_000 && p50 <= 5_000_000 * 1.25, "p50=" + p50);
+        assertTrue(p99 >= 9_900_000 && p99 <= 10_000_000, "p99=" + p99);
+        assertEquals(10_000_000, h.maxNanos());
+        for (long v = 0; v < 1_000_000; v += 997) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucket(v));
+            assertTrue(upper >= v && upper <= v * 1.25 + 1, v + " -> " + upper);
+        }
+    }
+
+    @Test
+    void decorator_countsOperationsRowsAndErrors_andPublishesMBeans() throws Exception {
+        MetricsIssueRepository repo = new MetricsIssueRepository(new ListIssueRepository() {
+            @Override
+            public List<Issue> searchByRule(String ruleKey) throws Exception {
+                if ("boom".equals(ruleKey)) throw new IllegalStateException("boom");
+                return super.searchByRule(ruleKey);
+            }
+        });
+        repo.init();
+        List<ObjectName> names = new ArrayList<>(repo.objectNames());
+        assertEquals(11, names.size());
+
+        repo.insertAll(List.of(new Issue("a", "java:S1", "MAJOR", "m", "F.java", 1, 0L, null, null),
+                new Issue("b", "java:S2", "MAJOR", "m", "F.java", 2, 0L, null, null)));
+        repo.getById("a");
+        repo.getById("missing");
+        assertThrows(IllegalStateException.class, () -> repo.searchByRule("boom"));
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName getById = names.get(3);
+        assertTrue(getById.toString().contains("operation=getById"));
+        assertEquals(2L, server.getAttribute(getById, "Count"));
+        assertEquals(1L, server.getAttribute(getById, "Rows"));
+        assertEquals(0L, server.getAttribute(getById, "InFlight"));
+        assertEquals(2L, repo.metrics().get("insertAll").getRows());
+        assertEquals(1L, repo.metrics().get("searchByRule").getErrors());
+
+        repo.close();
+        assertFalse(server.isRegistered(getById));
+    }
+}
@@ -0,0 +1,49 @@
+package org.sonarsource.bench.result;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResultsIOTest {
+
+    @Test
+    void jsonAndCsv_roundTrip_keepAllColumns() throws Exception {
+        List<PhaseResult> results = List.of(sample("h2", "write", 1200.5), sample("sqlite, \"wal\"", "get", 80.0));
+        results.get(1).setP95Us(42.25);
+        for (String suffix : new String[] {".json", ".csv"}) {
+            Path file = File.createTempFile("results", suffix).toPath();
+            ResultsIO.write(results, file);
+            List<PhaseResult> back = ResultsIO.read(file);
+            assertEquals(2, back.size());
+            assertEquals("sqlite, \"wal\"", back.get(1).getBackend());
+            assertEquals(1200.5, back.get(0).getDurationMs(), 0.001);
+            assertEquals(42.25, back.get(1).getP95Us(), 0.001);
+            assertTrue(Double.isNaN(back.get(0).getP95Us()));
+            assertEquals(4096L, back.get(0).getBytes());
+        }
+    }
+
+    @Test
+    void comparator_flagsOnlyRegressionsAboveThresholdAndNoiseFloor() {
+        List<PhaseResult> baseline = List.of(sample("h2", "write", 1000), sample("h2", "search", 2), sample("h2", "readAll", 500));
+        List<PhaseResult> current = List.of(sample("h2", "write", 1200), sample("h2", "search", 4));
+        ResultsComparator comparator = new ResultsComparator(10.0, 5.0);
+        List<String> regressions = comparator.regressions(baseline, current);
+        assertEquals(1, regressions.size());
+        assertTrue(regressions.get(0).startsWith("h2/balanced/write durationMs"));
+        assertEquals(List.of("h2/balanced/readAll"), comparator.missing(baseline, current));
+    }
+
+    private static PhaseResult sample(String backend, String phase, double durationMs) {
+        PhaseResult r = new PhaseResult(backend, "balanced", phase, 1000, 100, durationMs);
+        r.setBytes(4096L);
+        r.setGcCount(1);
+        r.setGcTimeMs(3);
+        return r;
+    }
+}
@@ -0,0 +1,96 @@
+package org.sonarsource.bench.shard;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.db.ListIssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.shard.ShardedIssueRepository.ShardKey;
+import org.sonarsource.bench.util.DataGenerator;
+import org.sonarsource.bench.util.WorkloadProfile;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShardedIssueRepositoryTest {
+
+    @Test
+    void issues_areSpreadByModule_andFoundAgainThroughEveryRoute() throws Exception {
+        List<ListIssueRepository> stores = List.of(new ListIssueRepository(), new ListIssueRepository(), new ListIssueRepository());
+        List<Issue> issues = new DataGenerator(42L, new String[] {"java:S1", "java:S2"}, WorkloadProfile.MONOREPO).generate(600);
+        ShardedIssueRepository repo = new ShardedIssueRepository(new ArrayList<>(stores), ShardKey.MODULE, false);
+        repo.init();
+        repo.insertAll(issues.subList(0, 300));
+        repo.insertAll(issues.subList(300, 600));
+
+        int total = 0;
+        for (ListIssueRepository store : stores) {
+            assertTrue(store.issues.size() > 0, "a shard got nothing");
+            Set<String> modules = new HashSet<>();
+            for (Issue is : store.issues) modules.add(ShardKey.MODULE.of(is.getFilePath()));
+            // a module lives in a single shard
+            for (ListIssueRepository other : stores) {
+                if (other == store) continue;
+                for (Issue is : other.issues) assertFalse(modules.contains(ShardKey.MODULE.of(is.getFilePath())));
+            }
+            total += store.issues.size();
+        }
+        assertEquals(600, total);
+        assertEquals(600, repo.readAll().size());
+        long s1 = issues.stream().filter(i -> i.getRuleKey().equals("java:S1")).count();
+        assertEquals(s1, repo.searchByRule("java:S1").size());
+
+        Issue some = issues.get(123);
+        assertNotNull(repo.getById(some.getId()));
+        assertNotNull(repo.getById(some.getId(), some.getFilePath()));
+        assertNull(repo.getById("missing"));
+        repo.close();
+    }
+
+    @Test
+    void pages_mergeTheShards_inIdOrder() throws Exception {
+        ShardedIssueRepository repo = new ShardedIssueRepository(List.of(new ListIssueRepository(), new ListIssueRepository(), new ListIssueRepository()),
+                ShardKey.FILE, false);
+        repo.init();
+        List<Issue> issues = new DataGenerator(7L, new String[] {"java:S1", "java:S2"}).generate(200);
+        repo.insertAll(issues);
+
+        List<String> expected = new ArrayList<>();
+        for (Issue is : issues) {
+            if (is.getRuleKey().equals("java:S1")) expected.add(is.getId());
+        }
+        expected.sort(null);
+        List<String> ids = new ArrayList<>();
+        String token = null;
+        do {
+            Page page = repo.searchByRule("java:S1", 7, token);
+            for (Issue is : page.getIssues()) ids.add(is.getId());
+            token = page.getNextToken();
+        } while (token != null);
+        assertEquals(expected, ids);
+        repo.close();
+    }
+
+    @Test
+    void shardFailure_isRethrown() throws Exception {
+        ListIssueRepository broken = new ListIssueRepository() {
+            @Override
+            public void insertAll(List<Issue> batch) {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        ShardedIssueRepository repo = new ShardedIssueRepository(List.of(new ListIssueRepository(), broken), ShardKey.FILE, true);
+        repo.init();
+        List<Issue> issues = new DataGenerator(1L, new String[] {"java:S1"}).generate(50);
+        assertThrows(IllegalStateException.class, () -> repo.insertAll(issues));
+        repo.close();
+    }
+}
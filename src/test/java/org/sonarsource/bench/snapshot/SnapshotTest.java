@@ -0,0 +1,136 @@
+package org.sonarsource.bench.snapshot;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.cache.OffHeapIssueCache;
+import org.sonarsource.bench.db.ListIssueRepository;
+import org.sonarsource.bench.db.Page;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.util.DataGenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+    private static final List<Issue> ISSUES = new DataGenerator(9L, new String[] {"java:S1", "java:S2", "java:S3"}).generate(6_000);
+
+    @Test
+    void export_thenLoad_roundTripsEveryIssue() throws Exception {
+        ListIssueRepository source = new ListIssueRepository();
+        source.issues.addAll(ISSUES);
+        long uncompressed = 0;
+        for (Snapshot.Compression compression : Snapshot.Compression.values()) {
+            Path file = File.createTempFile("issues", ".snapshot").toPath();
+            try {
+                assertEquals(6_000, Snapshot.export(source, file, compression, 500));
+                ListIssueRepository target = new ListIssueRepository();
+                assertEquals(6_000, Snapshot.load(file, target, 1_000));
+                assertEquals(6, target.batches);
+                // exported in id order
+                List<Issue> expected = new ArrayList<>(ISSUES);
+                expected.sort((a, b) -> a.getId().compareTo(b.getId()));
+                for (int i = 0; i < expected.size(); i++) {
+                    Issue e = expected.get(i);
+                    Issue a = target.issues.get(i);
+                    assertEquals(e.getId(), a.getId());
+                    assertEquals(e.getMessage(), a.getMessage());
+                    assertEquals(e.getTags(), a.getTags());
+                    assertEquals(e.getPrimaryLocation(), a.getPrimaryLocation());
+                    assertEquals(e.getFlows().size(), a.getFlows().size());
+                }
+                if (compression == Snapshot.Compression.NONE) uncompressed = Files.size(file);
+                else assertTrue(Files.size(file) < uncompressed, "deflated to " + Files.size(file) + " of " + uncompressed);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    void damagedFiles_areRejected() throws Exception {
+        Path file = File.createTempFile("issues", ".snapshot").toPath();
+        try {
+            try (SnapshotWriter out = new SnapshotWriter(file, Snapshot.Compression.NONE)) {
+                out.writeAll(ISSUES);
+                out.finish();
+            }
+            long size = Files.size(file);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer b = ByteBuffer.allocate(1);
+                ch.read(b, size / 2);
+                b.put(0, (byte) ~b.get(0));
+                ch.write(b.rewind(), size / 2);
+            }
+            assertThrows(IOException.class, () -> Snapshot.load(file, new ListIssueRepository(), 100));
+
+            try (SnapshotWriter out = new SnapshotWriter(file, Snapshot.Compression.DEFLATE)) {
+                out.writeAll(ISSUES);
+                out.finish();
+            }
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                ch.truncate(Files.size(file) - 4);
+            }
+            assertThrows(IOException.class, () -> Snapshot.load(file, new ListIssueRepository(), 100));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void unfinishedFiles_areRejected_andAFailedExportLeavesNoFile() throws Exception {
+        Path file = File.createTempFile("issues", ".snapshot").toPath();
+        try {
+            try (SnapshotWriter out = new SnapshotWriter(file, Snapshot.Compression.NONE)) {
+                out.writeAll(ISSUES);
+            }
+            assertThrows(IOException.class, () -> Snapshot.load(file, new ListIssueRepository(), 100));
+
+            ListIssueRepository failing = new ListIssueRepository() {
+                @Override
+                public Page readAll(int pageSize, String token) throws Exception {
+                    if (token != null) throw new IOException("store went away");
+                    return super.readAll(pageSize, token);
+                }
+            };
+            failing.issues.addAll(ISSUES);
+            assertThrows(IOException.class, () -> Snapshot.export(failing, file, Snapshot.Compression.NONE, 500));
+            assertFalse(Files.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void mappedRecords_loadIntoTheOffHeapCache_withoutDecoding() throws Exception {
+        Path file = File.createTempFile("issues", ".snapshot").toPath();
+        try {
+            try (SnapshotWriter out = new SnapshotWriter(file, Snapshot.Compression.NONE)) {
+                out.writeAll(ISSUES);
+                out.finish();
+            }
+            OffHeapIssueCache cache = new OffHeapIssueCache(4, 4 << 20);
+            assertEquals(6_000, Snapshot.load(file, cache));
+            assertEquals(6_000, cache.size());
+            for (Issue expected : ISSUES) {
+                Issue actual = cache.get(expected.getId());
+                assertNotNull(actual, expected.getId());
+                assertEquals(expected.getRuleKey(), actual.getRuleKey());
+                assertEquals(expected.getQuickFixes().size(), actual.getQuickFixes().size());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.sonarsource.bench.util;
+
+import org.junit.jupiter.api.Test;
+import org.sonarsource.bench.model.Issue;
+import org.sonarsource.bench.model.IssueFlow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataGeneratorTest {
+    private static final String[] RULE_KEYS = {"java:S100", "java:S101", "java:S1854"};
+
+    @Test
+    void sameSeed_givesSameDataset_atAnyParallelism() {
+        DataGenerator gen = new DataGenerator(42L, RULE_KEYS);
+        List<String> sequential = fingerprints(gen.generate(2000, 1));
+        assertEquals(sequential, fingerprints(gen.generate(2000, 4)));
+        assertEquals(sequential, fingerprints(new DataGenerator(42L, RULE_KEYS).generate(2000)));
+        assertEquals(sequential.subList(0, 100), fingerprints(gen.generate(100, 3)));
+        assertEquals(sequential.get(1234), fingerprint(gen.issueAt(1234)));
+        assertEquals(2000, new HashSet<>(sequential).size());
+    }
+
+    @Test
+    void lazyIteratorAndStream_matchMaterializedList() {
+        DataGenerator gen = new DataGenerator(42L, RULE_KEYS);
+        List<String> expected = fingerprints(gen.generate(500));
+        List<Issue> iterated = new ArrayList<>();
+        gen.iterator(500).forEachRemaining(iterated::add);
+        assertEquals(expected, fingerprints(iterated));
+        assertEquals(expected, fingerprints(gen.stream(500).parallel().collect(Collectors.toList())));
+        assertEquals(expected.subList(200, 300), fingerprints(gen.generateRange(200, 100)));
+    }
+
+    @Test
+    void skewedProfiles_concentrateRulesAndFiles_andHaveLongFlows() {
+        List<Issue> monorepo = new DataGenerator(42L, RULE_KEYS, WorkloadProfile.MONOREPO).generate(20_000);
+        Map<String, Integer> perFile = new HashMap<>();
+        Map<String, Integer> perRule = new HashMap<>();
+        for (Issue i : monorepo) {
+            perFile.merge(i.getFilePath(), 1, Integer::sum);
+            perRule.merge(i.getRuleKey(), 1, Integer::sum);
+        }
+        // uniform over 50k files would give less than one issue per file
+        assertTrue(Collections.max(perFile.values()) > 1000);
+        assertTrue(perRule.get("java:S100") > perRule.get("java:S1854"));
+
+        int longest = 0;
+        for (Issue i : new DataGenerator(42L, RULE_KEYS, WorkloadProfile.SECURITY_HEAVY).generate(5_000)) {
+            for (IssueFlow f : i.getFlows()) longest = Math.max(longest, f.getLocations().size());
+        }
+        assertTrue(longest >= 24);
+        assertTrue(longest <= WorkloadProfile.SECURITY_HEAVY.maxFlowSteps);
+    }
+
+    @Test
+    void differentSeed_givesDifferentIds() {
+        Issue a = new DataGenerator(1L, RULE_KEYS).issueAt(0);
+        Issue b = new DataGenerator(2L, RULE_KEYS).issueAt(0);
+        assertNotEquals(a.getId(), b.getId());
+    }
+
+    private static List<String> fingerprints(List<Issue> issues) {
+        List<String> out = new ArrayList<>(issues.size());
+        for (Issue i : issues) out.add(fingerprint(i));
+        return out;
+    }
+
+    private static String fingerprint(Issue i) {
+        return i.getId() + "|" + i.getRuleKey() + "|" + i.getSeverity() + "|" + i.getMessage() + "|" + i.getCreationDateEpochMillis()
+                + "|" + i.getAssignee() + "|" + i.getTags() + "|" + i.getFlows().size() + "|" + i.getQuickFixes().size();
+    }
+}
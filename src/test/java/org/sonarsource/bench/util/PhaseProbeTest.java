@@ -0,0 +1,24 @@
+package org.sonarsource.bench.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PhaseProbeTest {
+    private static volatile Object sink;
+
+    @Test
+    void allocations_areCountedOnlyWhileRunning() {
+        PhaseProbe probe = PhaseProbe.start();
+        sink = new byte[8 * 1024 * 1024];
+        probe.pause();
+        for (int i = 0; i < 8; i++) sink = new byte[8 * 1024 * 1024];
+        probe.resume();
+        probe.stop();
+
+        assertTrue(probe.allocatedBytes() >= 8 * 1024 * 1024, "allocated " + probe.allocatedBytes());
+        assertTrue(probe.allocatedBytes() < 2 * 8 * 1024 * 1024, "allocated " + probe.allocatedBytes());
+        assertTrue(probe.heapPeakBytes() > 0);
+        assertTrue(probe.gcCount() >= 0 && probe.cpuMs() >= 0);
+    }
+}